@@ -0,0 +1,85 @@
+package com.galaxysim;
+
+import java.util.Arrays;
+
+/**
+ * Writes down how long every frame took during a benchmark run and prints
+ * percentiles at the end. The first couple of seconds get skipped since that's
+ * when the starting area is still being generated
+ */
+public class BenchmarkRecorder {
+    // seconds at the start that don't count
+    private static final float WARMUP_SECONDS = 2.0f;
+
+    private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+
+    private final float durationSeconds;
+    private float elapsedSeconds;
+    private float[] frameMs = new float[16 * 1024];
+    private int frameCount;
+
+    /**
+     * @param durationSeconds How long the benchmark runs for, or 0 to run until the window closes
+     */
+    public BenchmarkRecorder(float durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Records one frame
+     * @param seconds How long the frame took
+     */
+    public void frameFinished(float seconds) {
+        elapsedSeconds += seconds;
+        if (elapsedSeconds <= WARMUP_SECONDS) {
+            return;
+        }
+        if (frameCount == frameMs.length) {
+            frameMs = Arrays.copyOf(frameMs, frameMs.length * 2);
+        }
+        frameMs[frameCount++] = seconds * 1000.0f;
+    }
+
+    /**
+     * @return True once the benchmark has run as long as it was asked to
+     */
+    public boolean isFinished() {
+        return durationSeconds > 0 && elapsedSeconds >= WARMUP_SECONDS + durationSeconds;
+    }
+
+    /**
+     * Prints the frame time percentiles
+     */
+    public void printSummary() {
+        if (frameCount == 0) {
+            System.out.println("Benchmark: no frames recorded (it has to run longer than the " + WARMUP_SECONDS + " s warmup)");
+            return;
+        }
+
+        float[] sorted = Arrays.copyOf(frameMs, frameCount);
+        Arrays.sort(sorted);
+        double total = 0;
+        for (int i = 0; i < frameCount; i++) {
+            total += sorted[i];
+        }
+        double average = total / frameCount;
+
+        System.out.println(String.format("Benchmark: %d frames, average %.2f ms (%.1f fps)", frameCount, average, 1000.0 / average));
+        StringBuilder line = new StringBuilder("Frame times:");
+        for (double percentile : PERCENTILES) {
+            line.append(String.format("  p%s %.2f ms", formatPercentile(percentile), percentile(sorted, percentile)));
+        }
+        line.append(String.format("  max %.2f ms", sorted[frameCount - 1]));
+        System.out.println(line);
+    }
+
+    // nearest-rank percentile
+    private static float percentile(float[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,271 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Makes anything brighter than 1.0 glow, in screen space. The scene gets drawn into a float
+ * buffer so bright stuff (sun surfaces, glimmering stars, shooting star heads) can go over 1.0.
+ * The part over 1.0 gets halved down a chain of smaller and smaller buffers, then added back
+ * up the chain with a small blur at every step, which spreads it out into a wide soft glow.
+ * That glow gets added on top of the scene when it goes onto the window.
+ *
+ * This replaces drawing glows as piles of see-through geometry - it costs the same no
+ * matter how many glowing things are on screen
+ */
+public class BloomPass {
+    // most levels in the chain (each one is half the size of the last)
+    private static final int MAX_LEVELS = 6;
+
+    // levels stop once they get this small
+    private static final int MIN_LEVEL_SIZE = 8;
+
+    // only the part of a color above this blooms
+    private static final float THRESHOLD = 1.0f;
+
+    // how strong the glow is when it gets added back on
+    private static final float INTENSITY = 0.8f;
+
+    private static final String VERTEX_SHADER =
+        "#version 120\n" +
+        "attribute vec2 aPosition;\n" +
+        "uniform vec2 uUvScale;\n" +
+        "varying vec2 vUv;\n" +
+        "void main() {\n" +
+        "    vUv = (aPosition * 0.5 + 0.5) * uUvScale;\n" +
+        "    gl_Position = vec4(aPosition, 0.0, 1.0);\n" +
+        "}\n";
+
+    // 2x2 box down, keeping only what's over the threshold (threshold 0 keeps everything)
+    private static final String DOWNSAMPLE_SHADER =
+        "#version 120\n" +
+        "uniform sampler2D uSource;\n" +
+        "uniform vec2 uTexel;\n" +
+        "uniform float uThreshold;\n" +
+        "varying vec2 vUv;\n" +
+        "void main() {\n" +
+        "    vec3 c = texture2D(uSource, vUv + vec2(-uTexel.x, -uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(uTexel.x, -uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(-uTexel.x, uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(uTexel.x, uTexel.y)).rgb;\n" +
+        "    c *= 0.25;\n" +
+        "    float peak = max(c.r, max(c.g, c.b));\n" +
+        "    c *= max(peak - uThreshold, 0.0) / max(peak, 0.0001);\n" +
+        "    gl_FragColor = vec4(c, 1.0);\n" +
+        "}\n";
+
+    // 3x3 tent up, gets added onto the bigger level
+    private static final String UPSAMPLE_SHADER =
+        "#version 120\n" +
+        "uniform sampler2D uSource;\n" +
+        "uniform vec2 uTexel;\n" +
+        "varying vec2 vUv;\n" +
+        "void main() {\n" +
+        "    vec3 c = texture2D(uSource, vUv).rgb * 4.0;\n" +
+        "    c += texture2D(uSource, vUv + vec2(-uTexel.x, 0.0)).rgb * 2.0;\n" +
+        "    c += texture2D(uSource, vUv + vec2(uTexel.x, 0.0)).rgb * 2.0;\n" +
+        "    c += texture2D(uSource, vUv + vec2(0.0, -uTexel.y)).rgb * 2.0;\n" +
+        "    c += texture2D(uSource, vUv + vec2(0.0, uTexel.y)).rgb * 2.0;\n" +
+        "    c += texture2D(uSource, vUv + vec2(-uTexel.x, -uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(uTexel.x, -uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(-uTexel.x, uTexel.y)).rgb;\n" +
+        "    c += texture2D(uSource, vUv + vec2(uTexel.x, uTexel.y)).rgb;\n" +
+        "    gl_FragColor = vec4(c / 16.0, 1.0);\n" +
+        "}\n";
+
+    // scene + glow, then scaled back under 1.0 without changing the hue (an orange sun stays orange)
+    private static final String COMPOSITE_SHADER =
+        "#version 120\n" +
+        "uniform sampler2D uScene;\n" +
+        "uniform sampler2D uBloom;\n" +
+        "uniform vec2 uBloomUvScale;\n" +
+        "uniform float uIntensity;\n" +
+        "varying vec2 vUv;\n" +
+        "void main() {\n" +
+        "    vec3 c = texture2D(uScene, vUv).rgb;\n" +
+        "    c += texture2D(uBloom, vUv / uBloomUvScale).rgb * uIntensity;\n" +
+        "    c /= max(1.0, max(c.r, max(c.g, c.b)));\n" +
+        "    gl_FragColor = vec4(c, 1.0);\n" +
+        "}\n";
+
+    private final ShaderProgram downsample;
+    private final ShaderProgram upsample;
+    private final ShaderProgram composite;
+    private final int triangleVbo;
+
+    private int levels;
+    private final int[] textures = new int[MAX_LEVELS];
+    private final int[] framebuffers = new int[MAX_LEVELS];
+    private final int[] widths = new int[MAX_LEVELS];
+    private final int[] heights = new int[MAX_LEVELS];
+
+    /**
+     * @return Whether the driver can do float render targets and shaders
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL30 || (caps.OpenGL20 && caps.GL_ARB_framebuffer_object && caps.GL_ARB_texture_float);
+    }
+
+    /**
+     * Compiles the shaders. Needs a GL context
+     */
+    public BloomPass() {
+        downsample = new ShaderProgram(VERTEX_SHADER, DOWNSAMPLE_SHADER, "aPosition");
+        upsample = new ShaderProgram(VERTEX_SHADER, UPSAMPLE_SHADER, "aPosition");
+        composite = new ShaderProgram(VERTEX_SHADER, COMPOSITE_SHADER, "aPosition");
+        composite.use();
+        glUniform1i(composite.getUniformLocation("uScene"), 0);
+        glUniform1i(composite.getUniformLocation("uBloom"), 1);
+        glUseProgram(0);
+
+        // one triangle that covers the whole screen
+        triangleVbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, triangleVbo);
+        glBufferData(GL_ARRAY_BUFFER, new float[] { -1, -1, 3, -1, -1, 3 }, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Makes the chain match the window size
+     * @param width Window framebuffer width in pixels
+     * @param height Window framebuffer height in pixels
+     */
+    public void resize(int width, int height) {
+        deleteLevels();
+        int levelWidth = Math.max(1, width / 2);
+        int levelHeight = Math.max(1, height / 2);
+        while (levels < MAX_LEVELS && (levels == 0 || Math.min(levelWidth, levelHeight) >= MIN_LEVEL_SIZE)) {
+            widths[levels] = levelWidth;
+            heights[levels] = levelHeight;
+
+            textures[levels] = glGenTextures();
+            glBindTexture(GL_TEXTURE_2D, textures[levels]);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA16F, levelWidth, levelHeight, 0, GL_RGBA, GL_FLOAT, (ByteBuffer) null);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+            framebuffers[levels] = glGenFramebuffers();
+            glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[levels]);
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textures[levels], 0);
+            int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+            levels++;
+            if (status != GL_FRAMEBUFFER_COMPLETE) {
+                OffscreenTarget.bindOutput();
+                glBindTexture(GL_TEXTURE_2D, 0);
+                deleteLevels();
+                throw new RuntimeException("Bloom framebuffer isn't complete (status 0x" + Integer.toHexString(status) + ")");
+            }
+
+            levelWidth = Math.max(1, levelWidth / 2);
+            levelHeight = Math.max(1, levelHeight / 2);
+        }
+        OffscreenTarget.bindOutput();
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Blooms the scene and draws it onto the window
+     * @param sceneTexture The scene's color texture
+     * @param textureWidth Size of the scene texture
+     * @param textureHeight Size of the scene texture
+     * @param usedWidth How much of the scene texture was drawn into (it starts in the bottom left)
+     * @param usedHeight How much of the scene texture was drawn into
+     */
+    public void apply(int sceneTexture, int textureWidth, int textureHeight, int usedWidth, int usedHeight) {
+        float usedU = (float) usedWidth / textureWidth;
+        float usedV = (float) usedHeight / textureHeight;
+
+        glDisable(GL_DEPTH_TEST);
+        glDisable(GL_BLEND);
+        glBindBuffer(GL_ARRAY_BUFFER, triangleVbo);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0L);
+
+        // down the chain - the first step only keeps what's over the threshold
+        downsample.use();
+        for (int level = 0; level < levels; level++) {
+            glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[level]);
+            glViewport(0, 0, widths[level], heights[level]);
+            if (level == 0) {
+                glBindTexture(GL_TEXTURE_2D, sceneTexture);
+                glUniform2f(downsample.getUniformLocation("uUvScale"), usedU, usedV);
+                glUniform2f(downsample.getUniformLocation("uTexel"), 0.5f / textureWidth, 0.5f / textureHeight);
+                glUniform1f(downsample.getUniformLocation("uThreshold"), THRESHOLD);
+            } else {
+                glBindTexture(GL_TEXTURE_2D, textures[level - 1]);
+                glUniform2f(downsample.getUniformLocation("uUvScale"), 1.0f, 1.0f);
+                glUniform2f(downsample.getUniformLocation("uTexel"), 0.5f / widths[level - 1], 0.5f / heights[level - 1]);
+                glUniform1f(downsample.getUniformLocation("uThreshold"), 0.0f);
+            }
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+        }
+
+        // back up, adding each level onto the next bigger one
+        upsample.use();
+        glUniform2f(upsample.getUniformLocation("uUvScale"), 1.0f, 1.0f);
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_ONE, GL_ONE);
+        for (int level = levels - 2; level >= 0; level--) {
+            glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[level]);
+            glViewport(0, 0, widths[level], heights[level]);
+            glBindTexture(GL_TEXTURE_2D, textures[level + 1]);
+            glUniform2f(upsample.getUniformLocation("uTexel"), 1.0f / widths[level + 1], 1.0f / heights[level + 1]);
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+        }
+        glDisable(GL_BLEND);
+
+        // scene + glow onto the window. The glow covers its whole texture, the scene only the used part
+        OffscreenTarget.bindOutput();
+        glViewport(0, 0, textureWidth, textureHeight);
+        composite.use();
+        glUniform2f(composite.getUniformLocation("uUvScale"), usedU, usedV);
+        glUniform2f(composite.getUniformLocation("uBloomUvScale"), usedU, usedV);
+        glUniform1f(composite.getUniformLocation("uIntensity"), INTENSITY);
+        glActiveTexture(GL_TEXTURE1);
+        glBindTexture(GL_TEXTURE_2D, textures[0]);
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, sceneTexture);
+        glDrawArrays(GL_TRIANGLES, 0, 3);
+
+        // put back what the renderers expect
+        glActiveTexture(GL_TEXTURE1);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glDisableVertexAttribArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glUseProgram(0);
+        glEnable(GL_DEPTH_TEST);
+    }
+
+    private void deleteLevels() {
+        for (int level = 0; level < levels; level++) {
+            glDeleteFramebuffers(framebuffers[level]);
+            glDeleteTextures(textures[level]);
+        }
+        levels = 0;
+    }
+
+    /**
+     * Deletes the chain, the shaders and the triangle
+     */
+    public void cleanup() {
+        deleteLevels();
+        downsample.cleanup();
+        upsample.cleanup();
+        composite.cleanup();
+        glDeleteBuffers(triangleVbo);
+    }
+}
@@ -3,12 +3,13 @@ package com.galaxysim;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.util.Map;
 import java.util.Random;
-
-import static org.lwjgl.opengl.GL11.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Contains celestial bodies like large stars (suns)
+ * Contains celestial bodies like large stars (suns) and the planets going around them
  */
 public class Bodies {
     
@@ -20,11 +21,107 @@ public class Bodies {
         float size;
         float rotationSpeed;
         float currentRotation;
-        Vector3f color; // Vibrant orange color for the sun - used in renderEnhancedSun
+        float previousRotation;   // rotation one simulation step ago, for smooth rendering
+        Vector3f color; // the sun's main color (its type's bright surface color)
+        SunType type;
+        int variant;    // which of its type's shared looks it has
+        PlanetarySystem planets;  // null if it doesn't have any
+
+        // how many suns get planets
+        private static final float PLANETARY_SYSTEM_CHANCE = 0.7f;
+
+        // how much brighter than plain white the surface gets when the renderer has bloom
+        private static final float BLOOM_BOOST = 2.0f;
+
+        // detail levels from close up to far away: core and glow segments at full quality
+        private static final int[][] LOD_SEGMENTS = { {64, 48}, {32, 24}, {16, 12}, {8, 8} };
+
+        // smallest on-screen radius (pixels) each level gets used down to. Picked so the outline of
+        // each level is never more than about half a pixel off a true circle
+        private static final float[] LOD_MIN_PIXELS = { 100.0f, 28.0f, 8.0f, 3.0f };
+
+        // how far either side of a switch (as a share of its radius) two levels get cross-faded
+        private static final float LOD_BLEND = 0.25f;
+
+        // past the last level the sun is just a flat disc facing the camera
+        private static final int IMPOSTOR = LOD_SEGMENTS.length;
+        private static final int IMPOSTOR_SEGMENTS = 16;
+        private static final float[] IMPOSTOR_SIN = new float[IMPOSTOR_SEGMENTS + 1];
+        private static final float[] IMPOSTOR_COS = new float[IMPOSTOR_SEGMENTS + 1];
+        static {
+            for (int k = 0; k <= IMPOSTOR_SEGMENTS; k++) {
+                double angle = 2 * Math.PI * k / IMPOSTOR_SEGMENTS;
+                IMPOSTOR_SIN[k] = (float) Math.sin(angle);
+                IMPOSTOR_COS[k] = (float) Math.cos(angle);
+            }
+        }
+
+        // surface patterns for every level, shared with every other sun of our type and variant
+        // (and picked up again if the detail level changes)
+        private final SunSurface[] surfaces = new SunSurface[IMPOSTOR];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final CompletableFuture<SunSurface>[] pendingSurfaces = new CompletableFuture[IMPOSTOR];
+
+        // the surface pattern in finer detail than the vertex colors can hold, shared the same way
+        private CubeTexture texture;
+        private CompletableFuture<CubeTexture> pendingTexture;
+
+        // where SolarFlares is throwing our flares out of, for how much longer, and how many we're owed
+        final Vector3f flareSite = new Vector3f(0.0f, 1.0f, 0.0f);
+        float flareSiteSeconds;
+        float flareBacklog;
+
+        // camera right and up, for facing the impostor at it
+        private final Vector3f impostorRight = new Vector3f();
+        private final Vector3f impostorUp = new Vector3f();
         
-        // Only orange suns as requested
+        /**
+         * Spectral classes from hottest to coolest, plus the odd giant and dwarf. Each comes with a
+         * weight for how often it gets picked (relative to the others, bigger is more common), how big
+         * it is compared to a regular sun, and the colors its surface is painted with: the core goes
+         * flare, very bright, bright, normal, sunspot and the glow goes bright, medium, normal (see SunSurface)
+         */
         public enum SunType {
-            ORANGE     // Orange sun
+            O(0.03f, 1.4f,
+                new float[] {0.85f, 0.95f, 1.0f, 0.7f, 0.85f, 1.0f, 0.55f, 0.7f, 1.0f, 0.45f, 0.6f, 1.0f, 0.3f, 0.35f, 0.8f},
+                new float[] {0.8f, 0.9f, 1.0f, 0.5f, 0.7f, 1.0f, 0.3f, 0.45f, 1.0f}),
+            B(0.07f, 1.25f,
+                new float[] {0.95f, 0.97f, 1.0f, 0.8f, 0.9f, 1.0f, 0.7f, 0.8f, 1.0f, 0.6f, 0.72f, 1.0f, 0.35f, 0.45f, 0.85f},
+                new float[] {0.9f, 0.95f, 1.0f, 0.65f, 0.8f, 1.0f, 0.45f, 0.6f, 1.0f}),
+            A(0.1f, 1.1f,
+                new float[] {1.0f, 1.0f, 1.0f, 0.95f, 0.95f, 1.0f, 0.9f, 0.92f, 1.0f, 0.85f, 0.88f, 0.97f, 0.55f, 0.55f, 0.7f},
+                new float[] {1.0f, 1.0f, 1.0f, 0.85f, 0.9f, 1.0f, 0.7f, 0.75f, 0.95f}),
+            F(0.12f, 1.05f,
+                new float[] {1.0f, 1.0f, 0.9f, 1.0f, 0.97f, 0.8f, 1.0f, 0.93f, 0.7f, 1.0f, 0.9f, 0.6f, 0.8f, 0.6f, 0.3f},
+                new float[] {1.0f, 1.0f, 0.85f, 1.0f, 0.92f, 0.65f, 1.0f, 0.8f, 0.45f}),
+            G(0.15f, 1.0f,
+                new float[] {1.0f, 1.0f, 0.7f, 1.0f, 0.95f, 0.5f, 1.0f, 0.85f, 0.35f, 1.0f, 0.78f, 0.25f, 0.85f, 0.45f, 0.1f},
+                new float[] {1.0f, 0.95f, 0.6f, 1.0f, 0.85f, 0.4f, 1.0f, 0.65f, 0.2f}),
+            // the deep orange every sun used to be
+            K(0.18f, 1.0f,
+                new float[] {1.0f, 0.9f, 0.4f, 1.0f, 0.8f, 0.3f, 1.0f, 0.6f, 0.2f, 1.0f, 0.5f, 0.1f, 0.9f, 0.3f, 0.0f},
+                new float[] {1.0f, 0.9f, 0.5f, 1.0f, 0.7f, 0.3f, 1.0f, 0.4f, 0.1f}),
+            M(0.2f, 0.75f,
+                new float[] {1.0f, 0.6f, 0.3f, 1.0f, 0.45f, 0.2f, 0.95f, 0.35f, 0.12f, 0.9f, 0.28f, 0.08f, 0.6f, 0.1f, 0.0f},
+                new float[] {1.0f, 0.5f, 0.25f, 1.0f, 0.35f, 0.15f, 0.9f, 0.2f, 0.05f}),
+            RED_GIANT(0.08f, 1.8f,
+                new float[] {1.0f, 0.7f, 0.35f, 1.0f, 0.55f, 0.25f, 1.0f, 0.42f, 0.15f, 0.95f, 0.32f, 0.1f, 0.65f, 0.15f, 0.02f},
+                new float[] {1.0f, 0.6f, 0.3f, 1.0f, 0.4f, 0.15f, 0.95f, 0.25f, 0.05f}),
+            WHITE_DWARF(0.07f, 0.3f,
+                new float[] {1.0f, 1.0f, 1.0f, 0.95f, 0.97f, 1.0f, 0.9f, 0.94f, 1.0f, 0.85f, 0.9f, 1.0f, 0.6f, 0.65f, 0.8f},
+                new float[] {0.95f, 0.97f, 1.0f, 0.8f, 0.87f, 1.0f, 0.65f, 0.75f, 1.0f});
+
+            final float weight;
+            final float sizeScale;
+            final float[] corePalette;
+            final float[] glowPalette;
+
+            SunType(float weight, float sizeScale, float[] corePalette, float[] glowPalette) {
+                this.weight = weight;
+                this.sizeScale = sizeScale;
+                this.corePalette = corePalette;
+                this.glowPalette = glowPalette;
+            }
         }
         
         /**
@@ -37,12 +134,78 @@ public class Bodies {
         public Sun(Vector3f position, float size, SunType type, Random random) {
             this.position = position;
             this.size = size;
+            this.type = type;
             this.currentRotation = 0.0f;
             this.rotationSpeed = (random.nextFloat() * 0.005f + 0.001f) * (random.nextBoolean() ? 1 : -1);
-            
+            this.variant = random.nextInt(SunTypeCache.VARIANTS);
+            this.planets = random.nextFloat() < PLANETARY_SYSTEM_CHANCE ? new PlanetarySystem(position, size, random) : null;
+
             // Set color based on sun type (used for glow effects)
-            // Only orange suns
-            this.color = new Vector3f(1.0f, 0.6f, 0.2f); // Deep orange
+            int bright = SunSurface.CORE_BRIGHT * 3;
+            this.color = new Vector3f(type.corePalette[bright], type.corePalette[bright + 1], type.corePalette[bright + 2]);
+
+            // ask for the surface patterns now so they're (hopefully) ready by the time we're drawn,
+            // coarsest first since it's the quickest and there's always something to fall back on then.
+            // Unless we're the first of our type and variant they're already there
+            for (int level = IMPOSTOR - 1; level >= 0; level--) {
+                pendingSurfaces[level] = generateSurface(level);
+            }
+            pendingTexture = SunTypeCache.texture(type, variant);
+        }
+
+        /**
+         * @return The surface texture, or null until it's ready (deterministic runs wait for it)
+         */
+        private CubeTexture getTexture() {
+            if (pendingTexture != null && (pendingTexture.isDone() || CaptureSettings.isDeterministic())) {
+                texture = pendingTexture.join();
+                pendingTexture = null;
+            }
+            return texture;
+        }
+
+        private CompletableFuture<SunSurface> generateSurface(int level) {
+            return SunTypeCache.surface(type, variant,
+                    QualitySettings.getSunSegments(LOD_SEGMENTS[level][0]), QualitySettings.getSunSegments(LOD_SEGMENTS[level][1]));
+        }
+
+        /**
+         * @param level Detail level we'd like to draw
+         * @return Surface patterns to draw it with. If the level isn't ready yet the closest one that
+         *         is gets used, and it only waits if there's nothing at all yet. After a detail change
+         *         the old patterns get used until the new ones are ready. Deterministic runs always wait,
+         *         so every run draws the same thing
+         */
+        private SunSurface getSurface(int level) {
+            CompletableFuture<SunSurface> pending = pendingSurfaces[level];
+            if (pending != null && (pending.isDone() || CaptureSettings.isDeterministic())) {
+                surfaces[level] = pending.join();
+                pendingSurfaces[level] = null;
+            }
+            SunSurface surface = surfaces[level];
+            if (pendingSurfaces[level] == null && (surface == null
+                    || surface.coreSegments != QualitySettings.getSunSegments(LOD_SEGMENTS[level][0])
+                    || surface.glowSegments != QualitySettings.getSunSegments(LOD_SEGMENTS[level][1]))) {
+                pendingSurfaces[level] = generateSurface(level);
+                if (CaptureSettings.isDeterministic()) {
+                    return getSurface(level);
+                }
+            }
+            if (surface != null) {
+                return surface;
+            }
+
+            for (int offset = 1; offset < IMPOSTOR; offset++) {
+                if (level + offset < IMPOSTOR && surfaces[level + offset] != null) {
+                    return surfaces[level + offset];
+                }
+                if (level - offset >= 0 && surfaces[level - offset] != null) {
+                    return surfaces[level - offset];
+                }
+            }
+            surfaces[level] = pendingSurfaces[level].join();
+            pendingSurfaces[level] = null;
+            return surfaces[level];
         }
         
         /**
@@ -50,6 +213,8 @@ public class Bodies {
          * @param deltaTime Time passed since last update
          */
         public void update(float deltaTime) {
+            previousRotation = currentRotation;
+
             // Update rotation
             currentRotation += rotationSpeed * deltaTime;
             if (currentRotation > 2.0f * Math.PI) {
@@ -61,23 +226,19 @@ public class Bodies {
         
         /**
          * Render the sun
-         * @param view The view matrix
-         * @param projection The projection matrix
+         * @param renderer The renderer to submit the sun to
+         * @param camera The camera (used to work out how far away we are)
+         * @param alpha How far we are between the last simulation step and the next one (0-1)
          */
-        public void render(Matrix4f view, Matrix4f projection) {
-            // Calculate distance from camera to sun
-            // Extract camera position from view matrix
-            Vector3f cameraPosition = new Vector3f();
-            view.getTranslation(cameraPosition);
-            cameraPosition.negate(); // Camera position is negative of the translation
+        public void render(Renderer renderer, Camera camera, float alpha) {
+            Vector3f cameraPosition = camera.getPosition();
             
             // We don't need the center distance, only the backmost point distance
             
             // Calculate the distance from camera to the backmost point of the sun
-            // We need to find the point on the sun's surface that's furthest from the camera
-            Vector3f directionToSun = new Vector3f(position).sub(cameraPosition).normalize();
-            Vector3f backPoint = new Vector3f(position).add(new Vector3f(directionToSun).mul(size));
-            float backPointDistance = cameraPosition.distance(backPoint);
+            // The point on the sun's surface that's furthest from the camera is straight
+            // behind its center, so it's just the center distance plus the radius
+            float backPointDistance = cameraPosition.distance(position) + size;
             
             // Calculate the minimum distance where the entire sun can be rendered
             // Based on user testing, the sun fully unrenders at 1507 units away
@@ -86,463 +247,422 @@ public class Bodies {
             
             // Only render the sun if the backmost point is beyond the minimum render distance
             if (backPointDistance >= minVisibleDistance) {
-                // Save the current drawing state
-                glPushMatrix();
-                
-                // Convert matrices to OpenGL format
-                float[] viewMatrix = new float[16];
-                float[] projMatrix = new float[16];
-                view.get(viewMatrix);
-                projection.get(projMatrix);
-                
-                // Set up the projection and modelview matrices
-                glMatrixMode(GL_PROJECTION);
-                glLoadMatrixf(projMatrix);
-                glMatrixMode(GL_MODELVIEW);
-                glLoadMatrixf(viewMatrix);
-                
-                // Move to the sun's position
-                glTranslatef(position.x, position.y, position.z);
-                
-                // Apply rotation
-                glRotatef((float)Math.toDegrees(currentRotation), 0.0f, 1.0f, 0.0f);
-                
                 // Enable blending for the glow effect
-                glEnable(GL_BLEND);
-                glBlendFunc(GL_SRC_ALPHA, GL_ONE);
+                renderer.setBlendMode(Renderer.BlendMode.ADDITIVE);
                 
                 // Disable depth writing (but keep depth testing) for proper transparency
-                glDepthMask(false);
-                
-                // Draw the main sun with all its components at once
-                renderEnhancedSun(size);
+                renderer.setDepthWrite(false);
+
+                // pick the detail level by how big we look, and while we're close to where two
+                // levels switch draw both faded into each other. Light adds up, so the two
+                // fades always make up exactly one sun
+                float pixels = camera.projectedRadius(position, size);
+                int level = 0;
+                float weight = 1.0f;  // how much of this level gets drawn, the rest goes to the next one
+                while (level < IMPOSTOR) {
+                    float low = LOD_MIN_PIXELS[level] * (1.0f - LOD_BLEND);
+                    float high = LOD_MIN_PIXELS[level] * (1.0f + LOD_BLEND);
+                    if (pixels >= high) {
+                        break;
+                    }
+                    if (pixels > low) {
+                        weight = (pixels - low) / (high - low);
+                        break;
+                    }
+                    level++;
+                }
+
+                float rotation = SimulationClock.lerpAngle(previousRotation, currentRotation, alpha);
+                renderLevel(renderer, camera, level, weight, rotation);
+                if (weight < 1.0f) {
+                    renderLevel(renderer, camera, level + 1, 1.0f - weight, rotation);
+                }
                 
                 // Re-enable depth writing
-                glDepthMask(true);
+                renderer.setDepthWrite(true);
                 
                 // Disable blending
-                glDisable(GL_BLEND);
-                
-                // Restore the previous matrix state
-                glPopMatrix();
+                renderer.setBlendMode(Renderer.BlendMode.NONE);
             }
             // We don't render anything if we're too close
             // This prevents the glitchy effect of seeing parts of the sun render one at a time
         }
         
         /**
-         * Render an enhanced sun with integrated corona effects on the 3D surface
-         * @param radius Base radius of the sun
+         * Draws one detail level of the sun
+         * @param renderer The renderer to submit to
+         * @param camera The camera (the impostor faces it)
+         * @param level Detail level, IMPOSTOR for the flat disc
+         * @param fade How much of it to draw (0-1)
+         * @param rotation How far the sun has turned
          */
-        private void renderEnhancedSun(float radius) {
-            // First render the main sun body with deep orange color
-            renderSunCore(radius);
+        private void renderLevel(Renderer renderer, Camera camera, int level, float fade, float rotation) {
+            if (level == IMPOSTOR) {
+                // the disc doesn't turn with the sun, it always faces the camera
+                renderer.pushTransform(position.x, position.y, position.z, 0.0f);
+                renderImpostor(renderer, camera, getSurface(IMPOSTOR - 1), fade);
+            } else {
+                // Move to the sun's position and apply rotation
+                renderer.pushTransform(position.x, position.y, position.z, rotation);
+                renderEnhancedSun(renderer, size, getSurface(level), fade);
+            }
             
-            // Then render the outer glow layers
-            renderSunGlow(radius * 1.1f);
+            // Restore the previous matrix state
+            renderer.popTransform();
         }
-        
+
         /**
-         * Render the main body of the sun with deep orange color and surface details
+         * Render an enhanced sun with integrated corona effects on the 3D surface
+         * @param renderer The renderer to submit to
          * @param radius Base radius of the sun
+         * @param surface The surface patterns of the level being drawn
+         * @param fade How much of it to draw (0-1)
          */
-        private void renderSunCore(float radius) {
-            // Higher resolution for more detailed sun
-            int segments = 64;
-            
-            // Create a texture-like pattern for the sun's surface
-            float[][] colorPattern = new float[segments][segments];
-            float[][] turbulencePattern = new float[segments][segments];
-            
-            // Use random to create consistent patterns
-            Random rand = new Random(position.hashCode());
-            
-            // Generate base turbulence pattern for swirling effect
-            generateTurbulencePattern(turbulencePattern, segments, rand);
+        private void renderEnhancedSun(Renderer renderer, float radius, SunSurface surface, float fade) {
+            // with bloom the surface itself is bright enough to glow, so the glow layers aren't needed
+            boolean bloom = renderer.hasBloom();
+
+            // First render the main sun body in its type's colors
+            renderSunCore(renderer, radius, surface, bloom ? BLOOM_BOOST : 1.0f, fade);
             
-            // Apply patterns to create final color map
-            for (int i = 0; i < segments; i++) {
-                for (int j = 0; j < segments; j++) {
-                    // Base color intensity with turbulence
-                    colorPattern[i][j] = 1.0f + (turbulencePattern[i][j] * 0.3f);
-                    
-                    // Add solar flares (bright spots)
-                    if (rand.nextFloat() < 0.15f) { // 15% chance of a flare
-                        float flareIntensity = rand.nextFloat() * 0.8f + 0.6f; // 0.6 to 1.4 brighter
-                        colorPattern[i][j] += flareIntensity;
-                        
-                        // Extend flare to neighboring cells
-                        spreadFlare(colorPattern, i, j, flareIntensity * 0.7f, segments, rand);
-                    }
-                    
-                    // Add darker spots (sunspots)
-                    if (rand.nextFloat() < 0.1f) {
-                        float spotIntensity = -rand.nextFloat() * 0.3f - 0.1f; // 0.1 to 0.4 darker
-                        colorPattern[i][j] += spotIntensity;
-                    }
-                    
-                    // Ensure values are in valid range with high contrast
-                    colorPattern[i][j] = Math.max(0.6f, Math.min(2.0f, colorPattern[i][j]));
-                }
+            // Then render the outer glow layers
+            if (!bloom) {
+                renderSunGlow(renderer, radius * 1.1f, surface, fade);
             }
-            
-            // Draw the main sun sphere with the deep orange pattern
-            glBegin(GL_TRIANGLES);
-            
-            // Use the existing segments variable
-            for (int i = 0; i < segments; i++) {
-                float lat0 = (float) (Math.PI * (-0.5 + (double) i / segments));
-                float z0 = (float) Math.sin(lat0);
-                float zr0 = (float) Math.cos(lat0);
-                
-                float lat1 = (float) (Math.PI * (-0.5 + (double) (i + 1) / segments));
-                float z1 = (float) Math.sin(lat1);
-                float zr1 = (float) Math.cos(lat1);
-                
-                for (int j = 0; j < segments; j++) {
-                    float lng0 = (float) (2 * Math.PI * (double) j / segments);
-                    float lng1 = (float) (2 * Math.PI * (double) (j + 1) / segments);
-                    
-                    float x0 = (float) Math.cos(lng0);
-                    float y0 = (float) Math.sin(lng0);
-                    
-                    float x1 = (float) Math.cos(lng1);
-                    float y1 = (float) Math.sin(lng1);
-                    
-                    // Get color variations for each vertex
-                    float c00 = colorPattern[i][j];
-                    float c01 = colorPattern[i][(j+1) % segments];
-                    float c10 = colorPattern[(i+1) % segments][j];
-                    float c11 = colorPattern[(i+1) % segments][(j+1) % segments];
-                    
-                    // Triangle 1
-                    setSolarCoreColor(c00);
-                    glVertex3f(x0 * zr0 * radius, y0 * zr0 * radius, z0 * radius);
-                    
-                    setSolarCoreColor(c10);
-                    glVertex3f(x0 * zr1 * radius, y0 * zr1 * radius, z1 * radius);
-                    
-                    setSolarCoreColor(c11);
-                    glVertex3f(x1 * zr1 * radius, y1 * zr1 * radius, z1 * radius);
-                    
-                    // Triangle 2
-                    setSolarCoreColor(c00);
-                    glVertex3f(x0 * zr0 * radius, y0 * zr0 * radius, z0 * radius);
-                    
-                    setSolarCoreColor(c11);
-                    glVertex3f(x1 * zr1 * radius, y1 * zr1 * radius, z1 * radius);
-                    
-                    setSolarCoreColor(c01);
-                    glVertex3f(x1 * zr0 * radius, y1 * zr0 * radius, z0 * radius);
+
+            // the bright and dark spots on the surface (the flares and prominences that move are SolarFlares')
+            renderSolarProminences(renderer, radius * 1.1f, surface, fade);
+        }
+
+        /**
+         * Draws the sun as a flat disc facing the camera, for when it's only a few pixels big.
+         * It's the average of what the spheres add up to: the core counts twice since its front
+         * and back both add light, and the glow shells fade out around it
+         * @param renderer The renderer to submit to
+         * @param camera The camera to face
+         * @param surface Surface patterns to take the colors from
+         * @param fade How much of it to draw (0-1)
+         */
+        private void renderImpostor(Renderer renderer, Camera camera, SunSurface surface, float fade) {
+            boolean bloom = renderer.hasBloom();
+            float boost = 2.0f * (bloom ? BLOOM_BOOST : 1.0f);
+            float[] core = surface.averageCoreColor;
+            float[] glow = surface.averageGlowColor;
+
+            // camera right and up are the first two rows of the view matrix
+            Matrix4f view = camera.getView();
+            impostorRight.set(view.m00(), view.m10(), view.m20());
+            impostorUp.set(view.m01(), view.m11(), view.m21());
+            float glowRadius = size * 1.1f * 1.4f;
+            float glowAlpha = bloom ? 0.0f : SunSurface.glowAlpha(0) * fade;
+
+            renderer.begin(Renderer.Primitive.TRIANGLES, 1.0f);
+            for (int k = 0; k < IMPOSTOR_SEGMENTS; k++) {
+                float x0 = impostorRight.x * IMPOSTOR_COS[k] + impostorUp.x * IMPOSTOR_SIN[k];
+                float y0 = impostorRight.y * IMPOSTOR_COS[k] + impostorUp.y * IMPOSTOR_SIN[k];
+                float z0 = impostorRight.z * IMPOSTOR_COS[k] + impostorUp.z * IMPOSTOR_SIN[k];
+                float x1 = impostorRight.x * IMPOSTOR_COS[k + 1] + impostorUp.x * IMPOSTOR_SIN[k + 1];
+                float y1 = impostorRight.y * IMPOSTOR_COS[k + 1] + impostorUp.y * IMPOSTOR_SIN[k + 1];
+                float z1 = impostorRight.z * IMPOSTOR_COS[k + 1] + impostorUp.z * IMPOSTOR_SIN[k + 1];
+
+                // the core disc
+                renderer.vertex(0.0f, 0.0f, 0.0f, core[0] * boost, core[1] * boost, core[2] * boost, fade);
+                renderer.vertex(x0 * size, y0 * size, z0 * size, core[0] * boost, core[1] * boost, core[2] * boost, fade);
+                renderer.vertex(x1 * size, y1 * size, z1 * size, core[0] * boost, core[1] * boost, core[2] * boost, fade);
+
+                // the glow ring, fading out to nothing at the outermost shell
+                if (!bloom) {
+                    renderer.vertex(x0 * size, y0 * size, z0 * size, glow[0], glow[1], glow[2], glowAlpha);
+                    renderer.vertex(x0 * glowRadius, y0 * glowRadius, z0 * glowRadius, glow[0], glow[1], glow[2], 0.0f);
+                    renderer.vertex(x1 * glowRadius, y1 * glowRadius, z1 * glowRadius, glow[0], glow[1], glow[2], 0.0f);
+                    renderer.vertex(x0 * size, y0 * size, z0 * size, glow[0], glow[1], glow[2], glowAlpha);
+                    renderer.vertex(x1 * glowRadius, y1 * glowRadius, z1 * glowRadius, glow[0], glow[1], glow[2], 0.0f);
+                    renderer.vertex(x1 * size, y1 * size, z1 * size, glow[0], glow[1], glow[2], glowAlpha);
                 }
             }
-            
-            glEnd();
+            renderer.end();
         }
         
-
+        /**
+         * Render the main body of the sun with its type's colors and surface details
+         * @param renderer The renderer to submit to
+         * @param radius Base radius of the sun
+         * @param surface The sun's surface patterns
+         * @param colorBoost Multiplier on the colors (pushes the surface over 1.0 so bloom makes it glow)
+         * @param fade How much of it to draw (0-1)
+         */
+        private void renderSunCore(Renderer renderer, float radius, SunSurface surface, float colorBoost, float fade) {
+            // the shared unit sphere scaled up to our size, with our surface texture on it (or the
+            // vertex colors until that's ready). The texture turns with the sphere since it's looked
+            // up with the sphere's own positions
+            renderer.drawMesh(surface.coreSphere, surface.coreColors, getTexture(), radius,
+                    colorBoost, colorBoost, colorBoost, fade);
+        }
         
         /**
          * Render the sun's glow effect without affecting the core color
+         * @param renderer The renderer to submit to
          * @param baseRadius Base radius from which to start the glow
+         * @param surface The sun's surface patterns
+         * @param fade How much of it to draw (0-1)
          */
-        private void renderSunGlow(float baseRadius) {
+        private void renderSunGlow(Renderer renderer, float baseRadius, SunSurface surface, float fade) {
             // Create multiple transparent layers extending from the sun
-            int layers = 5;
-            int segments = 48;
-            Random baseRand = new Random(position.hashCode() + 5000);
-            
-            // Generate a turbulence pattern for the glow
-            float[][] turbulencePattern = new float[segments][segments];
-            generateTurbulencePattern(turbulencePattern, segments, baseRand);
-            
-            for (int layer = 0; layer < layers; layer++) {
-                float layerFactor = (float)(layer) / layers;
+            for (int layer = 0; layer < SunSurface.GLOW_LAYERS; layer++) {
+                float layerFactor = (float)(layer) / SunSurface.GLOW_LAYERS;
                 float radius = baseRadius * (1.0f + layerFactor * 0.4f);
                 
-                // Alpha decreases with distance from sun
-                float alpha = 0.35f * (1.0f - layerFactor * 0.8f);
-                
-                // Draw a transparent sphere for each glow layer
-                glBegin(GL_TRIANGLES);
-                
-                for (int i = 0; i < segments; i++) {
-                    float lat0 = (float) (Math.PI * (-0.5 + (double) i / segments));
-                    float z0 = (float) Math.sin(lat0);
-                    float zr0 = (float) Math.cos(lat0);
-                    
-                    float lat1 = (float) (Math.PI * (-0.5 + (double) (i + 1) / segments));
-                    float z1 = (float) Math.sin(lat1);
-                    float zr1 = (float) Math.cos(lat1);
-                    
-                    // Create a new random generator for this layer
-                    Random rand = new Random(layer * 1000 + (int)(position.x * 100));
-                    
-                    for (int j = 0; j < segments; j++) {
-                        float lng0 = (float) (2 * Math.PI * (double) j / segments);
-                        float lng1 = (float) (2 * Math.PI * (double) (j + 1) / segments);
-                        
-                        float x0 = (float) Math.cos(lng0);
-                        float y0 = (float) Math.sin(lng0);
-                        
-                        float x1 = (float) Math.cos(lng1);
-                        float y1 = (float) Math.sin(lng1);
-                        
-                        // Get turbulence value for this position
-                        float turbulence = 1.0f + turbulencePattern[i][j] * 0.3f;
-                        
-                        // Add some random variation to make it more interesting
-                        float intensityVar = 1.0f + rand.nextFloat() * 0.5f;
-                        
-                        // Set color for each vertex with proper transparency
-                        setSolarGlowColor(turbulence * intensityVar, alpha);
-                        
-                        // Triangle 1
-                        glVertex3f(x0 * zr0 * radius, y0 * zr0 * radius, z0 * radius);
-                        glVertex3f(x0 * zr1 * radius, y0 * zr1 * radius, z1 * radius);
-                        glVertex3f(x1 * zr1 * radius, y1 * zr1 * radius, z1 * radius);
-                        
-                        // Triangle 2
-                        glVertex3f(x0 * zr0 * radius, y0 * zr0 * radius, z0 * radius);
-                        glVertex3f(x1 * zr1 * radius, y1 * zr1 * radius, z1 * radius);
-                        glVertex3f(x1 * zr0 * radius, y1 * zr0 * radius, z0 * radius);
-                    }
-                }
-                
-                glEnd();
+                // the layer's colors already fade out with distance from the sun
+                renderer.drawMesh(surface.glowSphere, surface.glowColors[layer], null, radius, 1.0f, 1.0f, 1.0f, fade);
             }
-            
-            // Add some solar prominences (flares extending from the sun)
-            renderSolarProminences(baseRadius);
         }
         
         /**
-         * Render integrated surface features instead of separate prominences
-         * @param baseRadius Base radius of the sun
+         * Render integrated surface features (bright bumps and dark dips on the surface)
+         * @param renderer The renderer to submit to
+         * @param radius Radius the features sit at
+         * @param surface The sun's surface patterns (the features are already worked out in there)
+         * @param fade How much of it to draw (0-1)
          */
-        private void renderSolarProminences(float baseRadius) {
-            // Instead of rendering separate 2D prominences, we'll enhance the glow effect
-            // with additional 3D surface detail that's integrated with the sun's sphere
-            Random rand = new Random(position.hashCode() + 1000);
-            int featureCount = 12 + rand.nextInt(8); // 12-20 surface features
-            
-            // Draw additional surface details as 3D elements on the sun's surface
-            for (int i = 0; i < featureCount; i++) {
-                // Random position on the sun's surface
-                float phi = rand.nextFloat() * (float)Math.PI * 2.0f; // Longitude
-                float theta = rand.nextFloat() * (float)Math.PI; // Latitude
-                
-                // Size of the feature
-                float featureSize = baseRadius * (0.05f + rand.nextFloat() * 0.15f);
-                
-                // Calculate base position on sphere
-                float sinTheta = (float)Math.sin(theta);
-                float cosTheta = (float)Math.cos(theta);
-                float sinPhi = (float)Math.sin(phi);
-                float cosPhi = (float)Math.cos(phi);
-                
-                float baseX = baseRadius * sinTheta * cosPhi;
-                float baseY = baseRadius * sinTheta * sinPhi;
-                float baseZ = baseRadius * cosTheta;
-                
-                // Create a small 3D bump or depression on the surface
-                boolean isBump = rand.nextBoolean();
-                float bumpHeight = featureSize * (isBump ? 0.3f : -0.1f);
-                
-                // Draw the feature as a small 3D shape
-                glBegin(GL_TRIANGLE_FAN);
-                
-                // Center point of the feature
-                float centerX = baseX * (1.0f + (isBump ? 0.05f : -0.02f));
-                float centerY = baseY * (1.0f + (isBump ? 0.05f : -0.02f));
-                float centerZ = baseZ * (1.0f + (isBump ? 0.05f : -0.02f));
-                
-                // Color based on feature type
-                if (isBump) {
-                    // Bright spot - solar flare
-                    glColor4f(1.0f, 0.9f, 0.5f, 0.8f);
-                } else {
-                    // Dark spot - sunspot
-                    glColor4f(0.9f, 0.3f, 0.0f, 0.9f);
-                }
-                
-                glVertex3f(centerX, centerY, centerZ); // Center of feature
-                
-                // Create points around the feature
-                int points = 12;
-                for (int j = 0; j <= points; j++) {
-                    float angle = (float)(j * 2.0f * Math.PI / points);
-                    
-                    // Create a local coordinate system on the sphere surface
-                    // We need a tangent plane at the feature center
-                    float localX = (float)Math.cos(angle) * featureSize;
-                    float localY = (float)Math.sin(angle) * featureSize;
-                    
-                    // Transform to global coordinates (this is a simplified approximation)
-                    // We're creating a small perturbation from the base point on the sphere
-                    float perturbX = localX * cosPhi - localY * sinPhi * cosTheta;
-                    float perturbY = localX * sinPhi + localY * cosPhi * cosTheta;
-                    float perturbZ = localY * sinTheta;
-                    
-                    float x = baseX + perturbX;
-                    float y = baseY + perturbY;
-                    float z = baseZ + perturbZ;
-                    
-                    // Normalize to keep on sphere surface (with slight bump/depression)
-                    float length = (float)Math.sqrt(x*x + y*y + z*z);
-                    float normalizedRadius = baseRadius + (j % 3 == 0 ? bumpHeight * 0.7f : bumpHeight);
-                    
-                    x = x / length * normalizedRadius;
-                    y = y / length * normalizedRadius;
-                    z = z / length * normalizedRadius;
-                    
-                    // Color varies slightly around the feature
-                    if (isBump) {
-                        float brightness = 0.8f + (j % 3) * 0.1f;
-                        glColor4f(1.0f, brightness, brightness * 0.5f, 0.7f);
-                    } else {
-                        float darkness = 0.7f - (j % 3) * 0.1f;
-                        glColor4f(darkness, darkness * 0.4f, 0.0f, 0.8f);
-                    }
-                    
-                    glVertex3f(x, y, z);
-                }
-                
-                glEnd();
-            }
+        private void renderSolarProminences(Renderer renderer, float radius, SunSurface surface, float fade) {
+            renderer.drawMesh(surface.prominencePositions, surface.prominenceColors, null, radius, 1.0f, 1.0f, 1.0f, fade);
         }
         
-
-        
         /**
-         * Set the color for a point on the solar core surface - deep orange with variations
-         * @param intensity Color intensity factor
+         * Get the position of this sun
          */
-        private void setSolarCoreColor(float intensity) {
-            // Apply the intensity to create realistic solar surface colors based on the sun's color
-            if (intensity > 1.7f) {
-                // Solar flares - bright yellow-orange (based on sun's color)
-                glColor4f(1.0f, 0.9f, 0.4f, 1.0f);
-            } else if (intensity > 1.4f) {
-                // Very bright spots - yellow-orange (based on sun's color)
-                glColor4f(1.0f, 0.8f, 0.3f, 1.0f);
-            } else if (intensity > 1.1f) {
-                // Bright spots - orange (based on sun's color)
-                glColor4f(1.0f, 0.6f, 0.2f, 1.0f);
-            } else if (intensity < 0.7f) {
-                // Dark spots - deeper red-orange (sunspots) (based on sun's color)
-                glColor4f(0.9f, 0.3f, 0.0f, 1.0f);
-            } else {
-                // Normal surface - fiery orange (based on sun's color)
-                glColor4f(1.0f, 0.5f, 0.1f, 1.0f);
-            }
+        public Vector3f getPosition() {
+            return position;
         }
         
         /**
-         * Set the color for a point on the solar glow - more transparent
-         * @param intensity Color intensity factor
-         * @param alpha Transparency value
+         * Get the size of this sun
          */
-        private void setSolarGlowColor(float intensity, float alpha) {
-            // Apply the intensity to create realistic glow colors
-            if (intensity > 1.5f) {
-                // Bright glow - yellowish
-                glColor4f(1.0f, 0.9f, 0.5f, alpha);
-            } else if (intensity > 1.2f) {
-                // Medium glow - orange-yellow
-                glColor4f(1.0f, 0.7f, 0.3f, alpha);
-            } else {
-                // Normal glow - orange-red
-                glColor4f(1.0f, 0.4f, 0.1f, alpha);
-            }
+        public float getSize() {
+            return size;
         }
-        
+
         /**
-         * Generate a turbulence pattern for swirling solar surface
-         * @param pattern Pattern array to fill
-         * @param size Size of the pattern
-         * @param rand Random number generator
+         * Get the spectral type of this sun
          */
-        private void generateTurbulencePattern(float[][] pattern, int size, Random rand) {
-            // Initialize with random noise
-            for (int i = 0; i < size; i++) {
-                for (int j = 0; j < size; j++) {
-                    pattern[i][j] = rand.nextFloat() * 2.0f - 1.0f; // -1.0 to 1.0
-                }
+        public SunType getType() {
+            return type;
+        }
+
+        /**
+         * Get the planets going around this sun
+         * @return Its planetary system, or null if it doesn't have one
+         */
+        public PlanetarySystem getPlanetarySystem() {
+            return planets;
+        }
+    }
+
+    /**
+     * The planets going around one sun. This only holds what the planets are (their orbits, sizes and
+     * looks) - where they are comes from a shared KeplerOrbits that every system near the camera gets
+     * added to, so all of their positions get worked out in one go. Systems that aren't in there cost
+     * nothing at all, and since orbits only depend on the time they're in the right place whenever
+     * they get added back
+     */
+    public static class PlanetarySystem {
+        // most planets a system can have
+        private static final int MAX_PLANETS = 6;
+
+        // detail levels for the planet spheres, and the smallest on-screen radius (pixels) each gets used down to.
+        // Anything smaller than the last one isn't drawn at all
+        private static final int[] PLANET_SEGMENTS = { 32, 16, 8 };
+        private static final float[] PLANET_MIN_PIXELS = { 40.0f, 6.0f, 0.5f };
+
+        /**
+         * What a planet looks like: its base color and whether it's stripy like a gas giant
+         */
+        public enum PlanetKind {
+            ROCKY(0.55f, 0.5f, 0.45f, false),
+            DESERT(0.85f, 0.6f, 0.35f, false),
+            OCEAN(0.2f, 0.45f, 0.85f, false),
+            ICE(0.8f, 0.9f, 0.95f, false),
+            GAS_GIANT(0.85f, 0.7f, 0.5f, true);
+
+            final float r;
+            final float g;
+            final float b;
+            final boolean banded;
+
+            PlanetKind(float r, float g, float b, boolean banded) {
+                this.r = r;
+                this.g = g;
+                this.b = b;
+                this.banded = banded;
             }
-            
-            // Apply several passes of smoothing to create swirls
-            for (int pass = 0; pass < 3; pass++) {
-                float[][] temp = new float[size][size];
-                
-                // Copy pattern
-                for (int i = 0; i < size; i++) {
-                    for (int j = 0; j < size; j++) {
-                        temp[i][j] = pattern[i][j];
-                    }
-                }
-                
-                // Apply directional smoothing for swirl effect
-                for (int i = 0; i < size; i++) {
-                    for (int j = 0; j < size; j++) {
-                        // Create swirling effect by biasing the smoothing direction
-                        float swirl = (float)Math.sin(i * 0.2f + j * 0.3f) * 0.5f;
-                        
-                        int i1 = (i + (int)(swirl * 3) + size) % size;
-                        int j1 = (j + 1 + size) % size;
-                        int i2 = (i - 1 + size) % size;
-                        int j2 = (j + (int)(swirl * 2) + size) % size;
-                        
-                        pattern[i][j] = (temp[i][j] + temp[i1][j] + temp[i][j1] + temp[i2][j] + temp[i][j2]) / 5.0f;
-                    }
+        }
+
+        // vertex colors for every kind of planet at every detail level, shared by every planet of that kind
+        private static final Map<Integer, MeshBuffer> PLANET_COLORS = new ConcurrentHashMap<>();
+
+        private final Vector3f center;
+        private final int planetCount;
+        private final float[] radius;
+        private final PlanetKind[] kind;
+        private final float[] spinPeriod;
+
+        // orbital elements of every planet, handed to KeplerOrbits when we're near the camera
+        private final float[] semiMajor;
+        private final float[] eccentricity;
+        private final float[] inclination;
+        private final float[] ascendingNode;
+        private final float[] periapsisArgument;
+        private final float[] meanAnomaly;
+        private final float[] period;
+
+        // where our planets start in the shared orbits, -1 when we're not in there
+        private int firstOrbit = -1;
+
+        // reused for every planet we draw
+        private final Vector3f planetPosition = new Vector3f();
+
+        /**
+         * Makes up a planetary system
+         * @param center Position of the sun it goes around
+         * @param sunSize Radius of that sun
+         * @param random Random number generator
+         */
+        public PlanetarySystem(Vector3f center, float sunSize, Random random) {
+            this.center = center;
+            planetCount = 1 + random.nextInt(MAX_PLANETS);
+            radius = new float[planetCount];
+            kind = new PlanetKind[planetCount];
+            spinPeriod = new float[planetCount];
+            semiMajor = new float[planetCount];
+            eccentricity = new float[planetCount];
+            inclination = new float[planetCount];
+            ascendingNode = new float[planetCount];
+            periapsisArgument = new float[planetCount];
+            meanAnomaly = new float[planetCount];
+            period = new float[planetCount];
+
+            // the first planet sits well clear of the sun's glow, and each one after is a bit further out
+            float a = sunSize * (2.2f + random.nextFloat() * 0.6f);
+            float innerPeriod = 90.0f + random.nextFloat() * 90.0f;
+            float innerA = a;
+            for (int i = 0; i < planetCount; i++) {
+                semiMajor[i] = a;
+                eccentricity[i] = random.nextFloat() * 0.12f;
+                inclination[i] = (random.nextFloat() - 0.5f) * 0.2f;
+                ascendingNode[i] = random.nextFloat() * (float) Math.PI * 2.0f;
+                periapsisArgument[i] = random.nextFloat() * (float) Math.PI * 2.0f;
+                meanAnomaly[i] = random.nextFloat() * (float) Math.PI * 2.0f;
+                // Kepler's third law, so the outer planets take a lot longer
+                period[i] = innerPeriod * (float) Math.pow(a / innerA, 1.5);
+                spinPeriod[i] = (20.0f + random.nextFloat() * 40.0f) * (random.nextBoolean() ? 1 : -1);
+
+                // rocky worlds close in, gas giants and ice further out
+                if (a < sunSize * 4.0f) {
+                    kind[i] = random.nextFloat() < 0.4f ? PlanetKind.ROCKY : (random.nextBoolean() ? PlanetKind.DESERT : PlanetKind.OCEAN);
+                } else {
+                    kind[i] = random.nextFloat() < 0.6f ? PlanetKind.GAS_GIANT : PlanetKind.ICE;
                 }
+                radius[i] = sunSize * (kind[i] == PlanetKind.GAS_GIANT
+                        ? 0.08f + random.nextFloat() * 0.06f
+                        : 0.02f + random.nextFloat() * 0.03f);
+
+                a *= 1.3f + random.nextFloat() * 0.2f;
             }
         }
-        
+
         /**
-         * Spread a solar flare to neighboring cells
-         * @param pattern Color pattern to modify
-         * @param centerI Center row index
-         * @param centerJ Center column index
-         * @param intensity Intensity of the flare
-         * @param size Size of the pattern
-         * @param rand Random number generator
+         * Adds our planets to the shared orbits (they get worked out with everything else in there from then on)
+         * @param orbits The orbits of every system near the camera
          */
-        private void spreadFlare(float[][] pattern, int centerI, int centerJ, float intensity, int size, Random rand) {
-            // Determine flare size
-            int flareSize = rand.nextInt(3) + 2; // 2-4 cells radius
-            
-            // Spread flare with decreasing intensity
-            for (int i = centerI - flareSize; i <= centerI + flareSize; i++) {
-                for (int j = centerJ - flareSize; j <= centerJ + flareSize; j++) {
-                    // Calculate distance from center
-                    int di = Math.min(Math.abs(i - centerI), Math.min(i + size - centerI, centerI + size - i));
-                    int dj = Math.min(Math.abs(j - centerJ), Math.min(j + size - centerJ, centerJ + size - j));
-                    float distance = (float)Math.sqrt(di * di + dj * dj);
-                    
-                    // Apply flare with intensity falling off with distance
-                    if (distance < flareSize) {
-                        float falloff = 1.0f - (distance / flareSize);
-                        int wrappedI = (i + size) % size;
-                        int wrappedJ = (j + size) % size;
-                        pattern[wrappedI][wrappedJ] += intensity * falloff * falloff;
-                    }
-                }
+        public void addTo(KeplerOrbits orbits) {
+            firstOrbit = orbits.size();
+            for (int i = 0; i < planetCount; i++) {
+                orbits.add(semiMajor[i], eccentricity[i], inclination[i], ascendingNode[i],
+                        periapsisArgument[i], meanAnomaly[i], period[i]);
             }
         }
-        
+
         /**
-         * Get the position of this sun
+         * Call when the shared orbits get cleared without us being added back
          */
-        public Vector3f getPosition() {
-            return position;
+        public void removed() {
+            firstOrbit = -1;
         }
-        
+
         /**
-         * Get the size of this sun
+         * Draws the planets where the last evaluate of the shared orbits put them. Does nothing if we're not in there
+         * @param renderer The renderer to submit to
+         * @param camera The camera (used to work out how big the planets look)
+         * @param orbits The shared orbits we were added to
+         * @param time Same time the orbits were evaluated at (planets spin with it)
          */
-        public float getSize() {
-            return size;
+        public void render(Renderer renderer, Camera camera, KeplerOrbits orbits, double time) {
+            if (firstOrbit < 0) {
+                return;
+            }
+            renderer.setBlendMode(Renderer.BlendMode.NONE);
+            for (int i = 0; i < planetCount; i++) {
+                int orbit = firstOrbit + i;
+                planetPosition.set(center.x + orbits.getX(orbit), center.y + orbits.getY(orbit), center.z + orbits.getZ(orbit));
+
+                float pixels = camera.projectedRadius(planetPosition, radius[i]);
+                int level = 0;
+                while (level < PLANET_SEGMENTS.length && pixels < PLANET_MIN_PIXELS[level]) {
+                    level++;
+                }
+                if (level == PLANET_SEGMENTS.length) {
+                    continue;  // too small to see
+                }
+
+                int segments = PLANET_SEGMENTS[level];
+                double turns = time / spinPeriod[i];
+                float spin = (float) ((turns - Math.floor(turns)) * 2.0 * Math.PI);
+                renderer.pushTransform(planetPosition.x, planetPosition.y, planetPosition.z, spin);
+                renderer.drawMesh(UnitSphere.smooth(segments), planetColors(kind[i], segments), null, radius[i],
+                        1.0f, 1.0f, 1.0f, 1.0f);
+                renderer.popTransform();
+            }
+        }
+
+        /**
+         * @return How many planets there are
+         */
+        public int getPlanetCount() {
+            return planetCount;
+        }
+
+        // vertex colors for a kind of planet on UnitSphere.smooth(segments), made the first time they're needed
+        private static MeshBuffer planetColors(PlanetKind kind, int segments) {
+            return PLANET_COLORS.computeIfAbsent(kind.ordinal() * 1000 + segments, key -> {
+                // the planet spins around y (the sphere's poles are on z), so its latitudes and
+                // longitudes go around y too, otherwise the stripes would tumble instead of turn
+                float[] positions = UnitSphere.smooth(segments).getData();
+                int row = segments + 1;
+                float[] colors = new float[row * row * 4];
+                for (int i = 0; i <= segments; i++) {
+                    for (int j = 0; j <= segments; j++) {
+                        int p = (i * row + j) * 3;
+                        float lat = (float) Math.asin(Math.max(-1.0f, Math.min(1.0f, positions[p + 1])));
+                        float lng = (float) Math.atan2(positions[p + 2], positions[p]);
+                        float shade;
+                        if (kind.banded) {
+                            // stripes along the latitudes
+                            shade = 1.0f + 0.18f * (float) Math.sin(lat * 9.0f) + 0.06f * (float) Math.sin(lat * 23.0f);
+                        } else {
+                            // blotchy land, and white caps on the cold ones
+                            shade = 1.0f + 0.15f * (float) (Math.sin(lat * 5.0f + 1.3f) * Math.cos(lng * 3.0f));
+                        }
+                        float cap = kind == PlanetKind.ICE || kind == PlanetKind.OCEAN
+                                ? Math.max(0.0f, (Math.abs(lat) - 1.2f) * 3.0f) : 0.0f;
+                        int c = (i * row + j) * 4;
+                        colors[c] = Math.min(1.0f, kind.r * shade + cap);
+                        colors[c + 1] = Math.min(1.0f, kind.g * shade + cap);
+                        colors[c + 2] = Math.min(1.0f, kind.b * shade + cap);
+                        colors[c + 3] = 1.0f;
+                    }
+                }
+                return new MeshBuffer(colors, 4, null);
+            });
         }
     }
     
@@ -553,12 +673,24 @@ public class Bodies {
      * @return A new sun with random properties
      */
     public static Sun createRandomSun(Vector3f position, Random random) {
-        // Choose a random sun type
+        // Choose a random sun type, the common ones more often
         Sun.SunType[] types = Sun.SunType.values();
-        Sun.SunType type = types[random.nextInt(types.length)];
+        float total = 0.0f;
+        for (Sun.SunType candidate : types) {
+            total += candidate.weight;
+        }
+        float pick = random.nextFloat() * total;
+        Sun.SunType type = types[types.length - 1];
+        for (Sun.SunType candidate : types) {
+            pick -= candidate.weight;
+            if (pick < 0.0f) {
+                type = candidate;
+                break;
+            }
+        }
         
-        // Create a massive sun (size between 500 and 1000) - 5x larger than before
-        float size = random.nextFloat() * 500.0f + 500.0f;
+        // Create a massive sun (size between 500 and 1000, before the type makes it bigger or smaller)
+        float size = (random.nextFloat() * 500.0f + 500.0f) * type.sizeScale;
         
         return new Sun(position, size, type, random);
     }
@@ -0,0 +1,78 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Where the camera is and how it sees this frame. Everything that needs the camera
+ * (culling, suns, the renderer) reads it from here, and the matrices get reused
+ * every frame so drawing a frame doesn't make any new ones
+ */
+public class Camera {
+    private static final float FOV_DEGREES = 45.0f;
+    private static final float NEAR = 0.1f;
+    private static final float FAR = 10000.0f;  // far enough to see distant suns and nebulae
+
+    private final Vector3f position = new Vector3f();
+    private final Vector3f target = new Vector3f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    // how many pixels one unit covers one unit away from the camera
+    private float pixelsPerUnit = 1.0f;
+
+    /**
+     * Points the camera for a new frame
+     * @param position Where the camera is
+     * @param front Which way it's looking
+     * @param up Which way is up
+     * @param aspect Width divided by height of the screen
+     * @param viewportHeight Height of what we're drawing into, in pixels
+     */
+    public void update(Vector3f position, Vector3f front, Vector3f up, float aspect, int viewportHeight) {
+        this.position.set(position);
+        pixelsPerUnit = viewportHeight * 0.5f / (float) Math.tan(Math.toRadians(FOV_DEGREES) * 0.5);
+        position.add(front, target);
+        view.setLookAt(position, target, up);
+        projection.setPerspective((float) Math.toRadians(FOV_DEGREES), aspect, NEAR, FAR);
+        projection.mul(view, viewProjection);
+    }
+
+    /**
+     * @return Where the camera is (don't change it)
+     */
+    public Vector3f getPosition() {
+        return position;
+    }
+
+    /**
+     * How big a sphere looks on screen. Goes by straight-line distance rather than depth, so
+     * it doesn't change when the camera only turns
+     * @param center Middle of the sphere
+     * @param radius Radius of the sphere
+     * @return Its radius on screen in pixels (huge if the camera is inside it)
+     */
+    public float projectedRadius(Vector3f center, float radius) {
+        float distance = position.distance(center);
+        if (distance <= radius) {
+            return Float.MAX_VALUE;
+        }
+        return radius / distance * pixelsPerUnit;
+    }
+
+    public Matrix4f getView() {
+        return view;
+    }
+
+    public Matrix4f getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return Projection times view, for culling
+     */
+    public Matrix4f getViewProjection() {
+        return viewProjection;
+    }
+}
@@ -0,0 +1,141 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * The camera matrices every shader of the modern renderer shares. Where the driver has
+ * uniform buffers they live in one, bound once, so setting the camera is a single upload
+ * no matter how many shaders read it. Otherwise every shader gets plain uniforms, and each
+ * one only gets the matrices again when they actually changed since it last saw them.
+ *
+ * Shaders using the camera start with header(), which declares uProjection and uView
+ * the right way for whichever of the two we ended up with
+ */
+public class CameraBlock {
+    // the uniform buffer binding point the camera sits on
+    private static final int BINDING = 0;
+
+    // projection then view, two std140 mat4s
+    private static final int FLOATS = 32;
+
+    private final boolean uniformBuffer;
+    private final int ubo;
+    private final FloatBuffer data = MemoryUtil.memAllocFloat(FLOATS);
+    private int version;
+
+    // which camera version each plain-uniform program has seen
+    private final List<ShaderProgram> programs = new ArrayList<>();
+    private int[] seenVersions = new int[4];
+
+    /**
+     * Creates the camera block. Needs a GL context
+     */
+    public CameraBlock() {
+        GLCapabilities caps = GL.getCapabilities();
+        uniformBuffer = caps.OpenGL31 || caps.GL_ARB_uniform_buffer_object;
+        if (uniformBuffer) {
+            ubo = glGenBuffers();
+            glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+            glBufferData(GL_UNIFORM_BUFFER, FLOATS * Float.BYTES, GL_DYNAMIC_DRAW);
+            glBindBuffer(GL_UNIFORM_BUFFER, 0);
+            glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, ubo);
+        } else {
+            ubo = 0;
+        }
+        System.out.println("Camera goes to shaders through " + (uniformBuffer ? "a uniform buffer" : "plain uniforms"));
+    }
+
+    /**
+     * @return The start of a shader that uses the camera: the version line plus uProjection and uView
+     */
+    public String header() {
+        if (uniformBuffer) {
+            return "#version 120\n" +
+                "#extension GL_ARB_uniform_buffer_object : require\n" +
+                "layout(std140) uniform Camera {\n" +
+                "    mat4 uProjection;\n" +
+                "    mat4 uView;\n" +
+                "};\n";
+        }
+        return "#version 120\n" +
+            "uniform mat4 uProjection;\n" +
+            "uniform mat4 uView;\n";
+    }
+
+    /**
+     * Hooks a freshly linked program (built with header()) up to the camera
+     * @param program The program
+     */
+    public void attach(ShaderProgram program) {
+        if (uniformBuffer) {
+            int index = glGetUniformBlockIndex(program.getId(), "Camera");
+            if (index != GL_INVALID_INDEX) {
+                glUniformBlockBinding(program.getId(), index, BINDING);
+            }
+        } else {
+            if (programs.size() == seenVersions.length) {
+                int[] bigger = new int[seenVersions.length * 2];
+                System.arraycopy(seenVersions, 0, bigger, 0, seenVersions.length);
+                seenVersions = bigger;
+            }
+            seenVersions[programs.size()] = -1;
+            programs.add(program);
+        }
+    }
+
+    /**
+     * Sets the camera for everything drawn from now on
+     * @param projection The projection matrix
+     * @param view The view matrix
+     */
+    public void set(Matrix4f projection, Matrix4f view) {
+        projection.get(0, data);
+        view.get(16, data);
+        version++;
+        if (uniformBuffer) {
+            glBindBuffer(GL_UNIFORM_BUFFER, ubo);
+            glBufferSubData(GL_UNIFORM_BUFFER, 0, data);
+            glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        }
+    }
+
+    /**
+     * Makes sure a program has the current camera. Call with the program in use, before drawing with it.
+     * Costs nothing with a uniform buffer or when the program is already up to date
+     * @param program The program in use
+     */
+    public void apply(ShaderProgram program) {
+        if (uniformBuffer) {
+            return;
+        }
+        int slot = programs.indexOf(program);
+        if (slot < 0 || seenVersions[slot] == version) {
+            return;
+        }
+        seenVersions[slot] = version;
+        glUniformMatrix4fv(program.getUniformLocation("uProjection"), false, data.position(0).limit(16));
+        glUniformMatrix4fv(program.getUniformLocation("uView"), false, data.position(16).limit(32));
+        data.clear();
+    }
+
+    /**
+     * Deletes the uniform buffer
+     */
+    public void cleanup() {
+        if (uniformBuffer) {
+            glDeleteBuffers(ubo);
+        }
+        MemoryUtil.memFree(data);
+    }
+}
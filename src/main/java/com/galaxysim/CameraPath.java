@@ -0,0 +1,46 @@
+package com.galaxysim;
+
+import org.joml.Vector3f;
+
+/**
+ * The camera flight deterministic runs use instead of the keyboard and mouse. It heads
+ * down -z (the way the camera starts out looking) through plenty of new regions, weaving
+ * and looking around a bit so suns, nebulae and clusters pass through the view at
+ * different angles. Everything only depends on the step number, so every run flies the same
+ */
+public class CameraPath {
+    // units per second along the path
+    private static final float SPEED = 40.0f;
+
+    // how far it weaves sideways and up/down
+    private static final float SWAY_X = 60.0f;
+    private static final float SWAY_Y = 20.0f;
+
+    // how far it looks around (degrees)
+    private static final float YAW_SWING = 25.0f;
+    private static final float PITCH_SWING = 10.0f;
+
+    /**
+     * Puts the camera where it is on the path after some number of steps
+     * @param step How many simulation steps have happened
+     * @param stepSeconds Length of a step
+     * @param position Gets the camera position
+     * @param front Gets the direction the camera looks (normalized)
+     */
+    public static void apply(long step, float stepSeconds, Vector3f position, Vector3f front) {
+        float time = step * stepSeconds;
+        position.set(
+            SWAY_X * (float) Math.sin(time * 0.3f),
+            SWAY_Y * (float) Math.sin(time * 0.17f),
+            -SPEED * time
+        );
+
+        double yaw = Math.toRadians(-90.0f + YAW_SWING * (float) Math.sin(time * 0.25f));
+        double pitch = Math.toRadians(PITCH_SWING * (float) Math.sin(time * 0.2f));
+        front.set(
+            (float) (Math.cos(yaw) * Math.cos(pitch)),
+            (float) Math.sin(pitch),
+            (float) (Math.sin(yaw) * Math.cos(pitch))
+        ).normalize();
+    }
+}
@@ -0,0 +1,96 @@
+package com.galaxysim;
+
+import java.util.Arrays;
+
+/**
+ * Stores all settings for deterministic runs and frame captures
+ * These make every run draw exactly the same frames, so a rendering change can be
+ * checked against reference images from before it
+ */
+public class CaptureSettings {
+    // Whether everything random or time-based gets pinned (seed, clock, camera, background work)
+    private static boolean deterministic = false;
+    // Seed for everything the simulation generates
+    private static long seed = 1;
+    // Which frames get captured (counting from 0), in order
+    private static int[] captureFrames = { 60, 180, 300 };
+    // Where captured frames get written as PNGs, or null
+    private static String outputDirectory = null;
+    // Where the reference PNGs to compare against are, or null
+    private static String referenceDirectory = null;
+    // How far off a color channel can be (0-255) before a pixel counts as different
+    private static int tolerance = 8;
+    // How much of the image (0-1) is allowed to be different before a frame fails
+    private static float maxDifferentPixels = 0.001f;
+
+    // Getters and setters for all properties
+
+    public static boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public static void setDeterministic(boolean value) {
+        deterministic = value;
+    }
+
+    public static long getSeed() {
+        return seed;
+    }
+
+    public static void setSeed(long value) {
+        seed = value;
+    }
+
+    public static int[] getCaptureFrames() {
+        return captureFrames;
+    }
+
+    /**
+     * @param frames Frame numbers to capture, in any order (negative ones get dropped)
+     */
+    public static void setCaptureFrames(int[] frames) {
+        int[] sorted = Arrays.stream(frames).filter(frame -> frame >= 0).sorted().distinct().toArray();
+        if (sorted.length > 0) {
+            captureFrames = sorted;
+        }
+    }
+
+    public static String getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public static void setOutputDirectory(String value) {
+        outputDirectory = value;
+    }
+
+    public static String getReferenceDirectory() {
+        return referenceDirectory;
+    }
+
+    public static void setReferenceDirectory(String value) {
+        referenceDirectory = value;
+    }
+
+    public static int getTolerance() {
+        return tolerance;
+    }
+
+    public static void setTolerance(int value) {
+        tolerance = Math.max(0, Math.min(255, value));
+    }
+
+    public static float getMaxDifferentPixels() {
+        return maxDifferentPixels;
+    }
+
+    public static void setMaxDifferentPixels(float value) {
+        maxDifferentPixels = Math.max(0.0f, Math.min(1.0f, value));
+    }
+
+    /**
+     * @return Whether frames are being captured or compared at all
+     */
+    public static boolean isCapturing() {
+        return outputDirectory != null || referenceDirectory != null;
+    }
+}
@@ -17,6 +17,12 @@ public class ControlSettings {
     
     // Speed amplification key
     private static int amplifySpeedKey = GLFW_KEY_LEFT_CONTROL;
+
+    // Debug overlay toggle key
+    private static int debugOverlayKey = GLFW_KEY_F3;
+
+    // Frame pacing (vsync / uncapped / fixed rate) switch key
+    private static int framePacingKey = GLFW_KEY_F4;
     
     // Key name mapping for display purposes
     private static final String[] KEY_NAMES = new String[349]; // GLFW defines keys up to 348
@@ -105,6 +111,14 @@ public class ControlSettings {
     public static int getAmplifySpeedKey() {
         return amplifySpeedKey;
     }
+
+    public static int getDebugOverlayKey() {
+        return debugOverlayKey;
+    }
+
+    public static int getFramePacingKey() {
+        return framePacingKey;
+    }
     
     // Setters for movement keys
     public static void setMoveForwardKey(int key) {
@@ -134,6 +148,14 @@ public class ControlSettings {
     public static void setAmplifySpeedKey(int key) {
         amplifySpeedKey = key;
     }
+
+    public static void setDebugOverlayKey(int key) {
+        debugOverlayKey = key;
+    }
+
+    public static void setFramePacingKey(int key) {
+        framePacingKey = key;
+    }
     
     /**
      * Get the display name for a key
@@ -144,10 +144,6 @@ public class CoordinatesFontRenderer {
 
      // me when javadoc comments are annoying to write but otherwise my codebase is always lowk a mess
     public void renderText(String text, float x, float y, float fontSize) {
-        if (!initialized) {
-            init();
-        }
-        
         // enable texturing with anti-aliasing
         glEnable(GL_TEXTURE_2D);
         glEnable(GL_BLEND);
@@ -161,6 +157,47 @@ public class CoordinatesFontRenderer {
         
         glBindTexture(GL_TEXTURE_2D, fontTexture);
         
+        // Draw character quads
+        try {
+            forEachGlyphQuad(text, x, y, fontSize, (x0, y0, x1, y1, s0, t0, s1, t1) -> {
+                glBegin(GL_QUADS);
+                glTexCoord2f(s0, t0); glVertex2f(x0, y0);
+                glTexCoord2f(s1, t0); glVertex2f(x1, y0);
+                glTexCoord2f(s1, t1); glVertex2f(x1, y1);
+                glTexCoord2f(s0, t1); glVertex2f(x0, y1);
+                glEnd();
+            });
+        } finally {
+            // Disable texturing
+            glDisable(GL_TEXTURE_2D);
+        }
+    }
+    
+    /**
+     * Something that wants the screen rectangle and texture coordinates of each character
+     */
+    public interface GlyphQuadConsumer {
+        void quad(float x0, float y0, float x1, float y1, float s0, float t0, float s1, float t1);
+    }
+    
+    /**
+     * Works out where every character of the text goes without drawing anything,
+     * so renderers can put the quads wherever they like
+     * 
+     * @param text Text to lay out
+     * @param x X position
+     * @param y Y position
+     * @param fontSize Font size in pixels
+     * @param consumer Gets called once per character quad
+     */
+    public void forEachGlyphQuad(String text, float x, float y, float fontSize, GlyphQuadConsumer consumer) {
+        if (!initialized) {
+            init();
+        }
+        if (!initialized) {
+            throw new IllegalStateException("coordinates font isn't loaded");
+        }
+        
         // scale factor for font size
         float scale = fontSize / fontHeight;
         
@@ -183,18 +220,23 @@ public class CoordinatesFontRenderer {
                 float y0 = y + (q.y0() - y) * scale;
                 float y1 = y + (q.y1() - y) * scale;
                 
-                // Draw character quad
-                glBegin(GL_QUADS);
-                glTexCoord2f(q.s0(), q.t0()); glVertex2f(x0, y0);
-                glTexCoord2f(q.s1(), q.t0()); glVertex2f(x1, y0);
-                glTexCoord2f(q.s1(), q.t1()); glVertex2f(x1, y1);
-                glTexCoord2f(q.s0(), q.t1()); glVertex2f(x0, y1);
-                glEnd();
+                consumer.quad(x0, y0, x1, y1, q.s0(), q.t0(), q.s1(), q.t1());
             }
         }
-        
-        // Disable texturing
-        glDisable(GL_TEXTURE_2D);
+    }
+    
+    /**
+     * @return Whether the font loaded and text can actually be drawn
+     */
+    public boolean isLoaded() {
+        return initialized;
+    }
+    
+    /**
+     * @return The GL texture holding the baked font (alpha only)
+     */
+    public int getTextureId() {
+        return fontTexture;
     }
     
     /**
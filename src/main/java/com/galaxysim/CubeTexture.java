@@ -0,0 +1,80 @@
+package com.galaxysim;
+
+/**
+ * The six faces of a cube texture, kept in memory so renderers can upload them whenever
+ * they get around to it. Like MeshBuffer it never changes once it's made, so it can be
+ * made on a worker thread and uploaded from the render thread without any locking.
+ *
+ * Faces go +X, -X, +Y, -Y, +Z, -Z (the order GL numbers them in), each one rgb bytes with
+ * the bottom row first
+ */
+public final class CubeTexture {
+    public static final int FACES = 6;
+
+    private final int size;
+    private final byte[][] faces;
+
+    /**
+     * @param size Pixels per face side
+     * @param faces Rgb bytes of every face, size * size * 3 each
+     */
+    public CubeTexture(int size, byte[][] faces) {
+        if (faces.length != FACES) {
+            throw new IllegalArgumentException("A cube texture needs " + FACES + " faces, not " + faces.length);
+        }
+        this.size = size;
+        this.faces = faces;
+    }
+
+    /**
+     * @return Pixels per face side
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param face Which face (0-5)
+     * @return Its rgb bytes (don't write to them)
+     */
+    public byte[] getFace(int face) {
+        return faces[face];
+    }
+
+    /**
+     * Works out which way a pixel of a face points from the middle of the cube, the same way GL does
+     * when it looks one up
+     * @param face Which face (0-5)
+     * @param s Across the face, -1 to 1
+     * @param t Up the face, -1 to 1
+     * @param direction Gets the direction (not normalized)
+     */
+    public static void direction(int face, float s, float t, float[] direction) {
+        switch (face) {
+            case 0:
+                set(direction, 1.0f, -t, -s);
+                break;
+            case 1:
+                set(direction, -1.0f, -t, s);
+                break;
+            case 2:
+                set(direction, s, 1.0f, t);
+                break;
+            case 3:
+                set(direction, s, -1.0f, -t);
+                break;
+            case 4:
+                set(direction, s, -t, 1.0f);
+                break;
+            default:
+                set(direction, -s, -t, -1.0f);
+                break;
+        }
+    }
+
+    private static void set(float[] direction, float x, float y, float z) {
+        direction[0] = x;
+        direction[1] = y;
+        direction[2] = z;
+    }
+}
@@ -0,0 +1,133 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_WRAP_R;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL30.glGenerateMipmap;
+
+/**
+ * GPU copies of the CubeTextures the scene draws with. Uploads get spread out - only a couple of
+ * faces go up per frame, however many new textures show up at once - and a texture isn't handed
+ * out until all six faces are there, so nothing ever gets drawn with a half-uploaded texture.
+ * Until then whoever asked just draws without it.
+ *
+ * Textures that haven't been used for a while get deleted, same as MeshBufferCache does with meshes
+ */
+public class CubeTextureCache {
+    // how many faces can get uploaded per frame
+    private static final int FACES_PER_FRAME = 2;
+
+    // how many frames a texture can go unused before it gets deleted (it comes back if it's used again)
+    private static final int EVICT_AFTER_FRAMES = 600;
+
+    // how often we look for textures to delete
+    private static final int EVICT_CHECK_FRAMES = 60;
+
+    // one texture on the GPU and how far its upload has got
+    private static class Entry {
+        int id;
+        int facesUploaded;
+        int lastUsed;
+    }
+
+    private final Map<CubeTexture, Entry> entries = new IdentityHashMap<>();
+    private final boolean mipmaps = GL.getCapabilities().OpenGL30;
+    private ByteBuffer upload;
+    private int uploadsLeft = FACES_PER_FRAME;
+    private int frame;
+
+    /**
+     * Call at the end of every frame, deletes textures nobody has used in a while
+     */
+    public void endFrame() {
+        frame++;
+        uploadsLeft = FACES_PER_FRAME;
+        if (frame % EVICT_CHECK_FRAMES != 0) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (frame - entry.lastUsed > EVICT_AFTER_FRAMES) {
+                glDeleteTextures(entry.id);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets a texture onto the GPU, a few faces at a time
+     * @param texture The texture we'd like to draw with
+     * @return Its GL texture name, or 0 if it's not all there yet
+     */
+    public int get(CubeTexture texture) {
+        Entry entry = entries.get(texture);
+        if (entry == null) {
+            entry = new Entry();
+            entry.id = glGenTextures();
+            entries.put(texture, entry);
+        }
+        entry.lastUsed = frame;
+        if (entry.facesUploaded < CubeTexture.FACES) {
+            uploadFaces(texture, entry);
+        }
+        return entry.facesUploaded == CubeTexture.FACES ? entry.id : 0;
+    }
+
+    private void uploadFaces(CubeTexture texture, Entry entry) {
+        if (uploadsLeft == 0) {
+            return;
+        }
+        int size = texture.getSize();
+        if (upload == null || upload.capacity() < size * size * 3) {
+            MemoryUtil.memFree(upload);
+            upload = MemoryUtil.memAlloc(size * size * 3);
+        }
+
+        glBindTexture(GL_TEXTURE_CUBE_MAP, entry.id);
+        // rows of rgb bytes don't always line up on 4 bytes
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        while (uploadsLeft > 0 && entry.facesUploaded < CubeTexture.FACES) {
+            upload.clear();
+            upload.put(texture.getFace(entry.facesUploaded)).flip();
+            glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + entry.facesUploaded, 0, GL_RGB8, size, size, 0,
+                GL_RGB, GL_UNSIGNED_BYTE, upload);
+            entry.facesUploaded++;
+            uploadsLeft--;
+        }
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+
+        if (entry.facesUploaded == CubeTexture.FACES) {
+            if (mipmaps) {
+                glGenerateMipmap(GL_TEXTURE_CUBE_MAP);
+            }
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, mipmaps ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        }
+        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+    }
+
+    /**
+     * Deletes every texture
+     */
+    public void cleanup() {
+        for (Entry entry : entries.values()) {
+            glDeleteTextures(entry.id);
+        }
+        entries.clear();
+        MemoryUtil.memFree(upload);
+        upload = null;
+    }
+}
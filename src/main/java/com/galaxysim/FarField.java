@@ -0,0 +1,105 @@
+package com.galaxysim;
+
+import org.joml.Vector3f;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decides when the far-field sky needs new stars and makes them on a background thread.
+ * Space is split into super-regions (a bunch of regions across), and whenever the camera
+ * moves into a different one we generate the far stars around its middle. Renderers then
+ * bake whatever we hand them into a cubemap
+ */
+public class FarField {
+    // how many regions across a super-region is
+    private static final int SUPER_REGION_REGIONS = 8;
+
+    private final float regionSize;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HexaNebula far field");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Future<FarFieldStars> pending;
+    private FarFieldStars current;
+    private long currentKey = Long.MIN_VALUE;
+    private long pendingKey;
+    private boolean synchronous;
+
+    /**
+     * @param regionSize Size of a region
+     */
+    public FarField(float regionSize) {
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * @param value If true, update() waits for new far stars instead of picking them up a few frames
+     *              later, so when they show up doesn't depend on timing (for deterministic runs)
+     */
+    public void setSynchronous(boolean value) {
+        synchronous = value;
+    }
+
+    /**
+     * Checks if the camera is in a new super-region and starts making its far stars if so.
+     * Call once a frame
+     * @param cameraPos Where the camera is
+     */
+    public void update(Vector3f cameraPos) {
+        // pick up a finished far field
+        if (pending != null && pending.isDone()) {
+            collect();
+        }
+
+        float superSize = regionSize * SUPER_REGION_REGIONS;
+        int superX = (int) Math.floor(cameraPos.x / superSize);
+        int superY = (int) Math.floor(cameraPos.y / superSize);
+        int superZ = (int) Math.floor(cameraPos.z / superSize);
+        long key = StarRegion.key(superX, superY, superZ);
+        if (key == currentKey || pending != null) {
+            return;
+        }
+
+        // leave out everything real stars could cover from anywhere in this super-region
+        float centerX = (superX + 0.5f) * superSize;
+        float centerY = (superY + 0.5f) * superSize;
+        float centerZ = (superZ + 0.5f) * superSize;
+        float nearRadius = (RenderSettings.getStreamingRadius() + 1) * regionSize + superSize * 0.5f * (float) Math.sqrt(3);
+
+        pendingKey = key;
+        pending = worker.submit(() -> FarFieldStars.generate(centerX, centerY, centerZ, regionSize, nearRadius));
+        if (synchronous) {
+            collect();
+        }
+    }
+
+    // takes the pending far field, waiting for it if it isn't done yet
+    private void collect() {
+        try {
+            current = pending.get();
+            currentKey = pendingKey;
+        } catch (Exception e) {
+            System.err.println("Couldn't generate the far field: " + e.getMessage());
+            currentKey = pendingKey; // don't keep retrying the same one
+        }
+        pending = null;
+    }
+
+    /**
+     * @return The latest far stars, or null before the first batch is done
+     */
+    public FarFieldStars getStars() {
+        return current;
+    }
+
+    /**
+     * Stops the background thread
+     */
+    public void cleanup() {
+        worker.shutdownNow();
+    }
+}
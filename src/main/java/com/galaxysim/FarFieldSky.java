@@ -0,0 +1,310 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_WRAP_R;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.GL_TEXTURE_CUBE_MAP_SEAMLESS;
+
+/**
+ * Draws the stars past the streaming radius as a skybox. The far stars get rendered once
+ * into a cubemap from the middle of the camera's super-region, and after that the whole
+ * far field costs one textured cube a frame no matter how many stars are in it.
+ *
+ * Baking a new far field happens one cube face per frame into a second cubemap, and we only
+ * switch over once all six faces are done, so moving into a new super-region never stalls
+ * a frame and never shows a half-baked sky
+ */
+public class FarFieldSky {
+    // pixels per cube face side
+    private static final int FACE_SIZE = 1024;
+
+    private static final String BAKE_VERTEX_SHADER =
+        "#version 120\n" +
+        "attribute vec3 aPosition;\n" +
+        "attribute float aSize;\n" +
+        "attribute float aBrightness;\n" +
+        "uniform mat4 uViewProjection;\n" +
+        "varying float vBrightness;\n" +
+        "void main() {\n" +
+        "    float distance = length(aPosition);\n" +
+        "    gl_PointSize = clamp(aSize * 200000.0 / distance, 1.0, 3.0);\n" +
+        "    vBrightness = aBrightness * clamp(40000.0 / distance, 0.25, 1.0);\n" +
+        "    gl_Position = uViewProjection * vec4(aPosition, 1.0);\n" +
+        "}\n";
+
+    private static final String BAKE_FRAGMENT_SHADER =
+        "#version 120\n" +
+        "varying float vBrightness;\n" +
+        "void main() {\n" +
+        "    vec2 d = gl_PointCoord - vec2(0.5);\n" +
+        "    if (dot(d, d) > 0.25) discard;\n" +
+        "    gl_FragColor = vec4(vec3(vBrightness), 1.0);\n" +
+        "}\n";
+
+    // the sky sits on the far plane and only turns with the camera, it never moves
+    private static final String SKY_VERTEX_SHADER =
+        "#version 120\n" +
+        "attribute vec3 aPosition;\n" +
+        "uniform mat4 uViewProjection;\n" +
+        "varying vec3 vDirection;\n" +
+        "void main() {\n" +
+        "    vDirection = aPosition;\n" +
+        "    gl_Position = (uViewProjection * vec4(aPosition, 1.0)).xyww;\n" +
+        "}\n";
+
+    private static final String SKY_FRAGMENT_SHADER =
+        "#version 120\n" +
+        "uniform samplerCube uSky;\n" +
+        "varying vec3 vDirection;\n" +
+        "void main() {\n" +
+        "    gl_FragColor = vec4(textureCube(uSky, vDirection).rgb, 1.0);\n" +
+        "}\n";
+
+    // which way each cube face looks and which way is up for it, in GL's face order (+X, -X, +Y, -Y, +Z, -Z)
+    private static final float[][] FACE_DIRECTIONS = {
+        { 1, 0, 0, 0, -1, 0 },
+        { -1, 0, 0, 0, -1, 0 },
+        { 0, 1, 0, 0, 0, 1 },
+        { 0, -1, 0, 0, 0, -1 },
+        { 0, 0, 1, 0, -1, 0 },
+        { 0, 0, -1, 0, -1, 0 }
+    };
+
+    // a unit cube as 12 triangles
+    private static final float[] CUBE = {
+        -1, -1, -1,  1, -1, -1,  1,  1, -1,   -1, -1, -1,  1,  1, -1, -1,  1, -1,
+        -1, -1,  1,  1,  1,  1,  1, -1,  1,   -1, -1,  1, -1,  1,  1,  1,  1,  1,
+        -1, -1, -1, -1,  1, -1, -1,  1,  1,   -1, -1, -1, -1,  1,  1, -1, -1,  1,
+         1, -1, -1,  1,  1,  1,  1,  1, -1,    1, -1, -1,  1, -1,  1,  1,  1,  1,
+        -1,  1, -1,  1,  1, -1,  1,  1,  1,   -1,  1, -1,  1,  1,  1, -1,  1,  1,
+        -1, -1, -1,  1, -1,  1,  1, -1, -1,   -1, -1, -1, -1, -1,  1,  1, -1,  1
+    };
+    private static final int CUBE_VERTICES = CUBE.length / 3;
+
+    private final ShaderProgram bakeProgram;
+    private final ShaderProgram skyProgram;
+    private final int framebuffer;
+    private final int cubeVbo;
+    private final int starVbo;
+    private final FloatBuffer matrixBuffer = MemoryUtil.memAllocFloat(16);
+
+    // one cubemap gets shown while the other one gets baked
+    private final int[] cubemaps = new int[2];
+    private int shown = -1;
+
+    // what the simulation last asked for, and how far along baking it we are
+    private FarFieldStars wanted;
+    private int bakingVersion;
+    private int bakingStars;
+    private int nextFace = FACE_DIRECTIONS.length;
+
+    private final Matrix4f faceView = new Matrix4f();
+    private final Matrix4f faceProjection = new Matrix4f().setPerspective((float) Math.PI / 2, 1.0f, 1.0f, 1000000.0f);
+    private final Matrix4f skyView = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    /**
+     * @return Whether the driver can bake and draw the far field (shaders and offscreen framebuffers)
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL20 && (caps.OpenGL30 || caps.GL_ARB_framebuffer_object);
+    }
+
+    /**
+     * Creates the cubemaps and shaders. Needs a GL context
+     */
+    public FarFieldSky() {
+        bakeProgram = new ShaderProgram(BAKE_VERTEX_SHADER, BAKE_FRAGMENT_SHADER, "aPosition", "aSize", "aBrightness");
+        skyProgram = new ShaderProgram(SKY_VERTEX_SHADER, SKY_FRAGMENT_SHADER, "aPosition");
+        skyProgram.use();
+        glUniform1i(skyProgram.getUniformLocation("uSky"), 0);
+        glUseProgram(0);
+
+        for (int i = 0; i < cubemaps.length; i++) {
+            cubemaps[i] = glGenTextures();
+            glBindTexture(GL_TEXTURE_CUBE_MAP, cubemaps[i]);
+            for (int face = 0; face < FACE_DIRECTIONS.length; face++) {
+                glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, 0, GL_RGBA8, FACE_SIZE, FACE_SIZE, 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+            }
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        }
+        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+
+        // no visible seams between faces where the driver can do it
+        GLCapabilities caps = GL.getCapabilities();
+        if (caps.OpenGL32 || caps.GL_ARB_seamless_cube_map) {
+            glEnable(GL_TEXTURE_CUBE_MAP_SEAMLESS);
+        }
+
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_CUBE_MAP_POSITIVE_X, cubemaps[0], 0);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        OffscreenTarget.bindOutput();
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            cleanup();
+            throw new RuntimeException("Far field framebuffer isn't complete (status 0x" + Integer.toHexString(status) + ")");
+        }
+
+        cubeVbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, cubeVbo);
+        glBufferData(GL_ARRAY_BUFFER, CUBE, GL_STATIC_DRAW);
+        starVbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Bakes one more cube face if there's a far field waiting to be baked. Has to be called
+     * outside the scene pass since it switches framebuffers (the start of the frame is good)
+     * @param stats Where to count the draw call
+     */
+    public void bakeStep(RenderStats stats) {
+        if (wanted != null && wanted.getVersion() != bakingVersion) {
+            // a new far field came in, start over on it (even if we were halfway through the last one)
+            bakingVersion = wanted.getVersion();
+            bakingStars = wanted.getStarCount();
+            uploadStars(wanted);
+            nextFace = 0;
+        }
+        if (nextFace >= FACE_DIRECTIONS.length) {
+            return;
+        }
+
+        int target = shown == 0 ? 1 : 0;
+        float[] face = FACE_DIRECTIONS[nextFace];
+        faceView.setLookAt(0, 0, 0, face[0], face[1], face[2], face[3], face[4], face[5]);
+        faceProjection.mul(faceView, viewProjection);
+
+        boolean spritesWereOn = glIsEnabled(GL_POINT_SPRITE);
+        boolean pointSizeWasOn = glIsEnabled(GL_VERTEX_PROGRAM_POINT_SIZE);
+        glEnable(GL_POINT_SPRITE);
+        glEnable(GL_VERTEX_PROGRAM_POINT_SIZE);
+        glDisable(GL_DEPTH_TEST);
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_ONE, GL_ONE);
+
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_CUBE_MAP_POSITIVE_X + nextFace, cubemaps[target], 0);
+        glViewport(0, 0, FACE_SIZE, FACE_SIZE);
+        glClear(GL_COLOR_BUFFER_BIT);
+
+        bakeProgram.use();
+        viewProjection.get(matrixBuffer);
+        glUniformMatrix4fv(bakeProgram.getUniformLocation("uViewProjection"), false, matrixBuffer);
+        int stride = FarFieldStars.FLOATS_PER_STAR * Float.BYTES;
+        glBindBuffer(GL_ARRAY_BUFFER, starVbo);
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0L);
+        glVertexAttribPointer(1, 1, GL_FLOAT, false, stride, 3L * Float.BYTES);
+        glVertexAttribPointer(2, 1, GL_FLOAT, false, stride, 4L * Float.BYTES);
+        glDrawArrays(GL_POINTS, 0, bakingStars);
+        stats.addDrawCall(bakingStars);
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glDisableVertexAttribArray(2);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glUseProgram(0);
+
+        // put back everything the renderers expect
+        OffscreenTarget.bindOutput();
+        glDisable(GL_BLEND);
+        glEnable(GL_DEPTH_TEST);
+        if (!spritesWereOn) {
+            glDisable(GL_POINT_SPRITE);
+        }
+        if (!pointSizeWasOn) {
+            glDisable(GL_VERTEX_PROGRAM_POINT_SIZE);
+        }
+
+        nextFace++;
+        if (nextFace == FACE_DIRECTIONS.length) {
+            // all six faces done, show the new sky
+            shown = target;
+        }
+    }
+
+    private void uploadStars(FarFieldStars stars) {
+        FloatBuffer data = MemoryUtil.memAllocFloat(Math.max(1, stars.getStarCount() * FarFieldStars.FLOATS_PER_STAR));
+        try {
+            data.put(stars.getData(), 0, stars.getStarCount() * FarFieldStars.FLOATS_PER_STAR).flip();
+            glBindBuffer(GL_ARRAY_BUFFER, starVbo);
+            glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        } finally {
+            MemoryUtil.memFree(data);
+        }
+    }
+
+    /**
+     * Draws the baked sky behind everything, and remembers which far field should be baked next
+     * @param stars The far field the simulation wants, or null to keep the current one
+     * @param view The view matrix (only its rotation matters)
+     * @param projection The projection matrix
+     * @param stats Where to count the draw call
+     */
+    public void draw(FarFieldStars stars, Matrix4f view, Matrix4f projection, RenderStats stats) {
+        if (stars != null) {
+            wanted = stars;
+        }
+        if (shown < 0) {
+            return;
+        }
+
+        skyView.set(view).setTranslation(0, 0, 0);
+        projection.mul(skyView, viewProjection);
+
+        glDisable(GL_DEPTH_TEST);
+        glDepthMask(false);
+        glDisable(GL_BLEND);
+
+        skyProgram.use();
+        viewProjection.get(matrixBuffer);
+        glUniformMatrix4fv(skyProgram.getUniformLocation("uViewProjection"), false, matrixBuffer);
+        glBindTexture(GL_TEXTURE_CUBE_MAP, cubemaps[shown]);
+        glBindBuffer(GL_ARRAY_BUFFER, cubeVbo);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 3 * Float.BYTES, 0L);
+        glDrawArrays(GL_TRIANGLES, 0, CUBE_VERTICES);
+        stats.addDrawCall(CUBE_VERTICES);
+        glDisableVertexAttribArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        glUseProgram(0);
+
+        glDepthMask(true);
+        glEnable(GL_DEPTH_TEST);
+    }
+
+    /**
+     * Deletes the cubemaps, buffers and shaders
+     */
+    public void cleanup() {
+        bakeProgram.cleanup();
+        skyProgram.cleanup();
+        glDeleteTextures(cubemaps);
+        glDeleteFramebuffers(framebuffer);
+        glDeleteBuffers(cubeVbo);
+        glDeleteBuffers(starVbo);
+        MemoryUtil.memFree(matrixBuffer);
+    }
+}
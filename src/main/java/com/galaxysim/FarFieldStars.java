@@ -0,0 +1,147 @@
+package com.galaxysim;
+
+import java.util.Random;
+
+/**
+ * The stars way out past the streaming radius, as seen from the middle of one super-region.
+ * They never get turned into real regions - every far-away cell of space makes up its
+ * stars from its own seed, so the same cell always looks the same no matter when or
+ * from where it gets generated. Once made, this never changes, so it's safe to hand
+ * to the render thread as-is
+ */
+public class FarFieldStars {
+    // x, y, z (relative to the center), size, brightness
+    public static final int FLOATS_PER_STAR = 5;
+
+    // far space gets filled in cells this many regions across
+    private static final int CELL_REGIONS = 4;
+
+    // how far out the far field goes, in regions
+    private static final int FAR_RADIUS_REGIONS = 64;
+
+    private static int nextVersion = 1;
+
+    private final float centerX;
+    private final float centerY;
+    private final float centerZ;
+    private final float[] data;
+    private final int starCount;
+    private final int version;
+
+    private FarFieldStars(float centerX, float centerY, float centerZ, float[] data, int starCount) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.data = data;
+        this.starCount = starCount;
+        synchronized (FarFieldStars.class) {
+            this.version = nextVersion++;
+        }
+    }
+
+    /**
+     * Makes up the far stars around a point. Slow-ish (tens of thousands of stars), so run it off the main thread
+     * @param centerX Center X (the middle of a super-region)
+     * @param centerY Center Y
+     * @param centerZ Center Z
+     * @param regionSize Size of a region
+     * @param nearRadius Distance inside which there are real stars, so we leave it empty
+     * @return The far stars
+     */
+    public static FarFieldStars generate(float centerX, float centerY, float centerZ, float regionSize, float nearRadius) {
+        float cellSize = regionSize * CELL_REGIONS;
+        float farRadius = regionSize * FAR_RADIUS_REGIONS;
+        int cells = (int) Math.ceil(farRadius / cellSize);
+        int centerCellX = (int) Math.floor(centerX / cellSize);
+        int centerCellY = (int) Math.floor(centerY / cellSize);
+        int centerCellZ = (int) Math.floor(centerZ / cellSize);
+
+        float[] data = new float[64 * 1024 * FLOATS_PER_STAR];
+        int count = 0;
+
+        for (int cx = centerCellX - cells; cx <= centerCellX + cells; cx++) {
+            for (int cy = centerCellY - cells; cy <= centerCellY + cells; cy++) {
+                for (int cz = centerCellZ - cells; cz <= centerCellZ + cells; cz++) {
+                    // every cell has its own seed, so it always comes out the same
+                    Random random = new Random(cx * 73856093L ^ cy * 19349663L ^ cz * 83492791L);
+
+                    // a couple of loose stars, and now and then a whole cluster
+                    int loose = random.nextInt(3);
+                    int cluster = random.nextFloat() < 0.05f ? random.nextInt(10, 25) : 0;
+                    float clusterX = (cx + random.nextFloat()) * cellSize;
+                    float clusterY = (cy + random.nextFloat()) * cellSize;
+                    float clusterZ = (cz + random.nextFloat()) * cellSize;
+
+                    for (int i = 0; i < loose + cluster; i++) {
+                        float x, y, z, size, brightness;
+                        if (i < loose) {
+                            x = (cx + random.nextFloat()) * cellSize;
+                            y = (cy + random.nextFloat()) * cellSize;
+                            z = (cz + random.nextFloat()) * cellSize;
+                            size = random.nextFloat() * 0.15f + 0.05f;
+                            brightness = 0.85f + random.nextFloat() * 0.15f;
+                        } else {
+                            x = clusterX + (random.nextFloat() - 0.5f) * regionSize;
+                            y = clusterY + (random.nextFloat() - 0.5f) * regionSize;
+                            z = clusterZ + (random.nextFloat() - 0.5f) * regionSize;
+                            size = random.nextFloat() * 0.2f + 0.1f;
+                            brightness = 0.6f + random.nextFloat() * 0.4f;
+                        }
+
+                        x -= centerX;
+                        y -= centerY;
+                        z -= centerZ;
+                        float distance = (float) Math.sqrt(x * x + y * y + z * z);
+                        if (distance < nearRadius || distance > farRadius) {
+                            continue;
+                        }
+
+                        if (count * FLOATS_PER_STAR + FLOATS_PER_STAR > data.length) {
+                            float[] bigger = new float[data.length * 2];
+                            System.arraycopy(data, 0, bigger, 0, data.length);
+                            data = bigger;
+                        }
+                        int offset = count * FLOATS_PER_STAR;
+                        data[offset] = x;
+                        data[offset + 1] = y;
+                        data[offset + 2] = z;
+                        data[offset + 3] = size;
+                        data[offset + 4] = brightness;
+                        count++;
+                    }
+                }
+            }
+        }
+        return new FarFieldStars(centerX, centerY, centerZ, data, count);
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    public float getCenterZ() {
+        return centerZ;
+    }
+
+    /**
+     * @return Packed star data, only the first getStarCount() stars are real
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    public int getStarCount() {
+        return starCount;
+    }
+
+    /**
+     * @return Different for every generated far field, so renderers know when to bake again
+     */
+    public int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,149 @@
+package com.galaxysim;
+
+import org.lwjgl.system.MemoryUtil;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads back the frames CaptureSettings asks for and saves them as PNGs, compares them
+ * against reference PNGs, or both. A pixel only counts as different if one of its color
+ * channels is further off than the tolerance, and a frame only fails if more than a
+ * small share of its pixels are different - so tiny rasterization differences between
+ * drivers don't fail a run, but anything you'd actually see does.
+ *
+ * Frames get counted as they're drawn, so every frame has to actually be drawn -
+ * deterministic runs keep rendering on the main thread to make sure nothing gets skipped
+ */
+public class FrameCapture {
+    private final int[] frames = CaptureSettings.getCaptureFrames();
+    private int nextIndex;
+    private int frameNumber;
+
+    private volatile boolean done;
+    private volatile int failures;
+    private ByteBuffer pixels;
+
+    /**
+     * Call after every drawn frame, on the thread that drew it
+     * @param target Where the frame was drawn
+     */
+    public void frameDrawn(OffscreenTarget target) {
+        int frame = frameNumber++;
+        if (done || frame != frames[nextIndex]) {
+            return;
+        }
+        nextIndex++;
+        done = nextIndex == frames.length;
+
+        int width = target.getWidth();
+        int height = target.getHeight();
+        if (pixels == null || pixels.capacity() < width * height * 4) {
+            MemoryUtil.memFree(pixels);
+            pixels = MemoryUtil.memAlloc(width * height * 4);
+        }
+        target.readPixels(pixels);
+        BufferedImage image = toImage(pixels, width, height);
+
+        String name = String.format("frame-%04d", frame);
+        try {
+            if (CaptureSettings.getOutputDirectory() != null) {
+                writePng(image, new File(CaptureSettings.getOutputDirectory(), name + ".png"));
+            }
+            if (CaptureSettings.getReferenceDirectory() != null) {
+                compare(name, image);
+            }
+        } catch (IOException e) {
+            System.err.println("Capture of frame " + frame + " went wrong: " + e.getMessage());
+            failures++;
+        }
+    }
+
+    private void compare(String name, BufferedImage actual) throws IOException {
+        File referenceFile = new File(CaptureSettings.getReferenceDirectory(), name + ".png");
+        if (!referenceFile.isFile()) {
+            System.err.println(name + ": no reference image at " + referenceFile);
+            failures++;
+            return;
+        }
+        BufferedImage reference = ImageIO.read(referenceFile);
+        if (reference == null || reference.getWidth() != actual.getWidth() || reference.getHeight() != actual.getHeight()) {
+            System.err.println(name + ": reference image is missing or a different size");
+            failures++;
+            return;
+        }
+
+        int tolerance = CaptureSettings.getTolerance();
+        int different = 0;
+        int worst = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int a = actual.getRGB(x, y);
+                int b = reference.getRGB(x, y);
+                int difference = Math.max(Math.abs((a >> 16 & 0xFF) - (b >> 16 & 0xFF)),
+                    Math.max(Math.abs((a >> 8 & 0xFF) - (b >> 8 & 0xFF)), Math.abs((a & 0xFF) - (b & 0xFF))));
+                worst = Math.max(worst, difference);
+                if (difference > tolerance) {
+                    different++;
+                }
+            }
+        }
+
+        float share = (float) different / (actual.getWidth() * actual.getHeight());
+        boolean passed = share <= CaptureSettings.getMaxDifferentPixels();
+        System.out.println(String.format("%s: %s (%.3f%% of pixels off by more than %d, worst %d)",
+            name, passed ? "matches" : "DIFFERENT", share * 100, tolerance, worst));
+        if (!passed) {
+            failures++;
+            // keep what we got next to the reference so the two can be looked at side by side
+            writePng(actual, new File(CaptureSettings.getReferenceDirectory(), name + "-actual.png"));
+        }
+    }
+
+    // GL hands rows over bottom first, images want them top first
+    private static BufferedImage toImage(ByteBuffer pixels, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            int row = (height - 1 - y) * width * 4;
+            for (int x = 0; x < width; x++) {
+                int i = row + x * 4;
+                int rgb = (pixels.get(i) & 0xFF) << 16 | (pixels.get(i + 1) & 0xFF) << 8 | (pixels.get(i + 2) & 0xFF);
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    private static void writePng(BufferedImage image, File file) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("couldn't make " + directory);
+        }
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * @return True once the last frame we wanted has been captured
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return How many frames didn't match their reference (or couldn't be captured)
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Frees the readback buffer
+     */
+    public void cleanup() {
+        MemoryUtil.memFree(pixels);
+        pixels = null;
+    }
+}
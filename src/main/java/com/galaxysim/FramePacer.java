@@ -0,0 +1,66 @@
+package com.galaxysim;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when the next frame may start. With vsync the buffer swap does the waiting,
+ * uncapped doesn't wait at all, and fixed rate waits here until the next frame is due.
+ *
+ * Sleeping is only accurate to a millisecond or so, so the fixed-rate wait parks the
+ * thread until it's almost time and then spins for the last little bit
+ */
+public class FramePacer {
+    // how long before the deadline we stop parking and start spinning
+    private static final long SPIN_NANOS = 1_500_000;
+
+    private long nextFrameTime;
+
+    /**
+     * @return The swap interval the current pacing mode wants (1 = wait for vsync, 0 = don't)
+     */
+    public static int getSwapInterval() {
+        return RenderSettings.getFramePacing() == RenderSettings.FramePacing.VSYNC ? 1 : 0;
+    }
+
+    /**
+     * Waits until the next frame is due. Only actually waits in fixed-rate mode.
+     * Call once a frame, after the frame has been handed off
+     */
+    public void waitForNextFrame() {
+        if (RenderSettings.getFramePacing() != RenderSettings.FramePacing.FIXED_RATE) {
+            nextFrameTime = 0;
+            return;
+        }
+
+        long interval = 1_000_000_000L / RenderSettings.getTargetFrameRate();
+        long now = System.nanoTime();
+        if (nextFrameTime == 0 || now - nextFrameTime > interval) {
+            // first frame, or we fell more than a frame behind - start counting from now instead of rushing to catch up
+            nextFrameTime = now + interval;
+            return;
+        }
+
+        long remaining;
+        while ((remaining = nextFrameTime - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (nextFrameTime - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        nextFrameTime += interval;
+    }
+
+    /**
+     * @return A short description of the current pacing mode, for the debug overlay
+     */
+    public static String describe() {
+        switch (RenderSettings.getFramePacing()) {
+            case UNCAPPED:
+                return "uncapped";
+            case FIXED_RATE:
+                return "fixed " + RenderSettings.getTargetFrameRate() + " fps";
+            default:
+                return "vsync";
+        }
+    }
+}
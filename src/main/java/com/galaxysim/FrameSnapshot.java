@@ -0,0 +1,702 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything one frame draws, written down as a flat list of commands so the
+ * simulation can hand it to the render thread and get on with the next frame.
+ * All the data gets copied in when it's recorded (camera, vertices, star regions...),
+ * so nothing in here points at anything the simulation is still changing (far fields,
+ * meshes and point clouds never change once they're made, so those just get kept by reference).
+ *
+ * Snapshots get reused frame after frame - clear() keeps the arrays around, so
+ * once they've grown big enough recording a frame doesn't allocate anything.
+ *
+ * The 3D part of the frame doesn't get replayed in the order it was recorded. Every draw
+ * remembers the state it needs (blend mode, depth writes, point smoothing, transform),
+ * and replay sorts them by that state: first everything opaque or depth-writing in the
+ * order it came in, then all additive draws grouped by state (adding light up doesn't care
+ * about order), then alpha-blended draws in the order they came in. State only gets set
+ * when it actually changes. The HUD always goes last, as recorded
+ */
+public class FrameSnapshot {
+    // commands
+    private static final int BEGIN_FRAME = 0;
+    private static final int END_FRAME = 1;
+    private static final int PUSH_TRANSFORM = 2;
+    private static final int POP_TRANSFORM = 3;
+    private static final int BLEND_MODE = 4;
+    private static final int DEPTH_WRITE = 5;
+    private static final int SMOOTH_POINTS = 6;
+    private static final int BEGIN = 7;
+    private static final int VERTEX = 8;
+    private static final int POINT = 9;
+    private static final int END = 10;
+    private static final int STAR_REGIONS = 11;
+    private static final int BEGIN_HUD = 12;
+    private static final int TEXT = 13;
+    private static final int END_HUD = 14;
+    private static final int VIEWPORT = 15;
+    private static final int FAR_FIELD = 16;
+    private static final int MESH = 17;
+    private static final int POINTS = 18;
+    private static final int IMPOSTOR = 19;
+
+    private static final Renderer.Primitive[] PRIMITIVES = Renderer.Primitive.values();
+    private static final Renderer.BlendMode[] BLEND_MODES = Renderer.BlendMode.values();
+
+    // what mesh (and static point) draws count as when sorting - they never batch with submitted ones
+    private static final int MESH_PRIMITIVE = PRIMITIVES.length;
+
+    // impostors sort like meshes, but might change the blend mode behind our back
+    private static final int IMPOSTOR_PRIMITIVE = PRIMITIVES.length + 1;
+
+    // commands and their int arguments, and their float arguments in a separate array
+    private int[] ints = new int[1024];
+    private int intCount;
+    private float[] floats = new float[16 * 1024];
+    private int floatCount;
+    private final List<String> strings = new ArrayList<>();
+
+    // far fields never change once they're made, so we can just keep a reference
+    private final List<FarFieldStars> farFields = new ArrayList<>();
+
+    // same for meshes and static points, positions and colors one after the other, and their textures (or null)
+    private final List<MeshBuffer> meshes = new ArrayList<>();
+    private final List<CubeTexture> meshTextures = new ArrayList<>();
+
+    // and point clouds
+    private final List<PointCloud> clouds = new ArrayList<>();
+
+    // how long the simulation thread spent on this frame, for the frame time log
+    private float simulationMs;
+
+    // star regions get copied into a pool that grows to the most regions a frame has seen
+    private final List<StarRegionSnapshot> regionPool = new ArrayList<>();
+    private int regionCount;
+
+    // the state draws get recorded with while we're in the 3D part of the frame (-1 = never set this frame)
+    private boolean inScene;
+    private int recordBlend;
+    private int recordDepthWrite;
+    private int recordSmooth;
+    private int recordNode;
+    private int pendingDrawInt;
+    private int pendingDrawFloat;
+    private int pendingPrimitive;
+    private float pendingSize;
+
+    // where the 3D part of the frame starts and ends in the command list, and the state it ended with
+    private int sceneStartInt;
+    private int sceneStartFloat;
+    private int sceneEndInt = -1;
+    private int sceneEndFloat;
+    private int sceneEndBlend;
+    private int sceneEndDepthWrite;
+    private int sceneEndSmooth;
+    private int sceneEndNode;
+
+    // transforms form a tree - each push makes a node under whatever was pushed before it
+    private int[] nodeParents = new int[64];
+    private float[] nodeParams = new float[64 * 4];
+    private int nodeCount;
+
+    // every draw in the 3D part: where its commands are and what state it needs
+    private static final int DRAW_INT_START = 0;
+    private static final int DRAW_INT_END = 1;
+    private static final int DRAW_FLOAT_START = 2;
+    private static final int DRAW_BLEND = 3;
+    private static final int DRAW_DEPTH_WRITE = 4;
+    private static final int DRAW_SMOOTH = 5;
+    private static final int DRAW_NODE = 6;
+    private static final int DRAW_PRIMITIVE = 7;  // -1 for star regions and the far field, MESH_PRIMITIVE for meshes, IMPOSTOR_PRIMITIVE for impostors
+    private static final int DRAW_SIZE = 8;       // float bits
+    private static final int DRAW_FIELDS = 9;
+    private int[] draws = new int[256 * DRAW_FIELDS];
+    private int drawCount;
+
+    // sort keys pack bucket, state group, transform and draw number, so these are the limits
+    private static final int MAX_SORTED = 1 << 20;
+    private static final int MAX_STATE_GROUPS = 1 << 14;
+    private static final int OPAQUE = 0;
+    private static final int ADDITIVE = 1;
+    private static final int ALPHA = 2;
+
+    // only used while replaying
+    private long[] sortKeys = new long[256];
+    private int[] groupPrimitives = new int[16];
+    private int[] groupSizes = new int[16];
+    private int[] groupSmooth = new int[16];
+    private int groupCount;
+    private int[] path = new int[16];
+    private int replayBlend;
+    private int replayDepthWrite;
+    private int replaySmooth;
+    private int replayNode;
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4f projection = new Matrix4f();
+    private final List<StarRegionSnapshot> regionBatch = new ArrayList<>();
+
+    /**
+     * Forgets the last frame so this snapshot can record a new one
+     */
+    public void clear() {
+        intCount = 0;
+        floatCount = 0;
+        strings.clear();
+        farFields.clear();
+        meshes.clear();
+        meshTextures.clear();
+        clouds.clear();
+        regionCount = 0;
+        inScene = false;
+        sceneEndInt = -1;
+        nodeCount = 0;
+        drawCount = 0;
+        simulationMs = 0;
+    }
+
+    /**
+     * @param ms How long the simulation thread spent on this frame
+     */
+    void setSimulationMs(float ms) {
+        simulationMs = ms;
+    }
+
+    /**
+     * @return How long the simulation thread spent on this frame
+     */
+    float getSimulationMs() {
+        return simulationMs;
+    }
+
+    // recording
+
+    void setViewport(int width, int height) {
+        putInt(VIEWPORT);
+        putInt(width);
+        putInt(height);
+    }
+
+    void beginFrame(Matrix4f view, Matrix4f projection) {
+        putInt(BEGIN_FRAME);
+        ensureFloats(32);
+        view.get(floats, floatCount);
+        projection.get(floats, floatCount + 16);
+        floatCount += 32;
+
+        inScene = true;
+        sceneStartInt = intCount;
+        sceneStartFloat = floatCount;
+        recordBlend = -1;
+        recordDepthWrite = -1;
+        recordSmooth = -1;
+        recordNode = -1;
+    }
+
+    void endFrame() {
+        endScene();
+        putInt(END_FRAME);
+    }
+
+    // remembers where the sortable part of the frame stops
+    private void endScene() {
+        if (!inScene) {
+            return;
+        }
+        inScene = false;
+        sceneEndInt = intCount;
+        sceneEndFloat = floatCount;
+        sceneEndBlend = recordBlend;
+        sceneEndDepthWrite = recordDepthWrite;
+        sceneEndSmooth = recordSmooth;
+        sceneEndNode = recordNode;
+    }
+
+    void pushTransform(float x, float y, float z, float rotationY) {
+        putInt(PUSH_TRANSFORM);
+        ensureFloats(4);
+        floats[floatCount++] = x;
+        floats[floatCount++] = y;
+        floats[floatCount++] = z;
+        floats[floatCount++] = rotationY;
+
+        if (inScene) {
+            if (nodeCount == nodeParents.length) {
+                int[] biggerParents = new int[nodeParents.length * 2];
+                System.arraycopy(nodeParents, 0, biggerParents, 0, nodeCount);
+                nodeParents = biggerParents;
+                float[] biggerParams = new float[nodeParams.length * 2];
+                System.arraycopy(nodeParams, 0, biggerParams, 0, nodeCount * 4);
+                nodeParams = biggerParams;
+            }
+            nodeParents[nodeCount] = recordNode;
+            nodeParams[nodeCount * 4] = x;
+            nodeParams[nodeCount * 4 + 1] = y;
+            nodeParams[nodeCount * 4 + 2] = z;
+            nodeParams[nodeCount * 4 + 3] = rotationY;
+            recordNode = nodeCount++;
+        }
+    }
+
+    void popTransform() {
+        putInt(POP_TRANSFORM);
+        if (inScene && recordNode >= 0) {
+            recordNode = nodeParents[recordNode];
+        }
+    }
+
+    void setBlendMode(Renderer.BlendMode mode) {
+        putInt(BLEND_MODE);
+        putInt(mode.ordinal());
+        recordBlend = mode.ordinal();
+    }
+
+    void setDepthWrite(boolean enabled) {
+        putInt(DEPTH_WRITE);
+        putInt(enabled ? 1 : 0);
+        recordDepthWrite = enabled ? 1 : 0;
+    }
+
+    void setSmoothPoints(boolean enabled) {
+        putInt(SMOOTH_POINTS);
+        putInt(enabled ? 1 : 0);
+        recordSmooth = enabled ? 1 : 0;
+    }
+
+    void begin(Renderer.Primitive primitive, float size) {
+        pendingDrawInt = intCount;
+        pendingDrawFloat = floatCount;
+        pendingPrimitive = primitive.ordinal();
+        pendingSize = size;
+        putInt(BEGIN);
+        putInt(primitive.ordinal());
+        ensureFloats(1);
+        floats[floatCount++] = size;
+    }
+
+    void vertex(float x, float y, float z, float r, float g, float b, float a) {
+        putInt(VERTEX);
+        ensureFloats(7);
+        floats[floatCount++] = x;
+        floats[floatCount++] = y;
+        floats[floatCount++] = z;
+        floats[floatCount++] = r;
+        floats[floatCount++] = g;
+        floats[floatCount++] = b;
+        floats[floatCount++] = a;
+    }
+
+    void point(float x, float y, float z, float size, float r, float g, float b, float a) {
+        putInt(POINT);
+        ensureFloats(8);
+        floats[floatCount++] = x;
+        floats[floatCount++] = y;
+        floats[floatCount++] = z;
+        floats[floatCount++] = size;
+        floats[floatCount++] = r;
+        floats[floatCount++] = g;
+        floats[floatCount++] = b;
+        floats[floatCount++] = a;
+    }
+
+    void end() {
+        putInt(END);
+        addDraw(pendingDrawInt, pendingDrawFloat, pendingPrimitive, pendingSize);
+    }
+
+    // writes down a draw of the 3D part along with the state it was recorded with
+    private void addDraw(int intStart, int floatStart, int primitive, float size) {
+        if (!inScene) {
+            return;
+        }
+        if ((drawCount + 1) * DRAW_FIELDS > draws.length) {
+            int[] bigger = new int[draws.length * 2];
+            System.arraycopy(draws, 0, bigger, 0, drawCount * DRAW_FIELDS);
+            draws = bigger;
+        }
+        int d = drawCount++ * DRAW_FIELDS;
+        draws[d + DRAW_INT_START] = intStart;
+        draws[d + DRAW_INT_END] = intCount;
+        draws[d + DRAW_FLOAT_START] = floatStart;
+        draws[d + DRAW_BLEND] = recordBlend;
+        draws[d + DRAW_DEPTH_WRITE] = recordDepthWrite;
+        draws[d + DRAW_SMOOTH] = recordSmooth;
+        draws[d + DRAW_NODE] = recordNode;
+        draws[d + DRAW_PRIMITIVE] = primitive;
+        draws[d + DRAW_SIZE] = Float.floatToIntBits(size);
+    }
+
+    void drawStarRegions(List<? extends StarRegionData> regions) {
+        int start = intCount;
+        putInt(STAR_REGIONS);
+        putInt(regionCount);
+        putInt(regions.size());
+        for (StarRegionData region : regions) {
+            if (regionCount == regionPool.size()) {
+                regionPool.add(new StarRegionSnapshot());
+            }
+            regionPool.get(regionCount++).capture(region);
+        }
+        addDraw(start, floatCount, -1, 0);
+    }
+
+    void drawFarField(FarFieldStars stars) {
+        int start = intCount;
+        putInt(FAR_FIELD);
+        putInt(farFields.size());
+        farFields.add(stars);
+        addDraw(start, floatCount, -1, 0);
+    }
+
+    void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a) {
+        int start = intCount;
+        int floatStart = floatCount;
+        putInt(MESH);
+        putInt(meshTextures.size());
+        meshes.add(positions);
+        meshes.add(colors);
+        meshTextures.add(texture);
+        ensureFloats(5);
+        floats[floatCount++] = scale;
+        floats[floatCount++] = r;
+        floats[floatCount++] = g;
+        floats[floatCount++] = b;
+        floats[floatCount++] = a;
+        // meshes go by the state they were recorded with, an additive one drawn with the opaque draws would get covered up
+        addDraw(start, floatStart, MESH_PRIMITIVE, 0);
+    }
+
+    void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                    float r, float g, float b, float a, float batchSize) {
+        int start = intCount;
+        int floatStart = floatCount;
+        putInt(POINTS);
+        putInt(meshTextures.size());
+        putInt(count);
+        meshes.add(points);
+        meshes.add(colors);
+        meshTextures.add(null);
+        ensureFloats(7);
+        floats[floatCount++] = scale;
+        floats[floatCount++] = pointScale;
+        floats[floatCount++] = r;
+        floats[floatCount++] = g;
+        floats[floatCount++] = b;
+        floats[floatCount++] = a;
+        floats[floatCount++] = batchSize;
+        addDraw(start, floatStart, MESH_PRIMITIVE, 0);
+    }
+
+    void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                      float fraction, float pointScale, float opacityScale) {
+        int start = intCount;
+        int floatStart = floatCount;
+        putInt(IMPOSTOR);
+        putInt(clouds.size());
+        clouds.add(cloud);
+        ensureFloats(7);
+        floats[floatCount++] = x;
+        floats[floatCount++] = y;
+        floats[floatCount++] = z;
+        floats[floatCount++] = rotationY;
+        floats[floatCount++] = fraction;
+        floats[floatCount++] = pointScale;
+        floats[floatCount++] = opacityScale;
+        addDraw(start, floatStart, IMPOSTOR_PRIMITIVE, 0);
+    }
+
+    void beginHud(int width, int height) {
+        endScene();
+        putInt(BEGIN_HUD);
+        putInt(width);
+        putInt(height);
+    }
+
+    void drawText(String text, float x, float y, float fontSize, float r, float g, float b) {
+        putInt(TEXT);
+        putInt(strings.size());
+        strings.add(text);
+        ensureFloats(6);
+        floats[floatCount++] = x;
+        floats[floatCount++] = y;
+        floats[floatCount++] = fontSize;
+        floats[floatCount++] = r;
+        floats[floatCount++] = g;
+        floats[floatCount++] = b;
+    }
+
+    void endHud() {
+        putInt(END_HUD);
+    }
+
+    private void putInt(int value) {
+        if (intCount == ints.length) {
+            int[] bigger = new int[ints.length * 2];
+            System.arraycopy(ints, 0, bigger, 0, intCount);
+            ints = bigger;
+        }
+        ints[intCount++] = value;
+    }
+
+    private void ensureFloats(int count) {
+        if (floatCount + count > floats.length) {
+            float[] bigger = new float[Math.max(floats.length * 2, floatCount + count)];
+            System.arraycopy(floats, 0, bigger, 0, floatCount);
+            floats = bigger;
+        }
+    }
+
+    // replaying
+
+    /**
+     * Sends the recorded frame to a real renderer - the 3D part sorted by state, the rest as recorded
+     * @param target The renderer that actually draws
+     */
+    public void replay(Renderer target) {
+        if (sceneEndInt < 0 || drawCount >= MAX_SORTED || nodeCount >= MAX_SORTED) {
+            // nothing to sort (or too much to pack into sort keys), just play it back in order
+            replayRange(target, 0, intCount, 0);
+            return;
+        }
+
+        replayRange(target, 0, sceneStartInt, 0);
+        replayScene(target);
+        replayRange(target, sceneEndInt, intCount, sceneEndFloat);
+    }
+
+    private void replayScene(Renderer target) {
+        // we don't know what state the backend was left in
+        replayBlend = -1;
+        replayDepthWrite = -1;
+        replaySmooth = -1;
+        replayNode = -1;
+
+        if (sortKeys.length < drawCount) {
+            sortKeys = new long[Math.max(drawCount, sortKeys.length * 2)];
+        }
+        groupCount = 0;
+        for (int n = 0; n < drawCount; n++) {
+            int d = n * DRAW_FIELDS;
+            int bucket = bucketOf(d);
+            long key = (long) bucket << 56;
+            if (bucket == ADDITIVE) {
+                key |= (long) stateGroupOf(d) << 40 | (long) (draws[d + DRAW_NODE] + 1) << 20;
+            }
+            sortKeys[n] = key | n;
+        }
+        Arrays.sort(sortKeys, 0, drawCount);
+
+        for (int k = 0; k < drawCount; k++) {
+            int d = (int) (sortKeys[k] & (MAX_SORTED - 1)) * DRAW_FIELDS;
+            applyState(target, draws[d + DRAW_BLEND], draws[d + DRAW_DEPTH_WRITE], draws[d + DRAW_SMOOTH]);
+            moveToNode(target, draws[d + DRAW_NODE]);
+            replayRange(target, draws[d + DRAW_INT_START], draws[d + DRAW_INT_END], draws[d + DRAW_FLOAT_START]);
+            if (draws[d + DRAW_PRIMITIVE] < 0 || draws[d + DRAW_PRIMITIVE] == IMPOSTOR_PRIMITIVE) {
+                // star regions, the far field and impostors set up their own state in the backend
+                replayBlend = -1;
+                replayDepthWrite = -1;
+                replaySmooth = -1;
+            }
+        }
+
+        // leave things the way the scene ended when it was recorded, which is what the HUD expects
+        applyState(target, sceneEndBlend, sceneEndDepthWrite, sceneEndSmooth);
+        moveToNode(target, sceneEndNode);
+    }
+
+    // which group a draw gets sorted into
+    private int bucketOf(int d) {
+        if (draws[d + DRAW_PRIMITIVE] < 0 || draws[d + DRAW_DEPTH_WRITE] != 0) {
+            return OPAQUE;
+        }
+        if (draws[d + DRAW_BLEND] == Renderer.BlendMode.ADDITIVE.ordinal()) {
+            return ADDITIVE;
+        }
+        if (draws[d + DRAW_BLEND] == Renderer.BlendMode.ALPHA.ordinal()) {
+            return ALPHA;
+        }
+        return OPAQUE;
+    }
+
+    // gives draws that would be drawn exactly the same way the same number
+    private int stateGroupOf(int d) {
+        int primitive = draws[d + DRAW_PRIMITIVE];
+        int size = draws[d + DRAW_SIZE];
+        int smooth = draws[d + DRAW_SMOOTH];
+        for (int g = 0; g < groupCount; g++) {
+            if (groupPrimitives[g] == primitive && groupSizes[g] == size && groupSmooth[g] == smooth) {
+                return g;
+            }
+        }
+        if (groupCount == MAX_STATE_GROUPS - 1) {
+            return groupCount;  // everything past the limit shares the last group
+        }
+        if (groupCount == groupPrimitives.length) {
+            groupPrimitives = Arrays.copyOf(groupPrimitives, groupCount * 2);
+            groupSizes = Arrays.copyOf(groupSizes, groupCount * 2);
+            groupSmooth = Arrays.copyOf(groupSmooth, groupCount * 2);
+        }
+        groupPrimitives[groupCount] = primitive;
+        groupSizes[groupCount] = size;
+        groupSmooth[groupCount] = smooth;
+        return groupCount++;
+    }
+
+    // only tells the backend about state that's actually different (-1 means the draw doesn't care)
+    private void applyState(Renderer target, int blend, int depthWrite, int smooth) {
+        if (blend >= 0 && blend != replayBlend) {
+            target.setBlendMode(BLEND_MODES[blend]);
+            replayBlend = blend;
+        }
+        if (depthWrite >= 0 && depthWrite != replayDepthWrite) {
+            target.setDepthWrite(depthWrite == 1);
+            replayDepthWrite = depthWrite;
+        }
+        if (smooth >= 0 && smooth != replaySmooth) {
+            target.setSmoothPoints(smooth == 1);
+            replaySmooth = smooth;
+        }
+    }
+
+    // pops back to where the two transforms share a parent, then pushes down to the new one
+    private void moveToNode(Renderer target, int node) {
+        if (node == replayNode) {
+            return;
+        }
+        int depth = 0;
+        for (int n = node; n >= 0; n = nodeParents[n]) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = n;
+        }
+        while (replayNode >= 0 && indexOf(path, depth, replayNode) < 0) {
+            target.popTransform();
+            replayNode = nodeParents[replayNode];
+        }
+        int shared = replayNode < 0 ? depth : indexOf(path, depth, replayNode);
+        for (int p = shared - 1; p >= 0; p--) {
+            int n = path[p] * 4;
+            target.pushTransform(nodeParams[n], nodeParams[n + 1], nodeParams[n + 2], nodeParams[n + 3]);
+        }
+        replayNode = node;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Plays back a stretch of the command list exactly as it was recorded
+     */
+    private void replayRange(Renderer target, int from, int to, int floatStart) {
+        int i = from;
+        int f = floatStart;
+        while (i < to) {
+            switch (ints[i++]) {
+                case BEGIN_FRAME:
+                    view.set(floats, f);
+                    projection.set(floats, f + 16);
+                    f += 32;
+                    target.beginFrame(view, projection);
+                    break;
+                case END_FRAME:
+                    target.endFrame();
+                    break;
+                case PUSH_TRANSFORM:
+                    target.pushTransform(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+                    f += 4;
+                    break;
+                case POP_TRANSFORM:
+                    target.popTransform();
+                    break;
+                case BLEND_MODE:
+                    target.setBlendMode(BLEND_MODES[ints[i++]]);
+                    break;
+                case DEPTH_WRITE:
+                    target.setDepthWrite(ints[i++] == 1);
+                    break;
+                case SMOOTH_POINTS:
+                    target.setSmoothPoints(ints[i++] == 1);
+                    break;
+                case BEGIN:
+                    target.begin(PRIMITIVES[ints[i++]], floats[f++]);
+                    break;
+                case VERTEX:
+                    target.vertex(floats[f], floats[f + 1], floats[f + 2],
+                        floats[f + 3], floats[f + 4], floats[f + 5], floats[f + 6]);
+                    f += 7;
+                    break;
+                case POINT:
+                    target.point(floats[f], floats[f + 1], floats[f + 2], floats[f + 3],
+                        floats[f + 4], floats[f + 5], floats[f + 6], floats[f + 7]);
+                    f += 8;
+                    break;
+                case END:
+                    target.end();
+                    break;
+                case STAR_REGIONS: {
+                    int first = ints[i++];
+                    int count = ints[i++];
+                    regionBatch.clear();
+                    for (int r = first; r < first + count; r++) {
+                        regionBatch.add(regionPool.get(r));
+                    }
+                    target.drawStarRegions(regionBatch);
+                    break;
+                }
+                case FAR_FIELD:
+                    target.drawFarField(farFields.get(ints[i++]));
+                    break;
+                case MESH: {
+                    int mesh = ints[i++];
+                    target.drawMesh(meshes.get(mesh * 2), meshes.get(mesh * 2 + 1), meshTextures.get(mesh), floats[f],
+                        floats[f + 1], floats[f + 2], floats[f + 3], floats[f + 4]);
+                    f += 5;
+                    break;
+                }
+                case POINTS: {
+                    int mesh = ints[i++];
+                    int count = ints[i++];
+                    target.drawPoints(meshes.get(mesh * 2), meshes.get(mesh * 2 + 1), count,
+                        floats[f], floats[f + 1], floats[f + 2], floats[f + 3], floats[f + 4], floats[f + 5], floats[f + 6]);
+                    f += 7;
+                    break;
+                }
+                case IMPOSTOR:
+                    target.drawImpostor(clouds.get(ints[i++]), floats[f], floats[f + 1], floats[f + 2], floats[f + 3],
+                        floats[f + 4], floats[f + 5], floats[f + 6]);
+                    f += 7;
+                    break;
+                case BEGIN_HUD:
+                    target.beginHud(ints[i], ints[i + 1]);
+                    i += 2;
+                    break;
+                case TEXT:
+                    target.drawText(strings.get(ints[i++]), floats[f], floats[f + 1], floats[f + 2],
+                        floats[f + 3], floats[f + 4], floats[f + 5]);
+                    f += 6;
+                    break;
+                case END_HUD:
+                    target.endHud();
+                    break;
+                case VIEWPORT:
+                    target.setViewport(ints[i], ints[i + 1]);
+                    i += 2;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown frame command " + ints[i - 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIMESTAMP;
+import static org.lwjgl.opengl.GL33.glGetQueryObjecti64;
+import static org.lwjgl.opengl.GL33.glQueryCounter;
+
+/**
+ * Writes a CSV line for every frame the render thread draws: how long the simulation
+ * spent on it, how long replaying it took on the render thread, and how long the GPU
+ * took. Made for comparing rendering changes on build machines, so it goes in a file
+ * instead of the debug overlay.
+ *
+ * GPU time comes from a pair of timestamp queries around the whole frame (the scene
+ * framebuffer already has a time-elapsed query running inside it, and those can't
+ * nest). Results come back a few frames late, so lines get written as they arrive
+ */
+public class FrameTimeLog {
+    // frames of queries in flight
+    private static final int FRAMES = 8;
+
+    private final PrintWriter out;
+    private final boolean supported;
+    private final int[] startQueries = new int[FRAMES];
+    private final int[] endQueries = new int[FRAMES];
+
+    // what we know about each frame in flight, waiting for its GPU time
+    private final long[] frameNumbers = new long[FRAMES];
+    private final float[] simulationMs = new float[FRAMES];
+    private final float[] submitMs = new float[FRAMES];
+    private final boolean[] pending = new boolean[FRAMES];
+
+    private int current;
+    private int oldest;
+    private long frameNumber;
+    private long submitStart;
+
+    /**
+     * Opens the file and writes the header. Needs a GL context
+     * @param path Where to write the CSV
+     */
+    public FrameTimeLog(String path) {
+        try {
+            out = new PrintWriter(new FileWriter(path));
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't open " + path + " for the frame time log", e);
+        }
+        out.println("frame,simulation_ms,submit_ms,gpu_ms");
+
+        GLCapabilities caps = GL.getCapabilities();
+        supported = caps.OpenGL33 || caps.GL_ARB_timer_query;
+        if (supported) {
+            for (int i = 0; i < FRAMES; i++) {
+                startQueries[i] = glGenQueries();
+                endQueries[i] = glGenQueries();
+            }
+        }
+    }
+
+    /**
+     * Call right before the render thread starts replaying a frame
+     */
+    public void beginFrame() {
+        if (pending[current]) {
+            // the GPU is a whole ring behind, wait for the oldest frame so we don't lose it
+            writeOldest(true);
+        }
+        submitStart = System.nanoTime();
+        if (supported) {
+            glQueryCounter(startQueries[current], GL_TIMESTAMP);
+        }
+    }
+
+    /**
+     * Call once the frame has been replayed (and swapped, if there's a window)
+     * @param frameSimulationMs How long the simulation thread spent on the frame
+     */
+    public void endFrame(float frameSimulationMs) {
+        if (supported) {
+            glQueryCounter(endQueries[current], GL_TIMESTAMP);
+        }
+        frameNumbers[current] = frameNumber++;
+        simulationMs[current] = frameSimulationMs;
+        submitMs[current] = (System.nanoTime() - submitStart) / 1_000_000.0f;
+        pending[current] = true;
+        current = (current + 1) % FRAMES;
+
+        // write out whatever's finished, in order
+        while (pending[oldest]) {
+            if (!writeOldest(false)) {
+                break;
+            }
+        }
+    }
+
+    // writes the oldest frame's line if its GPU time is in (or if we're told to wait for it)
+    private boolean writeOldest(boolean wait) {
+        float gpuMs = -1;
+        if (supported) {
+            if (!wait && glGetQueryObjecti(endQueries[oldest], GL_QUERY_RESULT_AVAILABLE) != GL_TRUE) {
+                return false;
+            }
+            long start = glGetQueryObjecti64(startQueries[oldest], GL_QUERY_RESULT);
+            long end = glGetQueryObjecti64(endQueries[oldest], GL_QUERY_RESULT);
+            gpuMs = (end - start) / 1_000_000.0f;
+        }
+        out.println(String.format(Locale.ROOT, "%d,%.3f,%.3f,%.3f", frameNumbers[oldest], simulationMs[oldest], submitMs[oldest], gpuMs));
+        pending[oldest] = false;
+        oldest = (oldest + 1) % FRAMES;
+        return true;
+    }
+
+    /**
+     * Waits for the frames still in flight, writes them and closes the file
+     */
+    public void close() {
+        while (pending[oldest]) {
+            writeOldest(true);
+        }
+        out.close();
+        if (supported) {
+            for (int i = 0; i < FRAMES; i++) {
+                glDeleteQueries(startQueries[i]);
+                glDeleteQueries(endQueries[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.galaxysim;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Remembers the GL state a renderer last set (blending, depth writes, point smoothing,
+ * point and line sizes) so setting it again to the same thing doesn't reach the driver.
+ * Every call counts as either a real change or a skipped one in the frame's RenderStats.
+ *
+ * Anything that touches this state without going through here (bloom, the far field sky...)
+ * has to be followed by invalidate(), otherwise we'd skip calls that actually matter
+ */
+public class GLStateCache {
+    // -1 means we don't know, so the next call always goes through
+    private int blend = -1;
+    private int blendSource = -1;
+    private int blendDestination = -1;
+    private int depthMask = -1;
+    private int pointSmooth = -1;
+    private float pointSize = -1;
+    private float lineWidth = -1;
+
+    private final RenderStats stats;
+
+    /**
+     * @param stats Where to count state changes
+     */
+    public GLStateCache(RenderStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Forgets everything, so the next call of each kind goes through no matter what
+     */
+    public void invalidate() {
+        blend = -1;
+        blendSource = -1;
+        blendDestination = -1;
+        depthMask = -1;
+        pointSmooth = -1;
+        pointSize = -1;
+        lineWidth = -1;
+    }
+
+    public void setBlend(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (blend == value) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        blend = value;
+        if (enabled) {
+            glEnable(GL_BLEND);
+        } else {
+            glDisable(GL_BLEND);
+        }
+        stats.addStateChange();
+    }
+
+    public void setBlendFunc(int source, int destination) {
+        if (blendSource == source && blendDestination == destination) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        blendSource = source;
+        blendDestination = destination;
+        glBlendFunc(source, destination);
+        stats.addStateChange();
+    }
+
+    public void setDepthMask(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (depthMask == value) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        depthMask = value;
+        glDepthMask(enabled);
+        stats.addStateChange();
+    }
+
+    public void setPointSmooth(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (pointSmooth == value) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        pointSmooth = value;
+        if (enabled) {
+            glEnable(GL_POINT_SMOOTH);
+            glHint(GL_POINT_SMOOTH_HINT, GL_NICEST);
+        } else {
+            glDisable(GL_POINT_SMOOTH);
+        }
+        stats.addStateChange();
+    }
+
+    public void setPointSize(float size) {
+        if (pointSize == size) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        pointSize = size;
+        glPointSize(size);
+        stats.addStateChange();
+    }
+
+    public void setLineWidth(float width) {
+        if (lineWidth == width) {
+            stats.addRedundantStateChange();
+            return;
+        }
+        lineWidth = width;
+        glLineWidth(width);
+        stats.addStateChange();
+    }
+}
@@ -1,18 +1,20 @@
 package com.galaxysim;
 
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.glfw.*;
 import org.lwjgl.opengl.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
 import static org.lwjgl.glfw.Callbacks.*;
 import static org.lwjgl.glfw.GLFW.*;
-import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.system.MemoryUtil.*;
 
 public class GalaxySimulator {
@@ -23,8 +25,10 @@ public class GalaxySimulator {
 
     // camera stuff - this is how we move around in space
     private Vector3f cameraPos;      // where we are in space
-    private CoordinatesFontRenderer coordinatesFontRenderer;
+    private Renderer renderer;       // what the scene draws into (gets recorded and drawn by the render thread)
+    private RenderThread renderThread;  // owns the real backend and the GL context
     private Vector3f cameraFront;    // which way we're looking
+    private final Vector3f previousCameraPos = new Vector3f();  // where we were one simulation step ago
     private Vector3f cameraUp;       // which way is up (so you don't get disoriented)
     
     // mouse looking stuff - helps us look around smoothly
@@ -34,80 +38,105 @@ public class GalaxySimulator {
     private float lastY = HEIGHT / 2.0f; // last mouse y pos
 
     // the actual space stuff
-    private List<Star> stars;         // all stars
+    private Map<Long, StarRegion> starRegions;  // all stars, grouped by the region they sit in
     private List<Stars.ShootingStar> shootingStars; // shooting stars with trails
     private List<Nebula> nebulae;     // colorful gas clouds
     private List<Bodies.Sun> suns;    // large stars (suns)
+    private SolarFlares solarFlares;  // flares and prominences coming off them
     private Random random;            
     private Set<String> generatedRegions;  // keeps track of where the game has already made stars
     private static final float REGION_SIZE = DispersionSettings.getRegionSize();  // how big each chunk of space is
 
-    // this is what each star is made of
-    // Changed from static to non-static class to access the random field
-    private class Star {
-        Vector3f position;    // where the star is in space
-        float size;          // how chunky the star is
-        float brightness;    // how bright and shiny it is
-        
-        // Flag to identify if this is a scattered star or a clustered star
-        boolean isScatteredStar; // true if this is a scattered star (should glimmer)
-        
-        // Glimmering effect properties
-        boolean canGlimmer;   // whether this star can glimmer
-        float glimmerChance;  // chance of glimmering each frame
-        float glimmerIntensity; // how bright the glimmer is
-        boolean isGlimmering; // current glimmering state
-        float currentBrightness; // current brightness with glimmer effect
-
-        // Constructor with flag to identify scattered vs clustered stars
-        Star(Vector3f position, float size, float brightness, boolean isScatteredStar) {
-            this.position = position;
-            this.size = size;
-            this.brightness = brightness;
-            this.currentBrightness = brightness;
-            this.isScatteredStar = isScatteredStar;
-            
-            // Only scattered stars can glimmer
-            if (isScatteredStar) {
-                // High chance for scattered stars to glimmer
-                this.canGlimmer = random.nextFloat() < 0.9f; // 90% of scattered stars can glimmer
-                // How often the star glimmers - high chance for scattered stars
-                this.glimmerChance = random.nextFloat() * 0.05f + 0.03f; // 3-8% chance per frame
-                // How intense the glimmer is (1.8x to 3.0x normal brightness)
-                this.glimmerIntensity = random.nextFloat() * 1.2f + 1.8f;
-            } else {
-                // Clustered stars don't glimmer
-                this.canGlimmer = false;
-                this.glimmerChance = 0;
-                this.glimmerIntensity = 1.0f;
-            }
-            this.isGlimmering = false;
-        }
-        
-        // Update the star's glimmering state
-        void update() {
-            // Only scattered stars can glimmer
-            if (!isScatteredStar || !canGlimmer) {
-                return; // This star doesn't glimmer
-            }
-            
-            // Check if we should start glimmering
-            if (!isGlimmering && random.nextFloat() < glimmerChance) {
-                isGlimmering = true;
-                currentBrightness = brightness * glimmerIntensity;
-            } 
-            // Check if we should stop glimmering (glimmers are brief)
-            else if (isGlimmering && random.nextFloat() < 0.15f) { // 15% chance to stop each frame
-                isGlimmering = false;
-                currentBrightness = brightness;
-            }
-        }
+    // orbits of every planet in a system near the camera (inside the streaming radius), and which
+    // systems those are. Systems further out aren't in there, so they cost nothing
+    private final KeplerOrbits planetOrbits = new KeplerOrbits();
+    private final List<Bodies.PlanetarySystem> residentSystems = new ArrayList<>();
+    private final List<Bodies.PlanetarySystem> nearbySystems = new ArrayList<>();
+
+    // what the nearby systems were last worked out for - they only get looked for again when one of these changes
+    private int planetRegionX, planetRegionY, planetRegionZ;
+    private int planetRadius = -1;
+    private int planetSunCount = -1;
+
+    // regions that get drawn this frame, and the stuff to work them out (reused every frame)
+    private final List<StarRegion> visibleRegions = new ArrayList<>();
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final Camera camera = new Camera();
+
+    // HUD look - light blue coordinates drawn with 2px points when the font isn't around
+    private static final float HUD_R = 0.8f;
+    private static final float HUD_G = 0.9f;
+    private static final float HUD_B = 1.0f;
+    private static final float HUD_POINT_SIZE = 2.0f;
+
+    // keeps the frame rate up by turning quality down, and the overlay that shows what it's doing
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+    private boolean debugOverlay = false;
+    private static final float DEBUG_LINE_HEIGHT = 20.0f;
+
+    // the stars past the streaming radius, made in the background and drawn as a sky
+    private final FarField farField = new FarField(REGION_SIZE);
+
+    // what a headless run does unless told otherwise
+    private static final int HEADLESS_BENCHMARK_SECONDS = 20;
+    private static final String HEADLESS_FRAME_LOG = "frame-times.csv";
+
+    // waits between frames when pacing is fixed rate
+    private final FramePacer framePacer = new FramePacer();
+    // frame times for --benchmark, null when we're just playing
+    private BenchmarkRecorder benchmark;
+    // where --frame-log writes every frame's times, null if nowhere
+    private String frameLogPath;
+    // saves or compares frames for --capture/--compare, null otherwise
+    private FrameCapture capture;
+    // simulation steps so far, which is where deterministic runs are on the camera path
+    private long simulationSteps;
+
+    /**
+     * Runs as a benchmark instead: skips the homescreen, runs uncapped at fixed quality,
+     * and prints frame time percentiles on exit
+     * @param seconds How long to run for (after warmup), or 0 to run until the window is closed
+     */
+    public void enableBenchmark(float seconds) {
+        benchmark = new BenchmarkRecorder(seconds);
+        RenderSettings.setFramePacing(RenderSettings.FramePacing.UNCAPPED);
+        // the governor and dynamic resolution would change what's being measured mid-run
+        QualitySettings.setGovernorEnabled(false);
+        RenderSettings.setDynamicResolutionEnabled(false);
+    }
+
+    /**
+     * Makes every run the same: a fixed seed, one simulation step per frame, the scripted camera
+     * path instead of input, and nothing that reacts to timing (governor, dynamic resolution,
+     * far stars arriving late, frames skipped by the render thread). Skips the homescreen too
+     */
+    public void enableDeterministic() {
+        CaptureSettings.setDeterministic(true);
+        RenderSettings.setRenderThreadEnabled(false);
+        RenderSettings.setFramePacing(RenderSettings.FramePacing.UNCAPPED);
+        QualitySettings.setGovernorEnabled(false);
+        RenderSettings.setDynamicResolutionEnabled(false);
+        farField.setSynchronous(true);
+    }
+
+    /**
+     * @return How many captured frames didn't match their reference image (0 if nothing was compared)
+     */
+    public int getCaptureFailures() {
+        return capture != null ? capture.getFailures() : 0;
+    }
+
+    /**
+     * Writes the simulation, submit and GPU time of every frame into a CSV file
+     * @param path Where to write it
+     */
+    public void setFrameLog(String path) {
+        frameLogPath = path;
     }
 
     public void run() {
-        // Show homescreen first
-        Homescreen homescreen = new Homescreen();
-        boolean startGame = homescreen.show();
+        // Show homescreen first (benchmarks and deterministic runs go straight in)
+        boolean startGame = benchmark != null || CaptureSettings.isDeterministic() || new Homescreen().show();
         
         // Only start the game if the user clicked play
         // (no duh)
@@ -115,14 +144,23 @@ public class GalaxySimulator {
             init();
             loop();
 
+            // stop the render thread, it cleans up the renderer while its GL context is still around
+            renderThread.stop();
+            farField.cleanup();
+
+            if (benchmark != null) {
+                benchmark.printSummary();
+            }
+            if (capture != null && CaptureSettings.getReferenceDirectory() != null) {
+                System.out.println(capture.getFailures() == 0 ? "All captured frames match"
+                    : capture.getFailures() + " captured frame(s) didn't match");
+            }
+
             glfwFreeCallbacks(window);
             glfwDestroyWindow(window);
         }
         
         // clean up GLFW
-        if (coordinatesFontRenderer != null) {
-            coordinatesFontRenderer.cleanup();
-        }
         glfwTerminate();
         glfwSetErrorCallback(null).free();
     }
@@ -131,7 +169,10 @@ public class GalaxySimulator {
         // setup error handling first (in case it crashes out)
         GLFWErrorCallback.createPrint(System.err).set();
 
-        // try to start up our window system
+        // try to start up our window system (headless runs might need one without a display)
+        if (RenderSettings.isHeadless()) {
+            HeadlessContext.prepareInit();
+        }
         if (!glfwInit()) {
             throw new IllegalStateException("uh oh, GLFW didn't want to start :(");
         }
@@ -146,6 +187,9 @@ public class GalaxySimulator {
         glfwDefaultWindowHints();
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
         glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
+        if (RenderSettings.isHeadless()) {
+            HeadlessContext.applyWindowHints();
+        }
 
         window = glfwCreateWindow(WIDTH, HEIGHT, "HexaNebula", NULL, NULL);
         if (window == NULL) {
@@ -161,34 +205,51 @@ public class GalaxySimulator {
                 (vidmode.height() - HEIGHT) / 2
             );
         }
+        // the swap interval gets set by whoever renders, depending on the frame pacing
         glfwMakeContextCurrent(window);
-        glfwSwapInterval(1);
         
         // Disable cursor before showing the window
         glfwSetInputMode(window, GLFW_CURSOR, GLFW_CURSOR_DISABLED);
         
-        glfwShowWindow(window);
+        if (!RenderSettings.isHeadless()) {
+            glfwShowWindow(window);
+        }
 
-        // setup ESC key callback
+        // setup ESC key callback (and the debug overlay and frame pacing toggles)
         glfwSetKeyCallback(window, (windowHandle, key, scancode, action, mods) -> {
             if (key == GLFW_KEY_ESCAPE && action == GLFW_PRESS) {
                 glfwSetWindowShouldClose(windowHandle, true);
+            } else if (key == ControlSettings.getDebugOverlayKey() && action == GLFW_PRESS) {
+                debugOverlay = !debugOverlay;
+            } else if (key == ControlSettings.getFramePacingKey() && action == GLFW_PRESS) {
+                RenderSettings.cycleFramePacing();
+                System.out.println("Frame pacing: " + FramePacer.describe());
             }
         });
 
         GL.createCapabilities();
-        glEnable(GL_DEPTH_TEST);
 
-        // Initialize font renderer for coordinates
-        coordinatesFontRenderer = new CoordinatesFontRenderer(16.0f);
-        coordinatesFontRenderer.init();
+        // Start the rendering backend (on its own thread unless that's turned off)
+        renderThread = new RenderThread(window, RenderSettings.isRenderThreadEnabled());
+        if (frameLogPath != null) {
+            renderThread.setFrameLog(frameLogPath);
+        }
+        if (CaptureSettings.isCapturing()) {
+            capture = new FrameCapture();
+            renderThread.setFrameCapture(capture);
+        }
+        renderer = renderThread.start();
+        System.out.println("Rendering with the " + renderer.getName() + " renderer"
+                + (renderThread.isThreaded() ? " on its own thread" : "")
+                + (RenderSettings.isHeadless() ? ", headless through " + HeadlessContext.describe() : ""));
 
         // Initialize our collections
-        stars = new ArrayList<>();
+        starRegions = new HashMap<>();
         shootingStars = new ArrayList<>();
         nebulae = new ArrayList<>();
         suns = new ArrayList<>();
-        random = new Random();
+        random = CaptureSettings.isDeterministic() ? new Random(CaptureSettings.getSeed()) : new Random();
+        solarFlares = new SolarFlares(CaptureSettings.isDeterministic() ? new Random(CaptureSettings.getSeed() + 1) : new Random());
         generatedRegions = new HashSet<>();
 
         // Make sure cursor is hidden and set initial position
@@ -201,6 +262,9 @@ public class GalaxySimulator {
 
         // setup mouse callback
         glfwSetCursorPosCallback(window, (windowHandle, xpos, ypos) -> {
+            if (CaptureSettings.isDeterministic()) {
+                return;  // the camera path does the looking
+            }
             float xOffset = (float) xpos - lastX;
             float yOffset = lastY - (float) ypos;
             lastX = (float) xpos;
@@ -267,7 +331,127 @@ public class GalaxySimulator {
             float brightness = 1.0f - distanceFromCenter * 0.5f;
             
             // add new star as a clustered star (doesn't glimmer)
-            stars.add(new Star(new Vector3f(x, y, z), size, brightness, false));
+            addStar(new StarRegion.Star(new Vector3f(x, y, z), size, brightness, false, random));
+        }
+    }
+
+    /**
+     * Puts a star into whichever region its position falls in, making the region if it's new
+     * @param star The star to add
+     */
+    private void addStar(StarRegion.Star star) {
+        int regionX = (int) Math.floor(star.position.x / REGION_SIZE);
+        int regionY = (int) Math.floor(star.position.y / REGION_SIZE);
+        int regionZ = (int) Math.floor(star.position.z / REGION_SIZE);
+        long key = StarRegion.key(regionX, regionY, regionZ);
+
+        StarRegion region = starRegions.get(key);
+        if (region == null) {
+            region = new StarRegion(regionX, regionY, regionZ, REGION_SIZE);
+            starRegions.put(key, region);
+        }
+        region.addStar(star);
+    }
+
+    /**
+     * Checks if any star is closer to a point than the given distance.
+     * Only looks at the point's region and its neighbours, which is fine as long as
+     * the distance is smaller than a region
+     */
+    private boolean hasStarNear(Vector3f point, float distance) {
+        int centerX = (int) Math.floor(point.x / REGION_SIZE);
+        int centerY = (int) Math.floor(point.y / REGION_SIZE);
+        int centerZ = (int) Math.floor(point.z / REGION_SIZE);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    StarRegion region = starRegions.get(StarRegion.key(centerX + dx, centerY + dy, centerZ + dz));
+                    if (region != null && region.hasStarWithin(point, distance)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out which star regions are close enough to the camera and inside the view
+     * @param camera The camera this frame
+     */
+    private void collectVisibleRegions(Camera camera) {
+        visibleRegions.clear();
+        frustum.set(camera.getViewProjection());
+        Vector3f cameraPos = camera.getPosition();
+
+        int radius = QualitySettings.getStreamingRadius();
+        int cameraRegionX = (int) Math.floor(cameraPos.x / REGION_SIZE);
+        int cameraRegionY = (int) Math.floor(cameraPos.y / REGION_SIZE);
+        int cameraRegionZ = (int) Math.floor(cameraPos.z / REGION_SIZE);
+
+        for (StarRegion region : starRegions.values()) {
+            if (Math.abs(region.getRegionX() - cameraRegionX) > radius
+                    || Math.abs(region.getRegionY() - cameraRegionY) > radius
+                    || Math.abs(region.getRegionZ() - cameraRegionZ) > radius) {
+                continue;
+            }
+            if (frustum.testAab(region.getMinX(), region.getMinY(), region.getMinZ(),
+                    region.getMaxX(), region.getMaxY(), region.getMaxZ())) {
+                visibleRegions.add(region);
+            }
+        }
+    }
+
+    /**
+     * Works out where every planet near the camera is. Suns only get checked against the streaming
+     * radius when the camera moves into another region, the radius changes or new suns show up,
+     * and the shared orbits only get rebuilt when a system comes into or drops out of it
+     * @param camera The camera this frame
+     * @param time Simulated seconds to put the planets at
+     */
+    private void updatePlanets(Camera camera, double time) {
+        Vector3f cameraPos = camera.getPosition();
+        int radius = QualitySettings.getStreamingRadius();
+        int cameraRegionX = (int) Math.floor(cameraPos.x / REGION_SIZE);
+        int cameraRegionY = (int) Math.floor(cameraPos.y / REGION_SIZE);
+        int cameraRegionZ = (int) Math.floor(cameraPos.z / REGION_SIZE);
+
+        if (cameraRegionX != planetRegionX || cameraRegionY != planetRegionY || cameraRegionZ != planetRegionZ
+                || radius != planetRadius || suns.size() != planetSunCount) {
+            planetRegionX = cameraRegionX;
+            planetRegionY = cameraRegionY;
+            planetRegionZ = cameraRegionZ;
+            planetRadius = radius;
+            planetSunCount = suns.size();
+            collectNearbySystems(cameraRegionX, cameraRegionY, cameraRegionZ, radius);
+        }
+        planetOrbits.evaluate(time);
+    }
+
+    // finds the systems inside the streaming radius and swaps the orbits over if they're different from last time
+    private void collectNearbySystems(int cameraRegionX, int cameraRegionY, int cameraRegionZ, int radius) {
+        nearbySystems.clear();
+        for (Bodies.Sun sun : suns) {
+            Bodies.PlanetarySystem system = sun.getPlanetarySystem();
+            Vector3f position = sun.getPosition();
+            if (system != null
+                    && Math.abs((int) Math.floor(position.x / REGION_SIZE) - cameraRegionX) <= radius
+                    && Math.abs((int) Math.floor(position.y / REGION_SIZE) - cameraRegionY) <= radius
+                    && Math.abs((int) Math.floor(position.z / REGION_SIZE) - cameraRegionZ) <= radius) {
+                nearbySystems.add(system);
+            }
+        }
+
+        if (!nearbySystems.equals(residentSystems)) {
+            for (Bodies.PlanetarySystem system : residentSystems) {
+                system.removed();
+            }
+            planetOrbits.clear();
+            for (Bodies.PlanetarySystem system : nearbySystems) {
+                system.addTo(planetOrbits);
+            }
+            residentSystems.clear();
+            residentSystems.addAll(nearbySystems);
         }
     }
 
@@ -336,13 +520,7 @@ public class GalaxySimulator {
                             );
                             
                             // check distance from existing stars
-                            boolean tooClose = false;
-                            for (Star star : stars) {
-                                if (star.position.distance(potentialCenter) < minClusterDist) {
-                                    tooClose = true;
-                                    break;
-                                }
-                            }
+                            boolean tooClose = hasStarNear(potentialCenter, minClusterDist);
                             
                             if (!tooClose) {
                                 // calculate cluster size based on distance from origin
@@ -366,7 +544,11 @@ public class GalaxySimulator {
         }
     }
 
-    private void handleInput() {
+    /**
+     * Moves the camera for one simulation step
+     * @param deltaTime Length of the step in seconds
+     */
+    private void handleInput(float deltaTime) {
         // figure out how fast we should move
         float currentSpeed = SpeedSettings.getDefaultSpeed();
         
@@ -374,6 +556,9 @@ public class GalaxySimulator {
         if (ControlSettings.isAmplifySpeedPressed(window)) {
             currentSpeed = SpeedSettings.getAmplifiedSpeed();  // speedy
         }
+
+        // speeds are in units per 60fps frame, turn that into how far we go this step
+        currentSpeed *= deltaTime / SimulationClock.DEFAULT_STEP_SECONDS;
         
         // Forward movement
         if (glfwGetKey(window, ControlSettings.getMoveForwardKey()) == GLFW_PRESS) {
@@ -407,105 +592,182 @@ public class GalaxySimulator {
     }
 
     private void loop() {
-        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        SimulationClock clock = new SimulationClock(SimulationClock.DEFAULT_STEP_SECONDS, CaptureSettings.isDeterministic());
+        Vector3f renderCameraPos = new Vector3f();
+        int[] framebufferWidth = new int[1];
+        int[] framebufferHeight = new int[1];
+        long lastFrameTime = System.nanoTime();
 
-        while (!glfwWindowShouldClose(window)) {
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        while (!glfwWindowShouldClose(window) && renderThread.isRunning() && (capture == null || !capture.isDone())) {
+            // let the governor know how long the last frame took
+            long now = System.nanoTime();
+            float frameSeconds = (now - lastFrameTime) / 1_000_000_000.0f;
+            qualityGovernor.frameFinished(frameSeconds);
+            lastFrameTime = now;
+            if (benchmark != null) {
+                benchmark.frameFinished(frameSeconds);
+                if (benchmark.isFinished()) {
+                    break;
+                }
+            }
 
-            handleInput();
+            // run however many fixed steps fit in the time that passed
+            int steps = clock.advance();
+            for (int i = 0; i < steps; i++) {
+                updateSimulation(clock.getStepSeconds());
+            }
 
-            // update perspective and camera
-            float aspect = (float) WIDTH / HEIGHT;
-            Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(45.0f), aspect, 0.1f, 10000.0f); // Increased far plane for distant visibility
-            Matrix4f view = new Matrix4f().lookAt(
-                    cameraPos,
-                    new Vector3f(cameraPos).add(cameraFront),
-                    cameraUp
-            );
+            // generate new star clusters, and new far stars once we cross into another super-region
+            generateNewClusters();
+            if (RenderSettings.isFarFieldEnabled()) {
+                farField.update(cameraPos);
+            }
 
-            // update and render stars
-            for (Star star : stars) {
-                star.update(); // Update glimmering state
-                renderStar(star, view, projection);
+            // blend the camera between the last two steps so movement is smooth at any frame rate
+            float alpha = clock.getAlpha();
+            previousCameraPos.lerp(cameraPos, alpha, renderCameraPos);
+
+            // update perspective and camera (same matrices every frame, just new values)
+            glfwGetFramebufferSize(window, framebufferWidth, framebufferHeight);
+            camera.update(renderCameraPos, cameraFront, cameraUp, (float) WIDTH / HEIGHT, framebufferHeight[0]);
+            renderer.setViewport(framebufferWidth[0], framebufferHeight[0]);
+            renderer.beginFrame(camera.getView(), camera.getProjection());
+
+            // the far field goes behind everything
+            if (RenderSettings.isFarFieldEnabled()) {
+                renderer.drawFarField(farField.getStars());
             }
+
+            // render the stars in every region we can see
+            collectVisibleRegions(camera);
+            renderer.drawStarRegions(visibleRegions);
             
-            // update and render shooting stars
-            updateShootingStars(0.016f); // Approximate time for 60fps
+            // render shooting stars
             for (Stars.ShootingStar shootingStar : shootingStars) {
-                shootingStar.render(view, projection);
-            }
-            
-            // Random chance to create a shooting star
-            if (random.nextFloat() < DispersionSettings.getShootingStarChance()) {
-                shootingStars.add(Stars.createShootingStar(cameraPos, 500.0f, random));
+                shootingStar.render(renderer, alpha);
             }
             
             // render nebulae
             for (Nebula nebula : nebulae) {
-                nebula.update(0.016f); // Approximate time for 60fps
-                nebula.render(view, projection);
+                nebula.render(renderer, camera, alpha);
             }
             
-            // render suns
+            // render suns, and everything coming off them in one go
             for (Bodies.Sun sun : suns) {
-                sun.update(0.016f); // Approximate time for 60fps
-                sun.render(view, projection);
+                sun.render(renderer, camera, alpha);
             }
+            solarFlares.render(renderer, camera, alpha);
 
-            // generate new star clusters
-            generateNewClusters();
+            // and their planets, straight from their orbits at the time we're drawing
+            double planetTime = Math.max(0, clock.getStepCount() - 1 + alpha) * clock.getStepSeconds();
+            updatePlanets(camera, planetTime);
+            for (Bodies.PlanetarySystem system : residentSystems) {
+                system.render(renderer, camera, planetOrbits, planetTime);
+            }
 
             // draw coordinates in top left corner
             renderCoordinates();
 
-            glfwSwapBuffers(window);
+            // hand the frame over to the render thread (it swaps buffers once it's drawn)
+            renderThread.setSimulationMs((System.nanoTime() - now) / 1_000_000.0f);
+            renderer.endFrame();
+
             glfwPollEvents();
+
+            // with fixed-rate pacing, hang around until the next frame is due
+            framePacer.waitForNextFrame();
         }
     }
 
+    /**
+     * Moves everything forward by one fixed step
+     * @param deltaTime Length of the step in seconds
+     */
+    private void updateSimulation(float deltaTime) {
+        previousCameraPos.set(cameraPos);
+        if (CaptureSettings.isDeterministic()) {
+            CameraPath.apply(++simulationSteps, deltaTime, cameraPos, cameraFront);
+        } else {
+            handleInput(deltaTime);
+        }
+
+        // glimmer the stars we can see (as of the last frame)
+        for (StarRegion region : visibleRegions) {
+            region.update(random);
+        }
+
+        // update shooting stars
+        updateShootingStars(deltaTime);
+
+        // Random chance to create a shooting star
+        if (random.nextFloat() < DispersionSettings.getShootingStarChance() * QualitySettings.getShootingStarRate()) {
+            shootingStars.add(Stars.createShootingStar(cameraPos, 500.0f, random));
+        }
+
+        for (Nebula nebula : nebulae) {
+            nebula.update(deltaTime);
+        }
+        for (Bodies.Sun sun : suns) {
+            sun.update(deltaTime);
+        }
+        solarFlares.update(suns, camera, deltaTime);
+    }
+
     private void renderCoordinates() {
-        // save the current matrices and set up orthographic projection for 2D rendering 
-        glPushMatrix();
-        glMatrixMode(GL_PROJECTION);
-        glPushMatrix();
-        glLoadIdentity();
-        glOrtho(0, WIDTH, HEIGHT, 0, -1, 1);
-        glMatrixMode(GL_MODELVIEW);
-        glLoadIdentity();
-
-        // disable depth testing for UI elements
-        glDisable(GL_DEPTH_TEST);
+        // switch to flat 2D drawing for the HUD
+        renderer.beginHud(WIDTH, HEIGHT);
 
         // draw coordinate text with our SpaceNova font
-        glColor3f(0.8f, 0.9f, 1.0f); // Light blue color for coordinates
         String coords = String.format("X: %.1f Y: %.1f Z: %.1f", cameraPos.x, cameraPos.y, cameraPos.z);
         
-        try {
+        if (renderer.canDrawText()) {
             // Try to use the SpaceNova font first
-            coordinatesFontRenderer.renderText(coords, 10, 20, 20.0f);
-        } catch (Exception e) {
-            // Fall back to the original text rendering if there's an issue
-            System.out.println("Falling back to original text rendering: " + e.getMessage());
-            glLoadIdentity();
-            glTranslatef(10, 20, 0);
+            renderer.drawText(coords, 10, 20, 20.0f, HUD_R, HUD_G, HUD_B);
+            if (debugOverlay) {
+                renderDebugOverlay();
+            }
+        } else {
+            // Fall back to the original text rendering if the font didn't load
+            renderer.pushTransform(10, 20, 0, 0);
             renderText(coords);
+            renderer.popTransform();
         }
 
         // restore previous state
-        glEnable(GL_DEPTH_TEST);
-        glMatrixMode(GL_PROJECTION);
-        glPopMatrix();
-        glMatrixMode(GL_MODELVIEW);
-        glPopMatrix();
+        renderer.endHud();
+    }
+
+    /**
+     * Draws frame timing and what the quality governor is up to under the coordinates
+     */
+    private void renderDebugOverlay() {
+        RenderStats stats = renderer.getStats();
+        float y = 20 + DEBUG_LINE_HEIGHT * 1.5f;
+        String[] lines = {
+            String.format("Frame: %.1f ms (budget %.1f ms)  Pacing: %s", qualityGovernor.getAverageFrameMs(),
+                    QualitySettings.getTargetFrameTimeMs(), FramePacer.describe()),
+            String.format("Quality level: %d / %d%s", qualityGovernor.getLevel(), qualityGovernor.getMaxLevel(),
+                    QualitySettings.isGovernorEnabled() ? "" : " (governor off)"),
+            "Last change: " + qualityGovernor.getLastDecision(),
+            String.format("Nebula particles: %.0f%%  Nebula impostors: %d  Sun detail: %.0f%%",
+                    QualitySettings.getNebulaParticleFraction() * 100, stats.getImpostors(), QualitySettings.getSunTessellation() * 100),
+            String.format("Streaming radius: %d  Shooting stars: %.0f%%  Star cutoff: %.2f", QualitySettings.getStreamingRadius(),
+                    QualitySettings.getShootingStarRate() * 100, QualitySettings.getStarMagnitudeCutoff()),
+            String.format("Draw calls: %d  Vertices: %d  Regions: %d", stats.getDrawCalls(), stats.getVertices(), stats.getRegions()),
+            String.format("Planets: %d in %d nearby systems  Flare particles: %d / %d", planetOrbits.size(),
+                    residentSystems.size(), solarFlares.size(), SolarFlares.CAPACITY),
+            String.format("State changes: %d  (%d redundant skipped)", stats.getStateChanges(), stats.getRedundantStateChanges()),
+            String.format("Scene resolution: %.0f%%  GPU: %s", stats.getSceneScale() * 100,
+                    stats.getGpuMs() < 0 ? "n/a" : String.format("%.1f ms", stats.getGpuMs()))
+        };
+        for (String line : lines) {
+            renderer.drawText(line, 10, y, 16.0f, HUD_R, HUD_G, HUD_B);
+            y += DEBUG_LINE_HEIGHT;
+        }
     }
 
     private void renderText(String text) {
-        // save current states
-        glPushAttrib(GL_LIST_BIT);
-        glDisable(GL_TEXTURE_2D);
-        
         // use points to render text
-        glPointSize(2.0f);
         float baseCharWidth = 8.0f;
         float wideCharWidth = 10.0f;
         float charHeight = 15.0f;
@@ -513,10 +775,9 @@ public class GalaxySimulator {
         
         for (int i = 0; i < text.length(); i++) {
             char c = text.charAt(i);
-            glPushMatrix();
             // Use wider spacing before decimal point for numbers
             float currentWidth = (Character.isDigit(c) && !afterDecimal) ? wideCharWidth : baseCharWidth;
-            glTranslatef(i * currentWidth, 0, 0);
+            renderer.pushTransform(i * currentWidth, 0, 0, 0);
             
             // Track if we're after the decimal point
             if (c == '.') {
@@ -524,6 +785,7 @@ public class GalaxySimulator {
             }
             
             // Render each character using points
+            renderer.begin(Renderer.Primitive.POINTS, HUD_POINT_SIZE);
             switch (c) {
                 case 'X': renderX(baseCharWidth, charHeight); break;
                 case 'Y': renderY(baseCharWidth, charHeight); break;
@@ -537,178 +799,167 @@ public class GalaxySimulator {
                     break;
                 case ' ': break; // Space character - do nothing
             }
-            glPopMatrix();
+            renderer.end();
+            renderer.popTransform();
         }
-        
-        // Restore states
-        glPopAttrib();
+    }
+
+    // one dot of the fallback point font
+    private void hudPoint(float x, float y) {
+        renderer.vertex(x, y, 0, HUD_R, HUD_G, HUD_B, 1.0f);
     }
 
     private void renderDigit(int digit, float w, float h) {
-        glBegin(GL_POINTS);
         switch (digit) {
             case 0: // Render '0'
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(0, y);
-                    glVertex2f(w-1, y);
+                    hudPoint(0, y);
+                    hudPoint(w-1, y);
                 }
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);
-                    glVertex2f(x, h-1);
+                    hudPoint(x, 0);
+                    hudPoint(x, h-1);
                 }
                 break;
             case 1: // Render '1'
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(w/2, y);
+                    hudPoint(w/2, y);
                 }
                 break;
             case 2: // Render '2'
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);    // Bottom
-                    glVertex2f(x, h/2);   // Middle
-                    glVertex2f(x, h-1);   // Top
+                    hudPoint(x, 0);    // Bottom
+                    hudPoint(x, h/2);   // Middle
+                    hudPoint(x, h-1);   // Top
                 }
                 for (float y = 0; y < h/2; y += 2) {
-                    glVertex2f(w-1, y);   // Bottom right
+                    hudPoint(w-1, y);   // Bottom right
                 }
                 for (float y = h/2; y < h; y += 2) {
-                    glVertex2f(0, y);     // Top left
+                    hudPoint(0, y);     // Top left
                 }
                 break;
             case 3: // Render '3'
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);    // Bottom
-                    glVertex2f(x, h/2);   // Middle
-                    glVertex2f(x, h-1);   // Top
+                    hudPoint(x, 0);    // Bottom
+                    hudPoint(x, h/2);   // Middle
+                    hudPoint(x, h-1);   // Top
                 }
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(w-1, y);   // Right side
+                    hudPoint(w-1, y);   // Right side
                 }
                 break;
             case 4: // Render '4'
                 for (float y = 0; y < h/2; y += 2) {
-                    glVertex2f(0, y);     // Bottom left
+                    hudPoint(0, y);     // Bottom left
                 }
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(w-1, y);   // Right side
+                    hudPoint(w-1, y);   // Right side
                 }
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, h/2);   // Middle
+                    hudPoint(x, h/2);   // Middle
                 }
                 break;
             case 5: // Render '5'
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);    // Bottom
-                    glVertex2f(x, h/2);   // Middle
-                    glVertex2f(x, h-1);   // Top
+                    hudPoint(x, 0);    // Bottom
+                    hudPoint(x, h/2);   // Middle
+                    hudPoint(x, h-1);   // Top
                 }
                 for (float y = 0; y < h/2; y += 2) {
-                    glVertex2f(0, y);     // Bottom left
+                    hudPoint(0, y);     // Bottom left
                 }
                 for (float y = h/2; y < h; y += 2) {
-                    glVertex2f(w-1, y);   // Top right
+                    hudPoint(w-1, y);   // Top right
                 }
                 break;
             case 6: // Render '6'
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(0, y);     // Left side
+                    hudPoint(0, y);     // Left side
                 }
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);    // Bottom
-                    glVertex2f(x, h/2);   // Middle
+                    hudPoint(x, 0);    // Bottom
+                    hudPoint(x, h/2);   // Middle
                 }
                 for (float y = 0; y < h/2; y += 2) {
-                    glVertex2f(w-1, y);   // Bottom right
+                    hudPoint(w-1, y);   // Bottom right
                 }
                 break;
             case 7: // Render '7'
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);   // Top
+                    hudPoint(x, 0);   // Top
                 }
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(w-1, y);   // Right side
+                    hudPoint(w-1, y);   // Right side
                 }
                 break;
             case 8: // Render '8'
                 for (float y = 0; y < h; y += 2) {
-                    glVertex2f(0, y);     // Left side
-                    glVertex2f(w-1, y);   // Right side
+                    hudPoint(0, y);     // Left side
+                    hudPoint(w-1, y);   // Right side
                 }
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, 0);    // Bottom
-                    glVertex2f(x, h/2);   // Middle
-                    glVertex2f(x, h-1);   // Top
+                    hudPoint(x, 0);    // Bottom
+                    hudPoint(x, h/2);   // Middle
+                    hudPoint(x, h-1);   // Top
                 }
                 break;
             case 9: // Render '9'
                 for (float y = h/2; y < h; y += 2) {
-                    glVertex2f(w - 1, y);   // Left side
+                    hudPoint(w - 1, y);   // Left side
                 }
                 for (float x = 0; x < w; x += 2) {
-                    glVertex2f(x, h-1);   // Top
-                    glVertex2f(x, h/2);   // Middle
+                    hudPoint(x, h-1);   // Top
+                    hudPoint(x, h/2);   // Middle
                 }
                 for (float y = h/2; y < h; y += 2) {
-                    glVertex2f(0, y);     // Top right
+                    hudPoint(0, y);     // Top right
                 }
                 break;
         }
-        glEnd();
     }
 
     private void renderX(float w, float h) {
-        glBegin(GL_POINTS);
         for (float t = 0; t < 1; t += 0.1f) {
-            glVertex2f(t * w, t * h);
-            glVertex2f(t * w, (1-t) * h);
+            hudPoint(t * w, t * h);
+            hudPoint(t * w, (1-t) * h);
         }
-        glEnd();
     }
 
     private void renderY(float w, float h) {
-        glBegin(GL_POINTS);
         for (float t = 0; t < 0.5f; t += 0.1f) {
             float y = (1 - t) * h - 0.6f * h;
-            glVertex2f((0.5f + t) * w, y);
-            glVertex2f((0.5f - t) * w, y);
+            hudPoint((0.5f + t) * w, y);
+            hudPoint((0.5f - t) * w, y);
         }
         for (float t = 0.5f; t < 1; t += 0.1f) {
-            glVertex2f(w/2, t * h);
+            hudPoint(w/2, t * h);
         }
-        glEnd();
     }
 
     private void renderZ(float w, float h) {
-        glBegin(GL_POINTS);
         for (float x = 0; x < w; x += 2) {
-            glVertex2f(x, 0);
-            glVertex2f(x, h-1);
+            hudPoint(x, 0);
+            hudPoint(x, h-1);
         }
         for (float t = 0; t < 1; t += 0.1f) {
-            glVertex2f((1-t) * w, t * h);
+            hudPoint((1-t) * w, t * h);
         }
-        glEnd();
     }
 
     private void renderDot(float w, float h) {
-        glBegin(GL_POINTS);
-        glVertex2f(w/2, h-2);
-        glEnd();
+        hudPoint(w/2, h-2);
     }
 
     private void renderColon(float w, float h) {
-        glBegin(GL_POINTS);
-        glVertex2f(w/2, h/3);
-        glVertex2f(w/2, 2*h/3);
-        glEnd();
+        hudPoint(w/2, h/3);
+        hudPoint(w/2, 2*h/3);
     }
 
     private void renderMinus(float w, float h) {
-        glBegin(GL_POINTS);
         for (float x = 0; x < w-2; x += 2) {
-            glVertex2f(x, h/2);
+            hudPoint(x, h/2);
         }
-        glEnd();
     }
 
     /**
@@ -734,7 +985,7 @@ public class GalaxySimulator {
             float brightness = 0.85f + random.nextFloat() * 0.15f;  // Varied brightness for more natural look
             
             // Add as a scattered star (can glimmer)
-            stars.add(new Star(new Vector3f(x, y, z), size, brightness, true));
+            addStar(new StarRegion.Star(new Vector3f(x, y, z), size, brightness, true, random));
         }
     }
     
@@ -851,44 +1102,108 @@ public class GalaxySimulator {
         }
     }
     
-    private void renderStar(Star star, Matrix4f view, Matrix4f projection) {
-        // Save the current drawing state
-        glPushMatrix();
-        
-        // Convert matrices to OpenGL format
-        float[] viewMatrix = new float[16];
-        float[] projMatrix = new float[16];
-        view.get(viewMatrix);
-        projection.get(projMatrix);
-        
-        // Set up the projection and modelview matrices
-        glMatrixMode(GL_PROJECTION);
-        glLoadMatrixf(projMatrix);
-        glMatrixMode(GL_MODELVIEW);
-        glLoadMatrixf(viewMatrix);
-        
-        // Move to where we want to draw the star
-        glTranslatef(star.position.x, star.position.y, star.position.z);
-        
-        // Enable point smoothing for better-looking stars
-        glEnable(GL_POINT_SMOOTH);
-        glHint(GL_POINT_SMOOTH_HINT, GL_NICEST);
-        
-        // Make it look like an actual star
-        glPointSize(star.size * 10);
-        glColor4f(star.currentBrightness, star.currentBrightness, star.currentBrightness, 1.0f); // pure white color with glimmer effect
-        glBegin(GL_POINTS);
-        glVertex3f(0.0f, 0.0f, 0.0f);  // just a single point in space
-        glEnd();
-        
-        // Disable point smoothing after rendering
-        glDisable(GL_POINT_SMOOTH);
-        
-        // Restore the previous matrix state
-        glPopMatrix();
+    public static void main(String[] args) {
+        // pick a rendering backend with --renderer=legacy|modern|null, --single-thread keeps GL on the main thread,
+        // --pacing=vsync|uncapped|fixed (with --fps=N for fixed) and --benchmark[=seconds] for timing runs,
+        // --headless to run one without a visible window, --frame-log=file.csv to write down every frame's times,
+        // --deterministic[=seed] for repeatable runs, --capture=dir / --compare=dir (with --capture-frames=60,180
+        // and --tolerance=N) to save frames or check them against reference images
+        float benchmarkSeconds = -1;
+        String frameLog = null;
+        boolean deterministic = false;
+        for (String arg : args) {
+            if (arg.startsWith("--renderer=")) {
+                RenderSettings.setBackend(arg.substring("--renderer=".length()));
+            } else if (arg.equals("--single-thread")) {
+                RenderSettings.setRenderThreadEnabled(false);
+            } else if (arg.equals("--fixed-resolution")) {
+                RenderSettings.setDynamicResolutionEnabled(false);
+            } else if (arg.equals("--no-far-field")) {
+                RenderSettings.setFarFieldEnabled(false);
+            } else if (arg.equals("--no-bloom")) {
+                RenderSettings.setBloomEnabled(false);
+            } else if (arg.equals("--no-impostors")) {
+                RenderSettings.setImpostorsEnabled(false);
+            } else if (arg.startsWith("--pacing=")) {
+                RenderSettings.setFramePacing(arg.substring("--pacing=".length()));
+            } else if (arg.startsWith("--fps=")) {
+                RenderSettings.setTargetFrameRate(parseNumber(arg.substring("--fps=".length()), RenderSettings.getTargetFrameRate()));
+            } else if (arg.equals("--benchmark")) {
+                benchmarkSeconds = 0;
+            } else if (arg.startsWith("--benchmark=")) {
+                benchmarkSeconds = Math.max(0, parseNumber(arg.substring("--benchmark=".length()), 0));
+            } else if (arg.equals("--headless")) {
+                RenderSettings.setHeadless(true);
+            } else if (arg.startsWith("--frame-log=")) {
+                frameLog = arg.substring("--frame-log=".length());
+            } else if (arg.equals("--deterministic")) {
+                deterministic = true;
+            } else if (arg.startsWith("--deterministic=")) {
+                deterministic = true;
+                CaptureSettings.setSeed(parseNumber(arg.substring("--deterministic=".length()), (int) CaptureSettings.getSeed()));
+            } else if (arg.startsWith("--capture=")) {
+                CaptureSettings.setOutputDirectory(arg.substring("--capture=".length()));
+            } else if (arg.startsWith("--compare=")) {
+                CaptureSettings.setReferenceDirectory(arg.substring("--compare=".length()));
+            } else if (arg.startsWith("--capture-frames=")) {
+                String[] parts = arg.substring("--capture-frames=".length()).split(",");
+                int[] frames = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    frames[i] = parseNumber(parts[i], -1);
+                }
+                CaptureSettings.setCaptureFrames(frames);
+            } else if (arg.startsWith("--tolerance=")) {
+                CaptureSettings.setTolerance(parseNumber(arg.substring("--tolerance=".length()), CaptureSettings.getTolerance()));
+            }
+        }
+
+        // captured frames only mean something if they're the same every run, and they get read back from the offscreen target
+        if (CaptureSettings.isCapturing()) {
+            deterministic = true;
+            RenderSettings.setHeadless(true);
+        }
+
+        // there's no window to close in a headless run, so it's always a benchmark that ends by itself
+        // (unless it's capturing frames, then it ends after the last one)
+        if (RenderSettings.isHeadless() && !CaptureSettings.isCapturing()) {
+            if (benchmarkSeconds <= 0) {
+                benchmarkSeconds = HEADLESS_BENCHMARK_SECONDS;
+            }
+            if (frameLog == null) {
+                frameLog = HEADLESS_FRAME_LOG;
+            }
+        }
+
+        GalaxySimulator simulator = new GalaxySimulator();
+        if (benchmarkSeconds >= 0) {
+            simulator.enableBenchmark(benchmarkSeconds);
+        }
+        if (deterministic) {
+            simulator.enableDeterministic();
+        }
+        if (frameLog != null) {
+            simulator.setFrameLog(frameLog);
+        }
+        simulator.run();
+
+        // so scripts can tell when the frames didn't match
+        if (simulator.getCaptureFailures() > 0) {
+            System.exit(1);
+        }
     }
 
-    public static void main(String[] args) {
-        new GalaxySimulator().run();
+    /**
+     * Reads a whole number out of a command line flag
+     * @param text The text after the '='
+     * @param fallback What to use if it isn't a number
+     * @return The number
+     */
+    private static int parseNumber(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("'" + text + "' isn't a number, using " + fallback);
+            return fallback;
+        }
     }
 }
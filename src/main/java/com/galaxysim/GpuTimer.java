@@ -0,0 +1,119 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjecti64;
+
+/**
+ * Measures how long the GPU actually spends on a chunk of work with timer queries.
+ * Results come back a few frames late (asking for them straight away would stall),
+ * so there's a small ring of queries and we read whichever one finished.
+ *
+ * Without timer query support it falls back to measuring wall-clock time on the CPU,
+ * which is less accurate but still goes up when the GPU is struggling
+ */
+public class GpuTimer {
+    // frames of queries in flight
+    private static final int QUERIES = 4;
+
+    private final boolean supported;
+    private final int[] queries = new int[QUERIES];
+    private final boolean[] pending = new boolean[QUERIES];
+    private int current;
+    private boolean running;
+
+    private long cpuStart;
+    private float lastMs = -1;
+
+    /**
+     * Creates the timer. Needs a GL context
+     */
+    public GpuTimer() {
+        GLCapabilities caps = GL.getCapabilities();
+        supported = caps.OpenGL33 || caps.GL_ARB_timer_query;
+        if (supported) {
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = glGenQueries();
+            }
+        }
+    }
+
+    /**
+     * @return Whether this is using real GPU timer queries
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Starts timing. Every begin needs an end before the next begin
+     */
+    public void begin() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (!supported) {
+            cpuStart = System.nanoTime();
+            return;
+        }
+
+        collect();
+        if (pending[current]) {
+            // this query still hasn't come back after a whole ring of frames, skip timing this frame
+            running = false;
+            return;
+        }
+        glBeginQuery(GL_TIME_ELAPSED, queries[current]);
+    }
+
+    /**
+     * Stops timing
+     */
+    public void end() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (!supported) {
+            lastMs = (System.nanoTime() - cpuStart) / 1_000_000.0f;
+            return;
+        }
+
+        glEndQuery(GL_TIME_ELAPSED);
+        pending[current] = true;
+        current = (current + 1) % QUERIES;
+    }
+
+    // picks up any results that are ready without waiting on the GPU
+    private void collect() {
+        for (int i = 0; i < QUERIES; i++) {
+            int index = (current + i) % QUERIES;
+            if (pending[index] && glGetQueryObjecti(queries[index], GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+                lastMs = glGetQueryObjecti64(queries[index], GL_QUERY_RESULT) / 1_000_000.0f;
+                pending[index] = false;
+            }
+        }
+    }
+
+    /**
+     * @return Milliseconds the most recently finished measurement took, or -1 if there isn't one yet
+     */
+    public float getLastMs() {
+        return lastMs;
+    }
+
+    /**
+     * Deletes the queries
+     */
+    public void cleanup() {
+        if (supported) {
+            for (int i = 0; i < QUERIES; i++) {
+                glDeleteQueries(queries[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.galaxysim;
+
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.Platform;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * Sets GLFW up for headless runs. If there's a display, we just make a window that never
+ * gets shown. If there isn't (a Linux build machine with no X or Wayland), GLFW runs on its
+ * null platform and the context comes from OSMesa, which renders on the CPU through Mesa's
+ * llvmpipe - so no display and no GPU needed.
+ *
+ * Either way the frames get drawn into an OffscreenTarget, not the window
+ */
+public class HeadlessContext {
+    // what Mesa calls the OSMesa library these days
+    private static final String OSMESA_LIBRARY = "libOSMesa.so.8";
+
+    private static boolean osMesa = false;
+
+    /**
+     * Picks the GLFW platform. Has to be called before glfwInit
+     */
+    public static void prepareInit() {
+        if (Platform.get() != Platform.LINUX || hasDisplay()) {
+            return;
+        }
+        if (!glfwPlatformSupported(GLFW_PLATFORM_NULL)) {
+            System.err.println("No display and GLFW can't run without one, this probably won't get far");
+            return;
+        }
+        glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+        osMesa = true;
+
+        // GL functions have to come from OSMesa too (unless someone already picked a library with -Dorg.lwjgl.opengl.libname)
+        if (Configuration.OPENGL_LIBRARY_NAME.get() == null) {
+            Configuration.OPENGL_LIBRARY_NAME.set(OSMESA_LIBRARY);
+        }
+    }
+
+    /**
+     * Sets the window hints for a window nobody sees. Call after glfwDefaultWindowHints
+     */
+    public static void applyWindowHints() {
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        if (osMesa) {
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API, GLFW_OSMESA_CONTEXT_API);
+        }
+    }
+
+    /**
+     * @return What the frames are being drawn with, for printing at startup
+     */
+    public static String describe() {
+        return osMesa ? "OSMesa (no display)" : "an invisible window";
+    }
+
+    private static boolean hasDisplay() {
+        return System.getenv("DISPLAY") != null || System.getenv("WAYLAND_DISPLAY") != null;
+    }
+}
@@ -0,0 +1,422 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL14.glBlendFuncSeparate;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Pictures of far away point clouds (nebulae), so they cost one textured square a frame instead
+ * of thousands of big overlapping points. Every cloud gets a tile in one big texture, and its
+ * points get drawn into the tile looking at it from where the camera is, at the size it is on
+ * screen. After that the square just gets drawn facing the camera, until the camera has moved
+ * around the cloud (or the cloud has turned) by more than a few degrees, or it has got noticeably
+ * bigger or smaller on screen - then the tile gets drawn again.
+ *
+ * Drawing into tiles switches framebuffers, so it happens at the start of the next frame (like the
+ * far field bake), only a couple per frame. Until a cloud has its first picture it just gets drawn
+ * as points. When every tile is taken, the one that went unused the longest goes to the new cloud.
+ *
+ * The tile holds the cloud already blended together (premultiplied), so drawing it over the scene
+ * comes out the same as drawing the layers one by one
+ */
+public class ImpostorAtlas {
+    // pixels per side of the whole texture and of one tile
+    private static final int ATLAS_SIZE = 2048;
+    private static final int TILE_SIZE = 256;
+    private static final int TILES_PER_ROW = ATLAS_SIZE / TILE_SIZE;
+    private static final int TILES = TILES_PER_ROW * TILES_PER_ROW;
+
+    // most tiles that get drawn into per frame
+    private static final int BAKES_PER_FRAME = 2;
+
+    // extra pixels around the cloud's bounds, since points stick out past their middle by half their size
+    private static final int PADDING_PIXELS = 32;
+
+    // how far the view can turn around the cloud, and how much its size on screen can change, before it gets redrawn
+    private static final float REBAKE_COS = (float) Math.cos(Math.toRadians(4.0));
+    private static final float REBAKE_SIZE_CHANGE = 1.25f;
+
+    // goes after the camera block's header, which declares uProjection and uView
+    private static final String VERTEX_SHADER =
+        "attribute vec3 aPosition;\n" +
+        "attribute vec2 aTexCoord;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "void main() {\n" +
+        "    vTexCoord = aTexCoord;\n" +
+        "    gl_Position = uProjection * uView * vec4(aPosition, 1.0);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#version 120\n" +
+        "uniform sampler2D uAtlas;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "void main() {\n" +
+        "    gl_FragColor = texture2D(uAtlas, vTexCoord);\n" +
+        "}\n";
+
+    // x, y, z, u, v for the two triangles of a square
+    private static final int QUAD_FLOATS = 6 * 5;
+
+    // one tile and what's in it
+    private static class Tile {
+        final int index;
+        int lastUsed;
+
+        // what the picture in it was drawn with: which way we looked at the cloud (in the cloud's own frame,
+        // without its rotation), how big the cloud's bounds were on screen, and half the picture's size
+        boolean baked;
+        final Vector3f direction = new Vector3f();
+        float pixels;
+        float halfWidth;
+        int halfPixels;
+
+        // what the next picture should be drawn with, if it needs a new one
+        boolean wanted;
+        final Vector3f wantedDirection = new Vector3f();
+        float wantedPixels;
+        float wantedFraction;
+        float wantedPointScale;
+        float wantedOpacityScale;
+
+        Tile(int index) {
+            this.index = index;
+        }
+    }
+
+    private final CameraBlock camera;
+    private final MeshBufferCache meshes;
+    private final StreamingBuffer stream;
+    private final ShaderProgram program;
+    private final int texture;
+    private final int framebuffer;
+    private final int quadVbo;   // used when a frame streams more than the streaming buffer holds
+    private final FloatBuffer quad = MemoryUtil.memAllocFloat(QUAD_FLOATS);
+
+    // most recently used last, so the first one is the one to give away
+    private final LinkedHashMap<PointCloud, Tile> tiles = new LinkedHashMap<>(TILES, 0.75f, true);
+    private int nextTile;
+    private int frame;
+
+    // reused for every draw and bake
+    private final Vector3f cameraPosition = new Vector3f();
+    private final Vector3f localDirection = new Vector3f();
+    private final Vector3f right = new Vector3f();
+    private final Vector3f up = new Vector3f();
+    private final Matrix4f bakeView = new Matrix4f();
+    private final Matrix4f bakeProjection = new Matrix4f();
+    private final Matrix4f identity = new Matrix4f();
+
+    /**
+     * @return Whether the driver can render into textures
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL20 && (caps.OpenGL30 || caps.GL_ARB_framebuffer_object);
+    }
+
+    /**
+     * Creates the texture and shader. Needs a GL context
+     * @param camera Where the shader gets the camera from
+     * @param meshes Draws the points into the tiles
+     * @param stream The renderer's streaming buffer, the quads go through it
+     */
+    public ImpostorAtlas(CameraBlock camera, MeshBufferCache meshes, StreamingBuffer stream) {
+        this.camera = camera;
+        this.meshes = meshes;
+        this.stream = stream;
+
+        texture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, texture);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, ATLAS_SIZE, ATLAS_SIZE, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, 0);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status == GL_FRAMEBUFFER_COMPLETE) {
+            glViewport(0, 0, ATLAS_SIZE, ATLAS_SIZE);
+            glClear(GL_COLOR_BUFFER_BIT);
+        }
+        OffscreenTarget.bindOutput();
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            glDeleteFramebuffers(framebuffer);
+            glDeleteTextures(texture);
+            MemoryUtil.memFree(quad);
+            throw new RuntimeException("Impostor framebuffer isn't complete (status 0x" + Integer.toHexString(status) + ")");
+        }
+
+        program = new ShaderProgram(camera.header() + VERTEX_SHADER, FRAGMENT_SHADER, "aPosition", "aTexCoord");
+        camera.attach(program);
+        program.use();
+        glUniform1i(program.getUniformLocation("uAtlas"), 0);
+        quadVbo = glGenBuffers();
+    }
+
+    /**
+     * Draws a cloud's picture if it has one, and asks for a new one if it's missing or out of date.
+     * Leaves this atlas' program in use and the blend func set for premultiplied colors
+     * @param cloud The cloud
+     * @param x X of its middle
+     * @param y Y of its middle
+     * @param z Z of its middle
+     * @param rotationY Its rotation around Y
+     * @param fraction Share of its points to draw into the picture
+     * @param pointScale What its point sizes get multiplied by
+     * @param opacityScale What its alpha gets multiplied by
+     * @param view The frame's view matrix
+     * @param projection The frame's projection matrix
+     * @param viewportHeight Height of the window in pixels
+     * @param state Where blending gets set
+     * @param stats Where to count the draw call
+     * @return Whether it got drawn - if not, draw the points instead
+     */
+    public boolean draw(PointCloud cloud, float x, float y, float z, float rotationY,
+                        float fraction, float pointScale, float opacityScale,
+                        Matrix4f view, Matrix4f projection, int viewportHeight, GLStateCache state, RenderStats stats) {
+        view.originAffine(cameraPosition);
+        float dx = x - cameraPosition.x;
+        float dy = y - cameraPosition.y;
+        float dz = z - cameraPosition.z;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        float bounds = cloud.getBoundsRadius();
+        if (distance <= bounds * 2.0f) {
+            // the picture is drawn as if from far away, that's not true anymore this close
+            return false;
+        }
+        float pixels = bounds / distance * viewportHeight * 0.5f * projection.m11();
+
+        // which way we're looking at it, in its own frame (the opposite of its rotation around y)
+        float cos = (float) Math.cos(rotationY);
+        float sin = (float) Math.sin(rotationY);
+        localDirection.set(cos * dx - sin * dz, dy, sin * dx + cos * dz).div(distance);
+
+        Tile tile = tiles.get(cloud);
+        if (tile == null) {
+            tile = claimTile(cloud);
+            if (tile == null) {
+                return false;
+            }
+        }
+        tile.lastUsed = frame;
+
+        boolean outOfDate = !tile.baked
+            || tile.direction.dot(localDirection) < REBAKE_COS
+            || pixels > tile.pixels * REBAKE_SIZE_CHANGE
+            || pixels * REBAKE_SIZE_CHANGE < tile.pixels;
+        if (outOfDate) {
+            tile.wanted = true;
+            tile.wantedDirection.set(localDirection);
+            tile.wantedPixels = pixels;
+            tile.wantedFraction = fraction;
+            tile.wantedPointScale = pointScale;
+            tile.wantedOpacityScale = opacityScale;
+        }
+        if (!tile.baked) {
+            return false;
+        }
+
+        drawTile(tile, x, y, z, cos, sin, state, stats);
+        return true;
+    }
+
+    // a free tile, or the one that went unused the longest (null if every tile is on screen right now)
+    private Tile claimTile(PointCloud cloud) {
+        Tile tile;
+        if (nextTile < TILES) {
+            tile = new Tile(nextTile++);
+        } else {
+            Iterator<Map.Entry<PointCloud, Tile>> it = tiles.entrySet().iterator();
+            Tile oldest = it.next().getValue();
+            if (oldest.lastUsed == frame) {
+                return null;
+            }
+            it.remove();
+            tile = new Tile(oldest.index);
+        }
+        tiles.put(cloud, tile);
+        return tile;
+    }
+
+    // the square facing the way the picture was drawn, turned along with the cloud since then
+    private void drawTile(Tile tile, float x, float y, float z, float cos, float sin, GLStateCache state, RenderStats stats) {
+        basis(tile.direction, right, up);
+        float h = tile.halfWidth;
+        float rx = (cos * right.x + sin * right.z) * h;
+        float ry = right.y * h;
+        float rz = (-sin * right.x + cos * right.z) * h;
+        float ux = (cos * up.x + sin * up.z) * h;
+        float uy = up.y * h;
+        float uz = (-sin * up.x + cos * up.z) * h;
+
+        float u0 = (float) (tile.index % TILES_PER_ROW * TILE_SIZE) / ATLAS_SIZE;
+        float v0 = (float) (tile.index / TILES_PER_ROW * TILE_SIZE) / ATLAS_SIZE;
+        float u1 = u0 + (float) (tile.halfPixels * 2) / ATLAS_SIZE;
+        float v1 = v0 + (float) (tile.halfPixels * 2) / ATLAS_SIZE;
+
+        quad.clear();
+        putCorner(x - rx - ux, y - ry - uy, z - rz - uz, u0, v0);
+        putCorner(x + rx - ux, y + ry - uy, z + rz - uz, u1, v0);
+        putCorner(x + rx + ux, y + ry + uy, z + rz + uz, u1, v1);
+        putCorner(x - rx - ux, y - ry - uy, z - rz - uz, u0, v0);
+        putCorner(x + rx + ux, y + ry + uy, z + rz + uz, u1, v1);
+        putCorner(x - rx + ux, y - ry + uy, z - rz + uz, u0, v1);
+        quad.flip();
+
+        program.use();
+        camera.apply(program);
+        state.setBlend(true);
+        state.setBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+        glBindTexture(GL_TEXTURE_2D, texture);
+        long offset = stream.upload(MemoryUtil.memByteBuffer(quad));
+        if (offset >= 0) {
+            glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+        } else {
+            // the streaming buffer is full for this frame (it'll grow next frame), orphan our own
+            glBindBuffer(GL_ARRAY_BUFFER, quadVbo);
+            glBufferData(GL_ARRAY_BUFFER, quad, GL_STREAM_DRAW);
+            offset = 0;
+        }
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 5 * Float.BYTES, offset);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, 5 * Float.BYTES, offset + 3L * Float.BYTES);
+        glDrawArrays(GL_TRIANGLES, 0, 6);
+        stats.addDrawCall(6);
+        stats.addImpostor();
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    private void putCorner(float x, float y, float z, float u, float v) {
+        quad.put(x).put(y).put(z).put(u).put(v);
+    }
+
+    /**
+     * Draws the pictures that were asked for last frame, a couple at most. Has to be called
+     * outside the scene pass since it switches framebuffers (the start of the frame is good),
+     * and it sets the camera, so set it again afterwards
+     * @param stats Where to count the draw calls
+     */
+    public void bakeStep(RenderStats stats) {
+        int baked = 0;
+        // clouds that don't have a picture at all go first, ones with an old picture can wait a frame
+        for (int pass = 0; pass < 2 && baked < BAKES_PER_FRAME; pass++) {
+            for (Map.Entry<PointCloud, Tile> entry : tiles.entrySet()) {
+                Tile tile = entry.getValue();
+                if (!tile.wanted || (pass == 0 && tile.baked) || tile.lastUsed < frame - 1) {
+                    continue;
+                }
+                if (baked == 0) {
+                    glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+                    glDisable(GL_DEPTH_TEST);
+                    glEnable(GL_BLEND);
+                    glEnable(GL_SCISSOR_TEST);
+                }
+                bake(entry.getKey(), tile, stats);
+                if (++baked == BAKES_PER_FRAME) {
+                    break;
+                }
+            }
+        }
+        if (baked > 0) {
+            // put back everything the renderer expects
+            glDisable(GL_SCISSOR_TEST);
+            glDisable(GL_BLEND);
+            glEnable(GL_DEPTH_TEST);
+            OffscreenTarget.bindOutput();
+        }
+    }
+
+    private void bake(PointCloud cloud, Tile tile, RenderStats stats) {
+        int tileX = tile.index % TILES_PER_ROW * TILE_SIZE;
+        int tileY = tile.index / TILES_PER_ROW * TILE_SIZE;
+        glScissor(tileX, tileY, TILE_SIZE, TILE_SIZE);
+        glClear(GL_COLOR_BUFFER_BIT);
+
+        // as many pixels as the cloud has on screen, keeping a pixel clear at the edge so nothing bleeds into the next tile
+        float bounds = cloud.getBoundsRadius();
+        int halfPixels = Math.max(1, Math.min(TILE_SIZE / 2 - 1, (int) Math.ceil(tile.wantedPixels) + PADDING_PIXELS));
+        float halfWidth = bounds * halfPixels / Math.max(tile.wantedPixels, 1.0f);
+        glViewport(tileX, tileY, halfPixels * 2, halfPixels * 2);
+        glScissor(tileX, tileY, halfPixels * 2, halfPixels * 2);
+
+        // looking at the middle of the cloud from the camera's side, in the cloud's own frame
+        basis(tile.wantedDirection, right, up);
+        Vector3f d = tile.wantedDirection;
+        bakeView.setLookAt(-d.x * bounds * 2.0f, -d.y * bounds * 2.0f, -d.z * bounds * 2.0f, 0, 0, 0, up.x, up.y, up.z);
+        bakeProjection.setOrtho(-halfWidth, halfWidth, -halfWidth, halfWidth, 0.0f, bounds * 4.0f);
+        camera.set(bakeProjection, bakeView);
+
+        for (int i = 0; i < cloud.getLayerCount(); i++) {
+            PointCloud.Layer layer = cloud.getLayer(i);
+            // colors add up premultiplied, alpha only builds up from the see-through layers (additive light covers nothing)
+            if (layer.getBlendMode() == Renderer.BlendMode.ADDITIVE) {
+                glBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE, GL_ZERO, GL_ONE);
+            } else {
+                glBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+            }
+            meshes.drawPoints(layer.getPoints(), layer.getColors(), cloud.pointsToDraw(layer, tile.wantedFraction),
+                cloud.getScale(), tile.wantedPointScale, cloud.getR(), cloud.getG(), cloud.getB(),
+                cloud.getA() * tile.wantedOpacityScale, identity, false, stats);
+        }
+
+        tile.baked = true;
+        tile.wanted = false;
+        tile.direction.set(tile.wantedDirection);
+        tile.pixels = tile.wantedPixels;
+        tile.halfWidth = halfWidth;
+        tile.halfPixels = halfPixels;
+    }
+
+    // right and up for looking along a direction, with up as close to +y as it gets
+    private static void basis(Vector3f direction, Vector3f right, Vector3f up) {
+        if (Math.abs(direction.y) > 0.99f) {
+            up.set(0, 0, 1);
+        } else {
+            up.set(0, 1, 0);
+        }
+        direction.cross(up, right).normalize();
+        right.cross(direction, up);
+    }
+
+    /**
+     * Call at the end of every frame
+     */
+    public void endFrame() {
+        frame++;
+    }
+
+    /**
+     * Deletes the texture, framebuffer and shader
+     */
+    public void cleanup() {
+        program.cleanup();
+        glDeleteFramebuffers(framebuffer);
+        glDeleteTextures(texture);
+        glDeleteBuffers(quadVbo);
+        MemoryUtil.memFree(quad);
+        tiles.clear();
+    }
+}
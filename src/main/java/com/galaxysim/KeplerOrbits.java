@@ -0,0 +1,206 @@
+package com.galaxysim;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Orbits of a whole bunch of bodies kept as plain arrays, one per orbital element, and worked
+ * out straight from the time instead of stepped forward. Nothing carries over from one frame
+ * to the next, so a body can be left out for as long as we like (or thrown away and added again)
+ * and it's still exactly where it should be when it comes back.
+ *
+ * Every position comes from solving Kepler's equation for that time, all bodies in one pass over
+ * the arrays, split into chunks that run in parallel once there are enough bodies to be worth it.
+ * Positions are relative to whatever the body orbits, in the x-z plane tilted by the inclination
+ */
+public class KeplerOrbits {
+    // bodies per chunk of the parallel pass
+    private static final int CHUNK = 1024;
+
+    // below this many bodies the pass just runs on the calling thread
+    private static final int PARALLEL_THRESHOLD = 4 * CHUNK;
+
+    // Newton steps on Kepler's equation. Orbits here never get much past e = 0.3, and starting from
+    // E = M + e sin M that's well under float precision after three
+    private static final int KEPLER_ITERATIONS = 3;
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    private int count;
+
+    // the orbit in its own plane: semi-major and semi-minor axis, eccentricity
+    private float[] semiMajor = new float[0];
+    private float[] semiMinor = new float[0];
+    private float[] eccentricity = new float[0];
+
+    // where in the orbit it is: mean anomaly at time 0 and radians per second
+    private double[] meanAnomaly = new double[0];
+    private double[] meanMotion = new double[0];
+
+    // the orbit's plane: unit vectors towards the closest point (P) and 90 degrees on from it (Q)
+    private float[] px = new float[0];
+    private float[] py = new float[0];
+    private float[] pz = new float[0];
+    private float[] qx = new float[0];
+    private float[] qy = new float[0];
+    private float[] qz = new float[0];
+
+    // where everything was at the last evaluate
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] z = new float[0];
+
+    /**
+     * Forgets every body (keeps the arrays around for the next lot)
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Adds a body
+     * @param a Semi-major axis
+     * @param e Eccentricity (0 for a circle, has to stay under 1)
+     * @param inclination Tilt of the orbit off the x-z plane in radians
+     * @param ascendingNode Angle around y where the orbit goes up through the plane
+     * @param periapsisArgument Angle from there to the closest point
+     * @param meanAnomalyAtZero Mean anomaly at time 0
+     * @param period Seconds per orbit
+     * @return Its index
+     */
+    public int add(float a, float e, float inclination, float ascendingNode, float periapsisArgument,
+                   float meanAnomalyAtZero, float period) {
+        if (e < 0.0f || e >= 1.0f) {
+            throw new IllegalArgumentException("Eccentricity has to be between 0 and 1, not " + e);
+        }
+        if (count == semiMajor.length) {
+            grow(Math.max(16, count * 2));
+        }
+        int i = count++;
+        semiMajor[i] = a;
+        semiMinor[i] = a * (float) Math.sqrt(1.0 - e * e);
+        eccentricity[i] = e;
+        meanAnomaly[i] = meanAnomalyAtZero;
+        meanMotion[i] = TWO_PI / period;
+
+        double cosNode = Math.cos(ascendingNode);
+        double sinNode = Math.sin(ascendingNode);
+        double cosArg = Math.cos(periapsisArgument);
+        double sinArg = Math.sin(periapsisArgument);
+        double cosInc = Math.cos(inclination);
+        double sinInc = Math.sin(inclination);
+        // the usual orbital frame has z up, ours has y up so the last two swap
+        px[i] = (float) (cosNode * cosArg - sinNode * sinArg * cosInc);
+        pz[i] = (float) (sinNode * cosArg + cosNode * sinArg * cosInc);
+        py[i] = (float) (sinArg * sinInc);
+        qx[i] = (float) (-cosNode * sinArg - sinNode * cosArg * cosInc);
+        qz[i] = (float) (-sinNode * sinArg + cosNode * cosArg * cosInc);
+        qy[i] = (float) (cosArg * sinInc);
+        return i;
+    }
+
+    private void grow(int capacity) {
+        semiMajor = Arrays.copyOf(semiMajor, capacity);
+        semiMinor = Arrays.copyOf(semiMinor, capacity);
+        eccentricity = Arrays.copyOf(eccentricity, capacity);
+        meanAnomaly = Arrays.copyOf(meanAnomaly, capacity);
+        meanMotion = Arrays.copyOf(meanMotion, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        pz = Arrays.copyOf(pz, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qz = Arrays.copyOf(qz, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+    }
+
+    /**
+     * Works out where every body is at a given time, in parallel if there are lots of them.
+     * Every body only depends on the time, so the result is the same however the work gets split
+     * @param time Seconds since time 0
+     */
+    public void evaluate(double time) {
+        evaluate(time, count >= PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Same as evaluate(time), but says whether to split the work up (for benchmarking both ways)
+     * @param time Seconds since time 0
+     * @param parallel Whether to run the chunks on the common fork-join pool
+     */
+    public void evaluate(double time, boolean parallel) {
+        if (!parallel) {
+            evaluateRange(time, 0, count);
+            return;
+        }
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel()
+            .forEach(chunk -> evaluateRange(time, chunk * CHUNK, Math.min(count, (chunk + 1) * CHUNK)));
+    }
+
+    // the actual work, one straight loop over the arrays
+    private void evaluateRange(double time, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // the mean anomaly in double since time keeps growing, then back down to one turn
+            double m = meanAnomaly[i] + meanMotion[i] * time;
+            float meanAnomalyNow = (float) (m - TWO_PI * Math.floor(m / TWO_PI));
+            float e = eccentricity[i];
+
+            // Kepler's equation M = E - e sin E, solved for E with Newton's method. Each step is tiny,
+            // so rather than calling sin and cos again the ones we have get turned by the step
+            // (a couple of Taylor terms is plenty that close), which is where most of the time went
+            float eccentricAnomaly = meanAnomalyNow + e * (float) Math.sin(meanAnomalyNow);
+            float sin = (float) Math.sin(eccentricAnomaly);
+            float cos = (float) Math.cos(eccentricAnomaly);
+            for (int n = 0; n < KEPLER_ITERATIONS; n++) {
+                float step = (eccentricAnomaly - e * sin - meanAnomalyNow) / (1.0f - e * cos);
+                eccentricAnomaly -= step;
+                float stepSin = step - step * step * step / 6.0f;
+                float stepCos = 1.0f - step * step * 0.5f;
+                float turnedSin = sin * stepCos - cos * stepSin;
+                cos = cos * stepCos + sin * stepSin;
+                sin = turnedSin;
+            }
+
+            // position in the orbit's plane, then turned into ours
+            float along = semiMajor[i] * (cos - e);
+            float across = semiMinor[i] * sin;
+            x[i] = px[i] * along + qx[i] * across;
+            y[i] = py[i] * along + qy[i] * across;
+            z[i] = pz[i] * along + qz[i] * across;
+        }
+    }
+
+    /**
+     * @return How many bodies there are
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i Which body
+     * @return Its x offset from what it orbits, as of the last evaluate
+     */
+    public float getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * @param i Which body
+     * @return Its y offset from what it orbits, as of the last evaluate
+     */
+    public float getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @param i Which body
+     * @return Its z offset from what it orbits, as of the last evaluate
+     */
+    public float getZ(int i) {
+        return z[i];
+    }
+}
@@ -0,0 +1,374 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL30.GL_CLAMP_VERTEX_COLOR;
+import static org.lwjgl.opengl.GL30.glClampColor;
+
+/**
+ * The original way HexaNebula drew everything: fixed-function OpenGL with glBegin/glEnd.
+ * Slow-ish but works pretty much anywhere, so it's the default
+ */
+public class LegacyRenderer implements Renderer {
+    // reused every frame so we don't make garbage just to load matrices
+    private final float[] viewMatrix = new float[16];
+    private final float[] projMatrix = new float[16];
+
+    private CoordinatesFontRenderer fontRenderer;
+
+    private final RenderStats stats = new RenderStats();
+    private final GLStateCache state = new GLStateCache(stats);
+    private int batchVertices;
+
+    // surface textures of whatever meshes we draw
+    private CubeTextureCache textures;
+
+    // the 3D scene gets drawn in here so its resolution can drop when the GPU is struggling
+    private SceneFramebuffer scene;
+    private int viewportWidth = 1;
+    private int viewportHeight = 1;
+
+    // the stars past the streaming radius, baked into a cubemap
+    private FarFieldSky farField;
+    private final Matrix4f farFieldView = new Matrix4f();
+    private final Matrix4f farFieldProjection = new Matrix4f();
+
+    @Override
+    public String getName() {
+        return "legacy";
+    }
+
+    @Override
+    public void init() {
+        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        glEnable(GL_DEPTH_TEST);
+
+        // Initialize font renderer for the HUD
+        fontRenderer = new CoordinatesFontRenderer(16.0f);
+        fontRenderer.init();
+        textures = new CubeTextureCache();
+
+        // the offscreen scene is needed for either dynamic resolution or bloom
+        if ((RenderSettings.isDynamicResolutionEnabled() || RenderSettings.isBloomEnabled()) && SceneFramebuffer.isSupported()) {
+            scene = new SceneFramebuffer(RenderSettings.isBloomEnabled());
+        }
+        if (hasBloom()) {
+            // fixed-function clamps vertex colors to 1.0 unless we ask it not to, and bloom needs them brighter
+            glClampColor(GL_CLAMP_VERTEX_COLOR, GL_FALSE);
+        }
+
+        if (RenderSettings.isFarFieldEnabled() && FarFieldSky.isSupported()) {
+            try {
+                farField = new FarFieldSky();
+            } catch (RuntimeException e) {
+                System.err.println("Far field is off: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void setViewport(int width, int height) {
+        viewportWidth = width;
+        viewportHeight = height;
+        if (scene != null) {
+            try {
+                scene.resize(width, height);
+            } catch (RuntimeException e) {
+                System.err.println("Offscreen scene is off: " + e.getMessage());
+                scene.cleanup();
+                scene = null;
+            }
+        }
+    }
+
+    // starts the 3D part of the frame, in the scene framebuffer if we have one
+    private void beginScene() {
+        if (scene != null) {
+            scene.bind();
+        } else {
+            glViewport(0, 0, viewportWidth, viewportHeight);
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        }
+    }
+
+    // puts the 3D part of the frame on the window (does nothing if it's already there)
+    private void endScene() {
+        if (scene != null) {
+            scene.resolve();
+            stats.setSceneResolution(scene.getScale(), scene.getGpuMs());
+            state.invalidate();
+        }
+    }
+
+    @Override
+    public void beginFrame(Matrix4f view, Matrix4f projection) {
+        stats.reset();
+
+        // baking switches framebuffers, so it has to happen before the scene starts
+        if (farField != null) {
+            farField.bakeStep(stats);
+        }
+        beginScene();
+        state.invalidate();
+
+        // Load the camera once for the whole frame
+        farFieldView.set(view);
+        farFieldProjection.set(projection);
+        view.get(viewMatrix);
+        projection.get(projMatrix);
+        glMatrixMode(GL_PROJECTION);
+        glLoadMatrixf(projMatrix);
+        glMatrixMode(GL_MODELVIEW);
+        glLoadMatrixf(viewMatrix);
+    }
+
+    @Override
+    public void endFrame() {
+        // immediate mode already drew everything, just make sure the scene made it to the window
+        endScene();
+        textures.endFrame();
+    }
+
+    @Override
+    public void pushTransform(float x, float y, float z, float rotationY) {
+        glPushMatrix();
+        glTranslatef(x, y, z);
+        if (rotationY != 0.0f) {
+            glRotatef((float) Math.toDegrees(rotationY), 0.0f, 1.0f, 0.0f);
+        }
+    }
+
+    @Override
+    public void popTransform() {
+        glPopMatrix();
+    }
+
+    @Override
+    public void setBlendMode(BlendMode mode) {
+        switch (mode) {
+            case ALPHA:
+                state.setBlend(true);
+                state.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+                break;
+            case ADDITIVE:
+                state.setBlend(true);
+                state.setBlendFunc(GL_SRC_ALPHA, GL_ONE);
+                break;
+            default:
+                state.setBlend(false);
+        }
+    }
+
+    @Override
+    public void setDepthWrite(boolean enabled) {
+        state.setDepthMask(enabled);
+    }
+
+    @Override
+    public void setSmoothPoints(boolean enabled) {
+        state.setPointSmooth(enabled);
+    }
+
+    @Override
+    public void begin(Primitive primitive, float size) {
+        batchVertices = 0;
+        switch (primitive) {
+            case POINTS:
+                state.setPointSize(size);
+                glBegin(GL_POINTS);
+                break;
+            case LINES:
+                state.setLineWidth(size);
+                glBegin(GL_LINES);
+                break;
+            default:
+                glBegin(GL_TRIANGLES);
+        }
+    }
+
+    @Override
+    public void vertex(float x, float y, float z, float r, float g, float b, float a) {
+        glColor4f(r, g, b, a);
+        glVertex3f(x, y, z);
+        batchVertices++;
+    }
+
+    @Override
+    public void point(float x, float y, float z, float size, float r, float g, float b, float a) {
+        // glPointSize isn't allowed between glBegin and glEnd, so the batch size is all we get here
+        glColor4f(r, g, b, a);
+        glVertex3f(x, y, z);
+        batchVertices++;
+    }
+
+    @Override
+    public void end() {
+        glEnd();
+        stats.addDrawCall(batchVertices);
+    }
+
+    @Override
+    public void drawStarRegions(List<? extends StarRegionData> regions) {
+        // no multi-draw in immediate mode - every star is its own little batch since
+        // that's the only way to give each one its own point size
+        setSmoothPoints(true);
+        for (StarRegionData region : regions) {
+            drawStarLayer(region, StarRegion.LAYER_SCATTERED);
+            drawStarLayer(region, StarRegion.LAYER_CLUSTER);
+        }
+        setSmoothPoints(false);
+        stats.addRegions(regions.size());
+    }
+
+    @Override
+    public void drawFarField(FarFieldStars stars) {
+        // the sky has its own little shader, which leaves the fixed-function state alone
+        if (farField != null) {
+            farField.draw(stars, farFieldView, farFieldProjection, stats);
+            state.invalidate();
+        }
+    }
+
+    @Override
+    public void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a) {
+        // immediate mode has nowhere to keep a mesh, so it goes vertex by vertex like everything else
+        float[] xyz = positions.getData();
+        float[] rgba = colors.getData();
+        int[] indices = positions.getIndices();
+        int count = positions.getDrawCount();
+        int textureId = texture != null ? textures.get(texture) : 0;
+        if (textureId != 0) {
+            // the texture gets multiplied by the vertex color, so the vertex color is just the tint
+            glEnable(GL_TEXTURE_CUBE_MAP);
+            glBindTexture(GL_TEXTURE_CUBE_MAP, textureId);
+            glColor4f(r, g, b, a);
+        }
+        glBegin(GL_TRIANGLES);
+        for (int n = 0; n < count; n++) {
+            int v = indices != null ? indices[n] : n;
+            if (textureId != 0) {
+                glTexCoord3f(xyz[v * 3], xyz[v * 3 + 1], xyz[v * 3 + 2]);
+            } else {
+                glColor4f(rgba[v * 4] * r, rgba[v * 4 + 1] * g, rgba[v * 4 + 2] * b, rgba[v * 4 + 3] * a);
+            }
+            glVertex3f(xyz[v * 3] * scale, xyz[v * 3 + 1] * scale, xyz[v * 3 + 2] * scale);
+        }
+        glEnd();
+        stats.addDrawCall(count);
+        if (textureId != 0) {
+            glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+            glDisable(GL_TEXTURE_CUBE_MAP);
+        }
+    }
+
+    @Override
+    public void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                           float r, float g, float b, float a, float batchSize) {
+        // same story as meshes, and glPointSize isn't allowed inside glBegin so they all get the batch size
+        float[] xyzs = points.getData();
+        float[] rgba = colors.getData();
+        state.setPointSize(batchSize * pointScale);
+        glBegin(GL_POINTS);
+        for (int v = 0; v < count; v++) {
+            glColor4f(rgba[v * 4] * r, rgba[v * 4 + 1] * g, rgba[v * 4 + 2] * b, rgba[v * 4 + 3] * a);
+            glVertex3f(xyzs[v * 4] * scale, xyzs[v * 4 + 1] * scale, xyzs[v * 4 + 2] * scale);
+        }
+        glEnd();
+        stats.addDrawCall(count);
+    }
+
+    @Override
+    public void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                             float fraction, float pointScale, float opacityScale) {
+        // no framebuffers to draw a picture into here, so it's just the points
+        pushTransform(x, y, z, rotationY);
+        cloud.draw(this, fraction, pointScale, opacityScale);
+        popTransform();
+    }
+
+    private void drawStarLayer(StarRegionData region, int layer) {
+        float[] data = region.getVertexData();
+        int start = region.getLayerStart(layer) * StarRegion.FLOATS_PER_STAR;
+        int end = start + region.getLayerDrawCount(layer) * StarRegion.FLOATS_PER_STAR;
+        for (int i = start; i < end; i += StarRegion.FLOATS_PER_STAR) {
+            float brightness = data[i + 4];
+            state.setPointSize(data[i + 3] * 10);
+            glBegin(GL_POINTS);
+            glColor4f(brightness, brightness, brightness, 1.0f);
+            glVertex3f(data[i], data[i + 1], data[i + 2]);
+            glEnd();
+            stats.addDrawCall(1);
+        }
+    }
+
+    @Override
+    public void beginHud(int width, int height) {
+        // the HUD goes straight on the window at full resolution
+        endScene();
+
+        // save the current matrices and set up orthographic projection for 2D rendering
+        glPushMatrix();
+        glMatrixMode(GL_PROJECTION);
+        glPushMatrix();
+        glLoadIdentity();
+        glOrtho(0, width, height, 0, -1, 1);
+        glMatrixMode(GL_MODELVIEW);
+        glLoadIdentity();
+
+        // disable depth testing for UI elements
+        glDisable(GL_DEPTH_TEST);
+    }
+
+    @Override
+    public boolean hasBloom() {
+        return scene != null && scene.hasBloom();
+    }
+
+    @Override
+    public boolean canDrawText() {
+        return fontRenderer != null && fontRenderer.isLoaded();
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, float fontSize, float r, float g, float b) {
+        glColor3f(r, g, b);
+        fontRenderer.renderText(text, x, y, fontSize);
+        // the font sets up its own blending and smoothing
+        state.invalidate();
+    }
+
+    @Override
+    public void endHud() {
+        // restore previous state
+        glEnable(GL_DEPTH_TEST);
+        glMatrixMode(GL_PROJECTION);
+        glPopMatrix();
+        glMatrixMode(GL_MODELVIEW);
+        glPopMatrix();
+    }
+
+    @Override
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void cleanup() {
+        if (fontRenderer != null) {
+            fontRenderer.cleanup();
+        }
+        if (scene != null) {
+            scene.cleanup();
+        }
+        if (farField != null) {
+            farField.cleanup();
+        }
+        if (textures != null) {
+            textures.cleanup();
+        }
+    }
+}
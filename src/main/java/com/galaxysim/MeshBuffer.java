@@ -0,0 +1,67 @@
+package com.galaxysim;
+
+/**
+ * One vertex attribute of a mesh that never changes once it's made - positions of a
+ * shared unit sphere, or the colors of one sun's surface. Renderers that can keep
+ * geometry on the GPU upload each of these once (they go by identity, not contents)
+ * and draw from there every frame after.
+ *
+ * The data never gets written to after construction, so one of these can be made on a
+ * worker thread and drawn from the render thread without any locking
+ */
+public final class MeshBuffer {
+    private final float[] data;
+    private final int components;
+    private final int[] indices;
+    private final int vertexCount;
+
+    /**
+     * @param data The attribute of every vertex, back to back
+     * @param components Floats per vertex (3 for positions, 4 for colors)
+     * @param indices Which vertices make up the triangles, or null if every three vertices are a triangle
+     */
+    public MeshBuffer(float[] data, int components, int[] indices) {
+        if (data.length % components != 0) {
+            throw new IllegalArgumentException("Mesh data doesn't split into " + components + " floats per vertex");
+        }
+        this.data = data;
+        this.components = components;
+        this.indices = indices;
+        this.vertexCount = data.length / components;
+    }
+
+    /**
+     * @return The raw attribute data (don't write to it)
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    /**
+     * @return Floats per vertex
+     */
+    public int getComponents() {
+        return components;
+    }
+
+    /**
+     * @return Triangle indices (don't write to them), or null if the mesh isn't indexed
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return How many vertices there are
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return How many vertices a draw of this mesh goes through (indices if it has them)
+     */
+    public int getDrawCount() {
+        return indices != null ? indices.length : vertexCount;
+    }
+}
@@ -0,0 +1,277 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * GPU copies of the MeshBuffers the scene draws. Every buffer gets uploaded the first time
+ * it's drawn and after that a draw is just binding two buffers and one glDrawElements - the
+ * shared unit spheres only ever exist on the GPU once, and each sun only adds its colors.
+ * Static point clouds (nebulae) work the same way with their own little shader, so drawing
+ * thousands of points costs one draw call and whatever transform they're drawn with.
+ * Meshes with a cube texture look it up in the direction of each (untransformed) position,
+ * so the texture turns along with whatever transform the mesh is drawn with.
+ *
+ * Buffers that haven't been drawn for a while get deleted, since suns never go away and
+ * most of them are way behind us
+ */
+public class MeshBufferCache {
+    // how many frames a buffer can go undrawn before it gets deleted (it comes back if it's drawn again)
+    private static final int EVICT_AFTER_FRAMES = 600;
+
+    // how often we look for buffers to delete
+    private static final int EVICT_CHECK_FRAMES = 60;
+
+    // goes after the camera block's header, which declares uProjection and uView
+    private static final String VERTEX_SHADER =
+        "attribute vec3 aPosition;\n" +
+        "attribute vec4 aColor;\n" +
+        "uniform mat4 uModel;\n" +
+        "uniform float uScale;\n" +
+        "uniform vec4 uTint;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec3 vDirection;\n" +
+        "void main() {\n" +
+        "    vColor = aColor * uTint;\n" +
+        "    vDirection = aPosition;\n" +
+        "    gl_Position = uProjection * uView * uModel * vec4(aPosition * uScale, 1.0);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#version 120\n" +
+        "uniform int uTextured;\n" +
+        "uniform samplerCube uSurface;\n" +
+        "uniform vec4 uTint;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec3 vDirection;\n" +
+        "void main() {\n" +
+        "    if (uTextured == 1) {\n" +
+        "        gl_FragColor = vec4(textureCube(uSurface, vDirection).rgb, 1.0) * uTint;\n" +
+        "    } else {\n" +
+        "        gl_FragColor = vColor;\n" +
+        "    }\n" +
+        "}\n";
+
+    // points keep their size in w
+    private static final String POINT_VERTEX_SHADER =
+        "attribute vec4 aPoint;\n" +
+        "attribute vec4 aColor;\n" +
+        "uniform mat4 uModel;\n" +
+        "uniform float uScale;\n" +
+        "uniform float uPointScale;\n" +
+        "uniform vec4 uTint;\n" +
+        "varying vec4 vColor;\n" +
+        "void main() {\n" +
+        "    vColor = aColor * uTint;\n" +
+        "    gl_PointSize = aPoint.w * uPointScale;\n" +
+        "    gl_Position = uProjection * uView * uModel * vec4(aPoint.xyz * uScale, 1.0);\n" +
+        "}\n";
+
+    private static final String POINT_FRAGMENT_SHADER =
+        "#version 120\n" +
+        "uniform int uRoundPoints;\n" +
+        "varying vec4 vColor;\n" +
+        "void main() {\n" +
+        "    if (uRoundPoints == 1) {\n" +
+        "        vec2 d = gl_PointCoord - vec2(0.5);\n" +
+        "        if (dot(d, d) > 0.25) discard;\n" +
+        "    }\n" +
+        "    gl_FragColor = vColor;\n" +
+        "}\n";
+
+    // one buffer on the GPU, and its indices if it has any
+    private static class Entry {
+        int vbo;
+        int ibo;
+        int lastDrawn;
+    }
+
+    private final ShaderProgram program;
+    private final ShaderProgram pointProgram;
+    private final CameraBlock camera;
+    private final FloatBuffer matrixBuffer = MemoryUtil.memAllocFloat(16);
+    private final Map<MeshBuffer, Entry> entries = new IdentityHashMap<>();
+    private int frame;
+
+    /**
+     * Creates the cache and its shader. Needs a GL context
+     * @param camera Where the shader gets the camera from
+     */
+    public MeshBufferCache(CameraBlock camera) {
+        this.camera = camera;
+        program = new ShaderProgram(camera.header() + VERTEX_SHADER, FRAGMENT_SHADER, "aPosition", "aColor");
+        camera.attach(program);
+        program.use();
+        glUniform1i(program.getUniformLocation("uSurface"), 0);
+        pointProgram = new ShaderProgram(camera.header() + POINT_VERTEX_SHADER, POINT_FRAGMENT_SHADER, "aPoint", "aColor");
+        camera.attach(pointProgram);
+    }
+
+    /**
+     * Call at the end of every frame, deletes buffers nobody has drawn in a while
+     */
+    public void endFrame() {
+        frame++;
+        if (frame % EVICT_CHECK_FRAMES != 0) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (frame - entry.lastDrawn > EVICT_AFTER_FRAMES) {
+                delete(entry);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Draws a mesh as triangles, uploading its buffers first if they aren't on the GPU yet.
+     * Leaves this cache's program in use
+     * @param positions Vertex positions, and the indices if it has any
+     * @param colors Vertex colors
+     * @param texture GL name of the cube texture to color it with instead, or 0
+     * @param model The current transform
+     * @param scale Multiplier on every position
+     * @param r Multiplier on every red
+     * @param g Multiplier on every green
+     * @param b Multiplier on every blue
+     * @param a Multiplier on every alpha
+     * @param stats Where to count the draw call
+     */
+    public void draw(MeshBuffer positions, MeshBuffer colors, int texture, Matrix4f model, float scale,
+                     float r, float g, float b, float a, RenderStats stats) {
+        Entry positionEntry = resident(positions);
+        Entry colorEntry = resident(colors);
+
+        program.use();
+        camera.apply(program);
+        model.get(matrixBuffer);
+        glUniformMatrix4fv(program.getUniformLocation("uModel"), false, matrixBuffer);
+        glUniform1f(program.getUniformLocation("uScale"), scale);
+        glUniform4f(program.getUniformLocation("uTint"), r, g, b, a);
+        glUniform1i(program.getUniformLocation("uTextured"), texture != 0 ? 1 : 0);
+        if (texture != 0) {
+            glBindTexture(GL_TEXTURE_CUBE_MAP, texture);
+        }
+
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glBindBuffer(GL_ARRAY_BUFFER, positionEntry.vbo);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0L);
+        glBindBuffer(GL_ARRAY_BUFFER, colorEntry.vbo);
+        glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0L);
+
+        int count = positions.getDrawCount();
+        if (positionEntry.ibo != 0) {
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, positionEntry.ibo);
+            glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_INT, 0L);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        } else {
+            glDrawArrays(GL_TRIANGLES, 0, count);
+        }
+        stats.addDrawCall(count);
+
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        if (texture != 0) {
+            glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
+        }
+    }
+
+    /**
+     * Draws points, uploading their buffers first if they aren't on the GPU yet. Leaves the point program in use
+     * @param points Position and size of every point (4 floats each)
+     * @param colors Point colors
+     * @param count How many to draw, from the first one
+     * @param scale What the positions get multiplied by
+     * @param pointScale What the point sizes get multiplied by
+     * @param r Red tint
+     * @param g Green tint
+     * @param b Blue tint
+     * @param a Alpha tint
+     * @param model The current transform
+     * @param round Whether the points are round instead of square
+     * @param stats Where to count the draw call
+     */
+    public void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                           float r, float g, float b, float a,
+                           Matrix4f model, boolean round, RenderStats stats) {
+        Entry pointEntry = resident(points);
+        Entry colorEntry = resident(colors);
+
+        pointProgram.use();
+        camera.apply(pointProgram);
+        model.get(matrixBuffer);
+        glUniformMatrix4fv(pointProgram.getUniformLocation("uModel"), false, matrixBuffer);
+        glUniform1f(pointProgram.getUniformLocation("uScale"), scale);
+        glUniform1f(pointProgram.getUniformLocation("uPointScale"), pointScale);
+        glUniform4f(pointProgram.getUniformLocation("uTint"), r, g, b, a);
+        glUniform1i(pointProgram.getUniformLocation("uRoundPoints"), round ? 1 : 0);
+
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glBindBuffer(GL_ARRAY_BUFFER, pointEntry.vbo);
+        glVertexAttribPointer(0, 4, GL_FLOAT, false, 0, 0L);
+        glBindBuffer(GL_ARRAY_BUFFER, colorEntry.vbo);
+        glVertexAttribPointer(1, 4, GL_FLOAT, false, 0, 0L);
+        glDrawArrays(GL_POINTS, 0, count);
+        stats.addDrawCall(count);
+
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    // the GPU copy of a buffer, uploading it if there isn't one yet
+    private Entry resident(MeshBuffer mesh) {
+        Entry entry = entries.get(mesh);
+        if (entry == null) {
+            entry = new Entry();
+            entry.vbo = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, entry.vbo);
+            glBufferData(GL_ARRAY_BUFFER, mesh.getData(), GL_STATIC_DRAW);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            if (mesh.getIndices() != null) {
+                entry.ibo = glGenBuffers();
+                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, entry.ibo);
+                glBufferData(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices(), GL_STATIC_DRAW);
+                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+            }
+            entries.put(mesh, entry);
+        }
+        entry.lastDrawn = frame;
+        return entry;
+    }
+
+    private static void delete(Entry entry) {
+        glDeleteBuffers(entry.vbo);
+        if (entry.ibo != 0) {
+            glDeleteBuffers(entry.ibo);
+        }
+    }
+
+    /**
+     * Deletes every buffer and the shader
+     */
+    public void cleanup() {
+        for (Entry entry : entries.values()) {
+            delete(entry);
+        }
+        entries.clear();
+        program.cleanup();
+        pointProgram.cleanup();
+        MemoryUtil.memFree(matrixBuffer);
+    }
+}
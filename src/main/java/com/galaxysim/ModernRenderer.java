@@ -0,0 +1,604 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fStack;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Draws through vertex buffers and a small shader instead of immediate mode.
+ * Batches get collected and only drawn when something that actually matters changes
+ * (blend mode, transform, line width...), so thousands of stars end up as a handful
+ * of draw calls instead of thousands.
+ *
+ * All of the per-frame geometry goes through a StreamingBuffer, so when the driver
+ * supports persistent mapping the vertices get written straight into GPU memory.
+ * Stars are the exception - they live in a StarRegionBuffer and get drawn with one multi-draw.
+ * Meshes that never change (suns) don't stream either, they stay on the GPU in a MeshBufferCache
+ * along with their textures in a CubeTextureCache. Far away nebulae get drawn as pictures from
+ * an ImpostorAtlas
+ */
+public class ModernRenderer implements Renderer {
+    // x, y, z, r, g, b, a, size, u, v
+    private static final int FLOATS_PER_VERTEX = 10;
+    private static final int STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+
+    // batches get split at multiples of this so a line or triangle never ends up half in each draw
+    private static final int VERTEX_GRANULARITY = 6;
+
+    // how much a frame can stream before the buffer has to grow (it does that on its own)
+    private static final int STREAM_SECTION_BYTES = 1024 * 1024;
+
+    // CPU-side batch for when we can't write into mapped memory
+    private static final int STAGING_VERTICES = 1024 * VERTEX_GRANULARITY;
+
+    // goes after the camera block's header, which declares uProjection and uView
+    private static final String VERTEX_SHADER =
+        "attribute vec3 aPosition;\n" +
+        "attribute vec4 aColor;\n" +
+        "attribute float aSize;\n" +
+        "attribute vec2 aTexCoord;\n" +
+        "uniform mat4 uModel;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "void main() {\n" +
+        "    vColor = aColor;\n" +
+        "    vTexCoord = aTexCoord;\n" +
+        "    gl_PointSize = aSize;\n" +
+        "    gl_Position = uProjection * uView * uModel * vec4(aPosition, 1.0);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#version 120\n" +
+        "uniform int uRoundPoints;\n" +
+        "uniform int uTextured;\n" +
+        "uniform sampler2D uTexture;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "void main() {\n" +
+        "    if (uRoundPoints == 1) {\n" +
+        "        vec2 d = gl_PointCoord - vec2(0.5);\n" +
+        "        if (dot(d, d) > 0.25) discard;\n" +
+        "    }\n" +
+        "    vec4 color = vColor;\n" +
+        "    if (uTextured == 1) {\n" +
+        "        color.a *= texture2D(uTexture, vTexCoord).a;\n" +
+        "    }\n" +
+        "    gl_FragColor = color;\n" +
+        "}\n";
+
+    private ShaderProgram program;
+    private CameraBlock camera;
+    private final FloatBuffer matrixBuffer = MemoryUtil.memAllocFloat(16);
+
+    // where the vertices go: straight into mapped GPU memory if we can, otherwise a CPU staging buffer
+    private StreamingBuffer stream;
+    private FloatBuffer staging;
+    private FloatBuffer target;
+    private boolean targetIsMapped;
+    private int vertexCount;
+    private int overflowVbo;   // used when a frame streams more than the streaming buffer holds
+    private StarRegionBuffer starRegions;
+    private MeshBufferCache meshes;
+    private CubeTextureCache textures;
+    private final RenderStats stats = new RenderStats();
+    private final GLStateCache state = new GLStateCache(stats);
+
+    // the 3D scene gets drawn in here so its resolution can drop when the GPU is struggling
+    private SceneFramebuffer scene;
+    private int viewportWidth = 1;
+    private int viewportHeight = 1;
+
+    // the stars past the streaming radius, baked into a cubemap
+    private FarFieldSky farField;
+
+    // pictures of far away point clouds
+    private ImpostorAtlas impostors;
+
+    // the batch that's still waiting to be drawn
+    private Primitive pendingPrimitive;
+    private float pendingLineWidth;
+    private float batchSize;
+    private boolean smoothPoints;
+    private boolean textured;
+
+    // camera + per-object transforms
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Matrix4fStack model = new Matrix4fStack(16);
+    private final Matrix4f hudProjection = new Matrix4f();
+    private final Matrix4f identity = new Matrix4f();
+    private boolean modelDirty = true;
+
+    private CoordinatesFontRenderer fontRenderer;
+    private final CoordinatesFontRenderer.GlyphQuadConsumer glyphSink = this::glyphQuad;
+    private float textR, textG, textB;
+
+    @Override
+    public String getName() {
+        return "modern";
+    }
+
+    @Override
+    public void init() {
+        if (!GL.getCapabilities().OpenGL20) {
+            throw new RuntimeException("Modern renderer needs OpenGL 2.0 or newer");
+        }
+
+        camera = new CameraBlock();
+        program = new ShaderProgram(camera.header() + VERTEX_SHADER, FRAGMENT_SHADER, "aPosition", "aColor", "aSize", "aTexCoord");
+        camera.attach(program);
+        program.use();
+        glUniform1i(program.getUniformLocation("uTexture"), 0);
+
+        stream = new StreamingBuffer(GL_ARRAY_BUFFER, STREAM_SECTION_BYTES);
+        staging = MemoryUtil.memAllocFloat(STAGING_VERTICES * FLOATS_PER_VERTEX);
+        overflowVbo = glGenBuffers();
+        starRegions = new StarRegionBuffer(camera, stream);
+        meshes = new MeshBufferCache(camera);
+        textures = new CubeTextureCache();
+        System.out.println("Streaming dynamic geometry with " + stream.getMode().toString().toLowerCase() + " uploads");
+
+        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        glEnable(GL_DEPTH_TEST);
+
+        // let the shader pick point sizes and hand us gl_PointCoord for round points
+        glEnable(GL_VERTEX_PROGRAM_POINT_SIZE);
+        glEnable(GL_POINT_SPRITE);
+
+        // Initialize font renderer for the HUD
+        fontRenderer = new CoordinatesFontRenderer(16.0f);
+        fontRenderer.init();
+
+        // the offscreen scene is needed for either dynamic resolution or bloom
+        if ((RenderSettings.isDynamicResolutionEnabled() || RenderSettings.isBloomEnabled()) && SceneFramebuffer.isSupported()) {
+            scene = new SceneFramebuffer(RenderSettings.isBloomEnabled());
+        }
+
+        if (RenderSettings.isImpostorsEnabled() && ImpostorAtlas.isSupported()) {
+            try {
+                impostors = new ImpostorAtlas(camera, meshes, stream);
+            } catch (RuntimeException e) {
+                System.err.println("Impostors are off: " + e.getMessage());
+            }
+        }
+
+        if (RenderSettings.isFarFieldEnabled() && FarFieldSky.isSupported()) {
+            try {
+                farField = new FarFieldSky();
+            } catch (RuntimeException e) {
+                System.err.println("Far field is off: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void setViewport(int width, int height) {
+        viewportWidth = width;
+        viewportHeight = height;
+        if (scene != null) {
+            try {
+                scene.resize(width, height);
+            } catch (RuntimeException e) {
+                System.err.println("Offscreen scene is off: " + e.getMessage());
+                scene.cleanup();
+                scene = null;
+            }
+        }
+    }
+
+    // starts the 3D part of the frame, in the scene framebuffer if we have one
+    private void beginScene() {
+        if (scene != null) {
+            scene.bind();
+        } else {
+            glViewport(0, 0, viewportWidth, viewportHeight);
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        }
+    }
+
+    // puts the 3D part of the frame on the window (does nothing if it's already there)
+    private void endScene() {
+        if (scene != null) {
+            scene.resolve();
+            stats.setSceneResolution(scene.getScale(), scene.getGpuMs());
+            // bloom draws with its own shaders and state
+            program.use();
+            state.invalidate();
+        }
+    }
+
+    @Override
+    public void beginFrame(Matrix4f view, Matrix4f projection) {
+        stats.reset();
+
+        // baking switches framebuffers, so it has to happen before the scene starts
+        if (farField != null) {
+            farField.bakeStep(stats);
+        }
+        if (impostors != null) {
+            impostors.bakeStep(stats);
+        }
+        beginScene();
+        state.invalidate();
+        stream.beginFrame();
+        starRegions.beginFrame();
+
+        this.view.set(view);
+        this.projection.set(projection);
+        model.clear();
+        modelDirty = true;
+
+        // one upload for every shader that draws with the camera
+        camera.set(this.projection, this.view);
+        program.use();
+    }
+
+    @Override
+    public void endFrame() {
+        flush();
+        endScene();
+        stream.endFrame();
+        starRegions.endFrame();
+        meshes.endFrame();
+        textures.endFrame();
+        if (impostors != null) {
+            impostors.endFrame();
+        }
+    }
+
+    @Override
+    public void pushTransform(float x, float y, float z, float rotationY) {
+        flush();
+        model.pushMatrix();
+        model.translate(x, y, z);
+        if (rotationY != 0.0f) {
+            model.rotateY(rotationY);
+        }
+        modelDirty = true;
+    }
+
+    @Override
+    public void popTransform() {
+        flush();
+        model.popMatrix();
+        modelDirty = true;
+    }
+
+    @Override
+    public void setBlendMode(BlendMode mode) {
+        flush();
+        switch (mode) {
+            case ALPHA:
+                state.setBlend(true);
+                state.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+                break;
+            case ADDITIVE:
+                state.setBlend(true);
+                state.setBlendFunc(GL_SRC_ALPHA, GL_ONE);
+                break;
+            default:
+                state.setBlend(false);
+        }
+    }
+
+    @Override
+    public void setDepthWrite(boolean enabled) {
+        flush();
+        state.setDepthMask(enabled);
+    }
+
+    @Override
+    public void setSmoothPoints(boolean enabled) {
+        if (enabled != smoothPoints) {
+            flush();
+            smoothPoints = enabled;
+        }
+    }
+
+    @Override
+    public void begin(Primitive primitive, float size) {
+        // a new batch can ride along with the pending one as long as it would draw the same way
+        if (primitive != pendingPrimitive || (primitive == Primitive.LINES && size != pendingLineWidth)) {
+            flush();
+            pendingPrimitive = primitive;
+            pendingLineWidth = size;
+        }
+        batchSize = size;
+    }
+
+    @Override
+    public void vertex(float x, float y, float z, float r, float g, float b, float a) {
+        put(x, y, z, r, g, b, a, batchSize, 0.0f, 0.0f);
+    }
+
+    @Override
+    public void point(float x, float y, float z, float size, float r, float g, float b, float a) {
+        put(x, y, z, r, g, b, a, size, 0.0f, 0.0f);
+    }
+
+    private void put(float x, float y, float z, float r, float g, float b, float a, float size, float u, float v) {
+        if (target == null) {
+            pickTarget();
+        } else if (target.remaining() < FLOATS_PER_VERTEX) {
+            // out of room, draw what we have and keep going in a fresh chunk
+            flush();
+            pickTarget();
+        }
+        target.put(x).put(y).put(z).put(r).put(g).put(b).put(a).put(size).put(u).put(v);
+        vertexCount++;
+    }
+
+    /**
+     * Chooses where the next vertices get written
+     */
+    private void pickTarget() {
+        ByteBuffer mapped = stream.reserve(VERTEX_GRANULARITY * STRIDE);
+        if (mapped != null) {
+            int vertices = mapped.remaining() / STRIDE / VERTEX_GRANULARITY * VERTEX_GRANULARITY;
+            target = MemoryUtil.memFloatBuffer(MemoryUtil.memAddress(mapped), vertices * FLOATS_PER_VERTEX);
+            targetIsMapped = true;
+        } else {
+            staging.clear();
+            target = staging;
+            targetIsMapped = false;
+        }
+    }
+
+    @Override
+    public void end() {
+        // nothing to do yet - the batch gets drawn when something changes or the frame ends
+    }
+
+    /**
+     * Draws whatever has been collected since the last flush
+     */
+    private void flush() {
+        if (vertexCount == 0) {
+            return;
+        }
+
+        camera.apply(program);
+        if (modelDirty) {
+            uploadMatrix("uModel", model);
+            modelDirty = false;
+        }
+        glUniform1i(program.getUniformLocation("uRoundPoints"),
+            smoothPoints && pendingPrimitive == Primitive.POINTS ? 1 : 0);
+        glUniform1i(program.getUniformLocation("uTextured"), textured ? 1 : 0);
+
+        // figure out which buffer the vertices are in and where
+        long offset;
+        int bytes = vertexCount * STRIDE;
+        if (targetIsMapped) {
+            offset = stream.commit(bytes);
+            glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+        } else {
+            offset = stream.upload(MemoryUtil.memByteBuffer(MemoryUtil.memAddress(staging), bytes));
+            if (offset >= 0) {
+                glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+            } else {
+                // the streaming buffer is full for this frame (it'll grow next frame), orphan a plain one
+                glBindBuffer(GL_ARRAY_BUFFER, overflowVbo);
+                glBufferData(GL_ARRAY_BUFFER, MemoryUtil.memByteBuffer(MemoryUtil.memAddress(staging), bytes), GL_STREAM_DRAW);
+                offset = 0;
+            }
+        }
+
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        glEnableVertexAttribArray(3);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, STRIDE, offset);
+        glVertexAttribPointer(1, 4, GL_FLOAT, false, STRIDE, offset + 3L * Float.BYTES);
+        glVertexAttribPointer(2, 1, GL_FLOAT, false, STRIDE, offset + 7L * Float.BYTES);
+        glVertexAttribPointer(3, 2, GL_FLOAT, false, STRIDE, offset + 8L * Float.BYTES);
+
+        int mode;
+        switch (pendingPrimitive) {
+            case POINTS:
+                mode = GL_POINTS;
+                break;
+            case LINES:
+                state.setLineWidth(pendingLineWidth);
+                mode = GL_LINES;
+                break;
+            default:
+                mode = GL_TRIANGLES;
+        }
+        glDrawArrays(mode, 0, vertexCount);
+        stats.addDrawCall(vertexCount);
+
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glDisableVertexAttribArray(2);
+        glDisableVertexAttribArray(3);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        target = null;
+        vertexCount = 0;
+    }
+
+    @Override
+    public void drawStarRegions(List<? extends StarRegionData> regions) {
+        flush();
+        starRegions.draw(regions, stats);
+        // the region buffer has its own shader, switch back to ours
+        program.use();
+    }
+
+    @Override
+    public void drawFarField(FarFieldStars stars) {
+        if (farField != null) {
+            flush();
+            farField.draw(stars, view, projection, stats);
+            state.invalidate();
+            // the sky has its own shader too
+            program.use();
+        }
+    }
+
+    @Override
+    public void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a) {
+        flush();
+        int textureId = texture != null ? textures.get(texture) : 0;
+        meshes.draw(positions, colors, textureId, model, scale, r, g, b, a, stats);
+        // meshes have their own shader as well
+        program.use();
+    }
+
+    @Override
+    public void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                           float r, float g, float b, float a, float batchSize) {
+        flush();
+        meshes.drawPoints(points, colors, count, scale, pointScale, r, g, b, a, model, smoothPoints, stats);
+        program.use();
+    }
+
+    @Override
+    public void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                             float fraction, float pointScale, float opacityScale) {
+        flush();
+        if (impostors != null && impostors.draw(cloud, x, y, z, rotationY, fraction, pointScale, opacityScale,
+                view, projection, viewportHeight, state, stats)) {
+            program.use();
+            return;
+        }
+        // no picture of it yet (or no impostors at all), so this time it's the points
+        pushTransform(x, y, z, rotationY);
+        cloud.draw(this, fraction, pointScale, opacityScale);
+        popTransform();
+    }
+
+    private void uploadMatrix(String uniform, Matrix4f matrix) {
+        matrix.get(matrixBuffer);
+        glUniformMatrix4fv(program.getUniformLocation(uniform), false, matrixBuffer);
+    }
+
+    @Override
+    public void beginHud(int width, int height) {
+        flush();
+
+        // the HUD goes straight on the window at full resolution
+        endScene();
+
+        // flat pixel coordinates with the origin in the top left
+        hudProjection.setOrtho(0, width, height, 0, -1, 1);
+        camera.set(hudProjection, identity);
+        model.pushMatrix();
+        model.identity();
+        modelDirty = true;
+
+        // disable depth testing for UI elements
+        glDisable(GL_DEPTH_TEST);
+    }
+
+    @Override
+    public boolean hasBloom() {
+        return scene != null && scene.hasBloom();
+    }
+
+    @Override
+    public boolean canDrawText() {
+        return fontRenderer != null && fontRenderer.isLoaded();
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, float fontSize, float r, float g, float b) {
+        flush();
+        setBlendMode(BlendMode.ALPHA);
+        glBindTexture(GL_TEXTURE_2D, fontRenderer.getTextureId());
+        textured = true;
+        textR = r;
+        textG = g;
+        textB = b;
+
+        try {
+            // the glyph quads stream through the same buffer as everything else
+            begin(Primitive.TRIANGLES, 1.0f);
+            fontRenderer.forEachGlyphQuad(text, x, y, fontSize, glyphSink);
+            end();
+            flush();
+        } finally {
+            vertexCount = 0;
+            target = null;
+            textured = false;
+            glBindTexture(GL_TEXTURE_2D, 0);
+            setBlendMode(BlendMode.NONE);
+        }
+    }
+
+    // two triangles per character
+    private void glyphQuad(float x0, float y0, float x1, float y1, float s0, float t0, float s1, float t1) {
+        put(x0, y0, 0, textR, textG, textB, 1.0f, 1.0f, s0, t0);
+        put(x1, y0, 0, textR, textG, textB, 1.0f, 1.0f, s1, t0);
+        put(x1, y1, 0, textR, textG, textB, 1.0f, 1.0f, s1, t1);
+        put(x0, y0, 0, textR, textG, textB, 1.0f, 1.0f, s0, t0);
+        put(x1, y1, 0, textR, textG, textB, 1.0f, 1.0f, s1, t1);
+        put(x0, y1, 0, textR, textG, textB, 1.0f, 1.0f, s0, t1);
+    }
+
+    @Override
+    public void endHud() {
+        flush();
+        model.popMatrix();
+        modelDirty = true;
+        camera.set(projection, view);
+
+        // restore previous state
+        glEnable(GL_DEPTH_TEST);
+    }
+
+    @Override
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void cleanup() {
+        if (fontRenderer != null) {
+            fontRenderer.cleanup();
+        }
+        if (program != null) {
+            program.cleanup();
+        }
+        if (stream != null) {
+            stream.cleanup();
+            glDeleteBuffers(overflowVbo);
+        }
+        if (starRegions != null) {
+            starRegions.cleanup();
+        }
+        if (impostors != null) {
+            impostors.cleanup();
+        }
+        if (meshes != null) {
+            meshes.cleanup();
+        }
+        if (textures != null) {
+            textures.cleanup();
+        }
+        if (camera != null) {
+            camera.cleanup();
+        }
+        if (scene != null) {
+            scene.cleanup();
+        }
+        if (farField != null) {
+            farField.cleanup();
+        }
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+        MemoryUtil.memFree(matrixBuffer);
+    }
+}
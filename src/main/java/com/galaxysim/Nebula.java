@@ -1,202 +1,78 @@
 package com.galaxysim;
 
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
-import static org.lwjgl.opengl.GL11.*;
-
 /**
  * Represents a colorful nebula in space - a large, visually impressive cloud of gas and dust.
  * Nebulae are rare but lit features in the galaxy.
+ * The particles never move relative to each other, so they come from a template shared by
+ * every nebula of the type (see NebulaTemplateCache) and every frame just draws them at this
+ * nebula's size, tint and rotation - however many particles or nebulae there are, a nebula
+ * costs the same to submit and keeps no particles of its own. Once a nebula is small on screen
+ * it gets drawn as an impostor instead: renderers that can keep a picture of it and only
+ * redraw the particles when the view has changed enough.
  * Is a work in progress, I know
  */
 public class Nebula {
     private Vector3f center;           // Center position of the nebula
     private float radius;              // Overall radius of the nebula
-    private List<NebulaParticle> particles;  // Particles that make up the nebula
-    private List<NebulaParticle> backgroundCloud; // Background cloud effect
-    private Vector4f baseColor;        // Base color of the nebula (RGBA)
-    private Vector4f secondaryColor;   // Secondary color for variation
-    private Vector4f cloudColor;       // Color for the background cloud
+    private PointCloud cloud;          // The shared particles at this nebula's size and tint
     private float rotationSpeed;       // How fast the nebula rotates
     private float currentRotation;     // Current rotation angle
+    private float previousRotation;    // Rotation one simulation step ago, for smooth rendering
     
-    /**
-     * Represents a single particle in the nebula cloud
-     */
-    private static class NebulaParticle {
-        Vector3f position;     // Position relative to nebula center
-        float size;           // Size of this particle
-        float opacity;        // Opacity/transparency
-        Vector4f color;       // Color of this particle (RGBA)
-        
-        NebulaParticle(Vector3f position, float size, float opacity, Vector4f color) {
-            this.position = position;
-            this.size = size;
-            this.opacity = opacity;
-            this.color = color;
-        }
-    }
+    // Point size for backends that can't size every particle on its own (the fixed-function
+    // path could never change size inside glBegin/glEnd, so this is what it ended up drawing anyway)
+    private static final float BATCH_POINT_SIZE = 2.0f;
+
+    // Once a nebula looks smaller than this on screen it starts drawing fewer particles, in proportion,
+    // down to MIN_DETAIL of them. The ones left get bigger and more opaque to cover for the missing ones,
+    // bigger first up to MAX_POINT_BOOST, then the rest in opacity
+    private static final float FULL_DETAIL_PIXELS = 300.0f;
+    private static final float MIN_DETAIL = 0.05f;
+    private static final float MAX_POINT_BOOST = 2.0f;
+
+    // Once the whole thing (background cloud and all) is smaller than this on screen, it gets drawn as an impostor.
+    // Small enough that the picture has at least as many pixels as the screen, so swapping back and forth doesn't show
+    private static final float IMPOSTOR_PIXELS = 96.0f;
     
     /**
      * Creates a new nebula with specified parameters
      * 
      * @param center Center position of the nebula in space
      * @param radius Overall radius of the nebula
-     * @param particleCount Number of particles to generate for this nebula
+     * @param particleCount Number of particles to draw for this nebula (up to NebulaTemplateCache.MAX_PARTICLES)
      * @param nebulaType Type of nebula (affects color and appearance)
      * @param random Random number generator for consistent generation
      */
     public Nebula(Vector3f center, float radius, int particleCount, NebulaType nebulaType, Random random) {
         this.center = center;
         this.radius = radius;
-        this.particles = new ArrayList<>();
-        this.backgroundCloud = new ArrayList<>();
         this.currentRotation = 0.0f;
         this.rotationSpeed = (random.nextFloat() * 0.01f + 0.005f) * (random.nextBoolean() ? 1 : -1); // Slower rotation
         
-        // Set colors based on nebula type - more vibrant colors
-        switch (nebulaType) {
-            case EMISSION:
-                // Red/orange emission nebula - more vibrant
-                this.baseColor = new Vector4f(1.0f, 0.2f, 0.1f, 0.7f);
-                this.secondaryColor = new Vector4f(1.0f, 0.7f, 0.0f, 0.6f);
-                this.cloudColor = new Vector4f(0.9f, 0.2f, 0.0f, 0.4f); // Prominent red cloud
-                break;
-            case REFLECTION:
-                // Blue reflection nebula - more vibrant
-                this.baseColor = new Vector4f(0.1f, 0.5f, 1.0f, 0.6f);
-                this.secondaryColor = new Vector4f(0.4f, 0.8f, 1.0f, 0.5f);
-                this.cloudColor = new Vector4f(0.0f, 0.3f, 0.8f, 0.4f); // Prominent blue cloud
-                break;
-            case PLANETARY:
-                // Green/teal planetary nebula - more vibrant
-                this.baseColor = new Vector4f(0.0f, 1.0f, 0.7f, 0.6f);
-                this.secondaryColor = new Vector4f(0.3f, 0.7f, 1.0f, 0.5f);
-                this.cloudColor = new Vector4f(0.0f, 0.7f, 0.4f, 0.4f); // Prominent green cloud
-                break;
-            case DARK:
-                // Purple/dark nebula - more vibrant
-                this.baseColor = new Vector4f(0.7f, 0.0f, 0.7f, 0.6f);
-                this.secondaryColor = new Vector4f(1.0f, 0.0f, 1.0f, 0.5f);
-                this.cloudColor = new Vector4f(0.5f, 0.0f, 0.6f, 0.4f); // Prominent purple cloud
-                break;
-            default:
-                // Default to a colorful mix - more vibrant
-                this.baseColor = new Vector4f(0.7f, 0.3f, 1.0f, 0.6f);
-                this.secondaryColor = new Vector4f(0.3f, 0.6f, 1.0f, 0.5f);
-                this.cloudColor = new Vector4f(0.4f, 0.2f, 0.7f, 0.4f); // Prominent purple/blue cloud
-        }
-        
-        // Generate particles that make up the nebula
-        generateParticles(particleCount, random);
-        
-        // Generate background cloud effect (more particles, larger area, more transparent)
-        generateBackgroundCloud(particleCount * 2, random);
-    }
-    
-    /**
-     * Generates the particles that make up the nebula
-     */
-    /**
-     * Generates the background cloud effect that sits behind the main nebula
-     * This creates a more diffuse, larger cloud effect
-     */
-    private void generateBackgroundCloud(int count, Random random) {
-        float cloudRadius = radius * 2.0f; // Cloud extends much further beyond the main nebula
-        
-        for (int i = 0; i < count; i++) {
-            // Use cylindrical coordinates to create cloud-like nebulae
-            float theta = random.nextFloat() * 2.0f * (float)Math.PI;
-            
-            // Make the cloud taller in the Y direction
-            float heightFactor = 3.0f; // Even more vertical stretching for the cloud
-            
-            // Use a distribution that creates a cloud-like shape
-            float distFactor = (float)Math.pow(random.nextFloat(), 1.2f);
-            float r = cloudRadius * distFactor * 0.9f; // Horizontal radius
-            
-            // Generate y with more range in vertical direction
-            float y = (random.nextFloat() * 2.0f - 1.0f) * cloudRadius * heightFactor * distFactor;
-            
-            // Convert cylindrical to Cartesian coordinates for x and z
-            float x = r * (float)Math.cos(theta);
-            float z = r * (float)Math.sin(theta);
-            
-            // Create position with some noise to make it less perfectly shaped
-            Vector3f position = new Vector3f(
-                x + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f,
-                y + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f,
-                z + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f
-            );
-            
-            // Size is much larger for cloud particles
-            float size = (1.0f - distFactor * 0.5f) * (random.nextFloat() * 40.0f + 25.0f);
-            
-            // Cloud has moderate transparency for visibility
-            float opacity = (1.0f - distFactor * 0.6f) * (random.nextFloat() * 0.3f + 0.15f);
-            
-            // Use the cloud color with some variation
-            float colorVar = random.nextFloat() * 0.2f - 0.1f; // +/- 10%
-            Vector4f color = new Vector4f(
-                Math.max(0, Math.min(1, cloudColor.x + colorVar)),
-                Math.max(0, Math.min(1, cloudColor.y + colorVar)),
-                Math.max(0, Math.min(1, cloudColor.z + colorVar)),
-                cloudColor.w * opacity
-            );
-            
-            backgroundCloud.add(new NebulaParticle(position, size, opacity, color));
-        }
-    }
-    
-    private void generateParticles(int count, Random random) {
-        for (int i = 0; i < count; i++) {
-            // Use cylindrical coordinates to create taller nebulae
-            float theta = random.nextFloat() * 2.0f * (float)Math.PI;
-            
-            // Make the nebula taller in the Y direction
-            float heightFactor = 2.5f; // Vertical stretching factor
-            
-            // Use a distribution that clusters more particles toward the center
-            // but still has some reaching the outer edges
-            float distFactor = (float)Math.pow(random.nextFloat(), 1.5f);
-            float r = radius * distFactor * 0.7f; // Horizontal radius
-            
-            // Generate y with more range in vertical direction
-            float y = (random.nextFloat() * 2.0f - 1.0f) * radius * heightFactor * distFactor;
-            
-            // Convert cylindrical to Cartesian coordinates for x and z
-            float x = r * (float)Math.cos(theta);
-            float z = r * (float)Math.sin(theta);
-            
-            // Create position with some noise to make it less perfectly spherical
-            Vector3f position = new Vector3f(
-                x + (random.nextFloat() - 0.5f) * radius * 0.2f,
-                y + (random.nextFloat() - 0.5f) * radius * 0.2f,
-                z + (random.nextFloat() - 0.5f) * radius * 0.2f
-            );
-            
-            // Size is larger toward the center
-            float size = (1.0f - distFactor * 0.7f) * (random.nextFloat() * 15.0f + 10.0f); // Larger particles
-            
-            // Opacity is higher toward the center
-            float opacity = (1.0f - distFactor * 0.5f) * (random.nextFloat() * 0.5f + 0.3f); // More opaque
-            
-            // Mix the two colors with random weighting
-            float colorMix = random.nextFloat();
-            Vector4f color = new Vector4f(
-                baseColor.x * colorMix + secondaryColor.x * (1.0f - colorMix),
-                baseColor.y * colorMix + secondaryColor.y * (1.0f - colorMix),
-                baseColor.z * colorMix + secondaryColor.z * (1.0f - colorMix),
-                baseColor.w * opacity
-            );
-            
-            particles.add(new NebulaParticle(position, size, opacity, color));
-        }
+        // Borrow one of the type's shared particle sets, and shade it a little so two nebulae
+        // using the same one don't look identical
+        NebulaTemplateCache.Template template = NebulaTemplateCache.get(nebulaType, random.nextInt(NebulaTemplateCache.VARIANTS));
+        float brightness = random.nextFloat() * 0.2f + 0.8f;
+        Vector4f tint = new Vector4f(
+            brightness * (random.nextFloat() * 0.15f + 0.85f),
+            brightness * (random.nextFloat() * 0.15f + 0.85f),
+            brightness * (random.nextFloat() * 0.15f + 0.85f),
+            1.0f
+        );
+
+        // First the background cloud with additive blending for a glowing effect (twice as many particles),
+        // then alpha blending for the main particles
+        particleCount = Math.max(1, Math.min(NebulaTemplateCache.MAX_PARTICLES, particleCount));
+        PointCloud.Layer[] layers = {
+            new PointCloud.Layer(template.getCloudPoints(), template.getCloudColors(), particleCount * 2, Renderer.BlendMode.ADDITIVE),
+            new PointCloud.Layer(template.getParticlePoints(), template.getParticleColors(), particleCount, Renderer.BlendMode.ALPHA)
+        };
+        this.cloud = new PointCloud(layers, radius, tint.x, tint.y, tint.z, tint.w, BATCH_POINT_SIZE,
+            template.getBoundsRadius() * radius);
     }
     
     /**
@@ -204,6 +80,8 @@ public class Nebula {
      * @param deltaTime Time passed since last update in seconds
      */
     public void update(float deltaTime) {
+        previousRotation = currentRotation;
+
         // Update rotation
         currentRotation += rotationSpeed * deltaTime;
         if (currentRotation > 2.0f * Math.PI) {
@@ -215,87 +93,39 @@ public class Nebula {
     
     /**
      * Render the nebula
-     * @param view The view matrix
-     * @param projection The projection matrix
+     * @param renderer The renderer to submit the particles to
+     * @param camera The camera (far away nebulae draw fewer particles)
+     * @param alpha How far we are between the last simulation step and the next one (0-1)
      */
-    public void render(Matrix4f view, Matrix4f projection) {
-        // Save the current drawing state
-        glPushMatrix();
-        
-        // Convert matrices to OpenGL format
-        float[] viewMatrix = new float[16];
-        float[] projMatrix = new float[16];
-        view.get(viewMatrix);
-        projection.get(projMatrix);
-        
-        // Set up the projection and modelview matrices
-        glMatrixMode(GL_PROJECTION);
-        glLoadMatrixf(projMatrix);
-        glMatrixMode(GL_MODELVIEW);
-        glLoadMatrixf(viewMatrix);
-        
-        // Move to the nebula's center position
-        glTranslatef(center.x, center.y, center.z);
-        
-        // Apply rotation around Y axis
-        glRotatef((float)Math.toDegrees(currentRotation), 0.0f, 1.0f, 0.0f);
-        
-        // Enable blending for transparency
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        
+    public void render(Renderer renderer, Camera camera, float alpha) {
+        float rotation = SimulationClock.lerpAngle(previousRotation, currentRotation, alpha);
+        
+        // Far away, most particles just land on top of each other, so draw a fair sample of them instead.
+        // Each one stands in for 1 / detail of them, so it covers that much more: area goes with size squared
+        float detail = Math.max(MIN_DETAIL, Math.min(1.0f, camera.projectedRadius(center, radius) / FULL_DETAIL_PIXELS));
+        float pointBoost = Math.min(MAX_POINT_BOOST, (float) Math.sqrt(1.0f / detail));
+        float opacityBoost = 1.0f / (detail * pointBoost * pointBoost);
+        float fraction = detail * QualitySettings.getNebulaParticleFraction();
+
         // Disable depth writing (but keep depth testing) for proper transparency
-        glDepthMask(false);
-        
-        // First draw the background cloud with additive blending for a glowing effect
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE); // Additive blending for glow effect
-        
-        glBegin(GL_POINTS);
-        for (NebulaParticle particle : backgroundCloud) {
-            glColor4f(
-                particle.color.x,
-                particle.color.y,
-                particle.color.z,
-                particle.color.w * particle.opacity
-            );
-            glPointSize(particle.size);
-            glVertex3f(
-                particle.position.x,
-                particle.position.y,
-                particle.position.z
-            );
+        renderer.setDepthWrite(false);
+        
+        if (camera.projectedRadius(center, cloud.getBoundsRadius()) < IMPOSTOR_PIXELS) {
+            // The impostor comes out already blended, it's drawn with the alpha draws
+            renderer.setBlendMode(Renderer.BlendMode.ALPHA);
+            renderer.drawImpostor(cloud, center.x, center.y, center.z, rotation, fraction, pointBoost, opacityBoost);
+        } else {
+            // Move to the nebula's center position and apply rotation around Y axis
+            renderer.pushTransform(center.x, center.y, center.z, rotation);
+            cloud.draw(renderer, fraction, pointBoost, opacityBoost);
+            renderer.popTransform();
         }
-        glEnd();
-        
-        // Switch back to alpha blending for the main particles
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        
-        // Then draw the main nebula particles
-        glBegin(GL_POINTS);
-        for (NebulaParticle particle : particles) {
-            glColor4f(
-                particle.color.x,
-                particle.color.y,
-                particle.color.z,
-                particle.color.w * particle.opacity
-            );
-            glPointSize(particle.size);
-            glVertex3f(
-                particle.position.x,
-                particle.position.y,
-                particle.position.z
-            );
-        }
-        glEnd();
         
         // Restore depth mask
-        glDepthMask(true);
+        renderer.setDepthWrite(true);
         
         // Disable blending
-        glDisable(GL_BLEND);
-        
-        // Restore the previous matrix state
-        glPopMatrix();
+        renderer.setBlendMode(Renderer.BlendMode.NONE);
     }
     
     /**
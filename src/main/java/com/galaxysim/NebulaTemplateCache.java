@@ -0,0 +1,286 @@
+package com.galaxysim;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Nebula particles shared between every nebula of the same type, like SunTypeCache does for
+ * suns. Templates are made at radius 1 and a nebula draws one at its own size, tint and rotation.
+ *
+ * Every template has as many particles as the biggest nebula wants, ordered so that any first
+ * part of it is a fair sample of the whole thing - from the middle out to the edges - so a
+ * smaller or far away nebula just draws the first part of it
+ */
+public final class NebulaTemplateCache {
+    // templates per nebula type, a new nebula picks one at random
+    public static final int VARIANTS = 4;
+
+    // most core particles a nebula can have (the background cloud gets twice as many)
+    public static final int MAX_PARTICLES = 5000;
+
+    private static final Map<Integer, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+    private NebulaTemplateCache() {
+    }
+
+    /**
+     * The particles of one nebula type and variant, at radius 1. Sizes are in pixels and
+     * don't scale with the radius (they never did)
+     */
+    public static final class Template {
+        private final MeshBuffer particlePoints;
+        private final MeshBuffer particleColors;
+        private final MeshBuffer cloudPoints;
+        private final MeshBuffer cloudColors;
+        private final float boundsRadius;
+
+        private Template(MeshBuffer particlePoints, MeshBuffer particleColors, MeshBuffer cloudPoints, MeshBuffer cloudColors) {
+            this.particlePoints = particlePoints;
+            this.particleColors = particleColors;
+            this.cloudPoints = cloudPoints;
+            this.cloudColors = cloudColors;
+            this.boundsRadius = Math.max(furthest(particlePoints), furthest(cloudPoints));
+        }
+
+        // distance from the middle to the furthest point
+        private static float furthest(MeshBuffer points) {
+            float[] data = points.getData();
+            float furthest = 0.0f;
+            for (int i = 0; i < data.length; i += 4) {
+                furthest = Math.max(furthest, data[i] * data[i] + data[i + 1] * data[i + 1] + data[i + 2] * data[i + 2]);
+            }
+            return (float) Math.sqrt(furthest);
+        }
+
+        /**
+         * @return The main particles (x, y, z, size)
+         */
+        public MeshBuffer getParticlePoints() {
+            return particlePoints;
+        }
+
+        /**
+         * @return Colors of the main particles
+         */
+        public MeshBuffer getParticleColors() {
+            return particleColors;
+        }
+
+        /**
+         * @return The background cloud particles (x, y, z, size)
+         */
+        public MeshBuffer getCloudPoints() {
+            return cloudPoints;
+        }
+
+        /**
+         * @return Colors of the background cloud particles
+         */
+        public MeshBuffer getCloudColors() {
+            return cloudColors;
+        }
+
+        /**
+         * @return How far the furthest particle is from the middle (the cloud goes well past radius 1, up and down)
+         */
+        public float getBoundsRadius() {
+            return boundsRadius;
+        }
+    }
+
+    /**
+     * @param type Which type of nebula
+     * @param variant Which of its looks (0 to VARIANTS - 1)
+     * @return The shared template, made the first time somebody asks for it
+     */
+    public static Template get(Nebula.NebulaType type, int variant) {
+        if (variant < 0 || variant >= VARIANTS) {
+            throw new IllegalArgumentException("There's no nebula variant " + variant);
+        }
+        int key = type.ordinal() * VARIANTS + variant;
+        // the first few numbers place the innermost particles, which every nebula draws however small it is,
+        // and Randoms seeded one apart start out close - so the keys get scattered before seeding
+        return TEMPLATES.computeIfAbsent(key, k -> generate(type, new Random((k + 1) * 0x9E3779B97F4A7C15L)));
+    }
+
+    private static Template generate(Nebula.NebulaType type, Random random) {
+        float[] baseColor;
+        float[] secondaryColor;
+        float[] cloudColor;
+
+        // Set colors based on nebula type - more vibrant colors
+        switch (type) {
+            case EMISSION:
+                // Red/orange emission nebula - more vibrant
+                baseColor = new float[] {1.0f, 0.2f, 0.1f, 0.7f};
+                secondaryColor = new float[] {1.0f, 0.7f, 0.0f, 0.6f};
+                cloudColor = new float[] {0.9f, 0.2f, 0.0f, 0.4f}; // Prominent red cloud
+                break;
+            case REFLECTION:
+                // Blue reflection nebula - more vibrant
+                baseColor = new float[] {0.1f, 0.5f, 1.0f, 0.6f};
+                secondaryColor = new float[] {0.4f, 0.8f, 1.0f, 0.5f};
+                cloudColor = new float[] {0.0f, 0.3f, 0.8f, 0.4f}; // Prominent blue cloud
+                break;
+            case PLANETARY:
+                // Green/teal planetary nebula - more vibrant
+                baseColor = new float[] {0.0f, 1.0f, 0.7f, 0.6f};
+                secondaryColor = new float[] {0.3f, 0.7f, 1.0f, 0.5f};
+                cloudColor = new float[] {0.0f, 0.7f, 0.4f, 0.4f}; // Prominent green cloud
+                break;
+            case DARK:
+                // Purple/dark nebula - more vibrant
+                baseColor = new float[] {0.7f, 0.0f, 0.7f, 0.6f};
+                secondaryColor = new float[] {1.0f, 0.0f, 1.0f, 0.5f};
+                cloudColor = new float[] {0.5f, 0.0f, 0.6f, 0.4f}; // Prominent purple cloud
+                break;
+            default:
+                // Default to a colorful mix - more vibrant
+                baseColor = new float[] {0.7f, 0.3f, 1.0f, 0.6f};
+                secondaryColor = new float[] {0.3f, 0.6f, 1.0f, 0.5f};
+                cloudColor = new float[] {0.4f, 0.2f, 0.7f, 0.4f}; // Prominent purple/blue cloud
+        }
+
+        // same order the nebula always made them in: its own particles, then the cloud
+        float[] particlePoints = new float[MAX_PARTICLES * 4];
+        float[] particleColors = new float[MAX_PARTICLES * 4];
+        float[] particleDistances = new float[MAX_PARTICLES];
+        generateParticles(particlePoints, particleColors, particleDistances, baseColor, secondaryColor, random);
+        particlePoints = interleave(particlePoints, particleDistances);
+        particleColors = interleave(particleColors, particleDistances);
+
+        float[] cloudPoints = new float[MAX_PARTICLES * 2 * 4];
+        float[] cloudColors = new float[MAX_PARTICLES * 2 * 4];
+        float[] cloudDistances = new float[MAX_PARTICLES * 2];
+        generateBackgroundCloud(cloudPoints, cloudColors, cloudDistances, cloudColor, random);
+        cloudPoints = interleave(cloudPoints, cloudDistances);
+        cloudColors = interleave(cloudColors, cloudDistances);
+
+        return new Template(new MeshBuffer(particlePoints, 4, null), new MeshBuffer(particleColors, 4, null),
+            new MeshBuffer(cloudPoints, 4, null), new MeshBuffer(cloudColors, 4, null));
+    }
+
+    /**
+     * Puts the particles in an order where every first part is spread evenly from the middle out.
+     * They get sorted by how far out they are, then taken in bit-reversed order (0, n/2, n/4, 3n/4...),
+     * which keeps splitting the gaps so however many we stop at, every shell has its share.
+     * Random order was already fair on average, but a small prefix could still come out lopsided
+     * @param data 4 floats per particle
+     * @param distances How far out each particle is
+     * @return The same particles in the new order
+     */
+    private static float[] interleave(float[] data, float[] distances) {
+        int count = distances.length;
+        Integer[] byDistance = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byDistance[i] = i;
+        }
+        Arrays.sort(byDistance, (a, b) -> Float.compare(distances[a], distances[b]));
+
+        int bits = 32 - Integer.numberOfLeadingZeros(count - 1);
+        float[] ordered = new float[data.length];
+        int next = 0;
+        for (int k = 0; next < count; k++) {
+            // reversed index over the next power of two, skipping the ones past the end
+            int i = Integer.reverse(k) >>> (32 - bits);
+            if (i >= count) {
+                continue;
+            }
+            System.arraycopy(data, byDistance[i] * 4, ordered, next * 4, 4);
+            next++;
+        }
+        return ordered;
+    }
+
+    /**
+     * Generates the background cloud effect that sits behind the main nebula
+     * This creates a more diffuse, larger cloud effect
+     */
+    private static void generateBackgroundCloud(float[] points, float[] colors, float[] distances, float[] cloudColor, Random random) {
+        float cloudRadius = 2.0f; // Cloud extends much further beyond the main nebula
+
+        for (int i = 0; i < points.length / 4; i++) {
+            // Use cylindrical coordinates to create cloud-like nebulae
+            float theta = random.nextFloat() * 2.0f * (float)Math.PI;
+
+            // Make the cloud taller in the Y direction
+            float heightFactor = 3.0f; // Even more vertical stretching for the cloud
+
+            // Use a distribution that creates a cloud-like shape
+            float distFactor = (float)Math.pow(random.nextFloat(), 1.2f);
+            float r = cloudRadius * distFactor * 0.9f; // Horizontal radius
+            distances[i] = distFactor;
+
+            // Generate y with more range in vertical direction
+            float y = (random.nextFloat() * 2.0f - 1.0f) * cloudRadius * heightFactor * distFactor;
+
+            // Convert cylindrical to Cartesian coordinates for x and z
+            float x = r * (float)Math.cos(theta);
+            float z = r * (float)Math.sin(theta);
+
+            // Position with some noise to make it less perfectly shaped
+            points[i * 4] = x + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f;
+            points[i * 4 + 1] = y + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f;
+            points[i * 4 + 2] = z + (random.nextFloat() - 0.5f) * cloudRadius * 0.3f;
+
+            // Size is much larger for cloud particles
+            points[i * 4 + 3] = (1.0f - distFactor * 0.5f) * (random.nextFloat() * 40.0f + 25.0f);
+
+            // Cloud has moderate transparency for visibility
+            float opacity = (1.0f - distFactor * 0.6f) * (random.nextFloat() * 0.3f + 0.15f);
+
+            // Use the cloud color with some variation (opacity counts twice, like it always has)
+            float colorVar = random.nextFloat() * 0.2f - 0.1f; // +/- 10%
+            colors[i * 4] = Math.max(0, Math.min(1, cloudColor[0] + colorVar));
+            colors[i * 4 + 1] = Math.max(0, Math.min(1, cloudColor[1] + colorVar));
+            colors[i * 4 + 2] = Math.max(0, Math.min(1, cloudColor[2] + colorVar));
+            colors[i * 4 + 3] = cloudColor[3] * opacity * opacity;
+        }
+    }
+
+    /**
+     * Generates the particles that make up the nebula
+     */
+    private static void generateParticles(float[] points, float[] colors, float[] distances, float[] baseColor, float[] secondaryColor, Random random) {
+        for (int i = 0; i < points.length / 4; i++) {
+            // Use cylindrical coordinates to create taller nebulae
+            float theta = random.nextFloat() * 2.0f * (float)Math.PI;
+
+            // Make the nebula taller in the Y direction
+            float heightFactor = 2.5f; // Vertical stretching factor
+
+            // Use a distribution that clusters more particles toward the center
+            // but still has some reaching the outer edges
+            float distFactor = (float)Math.pow(random.nextFloat(), 1.5f);
+            float r = distFactor * 0.7f; // Horizontal radius
+            distances[i] = distFactor;
+
+            // Generate y with more range in vertical direction
+            float y = (random.nextFloat() * 2.0f - 1.0f) * heightFactor * distFactor;
+
+            // Convert cylindrical to Cartesian coordinates for x and z
+            float x = r * (float)Math.cos(theta);
+            float z = r * (float)Math.sin(theta);
+
+            // Position with some noise to make it less perfectly spherical
+            points[i * 4] = x + (random.nextFloat() - 0.5f) * 0.2f;
+            points[i * 4 + 1] = y + (random.nextFloat() - 0.5f) * 0.2f;
+            points[i * 4 + 2] = z + (random.nextFloat() - 0.5f) * 0.2f;
+
+            // Size is larger toward the center
+            points[i * 4 + 3] = (1.0f - distFactor * 0.7f) * (random.nextFloat() * 15.0f + 10.0f); // Larger particles
+
+            // Opacity is higher toward the center
+            float opacity = (1.0f - distFactor * 0.5f) * (random.nextFloat() * 0.5f + 0.3f); // More opaque
+
+            // Mix the two colors with random weighting
+            float colorMix = random.nextFloat();
+            colors[i * 4] = baseColor[0] * colorMix + secondaryColor[0] * (1.0f - colorMix);
+            colors[i * 4 + 1] = baseColor[1] * colorMix + secondaryColor[1] * (1.0f - colorMix);
+            colors[i * 4 + 2] = baseColor[2] * colorMix + secondaryColor[2] * (1.0f - colorMix);
+            colors[i * 4 + 3] = baseColor[3] * opacity * opacity;
+        }
+    }
+}
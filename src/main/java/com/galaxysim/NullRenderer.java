@@ -0,0 +1,124 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+
+import java.util.List;
+
+/**
+ * A renderer that throws everything away. The scene still does all its work and
+ * submits all its draw data, so running with this one tells you what the CPU side
+ * costs without any GL time mixed in
+ */
+public class NullRenderer implements Renderer {
+    private final RenderStats stats = new RenderStats();
+
+    @Override
+    public String getName() {
+        return "null";
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void setViewport(int width, int height) {
+    }
+
+    @Override
+    public void beginFrame(Matrix4f view, Matrix4f projection) {
+    }
+
+    @Override
+    public void endFrame() {
+    }
+
+    @Override
+    public void pushTransform(float x, float y, float z, float rotationY) {
+    }
+
+    @Override
+    public void popTransform() {
+    }
+
+    @Override
+    public void setBlendMode(BlendMode mode) {
+    }
+
+    @Override
+    public void setDepthWrite(boolean enabled) {
+    }
+
+    @Override
+    public void setSmoothPoints(boolean enabled) {
+    }
+
+    @Override
+    public void begin(Primitive primitive, float size) {
+    }
+
+    @Override
+    public void vertex(float x, float y, float z, float r, float g, float b, float a) {
+    }
+
+    @Override
+    public void point(float x, float y, float z, float size, float r, float g, float b, float a) {
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public void drawStarRegions(List<? extends StarRegionData> regions) {
+    }
+
+    @Override
+    public void drawFarField(FarFieldStars stars) {
+    }
+
+    @Override
+    public void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a) {
+    }
+
+    @Override
+    public void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                             float fraction, float pointScale, float opacityScale) {
+    }
+
+    @Override
+    public void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                           float r, float g, float b, float a, float batchSize) {
+    }
+
+    @Override
+    public void beginHud(int width, int height) {
+    }
+
+    @Override
+    public boolean hasBloom() {
+        return false;
+    }
+
+    @Override
+    public boolean canDrawText() {
+        return true;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, float fontSize, float r, float g, float b) {
+    }
+
+    @Override
+    public void endHud() {
+    }
+
+    @Override
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void cleanup() {
+    }
+}
@@ -0,0 +1,112 @@
+package com.galaxysim;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * What "the window" means when there isn't really one. Headless runs draw every frame
+ * into this framebuffer instead of the window's, since an invisible or fake window
+ * doesn't have to keep (or even have) what gets drawn into it.
+ *
+ * Everything that switches back to drawing on the window after using its own framebuffer
+ * (the scene framebuffer, bloom, the far field bake) binds getFramebuffer() instead of 0,
+ * which is still 0 unless one of these is active. Only the render thread touches it
+ */
+public class OffscreenTarget {
+    // the framebuffer that stands in for the window right now (0 = the real window)
+    private static int outputFramebuffer = 0;
+
+    private final int width;
+    private final int height;
+    private int framebuffer;
+    private int colorBuffer;
+    private int depthBuffer;
+
+    /**
+     * @return The framebuffer to bind when going back to drawing on the window
+     */
+    public static int getFramebuffer() {
+        return outputFramebuffer;
+    }
+
+    /**
+     * Switches back to drawing on the window (or whatever's standing in for it)
+     */
+    public static void bindOutput() {
+        glBindFramebuffer(GL_FRAMEBUFFER, outputFramebuffer);
+    }
+
+    /**
+     * Creates the framebuffer and makes it the window from now on. Needs a GL context
+     * @param width Size in pixels
+     * @param height Size in pixels
+     */
+    public OffscreenTarget(int width, int height) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+
+        colorBuffer = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, colorBuffer);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, this.width, this.height);
+        depthBuffer = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthBuffer);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, this.width, this.height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, colorBuffer);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthBuffer);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            cleanup();
+            throw new RuntimeException("Offscreen framebuffer isn't complete (status 0x" + Integer.toHexString(status) + ")");
+        }
+        outputFramebuffer = framebuffer;
+        glViewport(0, 0, this.width, this.height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads back what's been drawn, bottom row first
+     * @param into Gets RGBA bytes, needs room for width * height * 4 of them
+     */
+    public void readPixels(ByteBuffer into) {
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, into);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, outputFramebuffer);
+    }
+
+    /**
+     * Deletes the framebuffer and hands drawing back to the real window
+     */
+    public void cleanup() {
+        if (outputFramebuffer == framebuffer) {
+            outputFramebuffer = 0;
+        }
+        if (framebuffer != 0) {
+            glDeleteFramebuffers(framebuffer);
+            framebuffer = 0;
+        }
+        if (colorBuffer != 0) {
+            glDeleteRenderbuffers(colorBuffer);
+            colorBuffer = 0;
+        }
+        if (depthBuffer != 0) {
+            glDeleteRenderbuffers(depthBuffer);
+            depthBuffer = 0;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.galaxysim;
+
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times KeplerOrbits on its own, no window needed. Makes planetary systems the same way the
+ * galaxy does until there are enough planets, then works out all their positions over and over,
+ * on one thread and then split up in parallel, and prints how long a pass and a body took.
+ *
+ * Run it with: java -cp "target/classes:target/dependency/*" com.galaxysim.OrbitBenchmark [bodies] [passes]
+ */
+public class OrbitBenchmark {
+    private static final int DEFAULT_BODIES = 10000;
+    private static final int DEFAULT_PASSES = 2000;
+
+    // passes that don't count while the JIT warms up
+    private static final int WARMUP_PASSES = 500;
+
+    // simulated seconds between passes (one frame)
+    private static final double STEP_SECONDS = SimulationClock.DEFAULT_STEP_SECONDS;
+
+    public static void main(String[] args) {
+        int bodies = args.length > 0 ? parseNumber(args[0], DEFAULT_BODIES) : DEFAULT_BODIES;
+        int passes = args.length > 1 ? parseNumber(args[1], DEFAULT_PASSES) : DEFAULT_PASSES;
+
+        // same systems the galaxy would make, with suns of every size
+        Random random = new Random(42);
+        KeplerOrbits orbits = new KeplerOrbits();
+        int systems = 0;
+        while (orbits.size() < bodies) {
+            float sunSize = random.nextFloat() * 500.0f + 500.0f;
+            new Bodies.PlanetarySystem(new Vector3f(), sunSize, random).addTo(orbits);
+            systems++;
+        }
+        System.out.println(String.format("Orbit benchmark: %d bodies in %d systems, %d passes",
+                orbits.size(), systems, passes));
+
+        double serialMs = run(orbits, passes, false);
+        float[] serial = positions(orbits);
+        double parallelMs = run(orbits, passes, true);
+        float[] parallel = positions(orbits);
+
+        report("Single thread", serialMs, orbits.size());
+        report(String.format("Parallel (%d threads)", Runtime.getRuntime().availableProcessors()), parallelMs, orbits.size());
+        // every body only depends on the time, so splitting the work up mustn't change a single bit
+        System.out.println(Arrays.equals(serial, parallel)
+                ? "Parallel positions match single thread exactly"
+                : "Parallel positions DON'T match single thread!");
+    }
+
+    // average milliseconds per pass
+    private static double run(KeplerOrbits orbits, int passes, boolean parallel) {
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            orbits.evaluate(i * STEP_SECONDS, parallel);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            orbits.evaluate(i * STEP_SECONDS, parallel);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / passes;
+    }
+
+    private static void report(String label, double passMs, int bodies) {
+        System.out.println(String.format("%s: %.3f ms per pass, %.1f ns per body", label, passMs, passMs * 1_000_000.0 / bodies));
+    }
+
+    private static float[] positions(KeplerOrbits orbits) {
+        float[] positions = new float[orbits.size() * 3];
+        for (int i = 0; i < orbits.size(); i++) {
+            positions[i * 3] = orbits.getX(i);
+            positions[i * 3 + 1] = orbits.getY(i);
+            positions[i * 3 + 2] = orbits.getZ(i);
+        }
+        return positions;
+    }
+
+    private static int parseNumber(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("'" + text + "' isn't a number, using " + fallback);
+            return fallback;
+        }
+    }
+}
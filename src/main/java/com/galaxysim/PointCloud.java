@@ -0,0 +1,140 @@
+package com.galaxysim;
+
+/**
+ * Everything needed to draw one cloud of static points, like a nebula: a few layers of points,
+ * each with its own blend mode, all drawn at the same scale and tint. Like MeshBuffer it never
+ * changes once it's made, so renderers can hang on to it by identity - the modern renderer
+ * keeps a picture of far away clouds (see ImpostorAtlas) and only redraws the points when the
+ * view has changed enough to notice
+ */
+public final class PointCloud {
+    /**
+     * One set of points in the cloud and how it gets blended
+     */
+    public static final class Layer {
+        private final MeshBuffer points;
+        private final MeshBuffer colors;
+        private final int count;
+        private final Renderer.BlendMode blendMode;
+
+        /**
+         * @param points Position and size of every point (x, y, z, size)
+         * @param colors Color of every point (4 floats each)
+         * @param count How many of them the layer has, from the first one
+         * @param blendMode How the layer gets blended (ALPHA or ADDITIVE)
+         */
+        public Layer(MeshBuffer points, MeshBuffer colors, int count, Renderer.BlendMode blendMode) {
+            if (count > points.getVertexCount()) {
+                throw new IllegalArgumentException("Layer wants " + count + " points but there are only " + points.getVertexCount());
+            }
+            this.points = points;
+            this.colors = colors;
+            this.count = count;
+            this.blendMode = blendMode;
+        }
+
+        public MeshBuffer getPoints() {
+            return points;
+        }
+
+        public MeshBuffer getColors() {
+            return colors;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Renderer.BlendMode getBlendMode() {
+            return blendMode;
+        }
+    }
+
+    private final Layer[] layers;
+    private final float scale;
+    private final float r, g, b, a;
+    private final float batchSize;
+    private final float boundsRadius;
+
+    /**
+     * @param layers The layers, in the order they get drawn
+     * @param scale What the positions get multiplied by
+     * @param r Red tint
+     * @param g Green tint
+     * @param b Blue tint
+     * @param a Alpha tint
+     * @param batchSize Point size for renderers that can't size every point on its own
+     * @param boundsRadius How far from the middle the furthest point is, after scaling
+     */
+    public PointCloud(Layer[] layers, float scale, float r, float g, float b, float a, float batchSize, float boundsRadius) {
+        this.layers = layers.clone();
+        this.scale = scale;
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.a = a;
+        this.batchSize = batchSize;
+        this.boundsRadius = boundsRadius;
+    }
+
+    /**
+     * Draws every layer with drawPoints, with the current transform and depth writes.
+     * Leaves the blend mode set to whatever the last layer used
+     * @param renderer The renderer to submit to
+     * @param fraction Share of every layer's points to draw (from the first one)
+     * @param pointScale What the point sizes get multiplied by
+     * @param opacityScale What the alpha gets multiplied by
+     */
+    public void draw(Renderer renderer, float fraction, float pointScale, float opacityScale) {
+        for (Layer layer : layers) {
+            renderer.setBlendMode(layer.blendMode);
+            renderer.drawPoints(layer.points, layer.colors, pointsToDraw(layer, fraction), scale, pointScale,
+                r, g, b, a * opacityScale, batchSize);
+        }
+    }
+
+    /**
+     * @param layer One of this cloud's layers
+     * @param fraction Share of its points that get drawn
+     * @return How many points that is (at least one)
+     */
+    public int pointsToDraw(Layer layer, float fraction) {
+        return Math.max(1, Math.min(layer.count, (int) Math.ceil(layer.count * fraction)));
+    }
+
+    public int getLayerCount() {
+        return layers.length;
+    }
+
+    public Layer getLayer(int i) {
+        return layers[i];
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float getR() {
+        return r;
+    }
+
+    public float getG() {
+        return g;
+    }
+
+    public float getB() {
+        return b;
+    }
+
+    public float getA() {
+        return a;
+    }
+
+    public float getBatchSize() {
+        return batchSize;
+    }
+
+    public float getBoundsRadius() {
+        return boundsRadius;
+    }
+}
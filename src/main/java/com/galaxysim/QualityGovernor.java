@@ -0,0 +1,140 @@
+package com.galaxysim;
+
+/**
+ * Watches how long frames take and turns the QualitySettings knobs down when we're
+ * over budget, and back up once there's room again.
+ *
+ * It works in whole quality levels and is deliberately slow to react: it has to be over
+ * budget for a while before dropping a level, and under budget for a lot longer before
+ * trying the next level up. If going up puts us straight back over budget, the wait
+ * before trying again doubles, so it doesn't bounce between two levels forever
+ */
+public class QualityGovernor {
+    // 0 is full quality, each level after that is cheaper
+    private static final float[] NEBULA_FRACTION = { 1.0f, 0.75f, 0.5f, 0.35f, 0.2f };
+    private static final float[] SUN_TESSELLATION = { 1.0f, 0.75f, 0.5f, 0.375f, 0.25f };
+    private static final int[] STREAMING_RADIUS_DROP = { 0, 1, 2, 3, 4 };
+    private static final float[] SHOOTING_STAR_RATE = { 1.0f, 0.75f, 0.5f, 0.35f, 0.2f };
+    private static final float[] STAR_CUTOFF = { 0.0f, 0.04f, 0.07f, 0.1f, 0.13f };
+    private static final int LEVELS = NEBULA_FRACTION.length;
+
+    // how much each new frame moves the average (lower = smoother, slower)
+    private static final float SMOOTHING = 0.1f;
+
+    // over budget by this much for this many frames drops a level
+    private static final float DOWNGRADE_RATIO = 1.1f;
+    private static final int DOWNGRADE_FRAMES = 30;
+
+    // at or under budget (with a little slack for vsync) for this many frames tries a level up
+    private static final float UPGRADE_RATIO = 1.05f;
+    private static final int UPGRADE_FRAMES = 180;
+    private static final int MAX_UPGRADE_FRAMES = UPGRADE_FRAMES * 16;
+
+    // frames to ignore after changing level, while things settle
+    private static final int SETTLE_FRAMES = 30;
+
+    private int level;
+    private float averageMs = -1;
+    private int overBudgetFrames;
+    private int underBudgetFrames;
+    private int settleFrames;
+    private int upgradeFrames = UPGRADE_FRAMES;
+    private boolean justUpgraded;
+    private String lastDecision = "holding";
+
+    /**
+     * Creates a governor at full quality
+     */
+    public QualityGovernor() {
+        apply();
+    }
+
+    /**
+     * Feeds in how long the last frame took and adjusts quality if it's time to
+     * @param frameSeconds Real time the last frame took
+     */
+    public void frameFinished(float frameSeconds) {
+        float frameMs = frameSeconds * 1000.0f;
+        averageMs = averageMs < 0 ? frameMs : averageMs + (frameMs - averageMs) * SMOOTHING;
+
+        if (!QualitySettings.isGovernorEnabled()) {
+            return;
+        }
+        if (settleFrames > 0) {
+            settleFrames--;
+            return;
+        }
+
+        float budget = QualitySettings.getTargetFrameTimeMs();
+        if (averageMs > budget * DOWNGRADE_RATIO) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= DOWNGRADE_FRAMES && level < LEVELS - 1) {
+                if (justUpgraded) {
+                    // the level we just tried is too much, wait longer before trying it again
+                    upgradeFrames = Math.min(MAX_UPGRADE_FRAMES, upgradeFrames * 2);
+                }
+                setLevel(level + 1, String.format("%.1f ms > %.1f ms budget", averageMs, budget));
+                justUpgraded = false;
+            }
+        } else if (averageMs <= budget * UPGRADE_RATIO) {
+            overBudgetFrames = 0;
+            if (++underBudgetFrames >= upgradeFrames && level > 0) {
+                setLevel(level - 1, String.format("%.1f ms fits the %.1f ms budget", averageMs, budget));
+                justUpgraded = true;
+            } else if (underBudgetFrames >= upgradeFrames) {
+                // stayed fine at this level, it's safe
+                justUpgraded = false;
+            }
+        } else {
+            // in between - not bad enough to drop, not good enough to go up
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+    }
+
+    private void setLevel(int newLevel, String reason) {
+        lastDecision = (newLevel > level ? "dropped to " : "raised to ") + "level " + newLevel + " (" + reason + ")";
+        System.out.println("Quality " + lastDecision);
+        level = newLevel;
+        overBudgetFrames = 0;
+        underBudgetFrames = 0;
+        settleFrames = SETTLE_FRAMES;
+        apply();
+    }
+
+    private void apply() {
+        QualitySettings.setNebulaParticleFraction(NEBULA_FRACTION[level]);
+        QualitySettings.setSunTessellation(SUN_TESSELLATION[level]);
+        QualitySettings.setStreamingRadius(RenderSettings.getStreamingRadius() - STREAMING_RADIUS_DROP[level]);
+        QualitySettings.setShootingStarRate(SHOOTING_STAR_RATE[level]);
+        QualitySettings.setStarMagnitudeCutoff(STAR_CUTOFF[level]);
+    }
+
+    /**
+     * @return Current quality level, 0 is full quality
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Highest (cheapest) level the governor can go to
+     */
+    public int getMaxLevel() {
+        return LEVELS - 1;
+    }
+
+    /**
+     * @return Smoothed frame time in milliseconds
+     */
+    public float getAverageFrameMs() {
+        return Math.max(0, averageMs);
+    }
+
+    /**
+     * @return What the governor last did and why, for the debug overlay
+     */
+    public String getLastDecision() {
+        return lastDecision;
+    }
+}
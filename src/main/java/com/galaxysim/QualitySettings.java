@@ -0,0 +1,91 @@
+package com.galaxysim;
+
+/**
+ * Stores all quality settings for HexaNebula
+ * These are the knobs the QualityGovernor turns to keep the frame rate up - they
+ * trade detail for speed. Everything defaults to full quality
+ */
+public class QualitySettings {
+    // Frame time we try to stay under, in milliseconds
+    private static float targetFrameTimeMs = 16.6f;
+    // Whether the governor is allowed to change anything
+    private static boolean governorEnabled = true;
+
+    // How much of each nebula's particles get drawn (1 = all of them)
+    private static float nebulaParticleFraction = 1.0f;
+    // How finely suns get tessellated (1 = full detail)
+    private static float sunTessellation = 1.0f;
+    // How many regions out we draw stars (capped by RenderSettings' streaming radius)
+    private static int streamingRadius = Integer.MAX_VALUE;
+    // Multiplier on the shooting star spawn chance
+    private static float shootingStarRate = 1.0f;
+    // Stars dimmer than this (size * brightness) don't get drawn
+    private static float starMagnitudeCutoff = 0.0f;
+
+    // Getters and setters for all properties
+
+    public static float getTargetFrameTimeMs() {
+        return targetFrameTimeMs;
+    }
+
+    public static void setTargetFrameTimeMs(float value) {
+        targetFrameTimeMs = Math.max(4.0f, Math.min(100.0f, value));
+    }
+
+    public static boolean isGovernorEnabled() {
+        return governorEnabled;
+    }
+
+    public static void setGovernorEnabled(boolean value) {
+        governorEnabled = value;
+    }
+
+    public static float getNebulaParticleFraction() {
+        return nebulaParticleFraction;
+    }
+
+    public static void setNebulaParticleFraction(float value) {
+        nebulaParticleFraction = Math.max(0.05f, Math.min(1.0f, value));
+    }
+
+    public static float getSunTessellation() {
+        return sunTessellation;
+    }
+
+    public static void setSunTessellation(float value) {
+        sunTessellation = Math.max(0.125f, Math.min(1.0f, value));
+    }
+
+    /**
+     * Scales a full-detail segment count by the sun tessellation level
+     * @param fullSegments Segments at full quality
+     * @return Segments to actually use (never fewer than 8)
+     */
+    public static int getSunSegments(int fullSegments) {
+        return Math.max(8, Math.round(fullSegments * sunTessellation));
+    }
+
+    public static int getStreamingRadius() {
+        return Math.min(streamingRadius, RenderSettings.getStreamingRadius());
+    }
+
+    public static void setStreamingRadius(int value) {
+        streamingRadius = Math.max(1, value);
+    }
+
+    public static float getShootingStarRate() {
+        return shootingStarRate;
+    }
+
+    public static void setShootingStarRate(float value) {
+        shootingStarRate = Math.max(0.0f, Math.min(1.0f, value));
+    }
+
+    public static float getStarMagnitudeCutoff() {
+        return starMagnitudeCutoff;
+    }
+
+    public static void setStarMagnitudeCutoff(float value) {
+        starMagnitudeCutoff = Math.max(0.0f, Math.min(0.5f, value));
+    }
+}
@@ -0,0 +1,179 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+
+import java.util.List;
+
+/**
+ * The renderer the simulation thread draws into. It doesn't touch GL at all, it just
+ * writes everything into a FrameSnapshot, and endFrame hands the finished snapshot
+ * over to the RenderThread that replays it on the real backend
+ */
+public class RecordingRenderer implements Renderer {
+    private final RenderThread renderThread;
+    private final RenderStats stats = new RenderStats();
+    private FrameSnapshot frame;
+    private int viewportWidth = 1;
+    private int viewportHeight = 1;
+
+    // filled in by the render thread once the real backend is up
+    private volatile String backendName = "unknown";
+    private volatile boolean textAvailable = true;
+    private volatile boolean bloom;
+
+    RecordingRenderer(RenderThread renderThread) {
+        this.renderThread = renderThread;
+    }
+
+    /**
+     * Remembers what the real backend can do, so the simulation can ask without going to the render thread
+     */
+    void setBackendInfo(String name, boolean canDrawText, boolean hasBloom) {
+        backendName = name;
+        textAvailable = canDrawText;
+        bloom = hasBloom;
+    }
+
+    @Override
+    public String getName() {
+        return backendName;
+    }
+
+    @Override
+    public void init() {
+        // the render thread sets up the real backend
+    }
+
+    @Override
+    public void setViewport(int width, int height) {
+        // the frame doesn't exist yet, so this rides along with beginFrame
+        viewportWidth = width;
+        viewportHeight = height;
+    }
+
+    @Override
+    public void beginFrame(Matrix4f view, Matrix4f projection) {
+        frame = renderThread.getFrameToRecord();
+        frame.clear();
+        frame.setViewport(viewportWidth, viewportHeight);
+        frame.beginFrame(view, projection);
+    }
+
+    @Override
+    public void endFrame() {
+        frame.endFrame();
+        frame = null;
+        renderThread.submitFrame();
+    }
+
+    @Override
+    public void pushTransform(float x, float y, float z, float rotationY) {
+        frame.pushTransform(x, y, z, rotationY);
+    }
+
+    @Override
+    public void popTransform() {
+        frame.popTransform();
+    }
+
+    @Override
+    public void setBlendMode(BlendMode mode) {
+        frame.setBlendMode(mode);
+    }
+
+    @Override
+    public void setDepthWrite(boolean enabled) {
+        frame.setDepthWrite(enabled);
+    }
+
+    @Override
+    public void setSmoothPoints(boolean enabled) {
+        frame.setSmoothPoints(enabled);
+    }
+
+    @Override
+    public void begin(Primitive primitive, float size) {
+        frame.begin(primitive, size);
+    }
+
+    @Override
+    public void vertex(float x, float y, float z, float r, float g, float b, float a) {
+        frame.vertex(x, y, z, r, g, b, a);
+    }
+
+    @Override
+    public void point(float x, float y, float z, float size, float r, float g, float b, float a) {
+        frame.point(x, y, z, size, r, g, b, a);
+    }
+
+    @Override
+    public void end() {
+        frame.end();
+    }
+
+    @Override
+    public void drawStarRegions(List<? extends StarRegionData> regions) {
+        frame.drawStarRegions(regions);
+    }
+
+    @Override
+    public void drawFarField(FarFieldStars stars) {
+        frame.drawFarField(stars);
+    }
+
+    @Override
+    public void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a) {
+        frame.drawMesh(positions, colors, texture, scale, r, g, b, a);
+    }
+
+    @Override
+    public void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                             float fraction, float pointScale, float opacityScale) {
+        frame.drawImpostor(cloud, x, y, z, rotationY, fraction, pointScale, opacityScale);
+    }
+
+    @Override
+    public void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                           float r, float g, float b, float a, float batchSize) {
+        frame.drawPoints(points, colors, count, scale, pointScale, r, g, b, a, batchSize);
+    }
+
+    @Override
+    public void beginHud(int width, int height) {
+        frame.beginHud(width, height);
+    }
+
+    @Override
+    public boolean hasBloom() {
+        return bloom;
+    }
+
+    @Override
+    public boolean canDrawText() {
+        return textAvailable;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, float fontSize, float r, float g, float b) {
+        frame.drawText(text, x, y, fontSize, r, g, b);
+    }
+
+    @Override
+    public void endHud() {
+        frame.endHud();
+    }
+
+    /**
+     * @return What the last frame the render thread finished cost (a frame or two behind the simulation)
+     */
+    @Override
+    public RenderStats getStats() {
+        renderThread.copyLastStats(stats);
+        return stats;
+    }
+
+    @Override
+    public void cleanup() {
+        // the render thread cleans up the real backend
+    }
+}
@@ -0,0 +1,176 @@
+package com.galaxysim;
+
+/**
+ * Stores all render settings for HexaNebula
+ * These settings control which rendering backend draws the galaxy
+ */
+public class RenderSettings {
+    // the different ways we can get stuff onto the screen
+    public enum Backend {
+        LEGACY,   // the original fixed-function immediate mode path
+        MODERN,   // vertex buffers + shaders
+        NULL      // draws nothing at all, for timing the simulation by itself
+    }
+
+    // how frames get spaced out
+    public enum FramePacing {
+        VSYNC,      // wait for the monitor's refresh
+        UNCAPPED,   // as fast as it'll go
+        FIXED_RATE  // our own limiter, at targetFrameRate
+    }
+
+    // Which backend to use
+    private static Backend backend = Backend.LEGACY;
+    // How many regions out from the camera's region still get drawn (5 regions covers the far plane)
+    private static int streamingRadius = 5;
+    // Whether GL submission runs on its own thread (turn off to do everything on the main thread)
+    private static boolean renderThread = true;
+    // Whether the 3D scene drops resolution when the GPU can't keep up
+    private static boolean dynamicResolution = true;
+    // Whether stars past the streaming radius get baked into a sky
+    private static boolean farField = true;
+    // Whether bright stuff glows through screen-space bloom instead of glow geometry
+    private static boolean bloom = true;
+    // Whether far nebulae get drawn as pictures that are only redrawn when the view changes enough
+    private static boolean impostors = true;
+    // How frames are paced (volatile since the render thread reads it and the key callback changes it)
+    private static volatile FramePacing framePacing = FramePacing.VSYNC;
+    // Frames per second the fixed-rate limiter aims for
+    private static volatile int targetFrameRate = 60;
+    // Whether we're running without a visible window, drawing into an offscreen framebuffer
+    private static boolean headless = false;
+
+    // Getters and setters for all properties
+
+    public static Backend getBackend() {
+        return backend;
+    }
+
+    public static void setBackend(Backend value) {
+        backend = value != null ? value : Backend.LEGACY;
+    }
+
+    public static int getStreamingRadius() {
+        return streamingRadius;
+    }
+
+    public static void setStreamingRadius(int value) {
+        streamingRadius = Math.max(1, Math.min(16, value));
+    }
+
+    public static boolean isRenderThreadEnabled() {
+        return renderThread;
+    }
+
+    public static void setRenderThreadEnabled(boolean value) {
+        renderThread = value;
+    }
+
+    public static boolean isDynamicResolutionEnabled() {
+        return dynamicResolution;
+    }
+
+    public static void setDynamicResolutionEnabled(boolean value) {
+        dynamicResolution = value;
+    }
+
+    public static boolean isFarFieldEnabled() {
+        return farField;
+    }
+
+    public static void setFarFieldEnabled(boolean value) {
+        farField = value;
+    }
+
+    public static boolean isBloomEnabled() {
+        return bloom;
+    }
+
+    public static void setBloomEnabled(boolean value) {
+        bloom = value;
+    }
+
+    public static boolean isImpostorsEnabled() {
+        return impostors;
+    }
+
+    public static void setImpostorsEnabled(boolean value) {
+        impostors = value;
+    }
+
+    public static FramePacing getFramePacing() {
+        return framePacing;
+    }
+
+    public static void setFramePacing(FramePacing value) {
+        framePacing = value != null ? value : FramePacing.VSYNC;
+    }
+
+    public static int getTargetFrameRate() {
+        return targetFrameRate;
+    }
+
+    public static void setTargetFrameRate(int value) {
+        targetFrameRate = Math.max(10, Math.min(1000, value));
+    }
+
+    public static boolean isHeadless() {
+        return headless;
+    }
+
+    public static void setHeadless(boolean value) {
+        headless = value;
+    }
+
+    /**
+     * Picks the frame pacing from its name (case doesn't matter, "fixed" works for fixed_rate),
+     * keeps the current one if the name is junk
+     * @param name Pacing name like "vsync", "uncapped" or "fixed"
+     */
+    public static void setFramePacing(String name) {
+        String cleaned = name.trim().toUpperCase().replace('-', '_');
+        if (cleaned.equals("FIXED")) {
+            cleaned = "FIXED_RATE";
+        }
+        try {
+            setFramePacing(FramePacing.valueOf(cleaned));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown frame pacing '" + name + "', sticking with " + framePacing.toString().toLowerCase());
+        }
+    }
+
+    /**
+     * Switches to the next pacing mode (vsync -> uncapped -> fixed rate -> vsync)
+     */
+    public static void cycleFramePacing() {
+        FramePacing[] modes = FramePacing.values();
+        framePacing = modes[(framePacing.ordinal() + 1) % modes.length];
+    }
+
+    /**
+     * Picks the backend from its name (case doesn't matter), keeps the current one if the name is junk
+     * @param name Backend name like "legacy", "modern" or "null"
+     */
+    public static void setBackend(String name) {
+        try {
+            setBackend(Backend.valueOf(name.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown renderer '" + name + "', sticking with " + backend.toString().toLowerCase());
+        }
+    }
+
+    /**
+     * Creates a renderer for the currently selected backend
+     * @return A new, not yet initialized renderer
+     */
+    public static Renderer createRenderer() {
+        switch (backend) {
+            case MODERN:
+                return new ModernRenderer();
+            case NULL:
+                return new NullRenderer();
+            default:
+                return new LegacyRenderer();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.galaxysim;
+
+/**
+ * Counters a renderer fills in while drawing a frame, so we can see what a frame actually cost on the GL side
+ */
+public class RenderStats {
+    private int drawCalls;
+    private int vertices;
+    private int regions;
+    private int impostors;
+    private int stateChanges;
+    private int redundantStateChanges;
+    private float sceneScale = 1.0f;
+    private float gpuMs = -1;
+
+    /**
+     * Zeroes everything, called by renderers at the start of each frame
+     */
+    public void reset() {
+        drawCalls = 0;
+        vertices = 0;
+        regions = 0;
+        impostors = 0;
+        stateChanges = 0;
+        redundantStateChanges = 0;
+    }
+
+    /**
+     * Copies another set of counters into this one
+     * @param other Where to copy from
+     */
+    public void copyFrom(RenderStats other) {
+        drawCalls = other.drawCalls;
+        vertices = other.vertices;
+        regions = other.regions;
+        impostors = other.impostors;
+        stateChanges = other.stateChanges;
+        redundantStateChanges = other.redundantStateChanges;
+        sceneScale = other.sceneScale;
+        gpuMs = other.gpuMs;
+    }
+
+    /**
+     * Counts one draw call
+     * @param vertexCount How many vertices it drew
+     */
+    public void addDrawCall(int vertexCount) {
+        drawCalls++;
+        vertices += vertexCount;
+    }
+
+    /**
+     * @param count How many star regions got drawn this frame
+     */
+    public void addRegions(int count) {
+        regions += count;
+    }
+
+    /**
+     * Counts one point cloud that got drawn as a picture instead of its points
+     */
+    public void addImpostor() {
+        impostors++;
+    }
+
+    /**
+     * Counts one GL state change that actually went to the driver
+     */
+    public void addStateChange() {
+        stateChanges++;
+    }
+
+    /**
+     * Counts one GL state change that got skipped because the state was already like that
+     */
+    public void addRedundantStateChange() {
+        redundantStateChanges++;
+    }
+
+    /**
+     * @param scale Resolution scale the 3D scene was drawn at (1 = native)
+     * @param sceneGpuMs GPU time the scene took, or -1 if unknown
+     */
+    public void setSceneResolution(float scale, float sceneGpuMs) {
+        sceneScale = scale;
+        gpuMs = sceneGpuMs;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getVertices() {
+        return vertices;
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public int getImpostors() {
+        return impostors;
+    }
+
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    public int getRedundantStateChanges() {
+        return redundantStateChanges;
+    }
+
+    public float getSceneScale() {
+        return sceneScale;
+    }
+
+    public float getGpuMs() {
+        return gpuMs;
+    }
+}
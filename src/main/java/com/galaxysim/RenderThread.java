@@ -0,0 +1,291 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.glFlush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Owns the real renderer and the GL context. The simulation records each frame into a
+ * FrameSnapshot through the RecordingRenderer, and this replays the snapshots and swaps
+ * buffers on its own thread - so while the GPU side of frame N is being submitted, the
+ * simulation is already working on frame N+1.
+ *
+ * Snapshots go through a triple buffer, so the two threads never share one.
+ * With the render thread turned off it all still happens, just inline on the calling thread
+ */
+public class RenderThread {
+    // how long the render thread waits for a frame before checking if it should stop
+    private static final long FRAME_WAIT_MILLIS = 100;
+
+    private final long window;
+    private final boolean threaded;
+    private final TripleBuffer<FrameSnapshot> frames =
+        new TripleBuffer<>(new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot());
+    private final RecordingRenderer recorder = new RecordingRenderer(this);
+
+    private Renderer backend;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile RuntimeException startupFailure;
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    // what the last replayed frame cost, copied out for the simulation thread
+    private final RenderStats lastStats = new RenderStats();
+    // the swap interval the context currently has, -1 until we've set one
+    private int swapInterval = -1;
+
+    // headless runs draw into an offscreen framebuffer instead of the window, and can log frame times
+    private int offscreenWidth;
+    private int offscreenHeight;
+    private OffscreenTarget offscreen;
+    private String frameLogPath;
+    private FrameTimeLog frameLog;
+    private FrameCapture capture;
+
+    /**
+     * @param window The GLFW window to draw into (its context has to be current on the calling thread)
+     * @param threaded Whether to render on a separate thread or inline
+     */
+    public RenderThread(long window, boolean threaded) {
+        this.window = window;
+        this.threaded = threaded;
+    }
+
+    /**
+     * Writes a CSV line with the simulation, submit and GPU time of every frame drawn.
+     * Has to be called before start()
+     * @param path Where to write it
+     */
+    public void setFrameLog(String path) {
+        frameLogPath = path;
+    }
+
+    /**
+     * Reads back frames to save or compare after they're drawn. Needs a headless run,
+     * since that's where frames go into something we can read back. Has to be called before start()
+     * @param frameCapture What to hand the drawn frames to
+     */
+    public void setFrameCapture(FrameCapture frameCapture) {
+        capture = frameCapture;
+    }
+
+    /**
+     * Starts the real renderer (and the render thread, if we're using one)
+     * @return The renderer the simulation should draw into
+     */
+    public Renderer start() {
+        running = true;
+        if (RenderSettings.isHeadless()) {
+            // GLFW only hands out the size on the main thread
+            int[] width = new int[1];
+            int[] height = new int[1];
+            glfwGetFramebufferSize(window, width, height);
+            offscreenWidth = width[0];
+            offscreenHeight = height[0];
+        }
+        if (!threaded) {
+            initBackend();
+            return recorder;
+        }
+
+        // hand the context over to the render thread
+        GL.setCapabilities(null);
+        glfwMakeContextCurrent(NULL);
+
+        thread = new Thread(this::run, "HexaNebula render");
+        thread.start();
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (startupFailure != null) {
+            throw new RuntimeException("Render thread couldn't start", startupFailure);
+        }
+        return recorder;
+    }
+
+    /**
+     * @return True until the render thread stops (or crashes)
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Whether rendering happens on its own thread
+     */
+    public boolean isThreaded() {
+        return threaded;
+    }
+
+    private void initBackend() {
+        // the offscreen target has to exist before the renderer, so its framebuffers know where the window went
+        if (RenderSettings.isHeadless()) {
+            offscreen = new OffscreenTarget(offscreenWidth, offscreenHeight);
+        }
+        if (frameLogPath != null) {
+            frameLog = new FrameTimeLog(frameLogPath);
+        }
+
+        // Pick the rendering backend, falling back to the old path if it can't start
+        backend = RenderSettings.createRenderer();
+        try {
+            backend.init();
+        } catch (RuntimeException e) {
+            System.err.println("Couldn't start the " + backend.getName() + " renderer (" + e.getMessage() + "), using legacy instead");
+            backend.cleanup();
+            backend = new LegacyRenderer();
+            backend.init();
+        }
+        recorder.setBackendInfo(backend.getName(), backend.canDrawText(), backend.hasBloom());
+    }
+
+    private void run() {
+        try {
+            glfwMakeContextCurrent(window);
+            GL.createCapabilities();
+            initBackend();
+        } catch (RuntimeException e) {
+            startupFailure = e;
+            running = false;
+            releaseContext();
+            started.countDown();
+            return;
+        }
+        started.countDown();
+
+        try {
+            while (running) {
+                FrameSnapshot frame = frames.takeLatest(FRAME_WAIT_MILLIS);
+                if (frame != null) {
+                    renderFrame(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println("Render thread crashed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            running = false;
+            frames.close();
+            cleanupBackend();
+            releaseContext();
+        }
+    }
+
+    private void cleanupBackend() {
+        if (frameLog != null) {
+            frameLog.close();
+        }
+        if (capture != null) {
+            capture.cleanup();
+        }
+        if (backend != null) {
+            backend.cleanup();
+        }
+        if (offscreen != null) {
+            offscreen.cleanup();
+        }
+    }
+
+    private void releaseContext() {
+        GL.setCapabilities(null);
+        glfwMakeContextCurrent(NULL);
+    }
+
+    private void renderFrame(FrameSnapshot frame) {
+        if (frameLog != null) {
+            frameLog.beginFrame();
+        }
+        frame.replay(backend);
+        if (offscreen != null) {
+            // nothing to show, just make sure the frame actually gets sent off to the GPU
+            glFlush();
+        } else {
+            // the pacing mode can change while running, and only the context's thread can change the swap interval
+            int wantedInterval = FramePacer.getSwapInterval();
+            if (wantedInterval != swapInterval) {
+                glfwSwapInterval(wantedInterval);
+                swapInterval = wantedInterval;
+            }
+            glfwSwapBuffers(window);
+        }
+        if (frameLog != null) {
+            frameLog.endFrame(frame.getSimulationMs());
+        }
+        if (capture != null && offscreen != null) {
+            capture.frameDrawn(offscreen);
+        }
+        synchronized (lastStats) {
+            lastStats.copyFrom(backend.getStats());
+        }
+    }
+
+    /**
+     * @return The snapshot the simulation should record the next frame into
+     */
+    FrameSnapshot getFrameToRecord() {
+        return frames.getWriteSlot();
+    }
+
+    /**
+     * @param ms How long the simulation thread spent on the frame being recorded (for the frame time log)
+     */
+    void setSimulationMs(float ms) {
+        frames.getWriteSlot().setSimulationMs(ms);
+    }
+
+    /**
+     * Hands the recorded frame over. Waits if the render thread is still a whole frame behind,
+     * or draws it right here when there's no render thread
+     */
+    void submitFrame() {
+        try {
+            frames.publish();
+            if (!threaded) {
+                FrameSnapshot frame = frames.takeLatest(0);
+                if (frame != null) {
+                    renderFrame(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * Copies what the last drawn frame cost
+     * @param into Where to copy it
+     */
+    void copyLastStats(RenderStats into) {
+        synchronized (lastStats) {
+            into.copyFrom(lastStats);
+        }
+    }
+
+    /**
+     * Stops rendering and cleans up the real renderer. Waits for the render thread to finish
+     */
+    public void stop() {
+        running = false;
+        frames.close();
+        if (threaded) {
+            if (thread != null) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } else {
+            cleanupBackend();
+        }
+    }
+}
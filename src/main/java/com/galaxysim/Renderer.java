@@ -0,0 +1,219 @@
+package com.galaxysim;
+
+import org.joml.Matrix4f;
+
+import java.util.List;
+
+/**
+ * Everything in the scene draws through one of these instead of calling GL directly.
+ * Scene objects just hand over their draw data (points, lines, triangles) and the
+ * backend decides how it actually gets onto the screen - or if it does at all.
+ * That way we can swap between the old fixed-function path, the VBO/shader path and
+ * a renderer that does nothing (handy for timing just the simulation side)
+ */
+public interface Renderer {
+
+    // the kinds of shapes scene objects can submit
+    enum Primitive {
+        POINTS,
+        LINES,
+        TRIANGLES
+    }
+
+    // how whatever we draw next gets mixed with what's already on screen
+    enum BlendMode {
+        NONE,      // opaque, no blending at all
+        ALPHA,     // regular see-through blending
+        ADDITIVE   // light adds up, used for glows
+    }
+
+    /**
+     * @return A short name for this backend (shows up in logs)
+     */
+    String getName();
+
+    /**
+     * Sets up whatever GL objects the backend needs. Must be called with the GL context current
+     */
+    void init();
+
+    /**
+     * Tells the renderer how big the window's framebuffer is. Call before beginFrame
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    void setViewport(int width, int height);
+
+    /**
+     * Starts a new frame - clears the screen and sets the camera for everything drawn after this
+     * @param view The view matrix
+     * @param projection The projection matrix
+     */
+    void beginFrame(Matrix4f view, Matrix4f projection);
+
+    /**
+     * Finishes the frame (anything still queued gets flushed)
+     */
+    void endFrame();
+
+    /**
+     * Moves and spins everything drawn until the matching popTransform
+     * @param x X offset
+     * @param y Y offset
+     * @param z Z offset
+     * @param rotationY Rotation around the Y axis in radians
+     */
+    void pushTransform(float x, float y, float z, float rotationY);
+
+    /**
+     * Undoes the last pushTransform
+     */
+    void popTransform();
+
+    /**
+     * @param mode How the next draws get blended
+     */
+    void setBlendMode(BlendMode mode);
+
+    /**
+     * @param enabled Whether the next draws write to the depth buffer
+     */
+    void setDepthWrite(boolean enabled);
+
+    /**
+     * @param enabled Whether points get drawn as round dots instead of squares
+     */
+    void setSmoothPoints(boolean enabled);
+
+    /**
+     * Starts a batch of shapes
+     * @param primitive What kind of shapes the following vertices make
+     * @param size Point size or line width for the batch (ignored for triangles)
+     */
+    void begin(Primitive primitive, float size);
+
+    /**
+     * Adds a vertex to the current batch
+     */
+    void vertex(float x, float y, float z, float r, float g, float b, float a);
+
+    /**
+     * Adds a point with its own size to the current POINTS batch.
+     * Backends that can't change the size in the middle of a batch use the batch size instead
+     */
+    void point(float x, float y, float z, float size, float r, float g, float b, float a);
+
+    /**
+     * Ends the current batch and draws it
+     */
+    void end();
+
+    /**
+     * Draws the stars of every region in the list, ideally all in one go
+     * @param regions Regions around the camera that are worth drawing
+     */
+    void drawStarRegions(List<? extends StarRegionData> regions);
+
+    /**
+     * Draws the stars past the streaming radius as a sky behind everything else.
+     * Call it first thing in the frame. Renderers bake a new far field over a few
+     * frames, so it shows up a little after it gets handed in
+     * @param stars The latest far stars, or null if there aren't any yet
+     */
+    void drawFarField(FarFieldStars stars);
+
+    /**
+     * Draws a mesh that never changes as triangles, with the current transform, blend mode
+     * and depth writes. Renderers that can keep meshes on the GPU only upload each buffer
+     * the first time they see it, so hang on to them rather than making new ones every frame
+     * @param positions Vertex positions (3 floats each), and the triangle indices if it has any
+     * @param colors Vertex colors (4 floats each), one per position
+     * @param texture Colors the mesh instead of the vertex colors, looked up in the direction of each
+     *                position (so it wraps all the way around a unit sphere). Null for none. Renderers
+     *                upload textures a bit at a time and use the vertex colors until they're ready
+     * @param scale Multiplier on every position
+     * @param r Multiplier on every red
+     * @param g Multiplier on every green
+     * @param b Multiplier on every blue
+     * @param a Multiplier on every alpha
+     */
+    void drawMesh(MeshBuffer positions, MeshBuffer colors, CubeTexture texture, float scale, float r, float g, float b, float a);
+
+    /**
+     * Draws points that never change, with the current transform, blend mode, depth writes and point
+     * smoothing. Same deal as drawMesh: renderers that can keep them on the GPU only upload them once
+     * @param points Position and size of every point (x, y, z, size)
+     * @param colors Color of every point (4 floats each)
+     * @param count How many of them to draw, from the first one
+     * @param scale What the positions get multiplied by (sizes stay in pixels)
+     * @param pointScale What the point sizes get multiplied by (batchSize too)
+     * @param r Red tint every color gets multiplied by
+     * @param g Green tint
+     * @param b Blue tint
+     * @param a Alpha tint
+     * @param batchSize Point size for renderers that can't size every point on its own
+     */
+    void drawPoints(MeshBuffer points, MeshBuffer colors, int count, float scale, float pointScale,
+                    float r, float g, float b, float a, float batchSize);
+
+    /**
+     * Draws a point cloud that's far away, with the current depth writes. Renderers that can draw into
+     * textures keep a picture of it facing the camera and only draw the points again when the view has
+     * changed enough to notice, the rest just draw the points (like cloud.draw under that transform).
+     * Either way the blend mode afterwards is whatever the backend left it at, so set it again
+     * @param cloud The cloud (pictures are kept per cloud, so hang on to it)
+     * @param x X of its middle
+     * @param y Y of its middle
+     * @param z Z of its middle
+     * @param rotationY Its rotation around the Y axis in radians
+     * @param fraction Share of every layer's points to draw
+     * @param pointScale What the point sizes get multiplied by
+     * @param opacityScale What the alpha gets multiplied by
+     */
+    void drawImpostor(PointCloud cloud, float x, float y, float z, float rotationY,
+                      float fraction, float pointScale, float opacityScale);
+
+    /**
+     * Switches to flat 2D drawing in screen pixels for the HUD (top left is 0,0)
+     * @param width Screen width in pixels
+     * @param height Screen height in pixels
+     */
+    void beginHud(int width, int height);
+
+    /**
+     * @return Whether colors over 1.0 glow on their own (screen-space bloom), so scene objects can skip their glow geometry
+     */
+    boolean hasBloom();
+
+    /**
+     * @return Whether drawText works (it doesn't if the coordinates font couldn't be loaded)
+     */
+    boolean canDrawText();
+
+    /**
+     * Draws HUD text with the coordinates font. Only valid between beginHud and endHud
+     * @param text Text to draw
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @param fontSize Font size in pixels
+     * @param r Red
+     * @param g Green
+     * @param b Blue
+     */
+    void drawText(String text, float x, float y, float fontSize, float r, float g, float b);
+
+    /**
+     * Goes back to normal 3D drawing after the HUD
+     */
+    void endHud();
+
+    /**
+     * @return What the current (or last finished) frame cost, reset at every beginFrame
+     */
+    RenderStats getStats();
+
+    /**
+     * Frees everything the backend created
+     */
+    void cleanup();
+}
@@ -0,0 +1,227 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * An offscreen framebuffer the 3D scene gets drawn into at a lower resolution when
+ * the GPU can't keep up, which then gets stretched onto the window. Nebulae are
+ * thousands of big overlapping point sprites, so drawing fewer pixels helps a lot.
+ *
+ * The framebuffer is always window-sized and we just draw into the bottom-left part
+ * of it, so changing the scale never has to reallocate anything. The scale follows
+ * GPU time from a GpuTimer, with a dead band so it doesn't wobble.
+ *
+ * With bloom on, the color buffer holds floats so colors can go over 1.0, and the
+ * scene goes onto the window through a BloomPass instead of a plain blit
+ */
+public class SceneFramebuffer {
+    // lowest the scene resolution goes (per axis)
+    private static final float MIN_SCALE = 0.5f;
+
+    // scales snap to steps of this size
+    private static final float SCALE_STEP = 1.0f / 32.0f;
+
+    // the scene gets this much of the frame budget, the rest is for the HUD, swapping etc.
+    private static final float GPU_BUDGET_SHARE = 0.85f;
+
+    // only react when GPU time is outside budget * [LOW, HIGH]
+    private static final float HIGH_RATIO = 1.05f;
+    private static final float LOW_RATIO = 0.7f;
+
+    // how far towards the new scale we move each frame
+    private static final float SCALE_SMOOTHING = 0.2f;
+
+    private final GpuTimer timer = new GpuTimer();
+
+    private int framebuffer;
+    private int colorTexture;
+    private int depthBuffer;
+    private int width;
+    private int height;
+    private float scale = 1.0f;
+    private float targetScale = 1.0f;
+    private boolean bound;
+    private BloomPass bloom;
+
+    /**
+     * @param bloom Whether to try for an HDR buffer with bloom (falls back to a plain one if the driver can't)
+     */
+    public SceneFramebuffer(boolean bloom) {
+        if (bloom && BloomPass.isSupported()) {
+            try {
+                this.bloom = new BloomPass();
+            } catch (RuntimeException e) {
+                System.err.println("Bloom is off: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Whether the driver can do offscreen framebuffers with blits
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL30 || caps.GL_ARB_framebuffer_object;
+    }
+
+    /**
+     * Makes sure the framebuffer matches the window size
+     * @param windowWidth Window framebuffer width in pixels
+     * @param windowHeight Window framebuffer height in pixels
+     */
+    public void resize(int windowWidth, int windowHeight) {
+        if (windowWidth == width && windowHeight == height && framebuffer != 0) {
+            return;
+        }
+        deleteTargets();
+        width = Math.max(1, windowWidth);
+        height = Math.max(1, windowHeight);
+
+        colorTexture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, colorTexture);
+        glTexImage2D(GL_TEXTURE_2D, 0, bloom != null ? GL_RGBA16F : GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        depthBuffer = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthBuffer);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        framebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorTexture, 0);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthBuffer);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        OffscreenTarget.bindOutput();
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            deleteTargets();
+            throw new RuntimeException("Scene framebuffer isn't complete (status 0x" + Integer.toHexString(status) + ")");
+        }
+
+        if (bloom != null) {
+            try {
+                bloom.resize(width, height);
+            } catch (RuntimeException e) {
+                // carry on without it, the plain blit still works from a float buffer
+                System.err.println("Bloom is off: " + e.getMessage());
+                bloom.cleanup();
+                bloom = null;
+            }
+        }
+    }
+
+    /**
+     * Starts drawing the scene into the framebuffer at the current scale. Clears it too
+     */
+    public void bind() {
+        updateScale();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+        glViewport(0, 0, getScaledWidth(), getScaledHeight());
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        timer.begin();
+        bound = true;
+    }
+
+    /**
+     * Stretches what was drawn onto the window and switches back to drawing on the window.
+     * Does nothing if the scene isn't bound
+     */
+    public void resolve() {
+        if (!bound) {
+            return;
+        }
+        bound = false;
+        timer.end();
+
+        if (bloom != null) {
+            OffscreenTarget.bindOutput();
+            bloom.apply(colorTexture, width, height, getScaledWidth(), getScaledHeight());
+            return;
+        }
+
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, OffscreenTarget.getFramebuffer());
+        glBlitFramebuffer(0, 0, getScaledWidth(), getScaledHeight(), 0, 0, width, height,
+            GL_COLOR_BUFFER_BIT, scale < 1.0f ? GL_LINEAR : GL_NEAREST);
+        OffscreenTarget.bindOutput();
+        glViewport(0, 0, width, height);
+    }
+
+    private void updateScale() {
+        float gpuMs = timer.getLastMs();
+        if (gpuMs > 0 && RenderSettings.isDynamicResolutionEnabled()) {
+            float budget = QualitySettings.getTargetFrameTimeMs() * GPU_BUDGET_SHARE;
+            // pixel count goes with scale squared, and GPU time roughly with pixel count
+            if (gpuMs > budget * HIGH_RATIO || gpuMs < budget * LOW_RATIO) {
+                targetScale = clampScale(scale * (float) Math.sqrt(budget / gpuMs));
+            }
+        } else if (!RenderSettings.isDynamicResolutionEnabled()) {
+            targetScale = 1.0f;
+        }
+
+        scale += (targetScale - scale) * SCALE_SMOOTHING;
+        scale = clampScale(Math.round(scale / SCALE_STEP) * SCALE_STEP);
+    }
+
+    private static float clampScale(float value) {
+        return Math.max(MIN_SCALE, Math.min(1.0f, value));
+    }
+
+    private int getScaledWidth() {
+        return Math.max(1, Math.round(width * scale));
+    }
+
+    private int getScaledHeight() {
+        return Math.max(1, Math.round(height * scale));
+    }
+
+    /**
+     * @return Current resolution scale per axis (1 = native)
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * @return GPU time of the last measured scene, or -1 if there isn't one yet
+     */
+    public float getGpuMs() {
+        return timer.getLastMs();
+    }
+
+    /**
+     * @return Whether the scene goes onto the window through bloom
+     */
+    public boolean hasBloom() {
+        return bloom != null;
+    }
+
+    private void deleteTargets() {
+        if (framebuffer != 0) {
+            glDeleteFramebuffers(framebuffer);
+            glDeleteTextures(colorTexture);
+            glDeleteRenderbuffers(depthBuffer);
+            framebuffer = 0;
+        }
+    }
+
+    /**
+     * Deletes the framebuffer, the timer queries and the bloom chain
+     */
+    public void cleanup() {
+        deleteTargets();
+        timer.cleanup();
+        if (bloom != null) {
+            bloom.cleanup();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.galaxysim;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * A compiled and linked GLSL program, plus a little cache so we don't look up uniforms every frame
+ */
+public class ShaderProgram {
+    private final int program;
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+
+    /**
+     * Compiles and links a shader program
+     * @param vertexSource GLSL source for the vertex shader
+     * @param fragmentSource GLSL source for the fragment shader
+     * @param attributes Vertex attribute names, bound to locations 0, 1, 2... in the order given
+     */
+    public ShaderProgram(String vertexSource, String fragmentSource, String... attributes) {
+        int vertexShader = compile(GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compile(GL_FRAGMENT_SHADER, fragmentSource);
+
+        program = glCreateProgram();
+        glAttachShader(program, vertexShader);
+        glAttachShader(program, fragmentShader);
+        for (int i = 0; i < attributes.length; i++) {
+            glBindAttribLocation(program, i, attributes[i]);
+        }
+        glLinkProgram(program);
+
+        // the shaders live on inside the program, we don't need our handles anymore
+        glDetachShader(program, vertexShader);
+        glDetachShader(program, fragmentShader);
+        glDeleteShader(vertexShader);
+        glDeleteShader(fragmentShader);
+
+        if (glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+            String log = glGetProgramInfoLog(program);
+            glDeleteProgram(program);
+            throw new RuntimeException("Failed to link shader program: " + log);
+        }
+    }
+
+    private static int compile(int type, String source) {
+        int shader = glCreateShader(type);
+        glShaderSource(shader, source);
+        glCompileShader(shader);
+        if (glGetShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE) {
+            String log = glGetShaderInfoLog(shader);
+            glDeleteShader(shader);
+            throw new RuntimeException("Failed to compile shader: " + log);
+        }
+        return shader;
+    }
+
+    /**
+     * Makes this the active program
+     */
+    public void use() {
+        glUseProgram(program);
+    }
+
+    /**
+     * @param name Uniform name
+     * @return The uniform location, or -1 if the shader doesn't use it
+     */
+    public int getUniformLocation(String name) {
+        return uniformLocations.computeIfAbsent(name, n -> glGetUniformLocation(program, n));
+    }
+
+    /**
+     * @return The GL handle for this program
+     */
+    public int getId() {
+        return program;
+    }
+
+    /**
+     * Deletes the program
+     */
+    public void cleanup() {
+        glDeleteProgram(program);
+    }
+}
@@ -0,0 +1,115 @@
+package com.galaxysim;
+
+/**
+ * Keeps the simulation ticking at a fixed rate no matter how fast frames get drawn.
+ * Real time piles up in an accumulator and gets used up in fixed steps, and whatever
+ * is left over tells the renderer how far it is between the last step and the next
+ * one so it can blend between them.
+ *
+ * If a frame takes ages (window dragged, debugger, hitch...) we only catch up a few
+ * steps and drop the rest, so a slow frame can't snowball into even slower ones
+ */
+public class SimulationClock {
+    // the rate everything was originally tuned for (one update per frame at 60fps)
+    public static final float DEFAULT_STEP_SECONDS = 1.0f / 60.0f;
+
+    // most steps we'll run to catch up in a single frame
+    private static final int MAX_STEPS_PER_FRAME = 5;
+
+    private final double stepSeconds;
+    private final boolean lockstep;
+    private double accumulator;
+    private long lastTime;
+    private long stepCount;
+    private boolean started;
+
+    /**
+     * @param stepSeconds How much simulated time one step covers
+     */
+    public SimulationClock(float stepSeconds) {
+        this(stepSeconds, false);
+    }
+
+    /**
+     * @param stepSeconds How much simulated time one step covers
+     * @param lockstep If true, every frame is exactly one step no matter how long it really took
+     *                 (for deterministic runs, where real time mustn't change anything)
+     */
+    public SimulationClock(float stepSeconds, boolean lockstep) {
+        this.stepSeconds = stepSeconds;
+        this.lockstep = lockstep;
+    }
+
+    /**
+     * Adds the real time since the last call and works out how many steps to run
+     * @return How many fixed steps the simulation should take this frame
+     */
+    public int advance() {
+        if (lockstep) {
+            stepCount++;
+            return 1;
+        }
+
+        long now = System.nanoTime();
+        if (!started) {
+            // the first frame just starts the clock (and gets one step so there's something to draw)
+            started = true;
+            lastTime = now;
+            accumulator = stepSeconds;
+        } else {
+            accumulator += (now - lastTime) / 1_000_000_000.0;
+            lastTime = now;
+        }
+
+        int steps = (int) (accumulator / stepSeconds);
+        if (steps > MAX_STEPS_PER_FRAME) {
+            // too far behind, forget about the time we can't catch up on
+            steps = MAX_STEPS_PER_FRAME;
+            accumulator = stepSeconds * steps;
+        }
+        accumulator -= steps * stepSeconds;
+        stepCount += steps;
+        return steps;
+    }
+
+    /**
+     * @return Seconds of simulated time per step
+     */
+    public float getStepSeconds() {
+        return (float) stepSeconds;
+    }
+
+    /**
+     * @return How far we are from the last step to the next one (0-1), for blending when rendering
+     */
+    public float getAlpha() {
+        if (lockstep) {
+            return 1.0f;
+        }
+        return (float) Math.min(1.0, accumulator / stepSeconds);
+    }
+
+    /**
+     * @return Total steps taken so far
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Blends between two angles the short way around (for rotations that wrap at 2 PI)
+     * @param previous Angle at the last step
+     * @param current Angle now
+     * @param alpha How far between them (0-1)
+     * @return The blended angle
+     */
+    public static float lerpAngle(float previous, float current, float alpha) {
+        float delta = current - previous;
+        if (delta > Math.PI) {
+            delta -= 2.0f * (float) Math.PI;
+        } else if (delta < -Math.PI) {
+            delta += 2.0f * (float) Math.PI;
+        }
+        return previous + delta * alpha;
+    }
+}
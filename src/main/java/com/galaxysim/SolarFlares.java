@@ -0,0 +1,281 @@
+package com.galaxysim;
+
+import org.joml.Vector3f;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Flares and prominences boiling off every sun, as one pool of particles shared by all of them.
+ * Particles are just slots in a bunch of float arrays that get made once at full size - nothing
+ * gets allocated while it runs, a new particle takes the next free slot and a dead one gets the
+ * last live particle moved into its place, so the live ones are always the first count slots.
+ *
+ * Prominences get thrown up off the surface and pulled back down by the sun's gravity, so they
+ * arc up and fall back in. Flares go out faster, barely slow down and fade on the way. How many
+ * a sun makes depends on how big it looks: suns only a few pixels across make none at all, and
+ * once the pool is full new ones just have to wait
+ */
+public class SolarFlares {
+    // most particles alive at once, across every sun
+    public static final int CAPACITY = 8192;
+
+    // particles per second a sun makes once it's at least FULL_RATE_PIXELS big on screen
+    private static final float MAX_RATE = 400.0f;
+    private static final float FULL_RATE_PIXELS = 200.0f;
+
+    // suns smaller than this on screen don't make any (you couldn't see them anyway)
+    private static final float MIN_EMIT_PIXELS = 20.0f;
+
+    // how long a sun keeps throwing particles out of the same spot before it picks another
+    private static final float MIN_SITE_SECONDS = 1.5f;
+    private static final float MAX_SITE_SECONDS = 4.0f;
+
+    // share of the particles that are flares rather than prominences
+    private static final float FLARE_SHARE = 0.25f;
+
+    // gravity at the surface, as a share of the sun's radius per second squared
+    private static final float SURFACE_GRAVITY = 0.2f;
+
+    // size of a particle as a share of its sun's radius, and the point size the whole batch gets
+    // drawn with on renderers that can't size points one by one
+    private static final float PARTICLE_SIZE = 0.02f;
+    private static final float BATCH_POINT_SIZE = 3.0f;
+    private static final float MAX_POINT_SIZE = 12.0f;
+
+    // how much brighter than plain white they get when the renderer has bloom
+    private static final float BLOOM_BOOST = 2.0f;
+
+    private final Random random;
+    private int count;
+
+    // reused for every particle we draw
+    private final Vector3f renderPosition = new Vector3f();
+
+    // where each particle is (and was one step ago, for smooth rendering) and how fast it's going
+    private final float[] x = new float[CAPACITY];
+    private final float[] y = new float[CAPACITY];
+    private final float[] z = new float[CAPACITY];
+    private final float[] previousX = new float[CAPACITY];
+    private final float[] previousY = new float[CAPACITY];
+    private final float[] previousZ = new float[CAPACITY];
+    private final float[] velocityX = new float[CAPACITY];
+    private final float[] velocityY = new float[CAPACITY];
+    private final float[] velocityZ = new float[CAPACITY];
+
+    // the sun it came off: its center and radius, and gravity times radius squared (so a / r^2 is the pull)
+    private final float[] centerX = new float[CAPACITY];
+    private final float[] centerY = new float[CAPACITY];
+    private final float[] centerZ = new float[CAPACITY];
+    private final float[] sunRadius = new float[CAPACITY];
+    private final float[] gravity = new float[CAPACITY];
+
+    // how old it is, how long it gets, and its color
+    private final float[] age = new float[CAPACITY];
+    private final float[] life = new float[CAPACITY];
+    private final float[] red = new float[CAPACITY];
+    private final float[] green = new float[CAPACITY];
+    private final float[] blue = new float[CAPACITY];
+
+    /**
+     * @param random Where the randomness comes from (its own, so flares don't change what else gets made)
+     */
+    public SolarFlares(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Moves every particle one step, drops the dead ones and lets every sun make new ones
+     * @param suns Every sun
+     * @param camera The camera as of the last frame (how big each sun looks decides how many it makes)
+     * @param deltaTime Length of the step in seconds
+     */
+    public void update(List<Bodies.Sun> suns, Camera camera, float deltaTime) {
+        int i = 0;
+        while (i < count) {
+            age[i] += deltaTime;
+            if (!step(i, deltaTime)) {
+                // the last live one takes its place, and gets looked at next
+                count--;
+                move(count, i);
+                continue;
+            }
+            i++;
+        }
+
+        for (Bodies.Sun sun : suns) {
+            emit(sun, camera, deltaTime);
+        }
+    }
+
+    // moves one particle, returns whether it's still alive
+    private boolean step(int i, float deltaTime) {
+        previousX[i] = x[i];
+        previousY[i] = y[i];
+        previousZ[i] = z[i];
+
+        float dx = x[i] - centerX[i];
+        float dy = y[i] - centerY[i];
+        float dz = z[i] - centerZ[i];
+        float distanceSquared = dx * dx + dy * dy + dz * dz;
+        float distance = (float) Math.sqrt(distanceSquared);
+        if (age[i] >= life[i] || distance < sunRadius[i]) {
+            return false;  // burnt out or fell back in
+        }
+
+        // pulled straight back towards the middle, weaker the further out it gets
+        float pull = gravity[i] / (distanceSquared * distance) * deltaTime;
+        velocityX[i] -= dx * pull;
+        velocityY[i] -= dy * pull;
+        velocityZ[i] -= dz * pull;
+        x[i] += velocityX[i] * deltaTime;
+        y[i] += velocityY[i] * deltaTime;
+        z[i] += velocityZ[i] * deltaTime;
+        return true;
+    }
+
+    private void move(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        z[to] = z[from];
+        previousX[to] = previousX[from];
+        previousY[to] = previousY[from];
+        previousZ[to] = previousZ[from];
+        velocityX[to] = velocityX[from];
+        velocityY[to] = velocityY[from];
+        velocityZ[to] = velocityZ[from];
+        centerX[to] = centerX[from];
+        centerY[to] = centerY[from];
+        centerZ[to] = centerZ[from];
+        sunRadius[to] = sunRadius[from];
+        gravity[to] = gravity[from];
+        age[to] = age[from];
+        life[to] = life[from];
+        red[to] = red[from];
+        green[to] = green[from];
+        blue[to] = blue[from];
+    }
+
+    // lets one sun make however many particles it's owed this step
+    private void emit(Bodies.Sun sun, Camera camera, float deltaTime) {
+        float pixels = camera.projectedRadius(sun.position, sun.size);
+        if (pixels < MIN_EMIT_PIXELS || pixels == Float.MAX_VALUE) {
+            // too small to see, or we're inside it (and it's not being drawn)
+            sun.flareBacklog = 0.0f;
+            return;
+        }
+        sun.flareBacklog += MAX_RATE * Math.min(1.0f, pixels / FULL_RATE_PIXELS) * deltaTime;
+
+        sun.flareSiteSeconds -= deltaTime;
+        if (sun.flareSiteSeconds <= 0.0f) {
+            randomDirection(sun.flareSite);
+            sun.flareSiteSeconds = MIN_SITE_SECONDS + random.nextFloat() * (MAX_SITE_SECONDS - MIN_SITE_SECONDS);
+        }
+
+        float[] glow = sun.type.glowPalette;
+        float[] core = sun.type.corePalette;
+        while (sun.flareBacklog >= 1.0f && count < CAPACITY) {
+            sun.flareBacklog -= 1.0f;
+            int i = count++;
+            float radius = sun.size;
+            boolean flare = random.nextFloat() < FLARE_SHARE;
+
+            // somewhere around the site, just above the surface
+            float nx = sun.flareSite.x + (random.nextFloat() - 0.5f) * 0.3f;
+            float ny = sun.flareSite.y + (random.nextFloat() - 0.5f) * 0.3f;
+            float nz = sun.flareSite.z + (random.nextFloat() - 0.5f) * 0.3f;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            x[i] = sun.position.x + nx * radius * 1.01f;
+            y[i] = sun.position.y + ny * radius * 1.01f;
+            z[i] = sun.position.z + nz * radius * 1.01f;
+            previousX[i] = x[i];
+            previousY[i] = y[i];
+            previousZ[i] = z[i];
+            centerX[i] = sun.position.x;
+            centerY[i] = sun.position.y;
+            centerZ[i] = sun.position.z;
+            sunRadius[i] = radius;
+            gravity[i] = SURFACE_GRAVITY * radius * radius * radius;
+            age[i] = 0.0f;
+
+            // up off the surface, plus a push sideways so prominences loop over instead of going straight up and down
+            float speed = radius * (flare ? 0.6f + random.nextFloat() * 0.4f : 0.25f + random.nextFloat() * 0.15f);
+            float sideways = flare ? 0.1f : 0.5f;
+            velocityX[i] = (nx + (random.nextFloat() - 0.5f) * sideways) * speed;
+            velocityY[i] = (ny + (random.nextFloat() - 0.5f) * sideways) * speed;
+            velocityZ[i] = (nz + (random.nextFloat() - 0.5f) * sideways) * speed;
+
+            int c;
+            float[] palette;
+            if (flare) {
+                life[i] = 1.5f + random.nextFloat() * 1.5f;
+                palette = core;
+                c = SunSurface.CORE_FLARE * 3;
+            } else {
+                // long enough to land again
+                life[i] = 6.0f;
+                palette = glow;
+                c = (random.nextBoolean() ? SunSurface.GLOW_BRIGHT : SunSurface.GLOW_MEDIUM) * 3;
+            }
+            red[i] = palette[c];
+            green[i] = palette[c + 1];
+            blue[i] = palette[c + 2];
+        }
+        // whatever didn't fit in the pool is gone, otherwise it'd all come out at once when there's room again
+        sun.flareBacklog = Math.min(sun.flareBacklog, 1.0f);
+    }
+
+    // a random direction, even over the whole sphere
+    private void randomDirection(Vector3f into) {
+        float cosTheta = random.nextFloat() * 2.0f - 1.0f;
+        float sinTheta = (float) Math.sqrt(1.0f - cosTheta * cosTheta);
+        float phi = random.nextFloat() * (float) Math.PI * 2.0f;
+        into.set(sinTheta * (float) Math.cos(phi), sinTheta * (float) Math.sin(phi), cosTheta);
+    }
+
+    /**
+     * Draws every particle of every sun in one batch
+     * @param renderer The renderer to submit to
+     * @param camera The camera (particles are sized by how big they look)
+     * @param alpha How far we are between the last simulation step and the next one (0-1)
+     */
+    public void render(Renderer renderer, Camera camera, float alpha) {
+        if (count == 0) {
+            return;
+        }
+        float boost = renderer.hasBloom() ? BLOOM_BOOST : 1.0f;
+
+        renderer.setBlendMode(Renderer.BlendMode.ADDITIVE);
+        renderer.setDepthWrite(false);
+        renderer.setSmoothPoints(true);
+        renderer.begin(Renderer.Primitive.POINTS, BATCH_POINT_SIZE);
+        for (int i = 0; i < count; i++) {
+            renderPosition.set(previousX[i] + (x[i] - previousX[i]) * alpha,
+                    previousY[i] + (y[i] - previousY[i]) * alpha,
+                    previousZ[i] + (z[i] - previousZ[i]) * alpha);
+
+            // fade in quickly, then out over the rest of its life
+            float t = age[i] / life[i];
+            float opacity = Math.min(1.0f, t * 10.0f) * (1.0f - t);
+
+            float size = camera.projectedRadius(renderPosition, sunRadius[i] * PARTICLE_SIZE);
+            renderer.point(renderPosition.x, renderPosition.y, renderPosition.z,
+                    Math.max(1.0f, Math.min(MAX_POINT_SIZE, size)),
+                    red[i] * boost, green[i] * boost, blue[i] * boost, opacity);
+        }
+        renderer.end();
+        renderer.setSmoothPoints(false);
+        renderer.setDepthWrite(true);
+        renderer.setBlendMode(Renderer.BlendMode.NONE);
+    }
+
+    /**
+     * @return How many particles are alive
+     */
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,319 @@
+package com.galaxysim;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One chunk of space (REGION_SIZE on each side) and all the stars sitting in it.
+ * Keeping stars grouped like this lets renderers keep each region's stars in a GPU
+ * buffer and only draw the regions that are actually around the camera
+ */
+public class StarRegion implements StarRegionData {
+    // x, y, z, size, brightness
+    public static final int FLOATS_PER_STAR = 5;
+
+    // the two layers of a region - scattered stars glimmer, clustered ones don't
+    public static final int LAYER_SCATTERED = 0;
+    public static final int LAYER_CLUSTER = 1;
+
+    /**
+     * this is what each star is made of
+     */
+    public static class Star {
+        Vector3f position;    // where the star is in space
+        float size;          // how chunky the star is
+        float brightness;    // how bright and shiny it is
+
+        // Flag to identify if this is a scattered star or a clustered star
+        boolean isScatteredStar; // true if this is a scattered star (should glimmer)
+
+        // Glimmering effect properties
+        boolean canGlimmer;   // whether this star can glimmer
+        float glimmerChance;  // chance of glimmering each frame
+        float glimmerIntensity; // how bright the glimmer is
+        boolean isGlimmering; // current glimmering state
+        float currentBrightness; // current brightness with glimmer effect
+
+        // Constructor with flag to identify scattered vs clustered stars
+        Star(Vector3f position, float size, float brightness, boolean isScatteredStar, Random random) {
+            this.position = position;
+            this.size = size;
+            this.brightness = brightness;
+            this.currentBrightness = brightness;
+            this.isScatteredStar = isScatteredStar;
+
+            // Only scattered stars can glimmer
+            if (isScatteredStar) {
+                // High chance for scattered stars to glimmer
+                this.canGlimmer = random.nextFloat() < 0.9f; // 90% of scattered stars can glimmer
+                // How often the star glimmers - high chance for scattered stars
+                this.glimmerChance = random.nextFloat() * 0.05f + 0.03f; // 3-8% chance per frame
+                // How intense the glimmer is (1.8x to 3.0x normal brightness)
+                this.glimmerIntensity = random.nextFloat() * 1.2f + 1.8f;
+            } else {
+                // Clustered stars don't glimmer
+                this.canGlimmer = false;
+                this.glimmerChance = 0;
+                this.glimmerIntensity = 1.0f;
+            }
+            this.isGlimmering = false;
+        }
+
+        /**
+         * Update the star's glimmering state
+         * @return True if the star's brightness changed
+         */
+        boolean update(Random random) {
+            // Only scattered stars can glimmer
+            if (!isScatteredStar || !canGlimmer) {
+                return false; // This star doesn't glimmer
+            }
+
+            // Check if we should start glimmering
+            if (!isGlimmering && random.nextFloat() < glimmerChance) {
+                isGlimmering = true;
+                currentBrightness = brightness * glimmerIntensity;
+                return true;
+            }
+            // Check if we should stop glimmering (glimmers are brief)
+            else if (isGlimmering && random.nextFloat() < 0.15f) { // 15% chance to stop each frame
+                isGlimmering = false;
+                currentBrightness = brightness;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final int regionX;
+    private final int regionY;
+    private final int regionZ;
+    private final float regionSize;
+
+    private final List<Star> scatteredStars = new ArrayList<>();
+    private final List<Star> clusterStars = new ArrayList<>();
+
+    // packed star data for renderers: scattered stars first, then clustered ones
+    private float[] vertexData = new float[0];
+    private boolean vertexDataStale = true;
+
+    // renderers compare these with what they last uploaded
+    private int layoutVersion;      // bumps when stars get added
+    private int brightnessVersion;  // bumps when a scattered star starts or stops glimmering
+
+    /**
+     * Creates an empty region
+     * @param regionX Region grid X
+     * @param regionY Region grid Y
+     * @param regionZ Region grid Z
+     * @param regionSize Size of a region along each axis
+     */
+    public StarRegion(int regionX, int regionY, int regionZ, float regionSize) {
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionZ = regionZ;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Packs a region's grid coordinates into a single map key
+     */
+    public static long key(int regionX, int regionY, int regionZ) {
+        // 21 bits per axis is over a million regions in every direction, plenty
+        return ((long) (regionX & 0x1FFFFF) << 42) | ((long) (regionY & 0x1FFFFF) << 21) | (regionZ & 0x1FFFFF);
+    }
+
+    /**
+     * @return This region's map key
+     */
+    public long key() {
+        return key(regionX, regionY, regionZ);
+    }
+
+    /**
+     * Adds a star to this region (the star has to be inside the region's bounds).
+     * Each layer stays sorted brightest first, so dropping dim stars is just drawing fewer of them
+     */
+    void addStar(Star star) {
+        List<Star> layer = star.isScatteredStar ? scatteredStars : clusterStars;
+        float magnitude = magnitude(star);
+        int index = layer.size();
+        while (index > 0 && magnitude(layer.get(index - 1)) < magnitude) {
+            index--;
+        }
+        layer.add(index, star);
+        vertexDataStale = true;
+        layoutVersion++;
+    }
+
+    /**
+     * How bright a star looks, used for sorting and the quality cutoff
+     */
+    static float magnitude(Star star) {
+        return star.size * star.brightness;
+    }
+
+    /**
+     * Updates the glimmer of every star in the region
+     * @param random Random number generator
+     */
+    void update(Random random) {
+        boolean changed = false;
+        for (Star star : scatteredStars) {
+            changed |= star.update(random);
+        }
+        if (changed) {
+            // only the brightness moved, so just patch that into the packed data
+            if (!vertexDataStale) {
+                for (int i = 0; i < scatteredStars.size(); i++) {
+                    vertexData[i * FLOATS_PER_STAR + 4] = scatteredStars.get(i).currentBrightness;
+                }
+            }
+            brightnessVersion++;
+        }
+    }
+
+    /**
+     * Checks whether any star in this region is closer to a point than the given distance
+     */
+    boolean hasStarWithin(Vector3f point, float distance) {
+        for (Star star : scatteredStars) {
+            if (star.position.distance(point) < distance) {
+                return true;
+            }
+        }
+        for (Star star : clusterStars) {
+            if (star.position.distance(point) < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object getIdentity() {
+        return this;
+    }
+
+    @Override
+    public float[] getVertexData() {
+        if (vertexDataStale) {
+            vertexData = new float[getStarCount() * FLOATS_PER_STAR];
+            int offset = 0;
+            for (Star star : scatteredStars) {
+                offset = pack(star, offset);
+            }
+            for (Star star : clusterStars) {
+                offset = pack(star, offset);
+            }
+            vertexDataStale = false;
+        }
+        return vertexData;
+    }
+
+    private int pack(Star star, int offset) {
+        vertexData[offset] = star.position.x;
+        vertexData[offset + 1] = star.position.y;
+        vertexData[offset + 2] = star.position.z;
+        vertexData[offset + 3] = star.size;
+        vertexData[offset + 4] = star.currentBrightness;
+        return offset + FLOATS_PER_STAR;
+    }
+
+    /**
+     * @return Scattered stars, in the same order as in the packed data
+     */
+    public List<Star> getScatteredStars() {
+        return scatteredStars;
+    }
+
+    /**
+     * @return Clustered stars, in the same order as in the packed data (after the scattered ones)
+     */
+    public List<Star> getClusterStars() {
+        return clusterStars;
+    }
+
+    @Override
+    public int getStarCount() {
+        return scatteredStars.size() + clusterStars.size();
+    }
+
+    @Override
+    public int getLayerStart(int layer) {
+        return layer == LAYER_SCATTERED ? 0 : scatteredStars.size();
+    }
+
+    @Override
+    public int getLayerCount(int layer) {
+        return layer == LAYER_SCATTERED ? scatteredStars.size() : clusterStars.size();
+    }
+
+    @Override
+    public int getLayerDrawCount(int layer) {
+        // layers are sorted brightest first, so find where stars drop under the cutoff
+        List<Star> stars = layer == LAYER_SCATTERED ? scatteredStars : clusterStars;
+        float cutoff = QualitySettings.getStarMagnitudeCutoff();
+        int low = 0;
+        int high = stars.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (magnitude(stars.get(mid)) >= cutoff) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+
+    @Override
+    public int getBrightnessVersion() {
+        return brightnessVersion;
+    }
+
+    public int getRegionX() {
+        return regionX;
+    }
+
+    public int getRegionY() {
+        return regionY;
+    }
+
+    public int getRegionZ() {
+        return regionZ;
+    }
+
+    // region bounds (every star in here sits inside them)
+    public float getMinX() {
+        return regionX * regionSize;
+    }
+
+    public float getMinY() {
+        return regionY * regionSize;
+    }
+
+    public float getMinZ() {
+        return regionZ * regionSize;
+    }
+
+    public float getMaxX() {
+        return (regionX + 1) * regionSize;
+    }
+
+    public float getMaxY() {
+        return (regionY + 1) * regionSize;
+    }
+
+    public float getMaxZ() {
+        return (regionZ + 1) * regionSize;
+    }
+}
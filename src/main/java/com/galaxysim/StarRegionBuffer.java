@@ -0,0 +1,437 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL14.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawArraysIndirect;
+
+/**
+ * Keeps the stars of every region we've drawn in one big GPU buffer, each region getting its
+ * own slice. Positions and sizes only get uploaded when a region gets new stars, and regions
+ * that haven't been drawn for a while give their slice back so we don't fill up with stuff
+ * that's way behind us. Brightness changes all the time (glimmering), so it streams through
+ * the renderer's StreamingBuffer every frame instead of being written into the static buffer.
+ *
+ * Drawing packs one command per region per layer into an indirect buffer and fires them all
+ * off with a single glMultiDrawArraysIndirect, so the number of draw calls stays the same no
+ * matter how far out we stream. Drivers without indirect draws get glMultiDrawArrays instead,
+ * which the driver just loops over
+ */
+public class StarRegionBuffer {
+    // x, y, z, size - brightness is streamed separately
+    private static final int FLOATS_PER_STAR = 4;
+    private static final int BYTES_PER_STAR = FLOATS_PER_STAR * Float.BYTES;
+
+    // starting (and smallest) size of the star buffer
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    // how many frames a region can go undrawn before its slice is handed back (it's re-uploaded if it comes back)
+    private static final int EVICT_AFTER_FRAMES = 600;
+
+    // how often we look for slices to hand back
+    private static final int EVICT_CHECK_FRAMES = 60;
+
+    // regions get a bit of spare room so a few new stars don't force them to move
+    private static final int ALLOCATION_GRANULARITY = 64;
+
+    // count, instanceCount, first, baseInstance
+    private static final int INTS_PER_COMMAND = 4;
+
+    // goes after the camera block's header, which declares uProjection and uView
+    private static final String VERTEX_SHADER =
+        "attribute vec3 aPosition;\n" +
+        "attribute float aSize;\n" +
+        "attribute float aBrightness;\n" +
+        "varying float vBrightness;\n" +
+        "void main() {\n" +
+        "    vBrightness = aBrightness;\n" +
+        "    gl_PointSize = aSize * 10.0;\n" +
+        "    gl_Position = uProjection * uView * vec4(aPosition, 1.0);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#version 120\n" +
+        "varying float vBrightness;\n" +
+        "void main() {\n" +
+        "    vec2 d = gl_PointCoord - vec2(0.5);\n" +
+        "    if (dot(d, d) > 0.25) discard;\n" +
+        "    gl_FragColor = vec4(vec3(vBrightness), 1.0);\n" +
+        "}\n";
+
+    // where a region lives in the buffer and which version of it is there
+    private static class Allocation {
+        int first;
+        int capacity;
+        int layoutVersion;
+        int lastDrawn;
+    }
+
+    private final ShaderProgram program;
+    private final CameraBlock camera;
+    private final StreamingBuffer stream;
+    private final boolean indirectDraws;
+    private final StreamingBuffer indirectBuffer;
+    private final int overflowVbo;   // brightness goes here when a frame streams more than the stream holds
+
+    private int vbo;
+    private int capacity;    // in stars
+    private int used;        // stars handed out from the end of the buffer
+    private final Map<Object, Allocation> allocations = new IdentityHashMap<>();
+    private final List<int[]> freeBlocks = new ArrayList<>();  // {first, size}
+    private int frame;
+
+    private FloatBuffer upload = MemoryUtil.memAllocFloat(1024 * FLOATS_PER_STAR);
+    private FloatBuffer brightness = MemoryUtil.memAllocFloat(INITIAL_CAPACITY);
+    private IntBuffer commands = MemoryUtil.memAllocInt(256 * INTS_PER_COMMAND);
+    private IntBuffer firsts = MemoryUtil.memAllocInt(256);
+    private IntBuffer counts = MemoryUtil.memAllocInt(256);
+
+    /**
+     * Creates the region buffer. Needs a GL context
+     * @param camera Where the shader gets the camera from
+     * @param stream The renderer's streaming buffer, brightness goes through it every frame
+     */
+    public StarRegionBuffer(CameraBlock camera, StreamingBuffer stream) {
+        this.camera = camera;
+        this.stream = stream;
+        program = new ShaderProgram(camera.header() + VERTEX_SHADER, FRAGMENT_SHADER, "aPosition", "aSize", "aBrightness");
+        camera.attach(program);
+
+        GLCapabilities caps = GL.getCapabilities();
+        indirectDraws = caps.OpenGL43 || caps.GL_ARB_multi_draw_indirect;
+        indirectBuffer = indirectDraws ? new StreamingBuffer(GL_DRAW_INDIRECT_BUFFER, 64 * 1024) : null;
+        overflowVbo = glGenBuffers();
+        System.out.println("Star regions draw with " + (indirectDraws ? "glMultiDrawArraysIndirect" : "glMultiDrawArrays"));
+
+        createBuffer(INITIAL_CAPACITY);
+    }
+
+    private void createBuffer(int stars) {
+        vbo = glGenBuffers();
+        capacity = stars;
+        used = 0;
+        allocations.clear();
+        freeBlocks.clear();
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * BYTES_PER_STAR, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Call at the start of every frame
+     */
+    public void beginFrame() {
+        if (indirectBuffer != null) {
+            indirectBuffer.beginFrame();
+        }
+    }
+
+    /**
+     * Call at the end of every frame, hands back the slices of regions nobody has drawn in a while
+     */
+    public void endFrame() {
+        if (indirectBuffer != null) {
+            indirectBuffer.endFrame();
+        }
+        frame++;
+        if (frame % EVICT_CHECK_FRAMES == 0) {
+            releaseUndrawn(frame - EVICT_AFTER_FRAMES);
+        }
+    }
+
+    /**
+     * Draws the stars of the given regions, uploading whatever changed first
+     * @param regions Regions to draw (with whatever camera the camera block has right now)
+     * @param stats Where to count the draw calls
+     */
+    public void draw(List<? extends StarRegionData> regions, RenderStats stats) {
+        if (regions.isEmpty()) {
+            return;
+        }
+
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        if (!makeResident(regions)) {
+            // ran out of room - first try again without the regions we aren't drawing this frame
+            releaseUndrawn(frame);
+            if (!makeResident(regions)) {
+                // still too full (or too chopped up), start over with a buffer sized for what we need right now
+                int needed = 0;
+                for (StarRegionData region : regions) {
+                    needed += roundUp(region.getStarCount());
+                }
+                glDeleteBuffers(vbo);
+                createBuffer(Math.max(INITIAL_CAPACITY, needed * 2));
+                System.out.println("Resizing star region buffer to " + capacity + " stars");
+                glBindBuffer(GL_ARRAY_BUFFER, vbo);
+                makeResident(regions);
+            }
+        }
+
+        // one command per region per layer
+        int drawCount = 0;
+        int starCount = 0;
+        ensureCommandRoom(regions.size() * 2);
+        commands.clear();
+        firsts.clear();
+        counts.clear();
+        for (StarRegionData region : regions) {
+            Allocation allocation = allocations.get(region.getIdentity());
+            for (int layer = StarRegion.LAYER_SCATTERED; layer <= StarRegion.LAYER_CLUSTER; layer++) {
+                int count = region.getLayerDrawCount(layer);
+                if (count == 0) {
+                    continue;
+                }
+                int first = allocation.first + region.getLayerStart(layer);
+                commands.put(count).put(1).put(first).put(0);
+                firsts.put(first);
+                counts.put(count);
+                drawCount++;
+                starCount += count;
+            }
+        }
+        stats.addRegions(regions.size());
+        if (drawCount == 0) {
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            return;
+        }
+
+        program.use();
+        camera.apply(program);
+
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        streamBrightness(regions);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, BYTES_PER_STAR, 0L);
+        glVertexAttribPointer(1, 1, GL_FLOAT, false, BYTES_PER_STAR, 3L * Float.BYTES);
+
+        commands.flip();
+        long offset = indirectDraws ? indirectBuffer.upload(MemoryUtil.memByteBuffer(commands)) : -1;
+        if (offset >= 0) {
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, indirectBuffer.getBufferId());
+            glMultiDrawArraysIndirect(GL_POINTS, offset, drawCount, 0);
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+            stats.addDrawCall(starCount);
+        } else {
+            firsts.flip();
+            counts.flip();
+            glMultiDrawArrays(GL_POINTS, firsts, counts);
+            for (int i = 0; i < drawCount; i++) {
+                stats.addDrawCall(counts.get(i));
+            }
+        }
+
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glDisableVertexAttribArray(2);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Writes this frame's brightness of every region's stars into the stream, at the same index as
+     * the star's slot in the static buffer so the draw commands line up with both. Leaves attribute 2
+     * pointing at it
+     */
+    private void streamBrightness(List<? extends StarRegionData> regions) {
+        // everything from slot 0 up to the end of the last region we draw (slots in between are junk)
+        int slots = 0;
+        for (StarRegionData region : regions) {
+            Allocation allocation = allocations.get(region.getIdentity());
+            slots = Math.max(slots, allocation.first + region.getStarCount());
+        }
+        int bytes = slots * Float.BYTES;
+
+        ByteBuffer mapped = stream.reserve(bytes);
+        FloatBuffer target;
+        if (mapped != null) {
+            target = MemoryUtil.memFloatBuffer(MemoryUtil.memAddress(mapped), slots);
+        } else {
+            if (brightness.capacity() < slots) {
+                MemoryUtil.memFree(brightness);
+                brightness = MemoryUtil.memAllocFloat(slots + slots / 2);
+            }
+            target = brightness;
+        }
+        for (StarRegionData region : regions) {
+            int first = allocations.get(region.getIdentity()).first;
+            float[] data = region.getVertexData();
+            for (int i = 0, stars = region.getStarCount(); i < stars; i++) {
+                target.put(first + i, data[i * StarRegion.FLOATS_PER_STAR + 4]);
+            }
+        }
+
+        long offset;
+        if (mapped != null) {
+            offset = stream.commit(bytes);
+            glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+        } else {
+            offset = stream.upload(MemoryUtil.memByteBuffer(MemoryUtil.memAddress(brightness), bytes));
+            if (offset >= 0) {
+                glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+            } else {
+                // the streaming buffer is full for this frame (it'll grow next frame), orphan a plain one
+                glBindBuffer(GL_ARRAY_BUFFER, overflowVbo);
+                glBufferData(GL_ARRAY_BUFFER, MemoryUtil.memByteBuffer(MemoryUtil.memAddress(brightness), bytes), GL_STREAM_DRAW);
+                offset = 0;
+            }
+        }
+        glVertexAttribPointer(2, 1, GL_FLOAT, false, Float.BYTES, offset);
+    }
+
+    /**
+     * Makes sure every region has an up to date slice of the buffer
+     * @return False if the buffer ran out of room
+     */
+    private boolean makeResident(List<? extends StarRegionData> regions) {
+        for (StarRegionData region : regions) {
+            Allocation allocation = allocations.get(region.getIdentity());
+            int stars = region.getStarCount();
+
+            if (allocation == null || stars > allocation.capacity) {
+                // new region, or it outgrew its slice
+                if (allocation != null) {
+                    allocations.remove(region.getIdentity());
+                    release(allocation.first, allocation.capacity);
+                }
+                allocation = allocate(roundUp(stars));
+                if (allocation == null) {
+                    return false;
+                }
+                allocations.put(region.getIdentity(), allocation);
+                upload(region, allocation);
+            } else if (allocation.layoutVersion != region.getLayoutVersion()) {
+                upload(region, allocation);
+            }
+            allocation.lastDrawn = frame;
+        }
+        return true;
+    }
+
+    // hands back the slices of every region that hasn't been drawn since the given frame
+    private void releaseUndrawn(int since) {
+        Iterator<Allocation> it = allocations.values().iterator();
+        while (it.hasNext()) {
+            Allocation allocation = it.next();
+            if (allocation.lastDrawn < since) {
+                release(allocation.first, allocation.capacity);
+                it.remove();
+            }
+        }
+    }
+
+    // puts a slice back in the free list, gluing it to any free neighbours so big regions still fit later
+    private void release(int first, int size) {
+        for (int i = freeBlocks.size() - 1; i >= 0; i--) {
+            int[] block = freeBlocks.get(i);
+            if (block[0] + block[1] == first) {
+                first = block[0];
+                size += block[1];
+                freeBlocks.remove(i);
+            } else if (first + size == block[0]) {
+                size += block[1];
+                freeBlocks.remove(i);
+            }
+        }
+        if (first + size == used) {
+            // it's at the end, just give it back to the unused part of the buffer
+            used = first;
+        } else {
+            freeBlocks.add(new int[] { first, size });
+        }
+    }
+
+    private Allocation allocate(int stars) {
+        Allocation allocation = new Allocation();
+        for (int i = 0; i < freeBlocks.size(); i++) {
+            int[] block = freeBlocks.get(i);
+            if (block[1] >= stars) {
+                // take what we need off the front, the rest stays free
+                allocation.first = block[0];
+                allocation.capacity = stars;
+                if (block[1] > stars) {
+                    block[0] += stars;
+                    block[1] -= stars;
+                } else {
+                    freeBlocks.remove(i);
+                }
+                return allocation;
+            }
+        }
+        if (used + stars > capacity) {
+            return null;
+        }
+        allocation.first = used;
+        allocation.capacity = stars;
+        used += stars;
+        return allocation;
+    }
+
+    // writes a region's positions and sizes into its slice
+    private void upload(StarRegionData region, Allocation allocation) {
+        int stars = region.getStarCount();
+        if (stars > 0) {
+            float[] data = region.getVertexData();
+            int floats = stars * FLOATS_PER_STAR;
+            if (upload.capacity() < floats) {
+                MemoryUtil.memFree(upload);
+                upload = MemoryUtil.memAllocFloat(floats);
+            }
+            upload.clear();
+            for (int i = 0; i < stars; i++) {
+                upload.put(data, i * StarRegion.FLOATS_PER_STAR, FLOATS_PER_STAR);
+            }
+            upload.flip();
+            glBufferSubData(GL_ARRAY_BUFFER, (long) allocation.first * BYTES_PER_STAR, upload);
+        }
+        allocation.layoutVersion = region.getLayoutVersion();
+    }
+
+    private static int roundUp(int stars) {
+        int padded = stars + stars / 4;
+        return Math.max(ALLOCATION_GRANULARITY, (padded + ALLOCATION_GRANULARITY - 1) / ALLOCATION_GRANULARITY * ALLOCATION_GRANULARITY);
+    }
+
+    private void ensureCommandRoom(int maxCommands) {
+        if (counts.capacity() < maxCommands) {
+            MemoryUtil.memFree(commands);
+            MemoryUtil.memFree(firsts);
+            MemoryUtil.memFree(counts);
+            commands = MemoryUtil.memAllocInt(maxCommands * INTS_PER_COMMAND);
+            firsts = MemoryUtil.memAllocInt(maxCommands);
+            counts = MemoryUtil.memAllocInt(maxCommands);
+        }
+    }
+
+    /**
+     * Deletes the GL objects and frees the native buffers
+     */
+    public void cleanup() {
+        program.cleanup();
+        glDeleteBuffers(vbo);
+        glDeleteBuffers(overflowVbo);
+        if (indirectBuffer != null) {
+            indirectBuffer.cleanup();
+        }
+        MemoryUtil.memFree(upload);
+        MemoryUtil.memFree(brightness);
+        MemoryUtil.memFree(commands);
+        MemoryUtil.memFree(firsts);
+        MemoryUtil.memFree(counts);
+    }
+}
@@ -0,0 +1,50 @@
+package com.galaxysim;
+
+/**
+ * What a renderer needs to know to draw a region's stars. StarRegion hands this out
+ * directly, and StarRegionSnapshot is a frozen copy of it that's safe to read from
+ * the render thread while the simulation keeps changing the real region
+ */
+public interface StarRegionData {
+
+    /**
+     * @return The object renderers cache this region's GPU data under - the same for every copy of one region
+     */
+    Object getIdentity();
+
+    /**
+     * @return Changes whenever stars get added
+     */
+    int getLayoutVersion();
+
+    /**
+     * @return Changes whenever a scattered star starts or stops glimmering
+     */
+    int getBrightnessVersion();
+
+    int getStarCount();
+
+    /**
+     * @param layer StarRegion.LAYER_SCATTERED or StarRegion.LAYER_CLUSTER
+     * @return Index of the layer's first star in the packed data
+     */
+    int getLayerStart(int layer);
+
+    /**
+     * @param layer StarRegion.LAYER_SCATTERED or StarRegion.LAYER_CLUSTER
+     * @return Number of stars in the layer
+     */
+    int getLayerCount(int layer);
+
+    /**
+     * @param layer StarRegion.LAYER_SCATTERED or StarRegion.LAYER_CLUSTER
+     * @return How many of the layer's stars should actually be drawn (the rest are too dim for the current quality)
+     */
+    int getLayerDrawCount(int layer);
+
+    /**
+     * @return Packed star data (x, y, z, size, brightness per star), scattered stars first.
+     * Can be longer than getStarCount() stars, anything past that is junk
+     */
+    float[] getVertexData();
+}
@@ -0,0 +1,77 @@
+package com.galaxysim;
+
+/**
+ * A copy of a StarRegion's draw data taken at the end of a simulation step.
+ * Frame snapshots keep a pool of these and refill them every frame, so the
+ * render thread never reads a region the simulation is busy changing
+ */
+public class StarRegionSnapshot implements StarRegionData {
+    private Object identity;
+    private int layoutVersion;
+    private int brightnessVersion;
+    private int scatteredCount;
+    private int clusterCount;
+    private int scatteredDrawCount;
+    private int clusterDrawCount;
+    private float[] vertexData = new float[0];
+
+    /**
+     * Copies everything a renderer needs out of a region (or another snapshot)
+     * @param region The region to copy
+     */
+    void capture(StarRegionData region) {
+        identity = region.getIdentity();
+        layoutVersion = region.getLayoutVersion();
+        brightnessVersion = region.getBrightnessVersion();
+        scatteredCount = region.getLayerCount(StarRegion.LAYER_SCATTERED);
+        clusterCount = region.getLayerCount(StarRegion.LAYER_CLUSTER);
+        scatteredDrawCount = region.getLayerDrawCount(StarRegion.LAYER_SCATTERED);
+        clusterDrawCount = region.getLayerDrawCount(StarRegion.LAYER_CLUSTER);
+
+        int floats = region.getStarCount() * StarRegion.FLOATS_PER_STAR;
+        if (vertexData.length < floats) {
+            vertexData = new float[floats + floats / 2];
+        }
+        System.arraycopy(region.getVertexData(), 0, vertexData, 0, floats);
+    }
+
+    @Override
+    public Object getIdentity() {
+        return identity;
+    }
+
+    @Override
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+
+    @Override
+    public int getBrightnessVersion() {
+        return brightnessVersion;
+    }
+
+    @Override
+    public int getStarCount() {
+        return scatteredCount + clusterCount;
+    }
+
+    @Override
+    public int getLayerStart(int layer) {
+        return layer == StarRegion.LAYER_SCATTERED ? 0 : scatteredCount;
+    }
+
+    @Override
+    public int getLayerCount(int layer) {
+        return layer == StarRegion.LAYER_SCATTERED ? scatteredCount : clusterCount;
+    }
+
+    @Override
+    public int getLayerDrawCount(int layer) {
+        return layer == StarRegion.LAYER_SCATTERED ? scatteredDrawCount : clusterDrawCount;
+    }
+
+    @Override
+    public float[] getVertexData() {
+        return vertexData;
+    }
+}
@@ -1,12 +1,9 @@
 package com.galaxysim;
 
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 import java.util.Random;
 
-import static org.lwjgl.opengl.GL11.*;
-
 public class Stars {
     
     /**
@@ -15,6 +12,9 @@ public class Stars {
      * you know your vector crashout is bad when you start talking to yourself in commments lmao
      */
     public static class ShootingStar {
+        // how much brighter the head gets when the renderer has bloom to make it glow
+        private static final float HEAD_BLOOM_BOOST = 2.5f;
+
         private Vector3f direction;      // Direction of movement
         private float speed;            // Speed of movement
         private float lifetime;         // Total lifetime in seconds
@@ -27,13 +27,23 @@ public class Stars {
         private float headSize;         // Size of the shooting star head
         
         private Vector3f position;      // Position of the shooting star
+
+        // where it was one simulation step ago, so rendering can blend between the two
+        private final Vector3f previousPosition = new Vector3f();
+        private float previousLifetime;
+        private final Vector3f renderPosition = new Vector3f();
+
+        // sparkles are random every frame, but from the star's own generator so seeded runs draw the same ones
+        private final Random sparkleRandom;
         
         public ShootingStar(Vector3f position, Vector3f direction, float speed, float lifetime, Random random) {
             this.position = position;
+            this.previousPosition.set(position);
             this.direction = direction.normalize();
             this.speed = speed;
             this.lifetime = lifetime;
             this.currentLifetime = 0;
+            this.sparkleRandom = new Random(random.nextLong());
             this.trailLength = random.nextFloat() * 10.0f + 15.0f; // Longer trail (15-25 units)
             this.trailSegments = 20; // More segments for smoother trail
             this.trailWidths = new float[trailSegments];
@@ -66,6 +76,9 @@ public class Stars {
         }
         
         public void update(float deltaTime) {
+            previousPosition.set(position);
+            previousLifetime = currentLifetime;
+
             // Update position based on direction and speed
             position.x += direction.x * speed * deltaTime;
             position.y += direction.y * speed * deltaTime;
@@ -75,130 +88,105 @@ public class Stars {
             currentLifetime += deltaTime;
         }
         
-        public void render(Matrix4f view, Matrix4f projection) {
+        /**
+         * Draws the shooting star
+         * @param renderer The renderer to submit it to
+         * @param alpha How far we are between the last simulation step and the next one (0-1)
+         */
+        public void render(Renderer renderer, float alpha) {
+            // blend between the last two simulation steps so it moves smoothly at any frame rate
+            previousPosition.lerp(position, alpha, renderPosition);
+            float age = previousLifetime + (currentLifetime - previousLifetime) * alpha;
+
             // Don't render if lifetime is over
-            if (currentLifetime >= lifetime) {
+            if (age >= lifetime) {
                 return;
             }
             
-            // Calculate alpha based on lifetime (fade in and out)
-            float alpha;
-            if (currentLifetime < lifetime * 0.1f) {
+            // Calculate opacity based on lifetime (fade in and out)
+            float opacity;
+            if (age < lifetime * 0.1f) {
                 // Faster fade in
-                alpha = currentLifetime / (lifetime * 0.1f);
-            } else if (currentLifetime > lifetime * 0.8f) {
+                opacity = age / (lifetime * 0.1f);
+            } else if (age > lifetime * 0.8f) {
                 // Fade out
-                alpha = 1.0f - (currentLifetime - lifetime * 0.8f) / (lifetime * 0.2f);
+                opacity = 1.0f - (age - lifetime * 0.8f) / (lifetime * 0.2f);
             } else {
                 // Full brightness
-                alpha = 1.0f;
+                opacity = 1.0f;
             }
             
-            // Save the current drawing state
-            glPushMatrix();
-            
-            // Convert matrices to OpenGL format
-            float[] viewMatrix = new float[16];
-            float[] projMatrix = new float[16];
-            view.get(viewMatrix);
-            projection.get(projMatrix);
-            
-            // Set up the projection and modelview matrices
-            glMatrixMode(GL_PROJECTION);
-            glLoadMatrixf(projMatrix);
-            glMatrixMode(GL_MODELVIEW);
-            glLoadMatrixf(viewMatrix);
-            
             // Enable blending for the trail effect - additive blending for glow
-            glEnable(GL_BLEND);
-            glBlendFunc(GL_SRC_ALPHA, GL_ONE);
+            renderer.setBlendMode(Renderer.BlendMode.ADDITIVE);
             
             // Draw the trail as multiple segments for a more detailed effect
             for (int i = 0; i < trailSegments - 1; i++) {
                 float startFactor = (float)i / trailSegments;
                 float endFactor = (float)(i + 1) / trailSegments;
                 
-                // Calculate positions along the trail
-                Vector3f startPos = new Vector3f(
-                    position.x - direction.x * trailLength * startFactor,
-                    position.y - direction.y * trailLength * startFactor,
-                    position.z - direction.z * trailLength * startFactor
-                );
-                
-                Vector3f endPos = new Vector3f(
-                    position.x - direction.x * trailLength * endFactor,
-                    position.y - direction.y * trailLength * endFactor,
-                    position.z - direction.z * trailLength * endFactor
-                );
-                
                 // Calculate colors and opacity along the trail
-                float startAlpha = alpha * (1.0f - startFactor);
-                float endAlpha = alpha * (1.0f - endFactor);
+                float startAlpha = opacity * (1.0f - startFactor);
+                float endAlpha = opacity * (1.0f - endFactor);
                 
-                // Interpolate between head and tail colors
-                // (the head is brighter than the tail)
-                Vector4f startColor = new Vector4f(
+                // Draw the trail segment, line width based on segment
+                // (colors go from the head color to the tail color - the head is brighter than the tail)
+                renderer.begin(Renderer.Primitive.LINES, trailWidths[i]);
+                renderer.vertex(
+                    renderPosition.x - direction.x * trailLength * startFactor,
+                    renderPosition.y - direction.y * trailLength * startFactor,
+                    renderPosition.z - direction.z * trailLength * startFactor,
                     headColor.x * (1.0f - startFactor) + tailColor.x * startFactor,
                     headColor.y * (1.0f - startFactor) + tailColor.y * startFactor,
                     headColor.z * (1.0f - startFactor) + tailColor.z * startFactor,
                     startAlpha
                 );
-                
-                Vector4f endColor = new Vector4f(
+                renderer.vertex(
+                    renderPosition.x - direction.x * trailLength * endFactor,
+                    renderPosition.y - direction.y * trailLength * endFactor,
+                    renderPosition.z - direction.z * trailLength * endFactor,
                     headColor.x * (1.0f - endFactor) + tailColor.x * endFactor,
                     headColor.y * (1.0f - endFactor) + tailColor.y * endFactor,
                     headColor.z * (1.0f - endFactor) + tailColor.z * endFactor,
                     endAlpha
                 );
-                
-                // Set line width based on segment
-                glLineWidth(trailWidths[i]);
-                
-                // Draw the trail segment
-                glBegin(GL_LINES);
-                glColor4f(startColor.x, startColor.y, startColor.z, startColor.w);
-                glVertex3f(startPos.x, startPos.y, startPos.z);
-                glColor4f(endColor.x, endColor.y, endColor.z, endColor.w);
-                glVertex3f(endPos.x, endPos.y, endPos.z);
-                glEnd();
+                renderer.end();
             }
             
             // draw small particles along the trail for a sparkle effect
-            glPointSize(2.0f);
-            glBegin(GL_POINTS);
+            renderer.begin(Renderer.Primitive.POINTS, 2.0f);
             for (int i = 0; i < 10; i++) {
                 float factor = (float)i / 10.0f * 0.5f; // only along first half of trail
-                float sparkleAlpha = alpha * (0.3f + (float)Math.random() * 0.7f); // random brightness
+                float sparkleAlpha = opacity * (0.3f + sparkleRandom.nextFloat() * 0.7f); // random brightness
                 
-                glColor4f(headColor.x, headColor.y, headColor.z, sparkleAlpha);
-                glVertex3f(
-                    position.x - direction.x * trailLength * factor + (float)(Math.random() * 0.5f - 0.25f),
-                    position.y - direction.y * trailLength * factor + (float)(Math.random() * 0.5f - 0.25f),
-                    position.z - direction.z * trailLength * factor + (float)(Math.random() * 0.5f - 0.25f)
+                renderer.vertex(
+                    renderPosition.x - direction.x * trailLength * factor + (sparkleRandom.nextFloat() * 0.5f - 0.25f),
+                    renderPosition.y - direction.y * trailLength * factor + (sparkleRandom.nextFloat() * 0.5f - 0.25f),
+                    renderPosition.z - direction.z * trailLength * factor + (sparkleRandom.nextFloat() * 0.5f - 0.25f),
+                    headColor.x, headColor.y, headColor.z, sparkleAlpha
                 );
             }
-            glEnd();
+            renderer.end();
             
             // draw the head of the shooting star with a glow
-            // first draw a larger, more transparent glow
-            glPointSize(headSize * 25);
-            glColor4f(headColor.x, headColor.y, headColor.z, alpha * 0.3f);
-            glBegin(GL_POINTS);
-            glVertex3f(position.x, position.y, position.z);
-            glEnd();
+            // with bloom the head is just drawn extra bright and the glow comes for free
+            float headBoost = 1.0f;
+            if (renderer.hasBloom()) {
+                headBoost = HEAD_BLOOM_BOOST;
+            } else {
+                // first draw a larger, more transparent glow
+                renderer.begin(Renderer.Primitive.POINTS, headSize * 25);
+                renderer.vertex(renderPosition.x, renderPosition.y, renderPosition.z, headColor.x, headColor.y, headColor.z, opacity * 0.3f);
+                renderer.end();
+            }
             
             // then draw the core
-            glPointSize(headSize * 15);
-            glColor4f(headColor.x, headColor.y, headColor.z, alpha);
-            glBegin(GL_POINTS);
-            glVertex3f(position.x, position.y, position.z);
-            glEnd();
+            renderer.begin(Renderer.Primitive.POINTS, headSize * 15);
+            renderer.vertex(renderPosition.x, renderPosition.y, renderPosition.z,
+                headColor.x * headBoost, headColor.y * headBoost, headColor.z * headBoost, opacity);
+            renderer.end();
             
             // restore blend mode
-            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-            
-            // restore the previous matrix state
-            glPopMatrix();
+            renderer.setBlendMode(Renderer.BlendMode.NONE);
         }
         
         /**
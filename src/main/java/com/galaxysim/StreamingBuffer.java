@@ -0,0 +1,260 @@
+package com.galaxysim;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.*;
+
+/**
+ * A ring buffer for geometry that changes every frame (shooting star trails, glimmering
+ * stars, HUD text...). The buffer is split into one section per frame in flight, and a
+ * fence at the end of each frame tells us when the GPU is done with a section so we can
+ * write into it again without stalling or making the driver copy anything.
+ *
+ * If the driver supports ARB_buffer_storage the whole thing stays mapped forever and we
+ * write straight into GPU-visible memory. Otherwise we map each range with glMapBufferRange,
+ * and on really old drivers we just use glBufferSubData
+ */
+public class StreamingBuffer {
+    // how we get data into the buffer, best first
+    public enum Mode {
+        PERSISTENT,  // mapped once, written directly (ARB_buffer_storage)
+        MAP_RANGE,   // glMapBufferRange per upload
+        SUB_DATA     // plain glBufferSubData
+    }
+
+    // frames the GPU can lag behind us before we have to wait on it
+    private static final int SECTIONS = 3;
+
+    // give up waiting on a fence after this long (something's probably wrong at that point)
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final int target;
+    private final Mode mode;
+    private final boolean fences;
+
+    private int buffer;
+    private int sectionBytes;
+    private ByteBuffer mapped;   // the whole buffer, only in PERSISTENT mode
+    private final long[] sectionFences = new long[SECTIONS];
+
+    private int section;          // which section this frame writes into
+    private int head;             // next free byte inside the current section
+    private int highWaterMark;    // most bytes a single frame has asked for since the last resize
+    private boolean wantsGrow;    // this frame ran out of room, get bigger at the next frame
+
+    /**
+     * Creates a streaming buffer
+     * @param target GL buffer target, like GL_ARRAY_BUFFER
+     * @param sectionBytes How many bytes a single frame can write before we need to grow
+     */
+    public StreamingBuffer(int target, int sectionBytes) {
+        this.target = target;
+
+        GLCapabilities caps = GL.getCapabilities();
+        this.fences = caps.OpenGL32 || caps.GL_ARB_sync;
+        if ((caps.OpenGL44 || caps.GL_ARB_buffer_storage) && fences) {
+            mode = Mode.PERSISTENT;
+        } else if (caps.OpenGL30 || caps.GL_ARB_map_buffer_range) {
+            mode = Mode.MAP_RANGE;
+        } else {
+            mode = Mode.SUB_DATA;
+        }
+
+        allocate(sectionBytes);
+    }
+
+    private void allocate(int bytesPerSection) {
+        sectionBytes = bytesPerSection;
+        long totalBytes = (long) sectionBytes * SECTIONS;
+
+        buffer = glGenBuffers();
+        glBindBuffer(target, buffer);
+        if (mode == Mode.PERSISTENT) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(target, totalBytes, flags);
+            mapped = glMapBufferRange(target, 0, totalBytes, flags);
+            if (mapped == null) {
+                throw new RuntimeException("Failed to persistently map the streaming buffer");
+            }
+        } else {
+            glBufferData(target, totalBytes, GL_STREAM_DRAW);
+        }
+        glBindBuffer(target, 0);
+    }
+
+    /**
+     * Moves on to the next section, waiting for the GPU to finish with it first if it has to.
+     * Call once at the start of every frame
+     */
+    public void beginFrame() {
+        if (wantsGrow) {
+            grow();
+        }
+
+        section = (section + 1) % SECTIONS;
+        head = 0;
+
+        if (fences) {
+            waitForSection(section);
+        } else if (section == 0 && mode == Mode.MAP_RANGE) {
+            // no fences to tell us when it's safe, so orphan the whole buffer every time we
+            // wrap around - the driver hands us fresh memory and keeps the old one alive for the GPU
+            glBindBuffer(target, buffer);
+            glBufferData(target, (long) sectionBytes * SECTIONS, GL_STREAM_DRAW);
+            glBindBuffer(target, 0);
+        }
+    }
+
+    /**
+     * Drops a fence after everything this frame drew from its section. Call once at the end of every frame
+     */
+    public void endFrame() {
+        highWaterMark = Math.max(highWaterMark, head);
+        if (fences) {
+            sectionFences[section] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+    }
+
+    private void waitForSection(int index) {
+        long fence = sectionFences[index];
+        if (fence == 0) {
+            return;
+        }
+        int result = glClientWaitSync(fence, 0, 0);
+        if (result == GL_TIMEOUT_EXPIRED) {
+            // the GPU is still on it, flush so the fence can actually signal and then wait properly
+            result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+            if (result == GL_TIMEOUT_EXPIRED) {
+                System.err.println("Streaming buffer fence took over a second, carrying on anyway");
+            }
+        }
+        glDeleteSync(fence);
+        sectionFences[index] = 0;
+    }
+
+    private void grow() {
+        // wait for every section so nothing still reads from the old buffer, then start over bigger
+        for (int i = 0; i < SECTIONS; i++) {
+            if (fences) {
+                waitForSection(i);
+            }
+        }
+        int newSize = Math.max(sectionBytes * 2, highWaterMark + highWaterMark / 2);
+        System.out.println("Growing streaming buffer sections to " + (newSize / 1024) + " KB");
+        cleanup();
+        allocate(newSize);
+        wantsGrow = false;
+        highWaterMark = 0;
+    }
+
+    /**
+     * @return The way this buffer gets written to on this driver
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The GL buffer to bind when drawing from offsets handed out by this buffer
+     */
+    public int getBufferId() {
+        return buffer;
+    }
+
+    /**
+     * @return How many bytes are still free in this frame's section
+     */
+    public int remaining() {
+        return sectionBytes - head;
+    }
+
+    /**
+     * Hands out the rest of this frame's section for writing directly into (PERSISTENT mode only).
+     * Write from position 0, then call commit with however many bytes you used
+     * @param minBytes The least amount of room that's still useful to the caller
+     * @return A view of the mapped memory, or null if the section is too full or this isn't a persistent buffer
+     */
+    public ByteBuffer reserve(int minBytes) {
+        if (mode != Mode.PERSISTENT) {
+            return null;
+        }
+        if (remaining() < minBytes) {
+            wantsGrow = true;
+            return null;
+        }
+        int start = section * sectionBytes + head;
+        return MemoryUtil.memSlice(mapped, start, remaining());
+    }
+
+    /**
+     * Marks bytes written through reserve as used
+     * @param bytes How many bytes were written
+     * @return Byte offset in the GL buffer where they start
+     */
+    public long commit(int bytes) {
+        long offset = (long) section * sectionBytes + head;
+        head += bytes;
+        return offset;
+    }
+
+    /**
+     * Copies data into this frame's section
+     * @param data Data to copy, from its position to its limit
+     * @return Byte offset in the GL buffer where the data starts, or -1 if it didn't fit
+     */
+    public long upload(ByteBuffer data) {
+        int bytes = data.remaining();
+        if (bytes > remaining()) {
+            wantsGrow = true;
+            highWaterMark = Math.max(highWaterMark, head + bytes);
+            return -1;
+        }
+
+        long offset = (long) section * sectionBytes + head;
+        if (mode == Mode.PERSISTENT) {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(data), MemoryUtil.memAddress(mapped) + offset, bytes);
+        } else {
+            glBindBuffer(target, buffer);
+            if (mode == Mode.MAP_RANGE) {
+                // we already know the GPU isn't using this range, so tell the driver not to sync
+                ByteBuffer range = glMapBufferRange(target, offset, bytes,
+                    GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT);
+                if (range != null) {
+                    MemoryUtil.memCopy(MemoryUtil.memAddress(data), MemoryUtil.memAddress(range), bytes);
+                }
+                glUnmapBuffer(target);
+            } else {
+                glBufferSubData(target, offset, data);
+            }
+            glBindBuffer(target, 0);
+        }
+        head += bytes;
+        return offset;
+    }
+
+    /**
+     * Deletes the buffer and any fences still waiting
+     */
+    public void cleanup() {
+        for (int i = 0; i < SECTIONS; i++) {
+            if (sectionFences[i] != 0) {
+                glDeleteSync(sectionFences[i]);
+                sectionFences[i] = 0;
+            }
+        }
+        if (mapped != null) {
+            glBindBuffer(target, buffer);
+            glUnmapBuffer(target);
+            glBindBuffer(target, 0);
+            mapped = null;
+        }
+        glDeleteBuffers(buffer);
+    }
+}
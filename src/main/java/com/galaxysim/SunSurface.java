@@ -0,0 +1,585 @@
+package com.galaxysim;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Everything about a sun's look that never changes: the colors of its surface and glow
+ * cells (turbulence, flares and sunspots already worked out, in its type's colors) and the
+ * prominence triangles. It all used to get worked out again every frame, even though it comes
+ * out the same every time. Suns don't have one of these each - SunTypeCache shares them
+ * between every sun of the same type and variant.
+ *
+ * The colors are kept as vertex attributes that line up with the shared unit spheres in
+ * UnitSphere, so drawing a sun is just a few mesh draws scaled to its size - renderers that
+ * keep meshes on the GPU upload a sun once and never touch its vertices again.
+ *
+ * Surfaces get made on a background thread, one per detail level a sun gets drawn at.
+ * The same thread also makes each sun's surface texture: the full detail pattern blended
+ * smoothly over a cube texture, with finer swirls on top that the vertex colors can't show
+ */
+public class SunSurface {
+    // glow spheres around the core
+    public static final int GLOW_LAYERS = 5;
+
+    // entries of a sun type's core palette (rgb each)
+    static final int CORE_FLARE = 0;
+    static final int CORE_VERY_BRIGHT = 1;
+    static final int CORE_BRIGHT = 2;
+    static final int CORE_NORMAL = 3;
+    static final int CORE_SPOT = 4;
+    static final int CORE_PALETTE_SIZE = 5;
+
+    // entries of a sun type's glow palette (rgb each)
+    static final int GLOW_BRIGHT = 0;
+    static final int GLOW_MEDIUM = 1;
+    static final int GLOW_NORMAL = 2;
+    static final int GLOW_PALETTE_SIZE = 3;
+
+    // floats per prominence vertex while they're being made (x, y, z, r, g, b, a)
+    private static final int PROMINENCE_FLOATS = 7;
+
+    // pixels per surface texture face side (four faces make it around the equator)
+    private static final int TEXTURE_SIZE = 128;
+    // the texture is always made from the full detail pattern, whatever the detail level
+    private static final int TEXTURE_PATTERN_SEGMENTS = 64;
+    // cells around the finer swirls, and how much they brighten or darken the surface
+    private static final int FINE_SEGMENTS = 256;
+    private static final float FINE_DETAIL = 0.25f;
+
+    // one worker for all suns, they only need making once each
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HexaNebula sun surfaces");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final int coreSegments;
+    final int glowSegments;
+
+    // the shared spheres these colors go with
+    final MeshBuffer coreSphere;
+    final MeshBuffer glowSphere;
+
+    // rgba of every core vertex, lined up with UnitSphere.smooth (the last row and column wrap around)
+    final MeshBuffer coreColors;
+    // rgba of every glow vertex per layer, lined up with UnitSphere.faceted (the alpha fades out layer by layer)
+    final MeshBuffer[] glowColors;
+    // prominence triangles around a sun of radius 1 (scale them by the radius they should sit at)
+    final MeshBuffer prominencePositions;
+    final MeshBuffer prominenceColors;
+
+    // rgb the core and the glow come out as on average, for drawing the sun as a flat impostor
+    final float[] averageCoreColor;
+    final float[] averageGlowColor;
+
+    /**
+     * Starts making a sun surface on the background thread
+     * @param type Which colors it comes in
+     * @param seed What its patterns get seeded with
+     * @param coreSegments How finely the core is tessellated
+     * @param glowSegments How finely the glow layers are tessellated
+     * @return The surface, once it's done
+     */
+    public static CompletableFuture<SunSurface> generateAsync(Bodies.Sun.SunType type, int seed,
+                                                              int coreSegments, int glowSegments) {
+        return CompletableFuture.supplyAsync(() -> new SunSurface(type, seed, coreSegments, glowSegments), WORKER);
+    }
+
+    /**
+     * Starts making a sun surface texture on the background thread
+     * @param type Which colors it comes in
+     * @param seed What its patterns get seeded with (same as generateAsync)
+     * @return The texture, once it's done
+     */
+    public static CompletableFuture<CubeTexture> generateTextureAsync(Bodies.Sun.SunType type, int seed) {
+        return CompletableFuture.supplyAsync(() -> generateTexture(type, seed), WORKER);
+    }
+
+    private SunSurface(Bodies.Sun.SunType type, int seed, int coreSegments, int glowSegments) {
+        this.coreSegments = coreSegments;
+        this.glowSegments = glowSegments;
+
+        coreSphere = UnitSphere.smooth(coreSegments);
+        glowSphere = UnitSphere.faceted(glowSegments);
+        float[] coreCells = generateCoreColors(type, seed, coreSegments);
+        float[] glowCells = generateGlowColors(type, seed, glowSegments);
+        coreColors = coreVertexColors(coreCells, coreSegments);
+        glowColors = glowVertexColors(glowCells, glowSegments);
+        averageCoreColor = average(coreCells);
+        averageGlowColor = average(glowCells);
+
+        float[] prominences = generateProminences(type, seed, 1.0f);
+        int vertices = prominences.length / PROMINENCE_FLOATS;
+        float[] positions = new float[vertices * 3];
+        float[] colors = new float[vertices * 4];
+        for (int v = 0; v < vertices; v++) {
+            System.arraycopy(prominences, v * PROMINENCE_FLOATS, positions, v * 3, 3);
+            System.arraycopy(prominences, v * PROMINENCE_FLOATS + 3, colors, v * 4, 4);
+        }
+        prominencePositions = new MeshBuffer(positions, 3, null);
+        prominenceColors = new MeshBuffer(colors, 4, null);
+    }
+
+    /**
+     * @return How transparent a glow layer is - the outer ones fade out
+     */
+    static float glowAlpha(int layer) {
+        float layerFactor = (float) layer / GLOW_LAYERS;
+        return 0.35f * (1.0f - layerFactor * 0.8f);
+    }
+
+    /**
+     * Wraps the core pattern around a cube texture. Colors get blended between cells just like
+     * the vertex colors blend across the sphere, then finer swirls brighten and darken them
+     */
+    private static CubeTexture generateTexture(Bodies.Sun.SunType type, int seed) {
+        int segments = TEXTURE_PATTERN_SEGMENTS;
+        float[] cells = generateCoreColors(type, seed, segments);
+        float[][] fine = new float[FINE_SEGMENTS][FINE_SEGMENTS];
+        generateTurbulencePattern(fine, FINE_SEGMENTS, new Random(seed + 3000));
+
+        byte[][] faces = new byte[CubeTexture.FACES][TEXTURE_SIZE * TEXTURE_SIZE * 3];
+        float[] direction = new float[3];
+        float[] color = new float[3];
+        for (int face = 0; face < CubeTexture.FACES; face++) {
+            byte[] pixels = faces[face];
+            for (int y = 0; y < TEXTURE_SIZE; y++) {
+                for (int x = 0; x < TEXTURE_SIZE; x++) {
+                    CubeTexture.direction(face, (x + 0.5f) * 2.0f / TEXTURE_SIZE - 1.0f,
+                            (y + 0.5f) * 2.0f / TEXTURE_SIZE - 1.0f, direction);
+                    float length = (float) Math.sqrt(direction[0] * direction[0]
+                            + direction[1] * direction[1] + direction[2] * direction[2]);
+
+                    // same latitude/longitude layout as UnitSphere (z is up), in cells
+                    double lat = Math.asin(direction[2] / length);
+                    double lng = Math.atan2(direction[1], direction[0]);
+                    if (lng < 0) {
+                        lng += 2 * Math.PI;
+                    }
+                    float i = (float) ((lat / Math.PI + 0.5) * segments);
+                    float j = (float) (lng / (2 * Math.PI) * segments);
+
+                    sampleCells(cells, segments, i, j, color);
+                    float detail = 1.0f + sampleGrid(fine, FINE_SEGMENTS, i * FINE_SEGMENTS / segments,
+                            j * FINE_SEGMENTS / segments) * FINE_DETAIL;
+
+                    int p = (y * TEXTURE_SIZE + x) * 3;
+                    pixels[p] = toByte(color[0] * detail);
+                    pixels[p + 1] = toByte(color[1] * detail);
+                    pixels[p + 2] = toByte(color[2] * detail);
+                }
+            }
+        }
+        return new CubeTexture(TEXTURE_SIZE, faces);
+    }
+
+    // blends the rgb of the four cells around a point, wrapping both ways like the core vertices do
+    private static void sampleCells(float[] cells, int segments, float i, float j, float[] into) {
+        int i0 = (int) Math.floor(i);
+        int j0 = (int) Math.floor(j);
+        float fi = i - i0;
+        float fj = j - j0;
+        int c00 = (Math.floorMod(i0, segments) * segments + Math.floorMod(j0, segments)) * 3;
+        int c01 = (Math.floorMod(i0, segments) * segments + Math.floorMod(j0 + 1, segments)) * 3;
+        int c10 = (Math.floorMod(i0 + 1, segments) * segments + Math.floorMod(j0, segments)) * 3;
+        int c11 = (Math.floorMod(i0 + 1, segments) * segments + Math.floorMod(j0 + 1, segments)) * 3;
+        for (int k = 0; k < 3; k++) {
+            float low = cells[c00 + k] + (cells[c01 + k] - cells[c00 + k]) * fj;
+            float high = cells[c10 + k] + (cells[c11 + k] - cells[c10 + k]) * fj;
+            into[k] = low + (high - low) * fi;
+        }
+    }
+
+    // same thing for a plain grid of values
+    private static float sampleGrid(float[][] grid, int size, float i, float j) {
+        int i0 = (int) Math.floor(i);
+        int j0 = (int) Math.floor(j);
+        float fi = i - i0;
+        float fj = j - j0;
+        float[] row0 = grid[Math.floorMod(i0, size)];
+        float[] row1 = grid[Math.floorMod(i0 + 1, size)];
+        int ja = Math.floorMod(j0, size);
+        int jb = Math.floorMod(j0 + 1, size);
+        float low = row0[ja] + (row0[jb] - row0[ja]) * fj;
+        float high = row1[ja] + (row1[jb] - row1[ja]) * fj;
+        return low + (high - low) * fi;
+    }
+
+    private static byte toByte(float value) {
+        return (byte) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+    }
+
+    private static float[] average(float[] rgb) {
+        float[] sum = new float[3];
+        for (int c = 0; c < rgb.length; c += 3) {
+            sum[0] += rgb[c];
+            sum[1] += rgb[c + 1];
+            sum[2] += rgb[c + 2];
+        }
+        int cells = rgb.length / 3;
+        sum[0] /= cells;
+        sum[1] /= cells;
+        sum[2] /= cells;
+        return sum;
+    }
+
+    // spreads the per-cell colors over the corners of the smooth sphere, wrapping the last row and column
+    private static MeshBuffer coreVertexColors(float[] cells, int segments) {
+        int row = segments + 1;
+        float[] colors = new float[row * row * 4];
+        for (int i = 0; i <= segments; i++) {
+            for (int j = 0; j <= segments; j++) {
+                int c = ((i % segments) * segments + j % segments) * 3;
+                int v = (i * row + j) * 4;
+                colors[v] = cells[c];
+                colors[v + 1] = cells[c + 1];
+                colors[v + 2] = cells[c + 2];
+                colors[v + 3] = 1.0f;
+            }
+        }
+        return new MeshBuffer(colors, 4, null);
+    }
+
+    // gives all four corners of each faceted cell the cell's color, one buffer per layer
+    private static MeshBuffer[] glowVertexColors(float[] cells, int segments) {
+        MeshBuffer[] layers = new MeshBuffer[GLOW_LAYERS];
+        for (int layer = 0; layer < GLOW_LAYERS; layer++) {
+            float alpha = glowAlpha(layer);
+            float[] colors = new float[segments * segments * 4 * 4];
+            int v = 0;
+            for (int cell = 0; cell < segments * segments; cell++) {
+                int c = (layer * segments * segments + cell) * 3;
+                for (int corner = 0; corner < 4; corner++) {
+                    colors[v++] = cells[c];
+                    colors[v++] = cells[c + 1];
+                    colors[v++] = cells[c + 2];
+                    colors[v++] = alpha;
+                }
+            }
+            layers[layer] = new MeshBuffer(colors, 4, null);
+        }
+        return layers;
+    }
+
+    /**
+     * Surface with swirls, bright flares and darker sunspots
+     */
+    private static float[] generateCoreColors(Bodies.Sun.SunType type, int seed, int segments) {
+        // Create a texture-like pattern for the sun's surface
+        float[][] colorPattern = new float[segments][segments];
+        float[][] turbulencePattern = new float[segments][segments];
+
+        // Use random to create consistent patterns
+        Random rand = new Random(seed);
+
+        // Generate base turbulence pattern for swirling effect
+        generateTurbulencePattern(turbulencePattern, segments, rand);
+
+        // Apply patterns to create final color map
+        for (int i = 0; i < segments; i++) {
+            for (int j = 0; j < segments; j++) {
+                // Base color intensity with turbulence
+                colorPattern[i][j] = 1.0f + (turbulencePattern[i][j] * 0.3f);
+
+                // Add solar flares (bright spots)
+                if (rand.nextFloat() < 0.15f) { // 15% chance of a flare
+                    float flareIntensity = rand.nextFloat() * 0.8f + 0.6f; // 0.6 to 1.4 brighter
+                    colorPattern[i][j] += flareIntensity;
+
+                    // Extend flare to neighboring cells
+                    spreadFlare(colorPattern, i, j, flareIntensity * 0.7f, segments, rand);
+                }
+
+                // Add darker spots (sunspots)
+                if (rand.nextFloat() < 0.1f) {
+                    float spotIntensity = -rand.nextFloat() * 0.3f - 0.1f; // 0.1 to 0.4 darker
+                    colorPattern[i][j] += spotIntensity;
+                }
+
+                // Ensure values are in valid range with high contrast
+                colorPattern[i][j] = Math.max(0.6f, Math.min(2.0f, colorPattern[i][j]));
+            }
+        }
+
+        float[] colors = new float[segments * segments * 3];
+        for (int i = 0; i < segments; i++) {
+            for (int j = 0; j < segments; j++) {
+                setSolarCoreColor(type.corePalette, colors, (i * segments + j) * 3, colorPattern[i][j]);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Glow colors for every layer - the same turbulence for all of them, with a bit of
+     * extra variation per layer and longitude
+     */
+    private static float[] generateGlowColors(Bodies.Sun.SunType type, int seed, int segments) {
+        Random baseRand = new Random(seed + 5000);
+
+        // Generate a turbulence pattern for the glow
+        float[][] turbulencePattern = new float[segments][segments];
+        generateTurbulencePattern(turbulencePattern, segments, baseRand);
+
+        float[] colors = new float[GLOW_LAYERS * segments * segments * 3];
+        float[] intensityVar = new float[segments];
+        for (int layer = 0; layer < GLOW_LAYERS; layer++) {
+            // every latitude band starts this layer's generator over, so the variation only depends on the longitude
+            Random rand = new Random(layer * 1000 + seed);
+            for (int j = 0; j < segments; j++) {
+                intensityVar[j] = 1.0f + rand.nextFloat() * 0.5f;
+            }
+
+            for (int i = 0; i < segments; i++) {
+                for (int j = 0; j < segments; j++) {
+                    // Get turbulence value for this position
+                    float turbulence = 1.0f + turbulencePattern[i][j] * 0.3f;
+                    setSolarGlowColor(type.glowPalette, colors, ((layer * segments + i) * segments + j) * 3, turbulence * intensityVar[j]);
+                }
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Integrated surface features - bright bumps and dark dips - as one list of triangles
+     */
+    private static float[] generateProminences(Bodies.Sun.SunType type, int seed, float baseRadius) {
+        float[] core = type.corePalette;
+        float[] glow = type.glowPalette;
+        Random rand = new Random(seed + 1000);
+        int featureCount = 12 + rand.nextInt(8); // 12-20 surface features
+        int points = 12;
+        float[] vertices = new float[featureCount * points * 3 * PROMINENCE_FLOATS];
+        int v = 0;
+
+        for (int i = 0; i < featureCount; i++) {
+            // Random position on the sun's surface
+            float phi = rand.nextFloat() * (float)Math.PI * 2.0f; // Longitude
+            float theta = rand.nextFloat() * (float)Math.PI; // Latitude
+
+            // Size of the feature
+            float featureSize = baseRadius * (0.05f + rand.nextFloat() * 0.15f);
+
+            // Calculate base position on sphere
+            float sinTheta = (float)Math.sin(theta);
+            float cosTheta = (float)Math.cos(theta);
+            float sinPhi = (float)Math.sin(phi);
+            float cosPhi = (float)Math.cos(phi);
+
+            float baseX = baseRadius * sinTheta * cosPhi;
+            float baseY = baseRadius * sinTheta * sinPhi;
+            float baseZ = baseRadius * cosTheta;
+
+            // Create a small 3D bump or depression on the surface
+            boolean isBump = rand.nextBoolean();
+            float bumpHeight = featureSize * (isBump ? 0.3f : -0.1f);
+
+            // Center point of the feature
+            float centerX = baseX * (1.0f + (isBump ? 0.05f : -0.02f));
+            float centerY = baseY * (1.0f + (isBump ? 0.05f : -0.02f));
+            float centerZ = baseZ * (1.0f + (isBump ? 0.05f : -0.02f));
+
+            // Color based on feature type
+            float centerR, centerG, centerB, centerA;
+            if (isBump) {
+                // Bright spot - solar flare
+                int c = GLOW_BRIGHT * 3;
+                centerR = glow[c]; centerG = glow[c + 1]; centerB = glow[c + 2]; centerA = 0.8f;
+            } else {
+                // Dark spot - sunspot
+                int c = CORE_SPOT * 3;
+                centerR = core[c]; centerG = core[c + 1]; centerB = core[c + 2]; centerA = 0.9f;
+            }
+
+            // the previous point around the edge, each triangle is center -> previous -> current
+            float prevX = 0, prevY = 0, prevZ = 0;
+            float prevR = 0, prevG = 0, prevB = 0, prevA = 0;
+
+            // Create points around the feature
+            for (int j = 0; j <= points; j++) {
+                float angle = (float)(j * 2.0f * Math.PI / points);
+
+                // Create a local coordinate system on the sphere surface
+                // We need a tangent plane at the feature center
+                float localX = (float)Math.cos(angle) * featureSize;
+                float localY = (float)Math.sin(angle) * featureSize;
+
+                // Transform to global coordinates (this is a simplified approximation)
+                // We're creating a small perturbation from the base point on the sphere
+                float perturbX = localX * cosPhi - localY * sinPhi * cosTheta;
+                float perturbY = localX * sinPhi + localY * cosPhi * cosTheta;
+                float perturbZ = localY * sinTheta;
+
+                float x = baseX + perturbX;
+                float y = baseY + perturbY;
+                float z = baseZ + perturbZ;
+
+                // Normalize to keep on sphere surface (with slight bump/depression)
+                float length = (float)Math.sqrt(x*x + y*y + z*z);
+                float normalizedRadius = baseRadius + (j % 3 == 0 ? bumpHeight * 0.7f : bumpHeight);
+
+                x = x / length * normalizedRadius;
+                y = y / length * normalizedRadius;
+                z = z / length * normalizedRadius;
+
+                // Color varies slightly around the feature
+                float r, g, b, a;
+                if (isBump) {
+                    // somewhere between the medium and bright glow
+                    float brightness = (j % 3) * 0.5f;
+                    int c0 = GLOW_MEDIUM * 3;
+                    int c1 = GLOW_BRIGHT * 3;
+                    r = glow[c0] + (glow[c1] - glow[c0]) * brightness;
+                    g = glow[c0 + 1] + (glow[c1 + 1] - glow[c0 + 1]) * brightness;
+                    b = glow[c0 + 2] + (glow[c1 + 2] - glow[c0 + 2]) * brightness;
+                    a = 0.7f;
+                } else {
+                    // a darker sunspot color
+                    float darkness = (0.7f - (j % 3) * 0.1f) / 0.9f;
+                    int c = CORE_SPOT * 3;
+                    r = core[c] * darkness; g = core[c + 1] * darkness; b = core[c + 2] * darkness; a = 0.8f;
+                }
+
+                if (j > 0) {
+                    v = putVertex(vertices, v, centerX, centerY, centerZ, centerR, centerG, centerB, centerA);
+                    v = putVertex(vertices, v, prevX, prevY, prevZ, prevR, prevG, prevB, prevA);
+                    v = putVertex(vertices, v, x, y, z, r, g, b, a);
+                }
+                prevX = x; prevY = y; prevZ = z;
+                prevR = r; prevG = g; prevB = b; prevA = a;
+            }
+        }
+        return vertices;
+    }
+
+    private static int putVertex(float[] into, int at, float x, float y, float z, float r, float g, float b, float a) {
+        into[at] = x;
+        into[at + 1] = y;
+        into[at + 2] = z;
+        into[at + 3] = r;
+        into[at + 4] = g;
+        into[at + 5] = b;
+        into[at + 6] = a;
+        return at + PROMINENCE_FLOATS;
+    }
+
+    /**
+     * Pick the color for a point on the solar core surface from the sun type's palette
+     */
+    private static void setSolarCoreColor(float[] palette, float[] into, int at, float intensity) {
+        if (intensity > 1.7f) {
+            // Solar flares
+            putPaletteColor(palette, CORE_FLARE, into, at);
+        } else if (intensity > 1.4f) {
+            // Very bright spots
+            putPaletteColor(palette, CORE_VERY_BRIGHT, into, at);
+        } else if (intensity > 1.1f) {
+            // Bright spots
+            putPaletteColor(palette, CORE_BRIGHT, into, at);
+        } else if (intensity < 0.7f) {
+            // Dark spots (sunspots)
+            putPaletteColor(palette, CORE_SPOT, into, at);
+        } else {
+            // Normal surface
+            putPaletteColor(palette, CORE_NORMAL, into, at);
+        }
+    }
+
+    /**
+     * Pick the color for a point on the solar glow from the sun type's palette
+     */
+    private static void setSolarGlowColor(float[] palette, float[] into, int at, float intensity) {
+        if (intensity > 1.5f) {
+            putPaletteColor(palette, GLOW_BRIGHT, into, at);
+        } else if (intensity > 1.2f) {
+            putPaletteColor(palette, GLOW_MEDIUM, into, at);
+        } else {
+            putPaletteColor(palette, GLOW_NORMAL, into, at);
+        }
+    }
+
+    private static void putPaletteColor(float[] palette, int entry, float[] into, int at) {
+        putColor(into, at, palette[entry * 3], palette[entry * 3 + 1], palette[entry * 3 + 2]);
+    }
+
+    private static void putColor(float[] into, int at, float r, float g, float b) {
+        into[at] = r;
+        into[at + 1] = g;
+        into[at + 2] = b;
+    }
+
+    /**
+     * Generate a turbulence pattern for swirling solar surface
+     * @param pattern Pattern array to fill
+     * @param size Size of the pattern
+     * @param rand Random number generator
+     */
+    private static void generateTurbulencePattern(float[][] pattern, int size, Random rand) {
+        // Initialize with random noise
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                pattern[i][j] = rand.nextFloat() * 2.0f - 1.0f; // -1.0 to 1.0
+            }
+        }
+
+        // Apply several passes of smoothing to create swirls
+        float[][] temp = new float[size][size];
+        for (int pass = 0; pass < 3; pass++) {
+            // Copy pattern
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(pattern[i], 0, temp[i], 0, size);
+            }
+
+            // Apply directional smoothing for swirl effect
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    // Create swirling effect by biasing the smoothing direction
+                    float swirl = (float)Math.sin(i * 0.2f + j * 0.3f) * 0.5f;
+
+                    int i1 = (i + (int)(swirl * 3) + size) % size;
+                    int j1 = (j + 1 + size) % size;
+                    int i2 = (i - 1 + size) % size;
+                    int j2 = (j + (int)(swirl * 2) + size) % size;
+
+                    pattern[i][j] = (temp[i][j] + temp[i1][j] + temp[i][j1] + temp[i2][j] + temp[i][j2]) / 5.0f;
+                }
+            }
+        }
+    }
+
+    /**
+     * Spread a solar flare to neighboring cells
+     * @param pattern Color pattern to modify
+     * @param centerI Center row index
+     * @param centerJ Center column index
+     * @param intensity Intensity of the flare
+     * @param size Size of the pattern
+     * @param rand Random number generator
+     */
+    private static void spreadFlare(float[][] pattern, int centerI, int centerJ, float intensity, int size, Random rand) {
+        // Determine flare size
+        int flareSize = rand.nextInt(3) + 2; // 2-4 cells radius
+
+        // Spread flare with decreasing intensity
+        for (int i = centerI - flareSize; i <= centerI + flareSize; i++) {
+            for (int j = centerJ - flareSize; j <= centerJ + flareSize; j++) {
+                // Calculate distance from center
+                int di = Math.min(Math.abs(i - centerI), Math.min(i + size - centerI, centerI + size - i));
+                int dj = Math.min(Math.abs(j - centerJ), Math.min(j + size - centerJ, centerJ + size - j));
+                float distance = (float)Math.sqrt(di * di + dj * dj);
+
+                // Apply flare with intensity falling off with distance
+                if (distance < flareSize) {
+                    float falloff = 1.0f - (distance / flareSize);
+                    int wrappedI = (i + size) % size;
+                    int wrappedJ = (j + size) % size;
+                    pattern[wrappedI][wrappedJ] += intensity * falloff * falloff;
+                }
+            }
+        }
+    }
+}
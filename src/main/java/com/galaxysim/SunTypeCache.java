@@ -0,0 +1,63 @@
+package com.galaxysim;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sun surfaces and textures shared between every sun of the same type. Working them out and
+ * uploading them is the expensive part of a sun, and there's no way to tell two orange suns'
+ * swirls apart from across the galaxy, so each type only gets a few variants and every sun
+ * borrows one of them instead of making its own. That way a galaxy full of suns costs about
+ * as much memory and upload time as a few dozen of them, however many there are.
+ *
+ * Everything here is made in the background the first time somebody asks for it, and after
+ * that it's the same future for everyone (MeshBufferCache and CubeTextureCache only upload
+ * each one once since they go by identity)
+ */
+public final class SunTypeCache {
+    // how many different looks each type comes in
+    public static final int VARIANTS = 4;
+
+    private static final Map<Long, CompletableFuture<SunSurface>> SURFACES = new ConcurrentHashMap<>();
+    private static final Map<Integer, CompletableFuture<CubeTexture>> TEXTURES = new ConcurrentHashMap<>();
+
+    private SunTypeCache() {
+    }
+
+    /**
+     * @param type Which type of sun
+     * @param variant Which of its looks (0 to VARIANTS - 1)
+     * @param coreSegments How finely the core is tessellated
+     * @param glowSegments How finely the glow layers are tessellated
+     * @return The shared surface, once it's done
+     */
+    public static CompletableFuture<SunSurface> surface(Bodies.Sun.SunType type, int variant,
+                                                        int coreSegments, int glowSegments) {
+        long key = ((long) key(type, variant) << 32) | ((long) coreSegments << 16) | glowSegments;
+        return SURFACES.computeIfAbsent(key,
+            k -> SunSurface.generateAsync(type, seed(type, variant), coreSegments, glowSegments));
+    }
+
+    /**
+     * @param type Which type of sun
+     * @param variant Which of its looks (0 to VARIANTS - 1)
+     * @return The shared surface texture, once it's done
+     */
+    public static CompletableFuture<CubeTexture> texture(Bodies.Sun.SunType type, int variant) {
+        return TEXTURES.computeIfAbsent(key(type, variant),
+            k -> SunSurface.generateTextureAsync(type, seed(type, variant)));
+    }
+
+    private static int key(Bodies.Sun.SunType type, int variant) {
+        if (variant < 0 || variant >= VARIANTS) {
+            throw new IllegalArgumentException("There's no sun variant " + variant);
+        }
+        return type.ordinal() * VARIANTS + variant;
+    }
+
+    // spread out a bit so neighbouring variants don't start their patterns on similar numbers
+    private static int seed(Bodies.Sun.SunType type, int variant) {
+        return key(type, variant) * 7919 + 1;
+    }
+}
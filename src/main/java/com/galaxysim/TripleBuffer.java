@@ -0,0 +1,87 @@
+package com.galaxysim;
+
+/**
+ * Three slots passed between one producer thread and one consumer thread.
+ * The producer fills its slot and publishes it, the consumer takes whatever was
+ * published last, and the third slot sits in the middle so neither of them ever
+ * touches the slot the other one is using.
+ *
+ * The producer waits if the consumer hasn't picked up the last published slot yet,
+ * which keeps it at most one frame ahead instead of racing off on its own
+ */
+public class TripleBuffer<T> {
+    private final Object[] slots;
+    private int writeIndex = 0;    // only the producer uses this one
+    private int readyIndex = 1;    // the last published slot
+    private int readIndex = 2;     // only the consumer uses this one
+    private boolean fresh;         // readyIndex was published and nobody took it yet
+    private boolean closed;
+
+    /**
+     * @param first First slot
+     * @param second Second slot
+     * @param third Third slot
+     */
+    public TripleBuffer(T first, T second, T third) {
+        slots = new Object[] { first, second, third };
+    }
+
+    /**
+     * @return The slot the producer should fill next (producer thread only)
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) slots[writeIndex];
+    }
+
+    /**
+     * Hands the filled write slot over to the consumer. Waits first if the consumer
+     * hasn't taken the previous one yet (returns right away once the buffer is closed)
+     * @throws InterruptedException If the producer gets interrupted while waiting
+     */
+    public synchronized void publish() throws InterruptedException {
+        while (fresh && !closed) {
+            wait();
+        }
+        int published = writeIndex;
+        writeIndex = readyIndex;
+        readyIndex = published;
+        fresh = true;
+        notifyAll();
+    }
+
+    /**
+     * Takes the most recently published slot (consumer thread only)
+     * @param timeoutMillis How long to wait for one, 0 means don't wait
+     * @return The slot, or null if nothing new showed up in time or the buffer got closed
+     * @throws InterruptedException If the consumer gets interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T takeLatest(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!fresh && !closed) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return null;
+            }
+            wait(left);
+        }
+        if (!fresh) {
+            return null;
+        }
+        int taken = readyIndex;
+        readyIndex = readIndex;
+        readIndex = taken;
+        fresh = false;
+        notifyAll();
+        return (T) slots[readIndex];
+    }
+
+    /**
+     * Wakes up anyone waiting and stops publish from blocking from now on
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,112 @@
+package com.galaxysim;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Radius 1 spheres that every sun shares - the renderer scales them up to whatever size
+ * it's drawing. There's one of each kind per detail level, made the first time something
+ * asks for it, so no matter how many suns there are the sphere geometry only exists once
+ * (and only gets uploaded once by renderers that keep meshes on the GPU).
+ *
+ * Both kinds go latitude by latitude from the bottom up, and longitude by longitude
+ * around, two triangles per cell
+ */
+public class UnitSphere {
+    private static final Map<Integer, MeshBuffer> SMOOTH = new ConcurrentHashMap<>();
+    private static final Map<Integer, MeshBuffer> FACETED = new ConcurrentHashMap<>();
+
+    /**
+     * Neighboring cells share their corners, so colors blend smoothly across the surface.
+     * Vertex (i, j) - latitude i, longitude j, both 0 to segments - is number i * (segments + 1) + j
+     * @param segments Latitudes and longitudes
+     * @return The sphere
+     */
+    public static MeshBuffer smooth(int segments) {
+        return SMOOTH.computeIfAbsent(segments, UnitSphere::buildSmooth);
+    }
+
+    /**
+     * Every cell gets its own four corners, so each cell can be one flat color.
+     * Cell (i, j) is vertices 4 * (i * segments + j) and the three after it
+     * @param segments Latitudes and longitudes
+     * @return The sphere
+     */
+    public static MeshBuffer faceted(int segments) {
+        return FACETED.computeIfAbsent(segments, UnitSphere::buildFaceted);
+    }
+
+    private static MeshBuffer buildSmooth(int segments) {
+        float[][] trig = trig(segments);
+        int row = segments + 1;
+        float[] positions = new float[row * row * 3];
+        for (int i = 0; i <= segments; i++) {
+            for (int j = 0; j <= segments; j++) {
+                putPosition(positions, (i * row + j) * 3, trig, i, j);
+            }
+        }
+
+        int[] indices = new int[segments * segments * 6];
+        int n = 0;
+        for (int i = 0; i < segments; i++) {
+            for (int j = 0; j < segments; j++) {
+                int v00 = i * row + j;
+                int v10 = v00 + row;
+                // same corners in the same order the sun has always used
+                indices[n++] = v00;
+                indices[n++] = v10;
+                indices[n++] = v10 + 1;
+                indices[n++] = v00;
+                indices[n++] = v10 + 1;
+                indices[n++] = v00 + 1;
+            }
+        }
+        return new MeshBuffer(positions, 3, indices);
+    }
+
+    private static MeshBuffer buildFaceted(int segments) {
+        float[][] trig = trig(segments);
+        float[] positions = new float[segments * segments * 4 * 3];
+        int[] indices = new int[segments * segments * 6];
+        int p = 0;
+        int n = 0;
+        for (int i = 0; i < segments; i++) {
+            for (int j = 0; j < segments; j++) {
+                int first = p / 3;
+                putPosition(positions, p, trig, i, j);
+                putPosition(positions, p + 3, trig, i + 1, j);
+                putPosition(positions, p + 6, trig, i + 1, j + 1);
+                putPosition(positions, p + 9, trig, i, j + 1);
+                p += 12;
+
+                indices[n++] = first;
+                indices[n++] = first + 1;
+                indices[n++] = first + 2;
+                indices[n++] = first;
+                indices[n++] = first + 2;
+                indices[n++] = first + 3;
+            }
+        }
+        return new MeshBuffer(positions, 3, indices);
+    }
+
+    private static void putPosition(float[] positions, int p, float[][] trig, int lat, int lng) {
+        positions[p] = trig[3][lng] * trig[1][lat];
+        positions[p + 1] = trig[2][lng] * trig[1][lat];
+        positions[p + 2] = trig[0][lat];
+    }
+
+    // sin/cos of each latitude and longitude: {latSin, latCos, lngSin, lngCos}
+    private static float[][] trig(int segments) {
+        float[][] trig = new float[4][segments + 1];
+        for (int i = 0; i <= segments; i++) {
+            float lat = (float) (Math.PI * (-0.5 + (double) i / segments));
+            trig[0][i] = (float) Math.sin(lat);
+            trig[1][i] = (float) Math.cos(lat);
+            float lng = (float) (2 * Math.PI * (double) i / segments);
+            trig[2][i] = (float) Math.sin(lng);
+            trig[3][i] = (float) Math.cos(lng);
+        }
+        return trig;
+    }
+}